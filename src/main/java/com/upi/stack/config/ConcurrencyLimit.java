@@ -0,0 +1,77 @@
+package com.upi.stack.config;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Concurrency limit that follows latency, additive-increase/multiplicative-decrease in the
+// manner of TCP Vegas. Compared with the fastest request seen lately, a request that took no
+// more than tolerance times as long grows the limit by 1/limit while the limit is at least half
+// used, so by about one per round of requests; a slower one shrinks it by the backoff factor,
+// at most once per its own latency so one slow round counts once. The fastest latency is
+// forgotten every probe interval and relearned, so a lasting change in how fast payments can
+// go moves the baseline too. The limit is a fixed-point number with 10 fraction bits held in
+// one AtomicLong; nothing here takes a lock.
+final class ConcurrencyLimit {
+    
+    private static final int FRACTION_BITS = 10;
+    
+    private final long minLimit;
+    private final long maxLimit;
+    private final double tolerance;
+    private final double backoff;
+    private final long probeNanos;
+    
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicLong limit;
+    private final AtomicLong fastest = new AtomicLong(Long.MAX_VALUE);
+    private final AtomicLong fastestSince = new AtomicLong(System.nanoTime());
+    private final AtomicLong lastDecrease = new AtomicLong(System.nanoTime());
+    
+    ConcurrencyLimit(int initialLimit, int minLimit, int maxLimit, double tolerance, double backoff, Duration probeInterval) {
+        this.minLimit = (long) Math.max(minLimit, 1) << FRACTION_BITS;
+        this.maxLimit = (long) Math.max(maxLimit, minLimit) << FRACTION_BITS;
+        this.tolerance = tolerance;
+        this.backoff = backoff;
+        this.probeNanos = probeInterval.toNanos();
+        this.limit = new AtomicLong(Math.min(Math.max((long) initialLimit << FRACTION_BITS, this.minLimit), this.maxLimit));
+    }
+    
+    boolean tryAcquire() {
+        int max = limit();
+        while (true) {
+            int current = inFlight.get();
+            if (current >= max) {
+                return false;
+            }
+            if (inFlight.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+    
+    void release(long latencyNanos, long now) {
+        int busy = inFlight.getAndDecrement();
+        long since = fastestSince.get();
+        if (now - since > probeNanos && fastestSince.compareAndSet(since, now)) {
+            fastest.set(latencyNanos);
+        }
+        long baseline = fastest.accumulateAndGet(latencyNanos, Math::min);
+        if (latencyNanos > baseline * tolerance) {
+            long last = lastDecrease.get();
+            if (now - last > latencyNanos && lastDecrease.compareAndSet(last, now)) {
+                limit.updateAndGet(current -> Math.max((long) (current * backoff), minLimit));
+            }
+        } else if (busy * 2 >= limit()) {
+            limit.updateAndGet(current -> Math.min(current + (1L << 2 * FRACTION_BITS) / current, maxLimit));
+        }
+    }
+    
+    int limit() {
+        return (int) (limit.get() >>> FRACTION_BITS);
+    }
+    
+    int inFlight() {
+        return inFlight.get();
+    }
+} 
\ No newline at end of file
@@ -1,29 +1,41 @@
 package com.upi.stack.config;
 
-import com.upi.stack.entity.User;
+import com.upi.stack.dto.UserDto;
 import com.upi.stack.repository.UserRepository;
+import com.upi.stack.service.DataSeeder;
+import com.upi.stack.service.ShardRouter;
+import com.upi.stack.service.UserImportService;
 import lombok.RequiredArgsConstructor;
 import org.springframework.boot.CommandLineRunner;
 import org.springframework.stereotype.Component;
 import java.math.BigDecimal;
+import java.util.List;
 
 @Component
 @RequiredArgsConstructor
 public class DataInitializer implements CommandLineRunner {
     
     private final UserRepository userRepository;
+    private final ShardRouter shardRouter;
+    private final UserImportService userImportService;
+    private final DataSeeder dataSeeder;
     
     @Override
     public void run(String... args) throws Exception {
-        // Create sample users if they don't exist
-        if (userRepository.count() == 0) {
-            createSampleUsers();
+        // Create sample users, or generated ones with upi.seed.users set, if they don't exist
+        if (shardRouter.fanOut(shard -> userRepository.count()).stream().allMatch(count -> count == 0)) {
+            if (dataSeeder.isEnabled()) {
+                dataSeeder.seed();
+            } else {
+                createSampleUsers();
+            }
         }
     }
     
+    // Goes through the bulk import, so the users are written in one batch per shard
     private void createSampleUsers() {
         // User 1
-        User user1 = new User();
+        UserDto user1 = new UserDto();
         user1.setUpiId("john.doe@icici");
         user1.setName("John Doe");
         user1.setPhoneNumber("9876543210");
@@ -32,10 +44,9 @@ public class DataInitializer implements CommandLineRunner {
         user1.setBankName("ICICI Bank");
         user1.setAccountNumber("1234567890");
         user1.setIfscCode("ICIC0001234");
-        userRepository.save(user1);
         
         // User 2
-        User user2 = new User();
+        UserDto user2 = new UserDto();
         user2.setUpiId("jane.smith@hdfc");
         user2.setName("Jane Smith");
         user2.setPhoneNumber("9876543211");
@@ -44,10 +55,9 @@ public class DataInitializer implements CommandLineRunner {
         user2.setBankName("HDFC Bank");
         user2.setAccountNumber("0987654321");
         user2.setIfscCode("HDFC0005678");
-        userRepository.save(user2);
         
         // User 3
-        User user3 = new User();
+        UserDto user3 = new UserDto();
         user3.setUpiId("bob.wilson@sbi");
         user3.setName("Bob Wilson");
         user3.setPhoneNumber("9876543212");
@@ -56,8 +66,10 @@ public class DataInitializer implements CommandLineRunner {
         user3.setBankName("State Bank of India");
         user3.setAccountNumber("1122334455");
         user3.setIfscCode("SBIN0009876");
-        userRepository.save(user3);
         
+        if (userImportService.importUsers("sample-users", List.of(user1, user2, user3)).rejected() > 0) {
+            throw new IllegalStateException("Sample users could not be created");
+        }
         System.out.println("Sample users created successfully!");
     }
 } 
\ No newline at end of file
@@ -0,0 +1,115 @@
+package com.upi.stack.config;
+
+import com.upi.stack.service.PaymentJournal;
+import com.upi.stack.service.PaymentPipeline;
+import com.upi.stack.service.ReadModel;
+import com.upi.stack.service.SettlementEngine;
+import com.upi.stack.service.TransactionEvents;
+import com.upi.stack.service.VelocityLimits;
+import com.upi.stack.service.VpaDirectory;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.TimeGauge;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import java.util.concurrent.TimeUnit;
+
+@Configuration
+public class MetricsConfig {
+    
+    @Bean
+    public MeterBinder vpaDirectoryMetrics(VpaDirectory vpaDirectory) {
+        return registry -> CaffeineCacheMetrics.monitor(registry, vpaDirectory.cache(), "vpaDirectory");
+    }
+    
+    @Bean
+    public MeterBinder paymentPipelineMetrics(PaymentPipeline paymentPipeline) {
+        return registry -> Gauge.builder("upi.payment.pipeline.in_flight", paymentPipeline, PaymentPipeline::inFlight)
+                .description("Accepted asynchronous payments not yet completed")
+                .register(registry);
+    }
+    
+    @Bean
+    public MeterBinder paymentJournalMetrics(PaymentJournal paymentJournal) {
+        return registry -> Gauge.builder("upi.payment.journal.backlog", paymentJournal, PaymentJournal::backlog)
+                .description("Journaled payments not yet applied to the database")
+                .register(registry);
+    }
+    
+    @Bean
+    public MeterBinder velocityLimitMetrics(VelocityLimits velocityLimits) {
+        return registry -> Gauge.builder("upi.limits.tracked_accounts", velocityLimits, VelocityLimits::trackedAccounts)
+                .description("Payers and payees with velocity counters in memory")
+                .register(registry);
+    }
+    
+    @Bean
+    public MeterBinder transactionEventMetrics(TransactionEvents transactionEvents) {
+        return registry -> {
+            Gauge.builder("upi.events.subscribers", transactionEvents, TransactionEvents::subscribers)
+                    .description("Open server-sent transaction event streams")
+                    .register(registry);
+            Gauge.builder("upi.events.channels", transactionEvents, TransactionEvents::channels)
+                    .description("Accounts whose recent events are kept for subscribers to resume from")
+                    .register(registry);
+        };
+    }
+    
+    @Bean
+    public MeterBinder settlementMetrics(SettlementEngine settlementEngine) {
+        return registry -> {
+            Gauge.builder("upi.settlement.open_cycles", settlementEngine, SettlementEngine::openCycles)
+                    .description("Settlement cycles still taking payments")
+                    .register(registry);
+            FunctionCounter.builder("upi.settlement.late_changes", settlementEngine, SettlementEngine::lateChanges)
+                    .description("Payments that succeeded or were reversed after their settlement cycle closed")
+                    .register(registry);
+        };
+    }
+    
+    @Bean
+    public MeterBinder rateLimitMetrics(RateLimitFilter rateLimitFilter) {
+        return registry -> {
+            for (RateLimitFilter.Limit limit : RateLimitFilter.Limit.values()) {
+                FunctionCounter.builder("upi.rate_limit.rejected", rateLimitFilter, filter -> filter.rejected(limit))
+                        .description("API requests refused with 429 before reaching a controller")
+                        .tag("limit", limit.name().toLowerCase())
+                        .register(registry);
+            }
+            Gauge.builder("upi.rate_limit.tracked_keys", rateLimitFilter, RateLimitFilter::trackedKeys)
+                    .description("Clients and payers with a token bucket that is not full")
+                    .register(registry);
+            Gauge.builder("upi.rate_limit.pay_concurrency_limit", rateLimitFilter, RateLimitFilter::concurrencyLimit)
+                    .description("Concurrent /pay requests currently admitted, adapted to their latency")
+                    .register(registry);
+            Gauge.builder("upi.rate_limit.pay_in_flight", rateLimitFilter, RateLimitFilter::payInFlight)
+                    .description("/pay requests currently admitted and not yet answered")
+                    .register(registry);
+        };
+    }
+    
+    @Bean
+    public MeterBinder readModelMetrics(ReadModel readModel) {
+        return registry -> {
+            TimeGauge.builder("upi.read_model.lag", readModel, TimeUnit.MILLISECONDS, model -> model.lag().toMillis())
+                    .description("Age of the oldest committed change not yet applied to the read model")
+                    .register(registry);
+            Gauge.builder("upi.read_model.backlog", readModel, ReadModel::backlog)
+                    .description("Committed transactions waiting to be applied to the read model")
+                    .register(registry);
+            Gauge.builder("upi.read_model.serving", readModel, model -> model.isServing() ? 1 : 0)
+                    .description("1 while listing reads are served by the read model, 0 while they go to the primary")
+                    .register(registry);
+        };
+    }
+    
+    @Bean
+    public MeterBinder startupMetrics(StartupReport startupReport) {
+        return registry -> TimeGauge.builder("upi.startup.first_request", startupReport, TimeUnit.MILLISECONDS,
+                        report -> report.firstRequestMillis() < 0 ? Double.NaN : report.firstRequestMillis())
+                .description("Time from JVM start until the first HTTP request was answered")
+                .register(registry);
+    }
+} 
\ No newline at end of file
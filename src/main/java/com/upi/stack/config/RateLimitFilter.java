@@ -0,0 +1,337 @@
+package com.upi.stack.config;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.upi.stack.service.IdempotencyService;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ReadListener;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.ServletInputStream;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletRequestWrapper;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.InvalidMediaTypeException;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.cbor.MappingJackson2CborHttpMessageConverter;
+import org.springframework.http.converter.json.AbstractJackson2HttpMessageConverter;
+import org.springframework.http.converter.smile.MappingJackson2SmileHttpMessageConverter;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.security.web.util.matcher.IpAddressMatcher;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.security.Principal;
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+// Admission control in front of the REST API. It runs in the security filter chain, so a
+// refused request costs a map lookup and a CAS and never reaches a controller. Each client has
+// a token bucket, told apart by its principal or else its remote address, and so has each
+// payer UPI ID on /pay. upi.rate-limit.client-header names the client instead only on
+// requests from upi.rate-limit.trusted-proxies, since anyone else could send a new value each
+// time. A retry with a known Idempotency-Key only replays, so it costs the payer no token.
+// /pay as a whole is held to a concurrency limit that follows its latency. A refused request
+// gets 429 with Retry-After and an empty body. A rate of 0 turns a bucket off.
+@Component
+public class RateLimitFilter extends OncePerRequestFilter {
+    
+    enum Limit {
+        CLIENT, PAYER, CONCURRENCY
+    }
+    
+    private static final String API_PATH = "/api/";
+    private static final String PAY_PATH = "/api/transactions/pay";
+    private static final String IDEMPOTENCY_KEY_HEADER = "Idempotency-Key";
+    private static final int MAX_IDEMPOTENCY_KEY = 128;
+    private static final int MAX_CLIENT_KEY = 128;
+    // A single payment is far smaller; a bigger body is passed on without a payer check
+    private static final int MAX_PEEKED_BODY = 16 * 1024;
+    
+    private final ObjectMapper objectMapper;
+    private final IdempotencyService idempotencyService;
+    private final List<AbstractJackson2HttpMessageConverter> binaryConverters;
+    private final String clientHeader;
+    private final List<IpAddressMatcher> trustedProxies;
+    private final TokenBuckets clients;
+    private final TokenBuckets payers;
+    private final ConcurrencyLimit concurrency;
+    private final Map<Limit, LongAdder> rejected = new EnumMap<>(Limit.class);
+    
+    public RateLimitFilter(ObjectMapper objectMapper,
+                           IdempotencyService idempotencyService,
+                           MappingJackson2CborHttpMessageConverter cborHttpMessageConverter,
+                           MappingJackson2SmileHttpMessageConverter smileHttpMessageConverter,
+                           @Value("${upi.rate-limit.enabled:true}") boolean enabled,
+                           @Value("${upi.rate-limit.client-header:X-Client-Id}") String clientHeader,
+                           @Value("${upi.rate-limit.trusted-proxies:}") List<String> trustedProxies,
+                           @Value("${upi.rate-limit.client-rate:0}") double clientRate,
+                           @Value("${upi.rate-limit.client-burst:1}") int clientBurst,
+                           @Value("${upi.rate-limit.payer-rate:0}") double payerRate,
+                           @Value("${upi.rate-limit.payer-burst:1}") int payerBurst,
+                           @Value("${upi.rate-limit.concurrency.enabled:true}") boolean concurrencyEnabled,
+                           @Value("${upi.rate-limit.concurrency.initial-limit:20}") int initialLimit,
+                           @Value("${upi.rate-limit.concurrency.min-limit:4}") int minLimit,
+                           @Value("${upi.rate-limit.concurrency.max-limit:200}") int maxLimit,
+                           @Value("${upi.rate-limit.concurrency.tolerance:2.0}") double tolerance,
+                           @Value("${upi.rate-limit.concurrency.backoff:0.9}") double backoff,
+                           @Value("${upi.rate-limit.concurrency.probe-interval:PT30S}") Duration probeInterval) {
+        this.objectMapper = objectMapper;
+        this.idempotencyService = idempotencyService;
+        this.binaryConverters = List.of(cborHttpMessageConverter, smileHttpMessageConverter);
+        this.clientHeader = clientHeader;
+        this.trustedProxies = trustedProxies.stream()
+                .filter(proxy -> !proxy.isBlank())
+                .map(proxy -> new IpAddressMatcher(proxy.trim()))
+                .toList();
+        this.clients = enabled && clientRate > 0 ? new TokenBuckets(clientRate, clientBurst) : null;
+        this.payers = enabled && payerRate > 0 ? new TokenBuckets(payerRate, payerBurst) : null;
+        this.concurrency = concurrencyEnabled
+                ? new ConcurrencyLimit(initialLimit, minLimit, maxLimit, tolerance, backoff, probeInterval)
+                : null;
+        for (Limit limit : Limit.values()) {
+            rejected.put(limit, new LongAdder());
+        }
+    }
+    
+    public long rejected(Limit limit) {
+        return rejected.get(limit).sum();
+    }
+    
+    public int concurrencyLimit() {
+        return concurrency == null ? 0 : concurrency.limit();
+    }
+    
+    public int payInFlight() {
+        return concurrency == null ? 0 : concurrency.inFlight();
+    }
+    
+    public int trackedKeys() {
+        return (clients == null ? 0 : clients.size()) + (payers == null ? 0 : payers.size());
+    }
+    
+    @Scheduled(fixedDelayString = "${upi.rate-limit.evict-interval:PT1M}")
+    public void evictFull() {
+        long now = System.nanoTime();
+        if (clients != null) {
+            clients.evictFull(now);
+        }
+        if (payers != null) {
+            payers.evictFull(now);
+        }
+    }
+    
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return !path(request).startsWith(API_PATH);
+    }
+    
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        long now = System.nanoTime();
+        if (clients != null) {
+            long wait = clients.acquire(clientKey(request), now);
+            if (wait > 0) {
+                refuse(request, response, Limit.CLIENT, wait);
+                return;
+            }
+        }
+        boolean pay = "POST".equals(request.getMethod()) && PAY_PATH.equals(path(request));
+        if (pay && payers != null && !isKeyedRetry(request)) {
+            PeekedRequest peeked = PeekedRequest.of(request);
+            request = peeked;
+            String payerUpiId = peeked.body == null ? null : payerUpiId(parserFactory(request.getContentType()), peeked.body);
+            long wait = payerUpiId == null ? 0 : payers.acquire(payerUpiId, now);
+            if (wait > 0) {
+                refuse(request, response, Limit.PAYER, wait);
+                return;
+            }
+        }
+        if (pay && concurrency != null) {
+            if (!concurrency.tryAcquire()) {
+                refuse(request, response, Limit.CONCURRENCY, 0);
+                return;
+            }
+            long started = System.nanoTime();
+            try {
+                chain.doFilter(request, response);
+            } finally {
+                long finished = System.nanoTime();
+                concurrency.release(finished - started, finished);
+            }
+            return;
+        }
+        chain.doFilter(request, response);
+    }
+    
+    // Keys the controller would refuse are not looked up
+    private boolean isKeyedRetry(HttpServletRequest request) {
+        String key = request.getHeader(IDEMPOTENCY_KEY_HEADER);
+        return key != null && !key.isBlank() && key.length() <= MAX_IDEMPOTENCY_KEY && idempotencyService.isKnown(key);
+    }
+    
+    // Prefixed so a header value can never share a bucket with an address or a principal
+    private String clientKey(HttpServletRequest request) {
+        String remoteAddress = request.getRemoteAddr();
+        if (!clientHeader.isEmpty() && isTrustedProxy(remoteAddress)) {
+            String client = request.getHeader(clientHeader);
+            if (client != null && !client.isBlank() && client.length() <= MAX_CLIENT_KEY) {
+                return "client:" + client;
+            }
+        }
+        Principal principal = request.getUserPrincipal();
+        if (principal != null) {
+            return "principal:" + principal.getName();
+        }
+        return "address:" + remoteAddress;
+    }
+    
+    private boolean isTrustedProxy(String remoteAddress) {
+        for (IpAddressMatcher proxy : trustedProxies) {
+            if (proxy.matches(remoteAddress)) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    // Reads just the top-level payerUpiId field; a body that isn't an object with one is
+    // passed on for the controller to refuse
+    private String payerUpiId(JsonFactory factory, byte[] body) {
+        try (JsonParser parser = factory.createParser(body)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                return null;
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                JsonToken value = parser.nextToken();
+                if (field.equals("payerUpiId")) {
+                    return value == JsonToken.VALUE_STRING ? parser.getText() : null;
+                }
+                parser.skipChildren();
+            }
+            return null;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+    
+    // A CBOR or Smile body is read with the parser the controller will use; anything else as JSON
+    private JsonFactory parserFactory(String contentType) {
+        if (contentType != null) {
+            try {
+                MediaType type = MediaType.parseMediaType(contentType);
+                for (AbstractJackson2HttpMessageConverter converter : binaryConverters) {
+                    if (converter.getSupportedMediaTypes().stream().anyMatch(supported -> supported.includes(type))) {
+                        return converter.getObjectMapper().getFactory();
+                    }
+                }
+            } catch (InvalidMediaTypeException e) {
+                // Left for the controller to refuse
+            }
+        }
+        return objectMapper.getFactory();
+    }
+    
+    private void refuse(HttpServletRequest request, HttpServletResponse response, Limit limit, long waitNanos) {
+        rejected.get(limit).increment();
+        response.setStatus(HttpStatus.TOO_MANY_REQUESTS.value());
+        response.setHeader(HttpHeaders.RETRY_AFTER, String.valueOf(Math.max(1, (waitNanos + 999_999_999) / 1_000_000_000)));
+        // The controllers allow any origin; without this a browser could not read the 429
+        if (request.getHeader(HttpHeaders.ORIGIN) != null) {
+            response.setHeader(HttpHeaders.ACCESS_CONTROL_ALLOW_ORIGIN, "*");
+        }
+    }
+    
+    private static String path(HttpServletRequest request) {
+        return request.getRequestURI().substring(request.getContextPath().length());
+    }
+    
+    // Request whose body has been read up front; the controller reads the same bytes again.
+    // body is null when the body was too big to keep, and then the rest is read from the
+    // original stream after the bytes already taken.
+    private static final class PeekedRequest extends HttpServletRequestWrapper {
+        
+        private final byte[] body;
+        private final byte[] head;
+        
+        private PeekedRequest(HttpServletRequest request, byte[] head, boolean whole) {
+            super(request);
+            this.head = head;
+            this.body = whole ? head : null;
+        }
+        
+        static PeekedRequest of(HttpServletRequest request) throws IOException {
+            if (request.getContentLengthLong() > MAX_PEEKED_BODY) {
+                return new PeekedRequest(request, new byte[0], false);
+            }
+            byte[] head = request.getInputStream().readNBytes(MAX_PEEKED_BODY + 1);
+            return new PeekedRequest(request, head, head.length <= MAX_PEEKED_BODY);
+        }
+        
+        @Override
+        public BufferedReader getReader() throws IOException {
+            String encoding = getCharacterEncoding();
+            return new BufferedReader(new InputStreamReader(getInputStream(),
+                    encoding == null ? StandardCharsets.UTF_8 : Charset.forName(encoding)));
+        }
+        
+        @Override
+        public ServletInputStream getInputStream() throws IOException {
+            ServletInputStream rest = body == null ? super.getInputStream() : null;
+            return new ServletInputStream() {
+                
+                private int position;
+                
+                @Override
+                public int read() throws IOException {
+                    if (position < head.length) {
+                        return head[position++] & 0xff;
+                    }
+                    return rest == null ? -1 : rest.read();
+                }
+                
+                @Override
+                public int read(byte[] buffer, int offset, int length) throws IOException {
+                    if (length == 0) {
+                        return 0;
+                    }
+                    if (position < head.length) {
+                        int count = Math.min(length, head.length - position);
+                        System.arraycopy(head, position, buffer, offset, count);
+                        position += count;
+                        return count;
+                    }
+                    return rest == null ? -1 : rest.read(buffer, offset, length);
+                }
+                
+                @Override
+                public boolean isFinished() {
+                    return position >= head.length && (rest == null || rest.isFinished());
+                }
+                
+                @Override
+                public boolean isReady() {
+                    return true;
+                }
+                
+                @Override
+                public void setReadListener(ReadListener listener) {
+                    throw new UnsupportedOperationException("Peeked request bodies are read blocking");
+                }
+            };
+        }
+    }
+} 
\ No newline at end of file
@@ -0,0 +1,37 @@
+package com.upi.stack.config;
+
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import javax.cache.Caching;
+import javax.cache.spi.CachingProvider;
+import java.net.URI;
+
+// Hibernate looks hibernate.javax.cache.uri up through its class loader, which has no
+// classpath: scheme, and Caffeine only reads its own file from file: and classpath: URIs; a
+// jar: URI quietly gets the defaults. So a classpath: URI is opened here and the cache manager
+// handed to Hibernate, and caffeine-l2.conf applies from a jar as well as from classes.
+@Configuration
+public class SecondLevelCacheConfig {
+    
+    private static final String CACHE_URI = "hibernate.javax.cache.uri";
+    private static final String CACHE_PROVIDER = "hibernate.javax.cache.provider";
+    private static final String CACHE_MANAGER = "hibernate.javax.cache.cache_manager";
+    
+    @Bean
+    public HibernatePropertiesCustomizer classpathCacheManager() {
+        return properties -> {
+            Object uri = properties.get(CACHE_URI);
+            if (uri == null || !uri.toString().startsWith("classpath:")) {
+                return;
+            }
+            ClassLoader classLoader = getClass().getClassLoader();
+            Object provider = properties.get(CACHE_PROVIDER);
+            CachingProvider cachingProvider = provider == null
+                    ? Caching.getCachingProvider(classLoader)
+                    : Caching.getCachingProvider(provider.toString(), classLoader);
+            properties.put(CACHE_MANAGER, cachingProvider.getCacheManager(URI.create(uri.toString()), classLoader));
+            properties.remove(CACHE_URI);
+        };
+    }
+} 
\ No newline at end of file
@@ -0,0 +1,49 @@
+package com.upi.stack.config;
+
+import org.hibernate.id.IntegralDataTypeHolder;
+import org.hibernate.id.enhanced.AccessCallback;
+import org.hibernate.id.enhanced.Optimizer;
+import org.hibernate.id.enhanced.PooledOptimizer;
+import java.io.Serializable;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Pooled optimizer with one pool per shard. Hibernate keeps a single optimizer per sequence,
+// so a plain pooled optimizer would hand out ids fetched from one shard's sequence to rows
+// written on another. That breaks both the per-shard id ranges and the ledger's assumption
+// that entry ids on a shard only grow. Installed by ShardingConfig when sharding is enabled.
+public class ShardAwareOptimizer implements Optimizer {
+    
+    private final Class<?> returnClass;
+    private final int incrementSize;
+    private final Map<Integer, PooledOptimizer> pools = new ConcurrentHashMap<>();
+    
+    public ShardAwareOptimizer(Class<?> returnClass, int incrementSize) {
+        this.returnClass = returnClass;
+        this.incrementSize = incrementSize;
+    }
+    
+    @Override
+    public Serializable generate(AccessCallback callback) {
+        return pool().generate(callback);
+    }
+    
+    @Override
+    public IntegralDataTypeHolder getLastSourceValue() {
+        return pool().getLastSourceValue();
+    }
+    
+    @Override
+    public int getIncrementSize() {
+        return incrementSize;
+    }
+    
+    @Override
+    public boolean applyIncrementSizeToSourceValues() {
+        return true;
+    }
+    
+    private PooledOptimizer pool() {
+        return pools.computeIfAbsent(ShardContext.current(), shard -> new PooledOptimizer(returnClass, incrementSize));
+    }
+} 
\ No newline at end of file
@@ -0,0 +1,38 @@
+package com.upi.stack.config;
+
+// The shard the current thread is talking to. Read by ShardRoutingDataSource when a connection
+// is acquired and by ShardAwareOptimizer when an id is generated, neither of which can be
+// handed the shard explicitly. Set and restored through ShardRouter, never directly.
+public final class ShardContext {
+    
+    // Every shard owns its own block of 2^40 ids, so generated ids are unique across shards
+    // and the home shard of any row can be read straight off its id
+    public static final int ID_BITS = 40;
+    
+    private static final ThreadLocal<Integer> CURRENT = ThreadLocal.withInitial(() -> 0);
+    
+    private ShardContext() {
+    }
+    
+    public static int current() {
+        return CURRENT.get();
+    }
+    
+    public static void set(int shard) {
+        CURRENT.set(shard);
+    }
+    
+    public static int shardOf(long id) {
+        return (int) (id >>> ID_BITS);
+    }
+    
+    // Ids of a shard are strictly greater than this
+    public static long idRangeStart(int shard) {
+        return (long) shard << ID_BITS;
+    }
+    
+    // Ids of a shard are strictly less than this
+    public static long idRangeEnd(int shard) {
+        return idRangeStart(shard + 1);
+    }
+} 
\ No newline at end of file
@@ -0,0 +1,99 @@
+package com.upi.stack.config;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Hands out connections to the shard selected in ShardContext. Hibernate builds the schema
+// through whichever shard is current at startup (shard 0); initializeShards() then copies it
+// to the other shards and moves every shard's id generators into its own id range.
+@Slf4j
+public class ShardRoutingDataSource extends AbstractRoutingDataSource {
+    
+    private final List<DataSource> shards;
+    
+    public ShardRoutingDataSource(List<DataSource> shards) {
+        this.shards = List.copyOf(shards);
+        Map<Object, Object> targets = new HashMap<>();
+        for (int i = 0; i < shards.size(); i++) {
+            targets.put(i, shards.get(i));
+        }
+        setTargetDataSources(targets);
+        setDefaultTargetDataSource(shards.get(0));
+        setLenientFallback(false);
+    }
+    
+    public int shardCount() {
+        return shards.size();
+    }
+    
+    @Override
+    protected Object determineCurrentLookupKey() {
+        return ShardContext.current();
+    }
+    
+    // Mirrors ddl-auto create-drop for the other shards: each is wiped and rebuilt from the
+    // schema Hibernate just created on shard 0. The copy relies on H2's SCRIPT command, so
+    // this is meant for locally run H2 shards; real databases are migrated up front.
+    public void initializeShards() {
+        try {
+            List<String> ddl = new ArrayList<>();
+            try (Connection connection = shards.get(0).getConnection();
+                 Statement statement = connection.createStatement();
+                 ResultSet script = statement.executeQuery("SCRIPT NODATA NOPASSWORDS NOSETTINGS")) {
+                while (script.next()) {
+                    ddl.add(script.getString(1));
+                }
+            }
+            for (int shard = 1; shard < shards.size(); shard++) {
+                try (Connection connection = shards.get(shard).getConnection();
+                     Statement statement = connection.createStatement()) {
+                    statement.execute("DROP ALL OBJECTS");
+                    for (String sql : ddl) {
+                        if (!sql.startsWith("CREATE USER")) {
+                            statement.execute(sql);
+                        }
+                    }
+                    moveIdRange(connection, shard);
+                }
+            }
+            log.info("Initialized {} shards", shards.size());
+        } catch (SQLException e) {
+            throw new IllegalStateException("Could not initialize shards", e);
+        }
+    }
+    
+    // Pooled sequences restart one increment past the range start, so the first block the
+    // optimizer derives from them begins at idRangeStart + 1
+    private void moveIdRange(Connection connection, int shard) throws SQLException {
+        long start = ShardContext.idRangeStart(shard);
+        List<String> alters = new ArrayList<>();
+        try (Statement statement = connection.createStatement()) {
+            try (ResultSet sequences = statement.executeQuery("SELECT SEQUENCE_NAME, INCREMENT " +
+                    "FROM INFORMATION_SCHEMA.SEQUENCES WHERE SEQUENCE_SCHEMA = 'PUBLIC'")) {
+                while (sequences.next()) {
+                    alters.add("ALTER SEQUENCE \"" + sequences.getString(1) + "\" RESTART WITH " +
+                            (start + sequences.getLong(2)));
+                }
+            }
+            try (ResultSet identities = statement.executeQuery("SELECT TABLE_NAME, COLUMN_NAME " +
+                    "FROM INFORMATION_SCHEMA.COLUMNS WHERE TABLE_SCHEMA = 'PUBLIC' AND IS_IDENTITY = 'YES'")) {
+                while (identities.next()) {
+                    alters.add("ALTER TABLE \"" + identities.getString(1) + "\" ALTER COLUMN \"" +
+                            identities.getString(2) + "\" RESTART WITH " + (start + 1));
+                }
+            }
+            for (String alter : alters) {
+                statement.execute(alter);
+            }
+        }
+    }
+} 
\ No newline at end of file
@@ -0,0 +1,59 @@
+package com.upi.stack.config;
+
+import jakarta.persistence.EntityManagerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import javax.sql.DataSource;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+
+// One datasource per entry of upi.sharding.urls behind a routing datasource. Every shard
+// shares the spring.datasource driver and credentials.
+@Configuration
+@ConditionalOnProperty(name = "upi.sharding.enabled", havingValue = "true")
+public class ShardingConfig {
+    
+    @Bean
+    public ShardRoutingDataSource dataSource(DataSourceProperties properties,
+                                             @Value("${upi.sharding.urls}") List<String> urls) {
+        List<DataSource> shards = urls.stream()
+                .map(url -> properties.initializeDataSourceBuilder().url(url).build())
+                .collect(Collectors.toList());
+        return new ShardRoutingDataSource(shards);
+    }
+    
+    @Bean
+    public HibernatePropertiesCustomizer shardAwareIdOptimizer() {
+        return properties -> properties.put("hibernate.id.optimizer.pooled.preferred", ShardAwareOptimizer.class.getName());
+    }
+    
+    // A counterparty row shares its id with the home row on another shard, and second-level
+    // cache entries are keyed by id alone, so the cache stays off whatever the profile says
+    @Bean
+    public HibernatePropertiesCustomizer noSecondLevelCache() {
+        return properties -> properties.put("hibernate.cache.use_second_level_cache", false);
+    }
+    
+    // Runs as soon as the entity manager factory exists, i.e. right after Hibernate has created
+    // the schema on shard 0 and before anything else can reach the other shards
+    @Bean
+    public static BeanPostProcessor shardInitializer(ObjectProvider<ShardRoutingDataSource> dataSource) {
+        AtomicBoolean initialized = new AtomicBoolean();
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                if (bean instanceof EntityManagerFactory && initialized.compareAndSet(false, true)) {
+                    dataSource.getObject().initializeShards();
+                }
+                return bean;
+            }
+        };
+    }
+} 
\ No newline at end of file
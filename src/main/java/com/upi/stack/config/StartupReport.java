@@ -0,0 +1,56 @@
+package com.upi.stack.config;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// Startup as a client sees it, counted from JVM start: when the application was ready and
+// when the first request was answered. Under lazy initialization (the fast-startup profile)
+// part of the startup work moves into that first request. Spring Boot's own
+// application.started.time and application.ready.time metrics count from the start of
+// SpringApplication.run instead, after the JVM has booted.
+@Slf4j
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE)
+public class StartupReport extends OncePerRequestFilter {
+    
+    private final AtomicBoolean served = new AtomicBoolean();
+    private volatile long firstRequestMillis = -1;
+    
+    @EventListener(ApplicationReadyEvent.class)
+    public void ready(ApplicationReadyEvent event) {
+        long run = event.getTimeTaken() != null ? event.getTimeTaken().toMillis() : -1;
+        log.info("Ready {} ms after JVM start ({} ms in SpringApplication.run)",
+                ManagementFactory.getRuntimeMXBean().getUptime(), run);
+    }
+    
+    // -1 until the first request has been answered
+    public long firstRequestMillis() {
+        return firstRequestMillis;
+    }
+    
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        try {
+            chain.doFilter(request, response);
+        } finally {
+            if (!served.get() && served.compareAndSet(false, true)) {
+                firstRequestMillis = ManagementFactory.getRuntimeMXBean().getUptime();
+                log.info("First request ({} {}) answered {} ms after JVM start",
+                        request.getMethod(), request.getRequestURI(), firstRequestMillis);
+            }
+        }
+    }
+} 
\ No newline at end of file
@@ -0,0 +1,49 @@
+package com.upi.stack.config;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Token buckets by key, kept the GCRA way (generic cell rate algorithm): a key holds nothing
+// but the time its bucket will be full again. A request is let through while that time is
+// no more than a burst ahead of now, and pushes it one token further with a single CAS. A key
+// whose time has passed has a full bucket, the same as a key never seen, and is evicted. A
+// request racing the eviction of its key can land on a fresh bucket, which costs at most one
+// token too many.
+final class TokenBuckets {
+    
+    private final long tokenNanos;
+    private final long burstNanos;
+    private final ConcurrentMap<String, AtomicLong> fullAt = new ConcurrentHashMap<>();
+    
+    TokenBuckets(double perSecond, int burst) {
+        this.tokenNanos = (long) (1_000_000_000L / perSecond);
+        this.burstNanos = tokenNanos * Math.max(burst, 1);
+    }
+    
+    // Takes a token and returns 0, or returns how many nanoseconds until one is available
+    long acquire(String key, long now) {
+        AtomicLong bucket = fullAt.get(key);
+        if (bucket == null) {
+            bucket = fullAt.computeIfAbsent(key, ignored -> new AtomicLong(now));
+        }
+        while (true) {
+            long current = bucket.get();
+            long next = (current - now > 0 ? current : now) + tokenNanos;
+            if (next - now > burstNanos) {
+                return next - now - burstNanos;
+            }
+            if (bucket.compareAndSet(current, next)) {
+                return 0;
+            }
+        }
+    }
+    
+    void evictFull(long now) {
+        fullAt.values().removeIf(bucket -> bucket.get() - now <= 0);
+    }
+    
+    int size() {
+        return fullAt.size();
+    }
+} 
\ No newline at end of file
@@ -0,0 +1,55 @@
+package com.upi.stack.config;
+
+import com.upi.stack.dto.UserImportReport;
+import com.upi.stack.service.UserImportService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.stereotype.Component;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+// One-shot bulk import from the command line, e.g.
+//   java -jar upi-stack.jar --upi.user-import.file=customers.csv --spring.main.web-application-type=none
+// Files ending in .csv are read as CSV, anything else as NDJSON. The import id defaults to the
+// file name, so running the same command again resumes an interrupted import. The application
+// exits once the file is done, with status 1 if any row was rejected.
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "upi.user-import.file")
+public class UserImportRunner implements ApplicationRunner {
+    
+    private final UserImportService userImportService;
+    private final ConfigurableApplicationContext context;
+    private final Path file;
+    private final String importId;
+    
+    public UserImportRunner(UserImportService userImportService,
+                            ConfigurableApplicationContext context,
+                            @Value("${upi.user-import.file}") Path file,
+                            @Value("${upi.user-import.id:}") String importId) {
+        this.userImportService = userImportService;
+        this.context = context;
+        this.file = file;
+        this.importId = importId.isEmpty() ? file.getFileName().toString() : importId;
+    }
+    
+    @Override
+    public void run(ApplicationArguments args) throws Exception {
+        UserImportService.Format format = file.getFileName().toString().toLowerCase().endsWith(".csv")
+                ? UserImportService.Format.CSV
+                : UserImportService.Format.NDJSON;
+        UserImportReport report;
+        try (InputStream in = Files.newInputStream(file)) {
+            report = userImportService.importUsers(importId, in, format);
+        }
+        report.errors().forEach(error ->
+                log.warn("Line {} ({}) rejected: {}", error.line(), error.upiId(), error.reason()));
+        System.exit(SpringApplication.exit(context, () -> report.rejected() == 0 ? 0 : 1));
+    }
+} 
\ No newline at end of file
@@ -0,0 +1,27 @@
+package com.upi.stack.controller;
+
+import com.upi.stack.dto.ReconciliationReport;
+import com.upi.stack.service.LedgerMaintenance;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import java.util.Map;
+
+@RestController
+@RequestMapping("/api/ledger")
+@RequiredArgsConstructor
+@CrossOrigin(origins = "*")
+public class LedgerController {
+    
+    private final LedgerMaintenance ledgerMaintenance;
+    
+    @PostMapping("/snapshots")
+    public ResponseEntity<Map<String, Integer>> takeSnapshots() {
+        return ResponseEntity.ok(Map.of("accounts", ledgerMaintenance.takeSnapshots()));
+    }
+    
+    @GetMapping("/reconciliation")
+    public ResponseEntity<ReconciliationReport> reconcile() {
+        return ResponseEntity.ok(ledgerMaintenance.reconcile());
+    }
+} 
\ No newline at end of file
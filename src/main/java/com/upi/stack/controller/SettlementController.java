@@ -0,0 +1,47 @@
+package com.upi.stack.controller;
+
+import com.upi.stack.dto.SettlementAudit;
+import com.upi.stack.dto.SettlementReport;
+import com.upi.stack.service.SettlementEngine;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import java.util.List;
+
+@RestController
+@RequestMapping("/api/settlement")
+@RequiredArgsConstructor
+@CrossOrigin(origins = "*")
+public class SettlementController {
+    
+    private final SettlementEngine settlementEngine;
+    
+    @GetMapping("/cycles")
+    public ResponseEntity<List<SettlementReport>> getClosedCycles() {
+        return ResponseEntity.ok(settlementEngine.closedReports());
+    }
+    
+    @GetMapping("/cycles/current")
+    public ResponseEntity<SettlementReport> getCurrentCycle() {
+        return ResponseEntity.ok(settlementEngine.report(settlementEngine.currentCycle()));
+    }
+    
+    @GetMapping("/cycles/{cycle}")
+    public ResponseEntity<SettlementReport> getCycle(@PathVariable long cycle) {
+        try {
+            return ResponseEntity.ok(settlementEngine.report(cycle));
+        } catch (RuntimeException e) {
+            return ResponseEntity.badRequest().build();
+        }
+    }
+    
+    // Rebuilds the cycle from its transactions rows and compares it with the kept report
+    @PostMapping("/cycles/{cycle}/recompute")
+    public ResponseEntity<SettlementAudit> recomputeCycle(@PathVariable long cycle) {
+        try {
+            return ResponseEntity.ok(settlementEngine.audit(cycle));
+        } catch (RuntimeException e) {
+            return ResponseEntity.badRequest().build();
+        }
+    }
+} 
\ No newline at end of file
@@ -1,13 +1,36 @@
 package com.upi.stack.controller;
 
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.upi.stack.dto.CursorPage;
 import com.upi.stack.dto.TransactionDto;
+import com.upi.stack.service.LimitExceededException;
+import com.upi.stack.service.StreamWriter;
+import com.upi.stack.service.TransactionEvents;
 import com.upi.stack.service.TransactionService;
 import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.http.converter.cbor.MappingJackson2CborHttpMessageConverter;
+import org.springframework.http.converter.smile.MappingJackson2SmileHttpMessageConverter;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.async.DeferredResult;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import jakarta.validation.Valid;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
 
 @RestController
 @RequestMapping("/api/transactions")
@@ -15,22 +38,139 @@ import java.util.List;
 @CrossOrigin(origins = "*")
 public class TransactionController {
     
+    private static final String APPLICATION_NDJSON = "application/x-ndjson";
+    private static final String APPLICATION_CBOR_SEQ = "application/cbor-seq";
+    private static final String APPLICATION_SMILE = "application/x-jackson-smile";
+    private static final String IDEMPOTENCY_KEY_HEADER = "Idempotency-Key";
+    private static final String PREFER_HEADER = "Prefer";
+    private static final String RESPOND_ASYNC = "respond-async";
+    private static final String LAST_EVENT_ID_HEADER = "Last-Event-ID";
+    
     private final TransactionService transactionService;
+    private final TransactionEvents transactionEvents;
+    private final ObjectMapper objectMapper;
+    private final MappingJackson2CborHttpMessageConverter cborHttpMessageConverter;
+    private final MappingJackson2SmileHttpMessageConverter smileHttpMessageConverter;
+    
+    @Value("${upi.payments.async.enabled:true}")
+    private boolean asyncPaymentsEnabled;
+    
+    @Value("${upi.payments.async.max-wait:30s}")
+    private Duration maxWait;
+    
+    @Value("${upi.batch.max-lines:10000}")
+    private int maxBatchLines;
     
     @PostMapping("/pay")
-    public ResponseEntity<TransactionDto> initiatePayment(@Valid @RequestBody TransactionDto transactionDto) {
+    public ResponseEntity<TransactionDto> initiatePayment(@Valid @RequestBody TransactionDto transactionDto,
+                                                          @RequestHeader(value = IDEMPOTENCY_KEY_HEADER, required = false) String idempotencyKey,
+                                                          @RequestHeader(value = PREFER_HEADER, required = false) String prefer) {
+        if (idempotencyKey != null && (idempotencyKey.isBlank() || idempotencyKey.length() > 128)) {
+            return ResponseEntity.badRequest().build();
+        }
         try {
-            TransactionDto transaction = transactionService.initiatePayment(transactionDto);
+            if (asyncPaymentsEnabled && prefer != null && prefer.contains(RESPOND_ASYNC)) {
+                TransactionDto accepted = transactionService.acceptPayment(transactionDto, idempotencyKey);
+                return ResponseEntity.accepted()
+                        .location(URI.create("/api/transactions/" + accepted.getTransactionId()))
+                        .body(accepted);
+            }
+            TransactionDto transaction = transactionService.initiatePayment(transactionDto, idempotencyKey);
             return ResponseEntity.status(HttpStatus.CREATED).body(transaction);
+        } catch (LimitExceededException e) {
+            return ResponseEntity.unprocessableEntity().body(transactionService.rejectedPayment(transactionDto, e.getMessage()));
+        } catch (RejectedExecutionException e) {
+            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS).header(HttpHeaders.RETRY_AFTER, "1").build();
+        } catch (RuntimeException e) {
+            return ResponseEntity.badRequest().build();
+        }
+    }
+    
+    @PostMapping(value = "/pay/batch", consumes = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<List<TransactionDto>> initiateBatchPayment(InputStream body) {
+        return initiateBatchPayment(objectMapper.readerFor(TransactionDto.class), body, true);
+    }
+    
+    @PostMapping(value = "/pay/batch", consumes = MediaType.APPLICATION_CBOR_VALUE)
+    public ResponseEntity<List<TransactionDto>> initiateBatchPaymentCbor(InputStream body) {
+        return initiateBatchPayment(cborHttpMessageConverter.getObjectMapper().readerFor(TransactionDto.class), body, true);
+    }
+    
+    @PostMapping(value = "/pay/batch", consumes = APPLICATION_SMILE)
+    public ResponseEntity<List<TransactionDto>> initiateBatchPaymentSmile(InputStream body) {
+        return initiateBatchPayment(smileHttpMessageConverter.getObjectMapper().readerFor(TransactionDto.class), body, true);
+    }
+    
+    @PostMapping(value = "/pay/batch", consumes = APPLICATION_NDJSON)
+    public ResponseEntity<List<TransactionDto>> initiateBatchPaymentStream(InputStream body) {
+        return initiateBatchPayment(objectMapper.readerFor(TransactionDto.class), body, false);
+    }
+    
+    @PostMapping(value = "/pay/batch", consumes = APPLICATION_CBOR_SEQ)
+    public ResponseEntity<List<TransactionDto>> initiateBatchPaymentCborStream(InputStream body) {
+        return initiateBatchPayment(cborHttpMessageConverter.getObjectMapper().readerFor(TransactionDto.class), body, false);
+    }
+    
+    @PostMapping("/collect")
+    public ResponseEntity<TransactionDto> requestCollect(@Valid @RequestBody TransactionDto transactionDto) {
+        try {
+            return ResponseEntity.status(HttpStatus.CREATED).body(transactionService.requestCollect(transactionDto));
+        } catch (RuntimeException e) {
+            return ResponseEntity.badRequest().build();
+        }
+    }
+    
+    @PostMapping("/collect/{transactionId}/approve")
+    public ResponseEntity<TransactionDto> approveCollect(@PathVariable String transactionId) {
+        try {
+            return ResponseEntity.ok(transactionService.approveCollect(transactionId));
+        } catch (LimitExceededException e) {
+            TransactionDto request = transactionService.getTransactionById(transactionId);
+            request.setFailureReason(e.getMessage());
+            return ResponseEntity.unprocessableEntity().body(request);
+        } catch (RuntimeException e) {
+            return ResponseEntity.badRequest().build();
+        }
+    }
+    
+    @PostMapping("/collect/{transactionId}/decline")
+    public ResponseEntity<TransactionDto> declineCollect(@PathVariable String transactionId) {
+        try {
+            return ResponseEntity.ok(transactionService.declineCollect(transactionId));
+        } catch (RuntimeException e) {
+            return ResponseEntity.badRequest().build();
+        }
+    }
+    
+    @GetMapping("/collect/pending/{payerUpiId}")
+    public ResponseEntity<List<TransactionDto>> getPendingCollects(@PathVariable String payerUpiId,
+                                                                   @RequestParam(required = false) String cursor,
+                                                                   @RequestParam(required = false) Integer size) {
+        try {
+            return pageResponse(transactionService.getPendingCollects(payerUpiId, cursor, size));
         } catch (RuntimeException e) {
             return ResponseEntity.badRequest().build();
         }
     }
     
     @GetMapping
-    public ResponseEntity<List<TransactionDto>> getAllTransactions() {
-        List<TransactionDto> transactions = transactionService.getAllTransactions();
-        return ResponseEntity.ok(transactions);
+    public ResponseEntity<List<TransactionDto>> getAllTransactions(@RequestParam(required = false) String cursor,
+                                                                   @RequestParam(required = false) Integer size) {
+        try {
+            return pageResponse(transactionService.getAllTransactions(cursor, size));
+        } catch (RuntimeException e) {
+            return ResponseEntity.badRequest().build();
+        }
+    }
+    
+    @GetMapping(produces = APPLICATION_NDJSON)
+    public ResponseEntity<StreamingResponseBody> streamAllTransactions() {
+        return stream(APPLICATION_NDJSON, out -> transactionService.streamAllTransactions(StreamWriter.Format.NDJSON, out));
+    }
+    
+    @GetMapping(produces = APPLICATION_CBOR_SEQ)
+    public ResponseEntity<StreamingResponseBody> streamAllTransactionsCbor() {
+        return stream(APPLICATION_CBOR_SEQ, out -> transactionService.streamAllTransactions(StreamWriter.Format.CBOR, out));
     }
     
     @GetMapping("/{transactionId}")
@@ -43,9 +183,100 @@ public class TransactionController {
         }
     }
     
+    // Long-poll: answers as soon as the payment reaches a terminal state or the wait runs out.
+    // Waits longer than upi.payments.async.max-wait are cut to it.
+    @GetMapping(value = "/{transactionId}", params = "waitMs")
+    public DeferredResult<ResponseEntity<TransactionDto>> awaitTransaction(@PathVariable String transactionId,
+                                                                           @RequestParam long waitMs) {
+        if (waitMs < 0) {
+            DeferredResult<ResponseEntity<TransactionDto>> invalid = new DeferredResult<>();
+            invalid.setResult(ResponseEntity.badRequest().build());
+            return invalid;
+        }
+        Duration wait = Duration.ofMillis(Math.min(waitMs, maxWait.toMillis()));
+        DeferredResult<ResponseEntity<TransactionDto>> result = new DeferredResult<>(wait.toMillis() + 5000);
+        transactionService.watchTransaction(transactionId, wait)
+                .whenComplete((transaction, error) -> {
+                    if (error == null) {
+                        result.setResult(ResponseEntity.ok(transaction));
+                    } else if (error.getCause() instanceof RejectedExecutionException) {
+                        result.setResult(ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                                .header(HttpHeaders.RETRY_AFTER, "1").build());
+                    } else {
+                        result.setResult(ResponseEntity.notFound().build());
+                    }
+                });
+        return result;
+    }
+    
     @GetMapping("/user/{upiId}")
-    public ResponseEntity<List<TransactionDto>> getTransactionsByUpiId(@PathVariable String upiId) {
-        List<TransactionDto> transactions = transactionService.getTransactionsByUpiId(upiId);
-        return ResponseEntity.ok(transactions);
+    public ResponseEntity<List<TransactionDto>> getTransactionsByUpiId(@PathVariable String upiId,
+                                                                       @RequestParam(required = false) String cursor,
+                                                                       @RequestParam(required = false) Integer size) {
+        try {
+            return pageResponse(transactionService.getTransactionsByUpiId(upiId, cursor, size));
+        } catch (RuntimeException e) {
+            return ResponseEntity.badRequest().build();
+        }
+    }
+    
+    @GetMapping(value = "/user/{upiId}", produces = APPLICATION_NDJSON)
+    public ResponseEntity<StreamingResponseBody> streamTransactionsByUpiId(@PathVariable String upiId) {
+        return stream(APPLICATION_NDJSON,
+                out -> transactionService.streamTransactionsByUpiId(upiId, StreamWriter.Format.NDJSON, out));
+    }
+    
+    @GetMapping(value = "/user/{upiId}", produces = APPLICATION_CBOR_SEQ)
+    public ResponseEntity<StreamingResponseBody> streamTransactionsByUpiIdCbor(@PathVariable String upiId) {
+        return stream(APPLICATION_CBOR_SEQ,
+                out -> transactionService.streamTransactionsByUpiId(upiId, StreamWriter.Format.CBOR, out));
+    }
+    
+    @GetMapping(value = "/user/{upiId}/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<SseEmitter> streamTransactionEvents(@PathVariable String upiId,
+                                                              @RequestHeader(value = LAST_EVENT_ID_HEADER, required = false) String lastEventId) {
+        try {
+            return ResponseEntity.ok(transactionEvents.subscribe(upiId, lastEventId));
+        } catch (RuntimeException e) {
+            return ResponseEntity.badRequest().build();
+        }
+    }
+    
+    // A batch sent as one array is read element by element like a stream, so both are refused as
+    // soon as they run past the cap, before the rest of the body is read
+    private ResponseEntity<List<TransactionDto>> initiateBatchPayment(ObjectReader reader, InputStream body, boolean array) {
+        List<TransactionDto> transactionDtos = new ArrayList<>();
+        try (JsonParser parser = reader.createParser(body)) {
+            if (array) {
+                if (parser.nextToken() != JsonToken.START_ARRAY) {
+                    return ResponseEntity.badRequest().build();
+                }
+                parser.clearCurrentToken();
+            }
+            MappingIterator<TransactionDto> lines = reader.readValues(parser);
+            while (lines.hasNextValue()) {
+                transactionDtos.add(lines.nextValue());
+                if (transactionDtos.size() > maxBatchLines) {
+                    return ResponseEntity.badRequest().build();
+                }
+            }
+            return ResponseEntity.ok(transactionService.initiateBatchPayment(transactionDtos));
+        } catch (IOException | RuntimeException e) {
+            return ResponseEntity.badRequest().build();
+        }
+    }
+    
+    private static ResponseEntity<StreamingResponseBody> stream(String mediaType, StreamingResponseBody body) {
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType(mediaType))
+                .body(body);
+    }
+    
+    private <T> ResponseEntity<List<T>> pageResponse(CursorPage<T> page) {
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+        if (page.getNextCursor() != null) {
+            response.header(CursorPage.NEXT_CURSOR_HEADER, page.getNextCursor());
+        }
+        return response.body(page.getItems());
     }
 } 
\ No newline at end of file
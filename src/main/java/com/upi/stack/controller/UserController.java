@@ -1,13 +1,23 @@
 package com.upi.stack.controller;
 
+import com.upi.stack.dto.CursorPage;
 import com.upi.stack.dto.UserDto;
+import com.upi.stack.dto.UserImportReport;
+import com.upi.stack.service.StreamWriter;
+import com.upi.stack.service.UserImportService;
 import com.upi.stack.service.UserService;
 import lombok.RequiredArgsConstructor;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import jakarta.validation.Valid;
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.List;
+import java.util.Map;
+import java.util.UUID;
 
 @RestController
 @RequestMapping("/api/users")
@@ -15,7 +25,12 @@ import java.util.List;
 @CrossOrigin(origins = "*")
 public class UserController {
     
+    private static final String APPLICATION_NDJSON = "application/x-ndjson";
+    private static final String APPLICATION_CBOR_SEQ = "application/cbor-seq";
+    private static final String TEXT_CSV = "text/csv";
+    
     private final UserService userService;
+    private final UserImportService userImportService;
     
     @PostMapping
     public ResponseEntity<UserDto> createUser(@Valid @RequestBody UserDto userDto) {
@@ -27,10 +42,44 @@ public class UserController {
         }
     }
     
+    // Pass the importId of an earlier run to resume it; the file must be sent unchanged
+    @PostMapping(value = "/import", consumes = TEXT_CSV)
+    public ResponseEntity<UserImportReport> importUsersCsv(@RequestParam(required = false) String importId, InputStream body) {
+        return importUsers(importId, body, UserImportService.Format.CSV);
+    }
+    
+    @PostMapping(value = "/import", consumes = APPLICATION_NDJSON)
+    public ResponseEntity<UserImportReport> importUsersNdjson(@RequestParam(required = false) String importId, InputStream body) {
+        return importUsers(importId, body, UserImportService.Format.NDJSON);
+    }
+    
     @GetMapping
-    public ResponseEntity<List<UserDto>> getAllUsers() {
-        List<UserDto> users = userService.getAllUsers();
-        return ResponseEntity.ok(users);
+    public ResponseEntity<List<UserDto>> getAllUsers(@RequestParam(required = false) String cursor,
+                                                     @RequestParam(required = false) Integer size) {
+        try {
+            CursorPage<UserDto> page = userService.getAllUsers(cursor, size);
+            ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+            if (page.getNextCursor() != null) {
+                response.header(CursorPage.NEXT_CURSOR_HEADER, page.getNextCursor());
+            }
+            return response.body(page.getItems());
+        } catch (RuntimeException e) {
+            return ResponseEntity.badRequest().build();
+        }
+    }
+    
+    @GetMapping(produces = APPLICATION_NDJSON)
+    public ResponseEntity<StreamingResponseBody> streamAllUsers() {
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType(APPLICATION_NDJSON))
+                .body(out -> userService.streamAllUsers(StreamWriter.Format.NDJSON, out));
+    }
+    
+    @GetMapping(produces = APPLICATION_CBOR_SEQ)
+    public ResponseEntity<StreamingResponseBody> streamAllUsersCbor() {
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType(APPLICATION_CBOR_SEQ))
+                .body(out -> userService.streamAllUsers(StreamWriter.Format.CBOR, out));
     }
     
     @GetMapping("/{id}")
@@ -53,6 +102,11 @@ public class UserController {
         }
     }
     
+    @GetMapping("/directory/stats")
+    public ResponseEntity<Map<String, Object>> getDirectoryCacheStats() {
+        return ResponseEntity.ok(userService.getDirectoryCacheStats());
+    }
+    
     @PutMapping("/{upiId}/balance")
     public ResponseEntity<UserDto> updateBalance(@PathVariable String upiId, @RequestParam String balance) {
         try {
@@ -62,4 +116,13 @@ public class UserController {
             return ResponseEntity.badRequest().build();
         }
     }
+    
+    private ResponseEntity<UserImportReport> importUsers(String importId, InputStream body, UserImportService.Format format) {
+        try {
+            String id = importId != null ? importId : UUID.randomUUID().toString();
+            return ResponseEntity.ok(userImportService.importUsers(id, body, format));
+        } catch (IOException | RuntimeException e) {
+            return ResponseEntity.badRequest().build();
+        }
+    }
 } 
\ No newline at end of file
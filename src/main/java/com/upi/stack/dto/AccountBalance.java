@@ -0,0 +1,11 @@
+package com.upi.stack.dto;
+
+import com.upi.stack.entity.Money;
+
+public record AccountBalance(Long accountId, Money balance) {
+    
+    // Row of LedgerEntryRepository.findBalances, whose balance is a sum in paise
+    public AccountBalance(Long accountId, Long balancePaise) {
+        this(accountId, Money.ofPaise(balancePaise));
+    }
+} 
\ No newline at end of file
@@ -0,0 +1,63 @@
+package com.upi.stack.dto;
+
+import com.upi.stack.entity.Money;
+import com.upi.stack.entity.Transaction;
+import com.upi.stack.entity.User;
+import java.time.LocalDateTime;
+import java.util.List;
+
+// Rows written by one database transaction, in write order, published once it has committed
+// (see ChangeFeed). committedAtNanos is System.nanoTime() at commit, for measuring read lag.
+public record CommittedChanges(List<Change> changes, long committedAtNanos) {
+    
+    public sealed interface Change permits TransactionChange, UserChange, BalanceChange {
+    }
+    
+    // Full state of a payment row; parties are account ids so lazy references stay uninitialised.
+    // previousStatus is the status the write changed from, null for an insert.
+    public record TransactionChange(
+            Long id,
+            String transactionId,
+            Long payerId,
+            Long payeeId,
+            Money amount,
+            String description,
+            Transaction.TransactionStatus status,
+            Transaction.TransactionStatus previousStatus,
+            Transaction.TransactionType type,
+            LocalDateTime createdAt,
+            LocalDateTime updatedAt,
+            String failureReason,
+            LocalDateTime expiresAt) implements Change {
+        
+        public static TransactionChange of(Transaction transaction) {
+            return new TransactionChange(transaction.getId(), transaction.getTransactionId(),
+                    transaction.getPayer().getId(), transaction.getPayee().getId(), transaction.getAmount(),
+                    transaction.getDescription(), transaction.getStatus(), transaction.getStoredStatus(),
+                    transaction.getType(), transaction.getCreatedAt(), transaction.getUpdatedAt(),
+                    transaction.getFailureReason(), transaction.getExpiresAt());
+        }
+    }
+    
+    // Profile of a home users row; openingBalance is the users.balance column
+    public record UserChange(
+            Long id,
+            String upiId,
+            String name,
+            String phoneNumber,
+            String email,
+            Money openingBalance,
+            String bankName,
+            String accountNumber,
+            String ifscCode) implements Change {
+        
+        public static UserChange of(User user) {
+            return new UserChange(user.getId(), user.getUpiId(), user.getName(), user.getPhoneNumber(), user.getEmail(),
+                    user.getBalance(), user.getBankName(), user.getAccountNumber(), user.getIfscCode());
+        }
+    }
+    
+    // Net effect of one ledger leg on an account's live balance
+    public record BalanceChange(Long accountId, Money amount) implements Change {
+    }
+} 
\ No newline at end of file
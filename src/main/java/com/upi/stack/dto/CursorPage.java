@@ -0,0 +1,19 @@
+package com.upi.stack.dto;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.AllArgsConstructor;
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class CursorPage<T> {
+    
+    public static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+    
+    private List<T> items;
+    
+    // Opaque cursor for the following page, null on the last page
+    private String nextCursor;
+} 
\ No newline at end of file
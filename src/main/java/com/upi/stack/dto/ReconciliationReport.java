@@ -0,0 +1,17 @@
+package com.upi.stack.dto;
+
+import com.upi.stack.entity.Money;
+import java.time.LocalDateTime;
+import java.util.List;
+
+// Outcome of one ledger reconciliation run. Id lists are capped, so an empty list means
+// clean but a full one may be truncated.
+public record ReconciliationReport(LocalDateTime checkedAt,
+                                   Money legSum,
+                                   List<Long> unbalancedTransactionIds,
+                                   List<Long> driftedSnapshotAccountIds) {
+    
+    public boolean isBalanced() {
+        return legSum.signum() == 0 && unbalancedTransactionIds.isEmpty() && driftedSnapshotAccountIds.isEmpty();
+    }
+} 
\ No newline at end of file
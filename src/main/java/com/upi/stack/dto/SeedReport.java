@@ -0,0 +1,6 @@
+package com.upi.stack.dto;
+
+// Outcome of seeding the database at startup (see DataSeeder). fromSnapshot is true when the
+// rows were loaded from snapshot files rather than generated.
+public record SeedReport(long users, long transactions, boolean fromSnapshot, long tookMillis) {
+} 
\ No newline at end of file
@@ -0,0 +1,10 @@
+package com.upi.stack.dto;
+
+// A cycle rebuilt from its transactions rows next to the report the engine kept for it, if
+// it still holds one. matches is false when the two disagree on any pair.
+public record SettlementAudit(long cycle,
+                              boolean matches,
+                              long tookMillis,
+                              SettlementReport kept,
+                              SettlementReport recomputed) {
+} 
\ No newline at end of file
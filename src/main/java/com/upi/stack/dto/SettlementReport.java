@@ -0,0 +1,32 @@
+package com.upi.stack.dto;
+
+import com.upi.stack.entity.Money;
+import java.time.LocalDateTime;
+import java.util.List;
+
+// Net positions of one settlement cycle (see SettlementEngine). A bank is the first four
+// letters of an IFSC code. pairs holds every (payer bank, payee bank) pair that moved money,
+// on-us pairs within one bank included. banks and the totals only count money between
+// different banks: net is what a bank receives less what it pays, and netAmount, the sum of
+// the positive nets, is what actually changes hands once the cycle is settled.
+public record SettlementReport(long cycle,
+                               LocalDateTime openedAt,
+                               LocalDateTime closesAt,
+                               boolean closed,
+                               long payments,
+                               Money grossAmount,
+                               Money netAmount,
+                               List<PairPosition> pairs,
+                               List<BankPosition> banks) {
+    
+    public record PairPosition(String payerBank, String payeeBank, Money amount, long payments) {
+        
+        // Row of TransactionRepository.sumSettlementPositions, whose amount is a sum in paise
+        public PairPosition(String payerBank, String payeeBank, Long amountPaise, Long payments) {
+            this(payerBank, payeeBank, Money.ofPaise(amountPaise), payments);
+        }
+    }
+    
+    public record BankPosition(String bank, Money paid, Money received, Money net) {
+    }
+} 
\ No newline at end of file
@@ -0,0 +1,6 @@
+package com.upi.stack.dto;
+
+import java.time.LocalDateTime;
+
+public record TransactionDeadline(Long id, LocalDateTime expiresAt) {
+} 
\ No newline at end of file
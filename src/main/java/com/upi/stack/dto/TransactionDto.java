@@ -6,6 +6,7 @@ import lombok.AllArgsConstructor;
 import jakarta.validation.constraints.NotBlank;
 import jakarta.validation.constraints.NotNull;
 import jakarta.validation.constraints.DecimalMin;
+import jakarta.validation.constraints.Digits;
 import jakarta.validation.constraints.Size;
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
@@ -26,6 +27,7 @@ public class TransactionDto {
     
     @NotNull(message = "Amount is required")
     @DecimalMin(value = "0.01", message = "Amount must be greater than 0")
+    @Digits(integer = 16, fraction = 2, message = "Amount must be in whole paise")
     private BigDecimal amount;
     
     @NotBlank(message = "Description is required")
@@ -37,4 +39,5 @@ public class TransactionDto {
     private LocalDateTime createdAt;
     private LocalDateTime updatedAt;
     private String failureReason;
+    private LocalDateTime expiresAt;
 } 
\ No newline at end of file
@@ -0,0 +1,22 @@
+package com.upi.stack.dto;
+
+import com.upi.stack.entity.Money;
+import com.upi.stack.entity.Transaction;
+import java.time.LocalDateTime;
+
+// Flat read-side row: payer and payee come back as UPI IDs from a single join,
+// so listing endpoints never materialise User entities
+public record TransactionView(
+        Long id,
+        String transactionId,
+        String payerUpiId,
+        String payeeUpiId,
+        Money amount,
+        String description,
+        Transaction.TransactionStatus status,
+        Transaction.TransactionType type,
+        LocalDateTime createdAt,
+        LocalDateTime updatedAt,
+        String failureReason,
+        LocalDateTime expiresAt) {
+} 
\ No newline at end of file
@@ -3,6 +3,8 @@ package com.upi.stack.dto;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 import lombok.AllArgsConstructor;
+import com.upi.stack.entity.Money;
+import jakarta.validation.constraints.Digits;
 import jakarta.validation.constraints.Email;
 import jakarta.validation.constraints.NotBlank;
 import jakarta.validation.constraints.Pattern;
@@ -32,6 +34,7 @@ public class UserDto {
     @Email(message = "Invalid email format")
     private String email;
     
+    @Digits(integer = 16, fraction = 2, message = "Balance must be in whole paise")
     private BigDecimal balance;
     
     @NotBlank(message = "Bank name is required")
@@ -44,4 +47,11 @@ public class UserDto {
     @NotBlank(message = "IFSC code is required")
     @Pattern(regexp = "^[A-Z]{4}0[A-Z0-9]{6}$", message = "Invalid IFSC code format")
     private String ifscCode;
+    
+    // Row of UserRepository.PROFILE_SELECT, whose balance is a ledger sum in paise
+    public UserDto(Long id, String upiId, String name, String phoneNumber, String email, Long balancePaise,
+                   String bankName, String accountNumber, String ifscCode) {
+        this(id, upiId, name, phoneNumber, email, Money.ofPaise(balancePaise).toBigDecimal(), bankName, accountNumber,
+                ifscCode);
+    }
 } 
\ No newline at end of file
@@ -0,0 +1,11 @@
+package com.upi.stack.dto;
+
+import java.util.List;
+
+// Outcome of one bulk user import run. Rows finished by an earlier run under the same import
+// id are counted as skipped and not checked again; errors are in file order.
+public record UserImportReport(String importId, long imported, long rejected, long skipped, List<RowError> errors) {
+    
+    public record RowError(long line, String upiId, String reason) {
+    }
+} 
\ No newline at end of file
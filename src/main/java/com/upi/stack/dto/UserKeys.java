@@ -0,0 +1,5 @@
+package com.upi.stack.dto;
+
+// The columns a new user must not share with an existing one
+public record UserKeys(String upiId, String phoneNumber, String email) {
+} 
\ No newline at end of file
@@ -0,0 +1,29 @@
+package com.upi.stack.entity;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.AllArgsConstructor;
+import java.time.LocalDateTime;
+
+// Latest folded balance of an account: users.balance (the opening balance) plus every
+// ledger leg of the account up to and including lastEntryId
+@Entity
+@Table(name = "balance_snapshots")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class BalanceSnapshot {
+    
+    @Id
+    private Long accountId;
+    
+    @Column(nullable = false)
+    private Money balance;
+    
+    @Column(nullable = false)
+    private Long lastEntryId;
+    
+    @Column(nullable = false)
+    private LocalDateTime takenAt;
+} 
\ No newline at end of file
@@ -0,0 +1,39 @@
+package com.upi.stack.entity;
+
+import com.upi.stack.dto.CommittedChanges;
+import com.upi.stack.service.ChangeFeed;
+import jakarta.persistence.PostPersist;
+import jakarta.persistence.PostUpdate;
+
+// Feeds every row written through JPA to the read model (see ChangeFeed). Hibernate creates
+// the listener through Spring's bean container, so the feed is constructor-injected.
+public class ChangeCapture {
+    
+    private final ChangeFeed changeFeed;
+    
+    public ChangeCapture(ChangeFeed changeFeed) {
+        this.changeFeed = changeFeed;
+    }
+    
+    @PostPersist
+    @PostUpdate
+    public void written(Object entity) {
+        if (!changeFeed.isEnabled()) {
+            return;
+        }
+        if (entity instanceof Transaction transaction) {
+            changeFeed.record(CommittedChanges.TransactionChange.of(transaction));
+        } else if (entity instanceof User user) {
+            changeFeed.record(CommittedChanges.UserChange.of(user));
+        } else if (entity instanceof LedgerEntry entry) {
+            // Release legs move credits that already counted towards the balance while held
+            if (entry.getEntryType() == LedgerEntry.EntryType.RELEASE) {
+                return;
+            }
+            Long accountId = entry.getAccount() != null ? entry.getAccount().getId() : entry.getHeldFor();
+            if (accountId != null) {
+                changeFeed.record(new CommittedChanges.BalanceChange(accountId, entry.getAmount()));
+            }
+        }
+    }
+} 
\ No newline at end of file
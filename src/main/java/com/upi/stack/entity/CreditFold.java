@@ -0,0 +1,26 @@
+package com.upi.stack.entity;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.AllArgsConstructor;
+import java.time.LocalDateTime;
+
+// How far the held credits of a high-volume account have been folded into its balance:
+// every HELD leg for the account up to and including lastEntryId has been released
+@Entity
+@Table(name = "credit_folds")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class CreditFold {
+    
+    @Id
+    private Long accountId;
+    
+    @Column(nullable = false)
+    private Long lastEntryId;
+    
+    @Column(nullable = false)
+    private LocalDateTime foldedAt;
+} 
\ No newline at end of file
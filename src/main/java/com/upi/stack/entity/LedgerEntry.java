@@ -0,0 +1,63 @@
+package com.upi.stack.entity;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.AllArgsConstructor;
+import java.time.LocalDateTime;
+
+// One leg of a posting. Rows are only ever inserted: amounts are signed (debits negative),
+// the legs of every posting sum to zero, and an account's balance is its latest snapshot
+// plus the legs written after it.
+@Entity
+@Table(name = "ledger_entries", indexes = {
+    @Index(name = "idx_ledger_entries_account", columnList = "account_id, id"),
+    @Index(name = "idx_ledger_entries_transaction", columnList = "transaction_id"),
+    @Index(name = "idx_ledger_entries_held", columnList = "held_for, id")
+})
+@EntityListeners(ChangeCapture.class)
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class LedgerEntry {
+    
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "ledger_entries_seq")
+    @SequenceGenerator(name = "ledger_entries_seq", sequenceName = "ledger_entries_seq", allocationSize = 50)
+    private Long id;
+    
+    // Null for the external (funding) side of an adjustment, and for the clearing side of a
+    // payment whose other party lives on another shard or whose payee's credits are held
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "account_id")
+    private User account;
+    
+    // Set on HELD legs only: the high-volume account the held credit belongs to. Deliberately
+    // not a foreign key, so credits to a busy merchant never reference its users row.
+    @Column(name = "held_for")
+    private Long heldFor;
+    
+    // Null for adjustments that are not part of a payment
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "transaction_id")
+    private Transaction transaction;
+    
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false)
+    private EntryType entryType;
+    
+    @Column(nullable = false)
+    private Money amount;
+    
+    @Column(nullable = false)
+    private LocalDateTime createdAt;
+    
+    public enum EntryType {
+        DEBIT, CREDIT, ADJUSTMENT, REVERSAL, HELD, RELEASE
+    }
+    
+    @PrePersist
+    protected void onCreate() {
+        createdAt = LocalDateTime.now();
+    }
+} 
\ No newline at end of file
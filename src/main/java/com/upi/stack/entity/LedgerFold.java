@@ -0,0 +1,45 @@
+package com.upi.stack.entity;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.AllArgsConstructor;
+import java.time.LocalDateTime;
+
+// One snapshot run on a shard, which folded entryCount account legs with ids in
+// (fromEntryId, upToEntryId], or one release of the credits held for heldFor, which released
+// entryCount HELD legs summing to entrySum. Kept for the late-leg horizon, so a later run can
+// tell that a leg in the range committed after the range was folded.
+@Entity
+@Table(name = "ledger_folds", indexes = {
+    @Index(name = "idx_ledger_folds_folded", columnList = "folded_at")
+})
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class LedgerFold {
+    
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+    
+    // Null for snapshot runs
+    @Column
+    private Long heldFor;
+    
+    @Column(nullable = false)
+    private Long fromEntryId;
+    
+    @Column(nullable = false)
+    private Long upToEntryId;
+    
+    @Column(nullable = false)
+    private Long entryCount;
+    
+    // Only set for releases of held credits
+    @Column
+    private Money entrySum;
+    
+    @Column(nullable = false)
+    private LocalDateTime foldedAt;
+} 
\ No newline at end of file
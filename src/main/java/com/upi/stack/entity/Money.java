@@ -0,0 +1,95 @@
+package com.upi.stack.entity;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonValue;
+import java.math.BigDecimal;
+
+// An amount of rupees as a whole number of paise. Arithmetic is exact and throws
+// ArithmeticException on overflow instead of wrapping, and comparing two amounts compares two
+// longs. Stored as a BIGINT of paise (see MoneyConverter). BigDecimal only appears at the
+// JSON edge: TransactionDto and UserDto carry rupees with two decimals, and a Money written
+// as JSON is one such number too.
+public record Money(long paise) implements Comparable<Money> {
+    
+    public static final Money ZERO = new Money(0);
+    
+    public static Money ofPaise(long paise) {
+        return paise == 0 ? ZERO : new Money(paise);
+    }
+    
+    // Exact: an amount with a fraction of a paisa, or beyond a long of paise, is refused
+    @JsonCreator
+    public static Money of(BigDecimal rupees) {
+        try {
+            return ofPaise(rupees.movePointRight(2).longValueExact());
+        } catch (ArithmeticException e) {
+            throw new ArithmeticException("Not a whole number of paise: " + rupees.toPlainString());
+        }
+    }
+    
+    // Reads what toString writes without going through BigDecimal; anything else, such as an
+    // exponent, is left to BigDecimal
+    public static Money parse(String rupees) {
+        int length = rupees.length();
+        int start = length > 0 && rupees.charAt(0) == '-' ? 1 : 0;
+        int point = rupees.indexOf('.');
+        int decimals = point < 0 ? 0 : length - point - 1;
+        int integerEnd = point < 0 ? length : point;
+        if (integerEnd == start || integerEnd - start > 16 || decimals > 2) {
+            return of(new BigDecimal(rupees));
+        }
+        long paise = 0;
+        for (int i = start; i < length; i++) {
+            char c = rupees.charAt(i);
+            if (i == point) {
+                continue;
+            }
+            if (c < '0' || c > '9') {
+                return of(new BigDecimal(rupees));
+            }
+            paise = paise * 10 + (c - '0');
+        }
+        for (int i = decimals; i < 2; i++) {
+            paise *= 10;
+        }
+        return ofPaise(start == 1 ? -paise : paise);
+    }
+    
+    public Money plus(Money other) {
+        return ofPaise(Math.addExact(paise, other.paise));
+    }
+    
+    public Money minus(Money other) {
+        return ofPaise(Math.subtractExact(paise, other.paise));
+    }
+    
+    public Money negate() {
+        return ofPaise(Math.negateExact(paise));
+    }
+    
+    public int signum() {
+        return Long.signum(paise);
+    }
+    
+    public boolean isLessThan(Money other) {
+        return paise < other.paise;
+    }
+    
+    @Override
+    public int compareTo(Money other) {
+        return Long.compare(paise, other.paise);
+    }
+    
+    @JsonValue
+    public BigDecimal toBigDecimal() {
+        return BigDecimal.valueOf(paise, 2);
+    }
+    
+    // Rupees with two decimals, e.g. -12.05
+    @Override
+    public String toString() {
+        long rupees = Math.abs(paise / 100);
+        long fraction = Math.abs(paise % 100);
+        return (paise < 0 ? "-" : "") + rupees + (fraction < 10 ? ".0" : ".") + fraction;
+    }
+} 
\ No newline at end of file
@@ -0,0 +1,19 @@
+package com.upi.stack.entity;
+
+import jakarta.persistence.AttributeConverter;
+import jakarta.persistence.Converter;
+
+// Every Money attribute is a BIGINT column of paise
+@Converter(autoApply = true)
+public class MoneyConverter implements AttributeConverter<Money, Long> {
+    
+    @Override
+    public Long convertToDatabaseColumn(Money money) {
+        return money == null ? null : money.paise();
+    }
+    
+    @Override
+    public Money convertToEntityAttribute(Long paise) {
+        return paise == null ? null : Money.ofPaise(paise);
+    }
+} 
\ No newline at end of file
@@ -0,0 +1,69 @@
+package com.upi.stack.entity;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.AllArgsConstructor;
+import java.time.LocalDateTime;
+
+// Saga state of a payment whose payee lives on another shard. The OUTBOUND row is written
+// on the payer's shard together with the debit; the INBOUND row is written on the payee's
+// shard together with the credit, and its unique transactionId makes the credit idempotent.
+@Entity
+@Table(name = "shard_transfers", indexes = {
+    @Index(name = "idx_shard_transfers_status", columnList = "status, created_at")
+})
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ShardTransfer {
+    
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+    
+    @Column(nullable = false, unique = true)
+    private String transactionId;
+    
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false)
+    private Direction direction;
+    
+    @Column(nullable = false)
+    private Long payerAccountId;
+    
+    @Column(nullable = false)
+    private Long payeeAccountId;
+    
+    @Column(nullable = false)
+    private Money amount;
+    
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false)
+    private TransferStatus status;
+    
+    @Column(nullable = false)
+    private LocalDateTime createdAt;
+    
+    @Column(nullable = false)
+    private LocalDateTime updatedAt;
+    
+    public enum Direction {
+        OUTBOUND, INBOUND
+    }
+    
+    public enum TransferStatus {
+        PENDING, CREDITED, COMPENSATED
+    }
+    
+    @PrePersist
+    protected void onCreate() {
+        createdAt = LocalDateTime.now();
+        updatedAt = LocalDateTime.now();
+    }
+    
+    @PreUpdate
+    protected void onUpdate() {
+        updatedAt = LocalDateTime.now();
+    }
+} 
\ No newline at end of file
@@ -2,35 +2,48 @@ package com.upi.stack.entity;
 
 import jakarta.persistence.*;
 import lombok.Data;
+import lombok.EqualsAndHashCode;
 import lombok.NoArgsConstructor;
 import lombok.AllArgsConstructor;
-import java.math.BigDecimal;
+import lombok.ToString;
 import java.time.LocalDateTime;
 
 @Entity
-@Table(name = "transactions")
+@Table(name = "transactions", indexes = {
+    @Index(name = "idx_transactions_payer_created", columnList = "payer_id, created_at, id"),
+    @Index(name = "idx_transactions_payee_created", columnList = "payee_id, created_at, id"),
+    @Index(name = "idx_transactions_created", columnList = "created_at, id"),
+    // Settlement recomputes find a cycle's id range by when rows were last updated
+    @Index(name = "idx_transactions_updated", columnList = "updated_at, id"),
+    // Open collect requests per payer, and pending rows by type for recovery and expiry
+    @Index(name = "idx_transactions_payer_open", columnList = "payer_id, status, type, created_at, id"),
+    @Index(name = "idx_transactions_status_type", columnList = "status, type, expires_at")
+})
+@EntityListeners(ChangeCapture.class)
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
 public class Transaction {
     
+    // Sequence ids with a pooled optimizer so Hibernate can batch inserts
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "transactions_seq")
+    @SequenceGenerator(name = "transactions_seq", sequenceName = "transactions_seq", allocationSize = 50)
     private Long id;
     
     @Column(nullable = false, unique = true)
     private String transactionId;
     
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "payer_id", nullable = false)
     private User payer;
     
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "payee_id", nullable = false)
     private User payee;
     
     @Column(nullable = false)
-    private BigDecimal amount;
+    private Money amount;
     
     @Column(nullable = false)
     private String description;
@@ -52,6 +65,17 @@ public class Transaction {
     @Column
     private String failureReason;
     
+    // Only set on COLLECT requests: when an unanswered request stops being payable
+    @Column
+    private LocalDateTime expiresAt;
+    
+    // Status as last read from or written to the database. Entity listeners run before the
+    // callbacks below, so ChangeCapture still sees the status a write changed from.
+    @Transient
+    @EqualsAndHashCode.Exclude
+    @ToString.Exclude
+    private TransactionStatus storedStatus;
+    
     public enum TransactionStatus {
         PENDING, SUCCESS, FAILED, CANCELLED
     }
@@ -70,4 +94,11 @@ public class Transaction {
     protected void onUpdate() {
         updatedAt = LocalDateTime.now();
     }
+    
+    @PostLoad
+    @PostPersist
+    @PostUpdate
+    protected void onStored() {
+        storedStatus = status;
+    }
 } 
\ No newline at end of file
@@ -4,11 +4,16 @@ import jakarta.persistence.*;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 import lombok.AllArgsConstructor;
-import java.math.BigDecimal;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 import java.time.LocalDateTime;
 
 @Entity
 @Table(name = "users")
+@EntityListeners(ChangeCapture.class)
+// Cached by id when the second-level cache is on (production-perf profile)
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "users")
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
@@ -30,8 +35,10 @@ public class User {
     @Column(nullable = false)
     private String email;
     
+    // Opening balance. Payments never update it; the live balance is derived from
+    // balance_snapshots and ledger_entries (see LedgerService.balanceOf).
     @Column(nullable = false)
-    private BigDecimal balance;
+    private Money balance;
     
     @Column(nullable = false)
     private String bankName;
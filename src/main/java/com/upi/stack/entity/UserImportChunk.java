@@ -0,0 +1,42 @@
+package com.upi.stack.entity;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.AllArgsConstructor;
+import java.time.LocalDateTime;
+
+// Progress of a bulk user import: the rows of lines firstLine..lastLine whose UPI ID hashes
+// to this shard are done. Written in the same transaction as the users it accounts for, so
+// a rerun of the import skips exactly the rows that were committed.
+@Entity
+@Table(name = "user_import_chunks", indexes = {
+    @Index(name = "idx_user_import_chunks_import", columnList = "import_id")
+})
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class UserImportChunk {
+    
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+    
+    @Column(nullable = false, length = 128)
+    private String importId;
+    
+    @Column(nullable = false)
+    private Long firstLine;
+    
+    @Column(nullable = false)
+    private Long lastLine;
+    
+    @Column(nullable = false)
+    private Integer imported;
+    
+    @Column(nullable = false)
+    private Integer rejected;
+    
+    @Column(nullable = false)
+    private LocalDateTime completedAt;
+} 
\ No newline at end of file
@@ -0,0 +1,32 @@
+package com.upi.stack.repository;
+
+import com.upi.stack.entity.BalanceSnapshot;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import java.util.Collection;
+
+@Repository
+public interface BalanceSnapshotRepository extends JpaRepository<BalanceSnapshot, Long> {
+    
+    // Recomputes a snapshot from the opening balance and every leg it claims to cover
+    String REBUILD = "UPDATE balance_snapshots s SET balance = (SELECT u.balance FROM users u WHERE u.id = s.account_id) + " +
+                     "COALESCE((SELECT SUM(e.amount) FROM ledger_entries e WHERE e.account_id = s.account_id " +
+                     "AND e.id <= s.last_entry_id), 0), taken_at = CURRENT_TIMESTAMP ";
+    
+    // Every entry at or below this id has been folded by a previous snapshot run
+    @Query("SELECT COALESCE(MAX(s.lastEntryId), 0) FROM BalanceSnapshot s")
+    long findFoldedWatermark();
+    
+    @Modifying
+    @Query(value = REBUILD + "WHERE s.account_id IN :accountIds", nativeQuery = true)
+    int rebuild(@Param("accountIds") Collection<Long> accountIds);
+    
+    // Rebuilds the snapshots of every account with a leg in (from, upTo]
+    @Modifying
+    @Query(value = REBUILD + "WHERE s.account_id IN (SELECT e.account_id FROM ledger_entries e " +
+                   "WHERE e.id > :from AND e.id <= :upTo)", nativeQuery = true)
+    int rebuildInRange(@Param("from") long fromExclusive, @Param("upTo") long upToInclusive);
+} 
\ No newline at end of file
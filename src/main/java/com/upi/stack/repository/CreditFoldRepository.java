@@ -0,0 +1,9 @@
+package com.upi.stack.repository;
+
+import com.upi.stack.entity.CreditFold;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface CreditFoldRepository extends JpaRepository<CreditFold, Long> {
+} 
\ No newline at end of file
@@ -0,0 +1,88 @@
+package com.upi.stack.repository;
+
+import com.upi.stack.dto.AccountBalance;
+import com.upi.stack.entity.LedgerEntry;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface LedgerEntryRepository extends JpaRepository<LedgerEntry, Long> {
+    
+    // Live balance of u: its snapshot (or opening balance) plus the legs written since, plus
+    // credits still held for it (see HotAccounts). Both correlated sums are range scans, on
+    // idx_ledger_entries_account and idx_ledger_entries_held, so they only touch entries newer
+    // than the snapshot and the last fold. Amounts are Money, cast to their paise to add them up.
+    String BALANCE = "(CAST(COALESCE(s.balance, u.balance) AS Long) + COALESCE((SELECT SUM(CAST(e.amount AS Long)) " +
+                     "FROM LedgerEntry e WHERE e.account.id = u.id AND e.id > COALESCE(s.lastEntryId, 0)), 0) + " +
+                     "COALESCE((SELECT SUM(CAST(h.amount AS Long)) FROM LedgerEntry h WHERE h.heldFor = u.id AND h.id > " +
+                     "COALESCE((SELECT f.lastEntryId FROM CreditFold f WHERE f.accountId = u.id), 0)), 0)) ";
+    String BALANCE_FROM = "FROM User u LEFT JOIN BalanceSnapshot s ON s.accountId = u.id ";
+    
+    @Query("SELECT " + BALANCE + BALANCE_FROM + "WHERE u.id = :accountId")
+    Optional<Long> findBalance(@Param("accountId") Long accountId);
+    
+    @Query("SELECT new com.upi.stack.dto.AccountBalance(u.id, " + BALANCE + ") " + BALANCE_FROM + "WHERE u.id IN :accountIds")
+    List<AccountBalance> findBalances(@Param("accountIds") Collection<Long> accountIds);
+    
+    // Highest entry after from old enough that no transaction can still be writing below it.
+    // created_at has no index, so the search is bounded by id to a range scan of the primary key.
+    @Query("SELECT MAX(e.id) FROM LedgerEntry e WHERE e.id > :from AND e.createdAt < :settledBefore")
+    Optional<Long> findSettledWatermark(@Param("from") long fromExclusive,
+                                        @Param("settledBefore") LocalDateTime settledBefore);
+    
+    @Query(value = "SELECT COUNT(*) FROM ledger_entries WHERE id > :from AND id <= :upTo AND account_id IS NOT NULL",
+           nativeQuery = true)
+    long countAccountLegs(@Param("from") long fromExclusive, @Param("upTo") long upToInclusive);
+    
+    // Newest credit held for the account that is old enough to have committed
+    @Query("SELECT MAX(e.id) FROM LedgerEntry e WHERE e.heldFor = :accountId AND e.id > :from " +
+           "AND e.createdAt < :settledBefore")
+    Optional<Long> findSettledHeldWatermark(@Param("accountId") Long accountId, @Param("from") long fromExclusive,
+                                            @Param("settledBefore") LocalDateTime settledBefore);
+    
+    @Query("SELECT COUNT(e) FROM LedgerEntry e WHERE e.heldFor = :accountId AND e.id > :from AND e.id <= :upTo")
+    long countHeld(@Param("accountId") Long accountId, @Param("from") long fromExclusive,
+                   @Param("upTo") long upToInclusive);
+    
+    @Query("SELECT COALESCE(SUM(CAST(e.amount AS Long)), 0) FROM LedgerEntry e WHERE e.heldFor = :accountId " +
+           "AND e.id > :from AND e.id <= :upTo")
+    long sumHeld(@Param("accountId") Long accountId, @Param("from") long fromExclusive,
+                 @Param("upTo") long upToInclusive);
+    
+    // Folds into the snapshot of each account touched in (from, upTo] every leg of the account
+    // between its own snapshot and upTo, in one statement. Starting from the snapshot rather
+    // than from also picks up a late leg sitting between the two.
+    @Modifying
+    @Query(value = "MERGE INTO balance_snapshots t USING (" +
+                   "SELECT u.id AS account_id, COALESCE(s.balance, u.balance) + SUM(e.amount) AS balance, MAX(e.id) AS last_entry_id " +
+                   "FROM users u LEFT JOIN balance_snapshots s ON s.account_id = u.id " +
+                   "JOIN ledger_entries e ON e.account_id = u.id AND e.id > COALESCE(s.last_entry_id, 0) AND e.id <= :upTo " +
+                   "WHERE u.id IN (SELECT a.account_id FROM ledger_entries a WHERE a.id > :from AND a.id <= :upTo) " +
+                   "GROUP BY u.id, u.balance, s.balance) d ON (t.account_id = d.account_id) " +
+                   "WHEN MATCHED THEN UPDATE SET balance = d.balance, last_entry_id = d.last_entry_id, taken_at = CURRENT_TIMESTAMP " +
+                   "WHEN NOT MATCHED THEN INSERT (account_id, balance, last_entry_id, taken_at) " +
+                   "VALUES (d.account_id, d.balance, d.last_entry_id, CURRENT_TIMESTAMP)", nativeQuery = true)
+    int foldIntoSnapshots(@Param("from") long fromExclusive, @Param("upTo") long upToInclusive);
+    
+    @Query(value = "SELECT COALESCE(SUM(amount), 0) FROM ledger_entries", nativeQuery = true)
+    long sumAllLegs();
+    
+    @Query(value = "SELECT transaction_id FROM ledger_entries WHERE transaction_id IS NOT NULL " +
+                   "GROUP BY transaction_id HAVING SUM(amount) <> 0 ORDER BY transaction_id LIMIT :limit", nativeQuery = true)
+    List<Long> findUnbalancedTransactionIds(@Param("limit") int limit);
+    
+    // Snapshots that no longer match the legs they claim to cover, e.g. because an entry
+    // below the watermark committed after the late-leg horizon
+    @Query(value = "SELECT s.account_id FROM balance_snapshots s JOIN users u ON u.id = s.account_id " +
+                   "WHERE s.balance <> u.balance + COALESCE((SELECT SUM(e.amount) FROM ledger_entries e " +
+                   "WHERE e.account_id = s.account_id AND e.id <= s.last_entry_id), 0) " +
+                   "ORDER BY s.account_id LIMIT :limit", nativeQuery = true)
+    List<Long> findDriftedSnapshotAccountIds(@Param("limit") int limit);
+} 
\ No newline at end of file
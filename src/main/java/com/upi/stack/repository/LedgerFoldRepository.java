@@ -0,0 +1,31 @@
+package com.upi.stack.repository;
+
+import com.upi.stack.entity.LedgerFold;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Repository
+public interface LedgerFoldRepository extends JpaRepository<LedgerFold, Long> {
+    
+    // Snapshot runs since the given time whose range now holds more account legs than they
+    // folded, i.e. legs that committed below the watermark after it had moved past them
+    @Query(value = "SELECT f.* FROM ledger_folds f WHERE f.held_for IS NULL AND f.folded_at >= :since AND f.entry_count < " +
+                   "(SELECT COUNT(*) FROM ledger_entries e WHERE e.id > f.from_entry_id AND e.id <= f.up_to_entry_id " +
+                   "AND e.account_id IS NOT NULL) ORDER BY f.id", nativeQuery = true)
+    List<LedgerFold> findOverrunSince(@Param("since") LocalDateTime since);
+    
+    // Same for releases of held credits, counting the HELD legs of the account
+    @Query(value = "SELECT f.* FROM ledger_folds f WHERE f.held_for IS NOT NULL AND f.folded_at >= :since AND f.entry_count < " +
+                   "(SELECT COUNT(*) FROM ledger_entries e WHERE e.held_for = f.held_for AND e.id > f.from_entry_id " +
+                   "AND e.id <= f.up_to_entry_id) ORDER BY f.id", nativeQuery = true)
+    List<LedgerFold> findHeldOverrunSince(@Param("since") LocalDateTime since);
+    
+    @Modifying
+    @Query("DELETE FROM LedgerFold f WHERE f.foldedAt < :before")
+    int deleteFoldedBefore(@Param("before") LocalDateTime before);
+} 
\ No newline at end of file
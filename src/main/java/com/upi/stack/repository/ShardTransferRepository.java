@@ -0,0 +1,31 @@
+package com.upi.stack.repository;
+
+import com.upi.stack.entity.ShardTransfer;
+import jakarta.persistence.LockModeType;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface ShardTransferRepository extends JpaRepository<ShardTransfer, Long> {
+    
+    Optional<ShardTransfer> findByTransactionId(String transactionId);
+    
+    boolean existsByTransactionId(String transactionId);
+    
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT s FROM ShardTransfer s WHERE s.transactionId = :transactionId")
+    Optional<ShardTransfer> findForUpdate(@Param("transactionId") String transactionId);
+    
+    @Query("SELECT s.transactionId FROM ShardTransfer s WHERE s.direction = :direction AND s.status = :status " +
+           "AND s.createdAt < :createdBefore ORDER BY s.createdAt")
+    List<String> findTransactionIds(@Param("direction") ShardTransfer.Direction direction,
+                                    @Param("status") ShardTransfer.TransferStatus status,
+                                    @Param("createdBefore") LocalDateTime createdBefore, Limit limit);
+} 
\ No newline at end of file
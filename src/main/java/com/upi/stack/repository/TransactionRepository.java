@@ -1,23 +1,159 @@
 package com.upi.stack.repository;
 
+import com.upi.stack.dto.SettlementReport;
+import com.upi.stack.dto.TransactionDeadline;
+import com.upi.stack.dto.TransactionView;
 import com.upi.stack.entity.Transaction;
+import jakarta.persistence.LockModeType;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 
 @Repository
 public interface TransactionRepository extends JpaRepository<Transaction, Long> {
     
     Optional<Transaction> findByTransactionId(String transactionId);
     
-    List<Transaction> findByPayerUpiId(String payerUpiId);
+    List<Transaction> findByStatus(Transaction.TransactionStatus status);
     
-    List<Transaction> findByPayeeUpiId(String payeeUpiId);
+    List<Transaction> findByType(Transaction.TransactionType type);
     
-    List<Transaction> findByPayerUpiIdOrPayeeUpiId(String payerUpiId, String payeeUpiId);
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT t FROM Transaction t JOIN FETCH t.payer JOIN FETCH t.payee WHERE t.transactionId = :transactionId")
+    Optional<Transaction> findForProcessing(@Param("transactionId") String transactionId);
     
-    List<Transaction> findByStatus(Transaction.TransactionStatus status);
+    @Query("SELECT t.transactionId FROM Transaction t WHERE t.status = :status AND t.type = :type")
+    List<String> findTransactionIds(@Param("status") Transaction.TransactionStatus status,
+                                    @Param("type") Transaction.TransactionType type);
     
-    List<Transaction> findByType(Transaction.TransactionType type);
+    @Query("SELECT t.id FROM Transaction t WHERE t.transactionId = :transactionId")
+    Optional<Long> findIdByTransactionId(@Param("transactionId") String transactionId);
+    
+    @Query("SELECT t.transactionId FROM Transaction t WHERE t.transactionId IN :transactionIds")
+    List<String> findExistingTransactionIds(@Param("transactionIds") Collection<String> transactionIds);
+    
+    String VIEW_SELECT = "SELECT new com.upi.stack.dto.TransactionView(t.id, t.transactionId, p.upiId, q.upiId, " +
+                         "t.amount, t.description, t.status, t.type, t.createdAt, t.updatedAt, t.failureReason, t.expiresAt) " +
+                         "FROM Transaction t JOIN t.payer p JOIN t.payee q ";
+    
+    @Query(VIEW_SELECT + "WHERE t.transactionId = :transactionId")
+    Optional<TransactionView> findViewByTransactionId(@Param("transactionId") String transactionId);
+    
+    // Keyset pages, newest first, positioned strictly after (createdAt, id)
+    @Query(VIEW_SELECT +
+           "WHERE t.payer.id = :accountId " +
+           "AND (t.createdAt < :createdAt OR (t.createdAt = :createdAt AND t.id < :id)) " +
+           "ORDER BY t.createdAt DESC, t.id DESC")
+    List<TransactionView> findPayerPage(@Param("accountId") Long accountId, @Param("createdAt") LocalDateTime createdAt,
+                                        @Param("id") Long id, Limit limit);
+    
+    @Query(VIEW_SELECT +
+           "WHERE t.payee.id = :accountId " +
+           "AND (t.createdAt < :createdAt OR (t.createdAt = :createdAt AND t.id < :id)) " +
+           "ORDER BY t.createdAt DESC, t.id DESC")
+    List<TransactionView> findPayeePage(@Param("accountId") Long accountId, @Param("createdAt") LocalDateTime createdAt,
+                                        @Param("id") Long id, Limit limit);
+    
+    @Query(VIEW_SELECT +
+           "WHERE t.payer.id = :accountId AND t.status = :status AND t.type = :type AND t.expiresAt > :now " +
+           "AND (t.createdAt < :createdAt OR (t.createdAt = :createdAt AND t.id < :id)) " +
+           "ORDER BY t.createdAt DESC, t.id DESC")
+    List<TransactionView> findOpenPayerPage(@Param("accountId") Long accountId,
+                                            @Param("status") Transaction.TransactionStatus status,
+                                            @Param("type") Transaction.TransactionType type,
+                                            @Param("now") LocalDateTime now,
+                                            @Param("createdAt") LocalDateTime createdAt,
+                                            @Param("id") Long id, Limit limit);
+    
+    @Query(VIEW_SELECT +
+           "WHERE t.createdAt < :createdAt OR (t.createdAt = :createdAt AND t.id < :id) " +
+           "ORDER BY t.createdAt DESC, t.id DESC")
+    List<TransactionView> findPage(@Param("createdAt") LocalDateTime createdAt, @Param("id") Long id, Limit limit);
+    
+    @QueryHints({
+        @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "500"),
+        @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true")
+    })
+    @Query(VIEW_SELECT +
+           "WHERE t.payer.id = :accountId OR t.payee.id = :accountId " +
+           "ORDER BY t.createdAt DESC, t.id DESC")
+    Stream<TransactionView> streamByAccountId(@Param("accountId") Long accountId);
+    
+    @QueryHints({
+        @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "500"),
+        @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true")
+    })
+    @Query(VIEW_SELECT + "ORDER BY t.createdAt DESC, t.id DESC")
+    Stream<TransactionView> streamAll();
+    
+    // Rows the read model has not seen, read back in id order
+    @QueryHints({
+        @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "500"),
+        @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true")
+    })
+    @Query(VIEW_SELECT + "WHERE t.id > :after AND t.id < :before ORDER BY t.id")
+    Stream<TransactionView> streamAfterId(@Param("after") long after, @Param("before") long before);
+    
+    // Payments that counted towards the payer's limits when they were made: every payment
+    // and every collect request the payer has approved (see VelocityLimits)
+    @QueryHints({
+        @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "500"),
+        @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true")
+    })
+    @Query(VIEW_SELECT +
+           "WHERE t.createdAt >= :from AND t.createdAt < :until AND t.status <> :cancelled " +
+           "AND (t.type = :pay OR t.status <> :pending)")
+    Stream<TransactionView> streamCountedSince(@Param("from") LocalDateTime from, @Param("until") LocalDateTime until,
+                                               @Param("pay") Transaction.TransactionType pay,
+                                               @Param("pending") Transaction.TransactionStatus pending,
+                                               @Param("cancelled") Transaction.TransactionStatus cancelled);
+    
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "500"))
+    @Query("SELECT new com.upi.stack.dto.TransactionDeadline(t.id, t.expiresAt) FROM Transaction t " +
+           "WHERE t.status = :status AND t.type = :type")
+    Stream<TransactionDeadline> streamDeadlines(@Param("status") Transaction.TransactionStatus status,
+                                                @Param("type") Transaction.TransactionType type);
+    
+    // Bounds of the id range holding every row last updated in [from, until), found on
+    // idx_transactions_updated; SettlementEngine splits it into chunks. A payment that stayed
+    // pending for a long time before succeeding is in it however old the row is.
+    @Query("SELECT MIN(t.id) FROM Transaction t WHERE t.updatedAt >= :from AND t.updatedAt < :until")
+    Optional<Long> findMinIdUpdated(@Param("from") LocalDateTime from, @Param("until") LocalDateTime until);
+    
+    @Query("SELECT MAX(t.id) FROM Transaction t WHERE t.updatedAt >= :from AND t.updatedAt < :until")
+    Optional<Long> findMaxIdUpdated(@Param("from") LocalDateTime from, @Param("until") LocalDateTime until);
+    
+    // Successful payments in one id chunk that succeeded in [from, until), summed per
+    // (payer bank, payee bank). A cross-shard payee is joined through its counterparty row.
+    @Query("SELECT new com.upi.stack.dto.SettlementReport$PairPosition(SUBSTRING(p.ifscCode, 1, 4), " +
+           "SUBSTRING(q.ifscCode, 1, 4), SUM(CAST(t.amount AS Long)), COUNT(t)) " +
+           "FROM Transaction t JOIN t.payer p JOIN t.payee q " +
+           "WHERE t.id >= :fromId AND t.id <= :toId AND t.status = :success " +
+           "AND t.updatedAt >= :from AND t.updatedAt < :until " +
+           "GROUP BY SUBSTRING(p.ifscCode, 1, 4), SUBSTRING(q.ifscCode, 1, 4)")
+    List<SettlementReport.PairPosition> sumSettlementPositions(@Param("fromId") long fromId, @Param("toId") long toId,
+                                                               @Param("success") Transaction.TransactionStatus success,
+                                                               @Param("from") LocalDateTime from,
+                                                               @Param("until") LocalDateTime until);
+    
+    // Only rows still pending and actually past their deadline change; anything answered in
+    // the meantime is left alone
+    @Modifying
+    @Query("UPDATE Transaction t SET t.status = :expired, t.failureReason = :reason, t.updatedAt = :now " +
+           "WHERE t.id IN :ids AND t.status = :pending AND t.expiresAt <= :now")
+    int expire(@Param("ids") Collection<Long> ids, @Param("pending") Transaction.TransactionStatus pending,
+               @Param("expired") Transaction.TransactionStatus expired, @Param("reason") String reason,
+               @Param("now") LocalDateTime now);
 } 
\ No newline at end of file
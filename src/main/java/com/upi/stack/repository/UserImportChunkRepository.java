@@ -0,0 +1,12 @@
+package com.upi.stack.repository;
+
+import com.upi.stack.entity.UserImportChunk;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+import java.util.List;
+
+@Repository
+public interface UserImportChunkRepository extends JpaRepository<UserImportChunk, Long> {
+    
+    List<UserImportChunk> findByImportId(String importId);
+} 
\ No newline at end of file
@@ -1,15 +1,85 @@
 package com.upi.stack.repository;
 
+import com.upi.stack.dto.UserDto;
+import com.upi.stack.dto.UserKeys;
 import com.upi.stack.entity.User;
+import jakarta.persistence.LockModeType;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 
 @Repository
 public interface UserRepository extends JpaRepository<User, Long> {
     
     Optional<User> findByUpiId(String upiId);
     
+    List<User> findByUpiIdIn(Collection<String> upiIds);
+    
+    @Query("SELECT u.id FROM User u WHERE u.upiId = :upiId")
+    Optional<Long> findIdByUpiId(@Param("upiId") String upiId);
+    
+    // Row locks held until commit. A debit takes its payer's before reading the balance, so
+    // two postings from the same account are serialised by the database, not just this JVM.
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT u.id FROM User u WHERE u.id = :id")
+    Optional<Long> lockById(@Param("id") Long id);
+    
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT u.id FROM User u WHERE u.upiId IN :upiIds ORDER BY u.id")
+    List<Long> lockByUpiIdIn(@Param("upiIds") Collection<String> upiIds);
+    
+    @Query("SELECT u.upiId FROM User u WHERE u.id = :id")
+    Optional<String> findUpiIdById(@Param("id") Long id);
+    
+    @Query("SELECT u.ifscCode FROM User u WHERE u.id = :id")
+    Optional<String> findIfscCodeById(@Param("id") Long id);
+    
+    // Profile rows with the live ledger balance, see LedgerEntryRepository.BALANCE
+    String PROFILE_SELECT = "SELECT new com.upi.stack.dto.UserDto(u.id, u.upiId, u.name, u.phoneNumber, u.email, " +
+                            LedgerEntryRepository.BALANCE + ", u.bankName, u.accountNumber, u.ifscCode) " +
+                            LedgerEntryRepository.BALANCE_FROM;
+    
+    // Bounded above as well so a shard's walk never picks up counterparty rows (see
+    // upsertCounterparty), whose ids belong to other shards' ranges
+    @Query(PROFILE_SELECT + "WHERE u.id > :id AND u.id < :before ORDER BY u.id")
+    List<UserDto> findProfilesAfter(@Param("id") Long id, @Param("before") Long before, Limit limit);
+    
+    @QueryHints({
+        @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "500"),
+        @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true")
+    })
+    @Query(PROFILE_SELECT + "WHERE u.id > :after AND u.id < :before ORDER BY u.id")
+    Stream<UserDto> streamProfiles(@Param("after") Long after, @Param("before") Long before);
+    
+    // Copy of a user from another shard, kept so payments on this shard can reference the
+    // payee. Carries a zero opening balance and never gets ledger legs of its own.
+    @Modifying
+    @Query(value = "MERGE INTO users (id, upi_id, name, phone_number, email, balance, bank_name, " +
+                   "account_number, ifsc_code, created_at, updated_at) KEY (id) VALUES (:id, :upiId, :name, :phoneNumber, " +
+                   ":email, 0, :bankName, :accountNumber, :ifscCode, CURRENT_TIMESTAMP, CURRENT_TIMESTAMP)", nativeQuery = true)
+    void upsertCounterparty(@Param("id") Long id, @Param("upiId") String upiId, @Param("name") String name,
+                            @Param("phoneNumber") String phoneNumber, @Param("email") String email,
+                            @Param("bankName") String bankName, @Param("accountNumber") String accountNumber,
+                            @Param("ifscCode") String ifscCode);
+    
+    // Every row sharing a UPI ID, phone number or email with the given ones, in one statement
+    @Query("SELECT new com.upi.stack.dto.UserKeys(u.upiId, u.phoneNumber, u.email) FROM User u " +
+           "WHERE u.upiId IN :upiIds OR u.phoneNumber IN :phoneNumbers OR u.email IN :emails")
+    List<UserKeys> findKeysIn(@Param("upiIds") Collection<String> upiIds,
+                              @Param("phoneNumbers") Collection<String> phoneNumbers,
+                              @Param("emails") Collection<String> emails);
+    
     Optional<User> findByPhoneNumber(String phoneNumber);
     
     Optional<User> findByEmail(String email);
@@ -0,0 +1,82 @@
+package com.upi.stack.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+@Component
+public class AccountLockManager {
+    
+    private final ReentrantLock[] stripes;
+    private final int mask;
+    private final long timeoutMillis;
+    
+    public AccountLockManager(@Value("${upi.ledger.lock-stripes:1024}") int stripeCount,
+                              @Value("${upi.ledger.lock-timeout-ms:2000}") long timeoutMillis) {
+        int size = 1;
+        while (size < stripeCount) {
+            size <<= 1;
+        }
+        this.stripes = new ReentrantLock[size];
+        for (int i = 0; i < size; i++) {
+            stripes[i] = new ReentrantLock();
+        }
+        this.mask = size - 1;
+        this.timeoutMillis = timeoutMillis;
+    }
+    
+    // Locks the stripes guarding the given accounts and holds them until the current
+    // transaction completes. Stripes are always taken in ascending order so two postings
+    // touching the same accounts can never wait on each other in a cycle.
+    public void lockForTransaction(Collection<String> upiIds) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            throw new IllegalStateException("Account locks require an active transaction");
+        }
+        
+        int[] indexes = upiIds.stream()
+                .mapToInt(this::stripeIndex)
+                .distinct()
+                .sorted()
+                .toArray();
+        
+        int acquired = 0;
+        try {
+            for (int index : indexes) {
+                if (!stripes[index].tryLock(timeoutMillis, TimeUnit.MILLISECONDS)) {
+                    throw new RuntimeException("Account busy, please retry");
+                }
+                acquired++;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while waiting for account lock");
+        } finally {
+            if (acquired < indexes.length) {
+                unlock(Arrays.copyOf(indexes, acquired));
+            }
+        }
+        
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                unlock(indexes);
+            }
+        });
+    }
+    
+    private void unlock(int[] indexes) {
+        for (int i = indexes.length - 1; i >= 0; i--) {
+            stripes[indexes[i]].unlock();
+        }
+    }
+    
+    private int stripeIndex(String upiId) {
+        int h = upiId.hashCode();
+        return (h ^ (h >>> 16)) & mask;
+    }
+} 
\ No newline at end of file
@@ -0,0 +1,68 @@
+package com.upi.stack.service;
+
+import com.upi.stack.dto.CommittedChanges;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import java.util.ArrayList;
+import java.util.List;
+
+// Hands the rows a database transaction wrote to the read model, to transaction event
+// subscribers and to the settlement engine once it has committed, as one CommittedChanges
+// event. Changes are buffered in a synchronization of the transaction itself, so a transaction
+// suspended by a nested one keeps its own buffer and a rollback publishes nothing. Records
+// nothing unless upi.read-model.enabled, upi.events.enabled or upi.settlement.enabled is set.
+@Component
+public class ChangeFeed {
+    
+    private final ApplicationEventPublisher eventPublisher;
+    private final boolean enabled;
+    
+    public ChangeFeed(ApplicationEventPublisher eventPublisher,
+                      @Value("${upi.read-model.enabled:false}") boolean readModelEnabled,
+                      @Value("${upi.events.enabled:true}") boolean eventsEnabled,
+                      @Value("${upi.settlement.enabled:true}") boolean settlementEnabled) {
+        this.eventPublisher = eventPublisher;
+        this.enabled = readModelEnabled || eventsEnabled || settlementEnabled;
+    }
+    
+    public boolean isEnabled() {
+        return enabled;
+    }
+    
+    public void record(CommittedChanges.Change change) {
+        if (!enabled) {
+            return;
+        }
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            eventPublisher.publishEvent(new CommittedChanges(List.of(change), System.nanoTime()));
+            return;
+        }
+        buffer().changes.add(change);
+    }
+    
+    // Flushes at commit register the buffer from inside the commit; Spring still runs
+    // synchronizations registered that late
+    private Buffer buffer() {
+        for (TransactionSynchronization synchronization : TransactionSynchronizationManager.getSynchronizations()) {
+            if (synchronization instanceof Buffer buffer) {
+                return buffer;
+            }
+        }
+        Buffer buffer = new Buffer();
+        TransactionSynchronizationManager.registerSynchronization(buffer);
+        return buffer;
+    }
+    
+    private class Buffer implements TransactionSynchronization {
+        
+        private final List<CommittedChanges.Change> changes = new ArrayList<>();
+        
+        @Override
+        public void afterCommit() {
+            eventPublisher.publishEvent(new CommittedChanges(changes, System.nanoTime()));
+        }
+    }
+} 
\ No newline at end of file
@@ -0,0 +1,110 @@
+package com.upi.stack.service;
+
+import com.upi.stack.dto.CommittedChanges;
+import com.upi.stack.dto.TransactionDeadline;
+import com.upi.stack.entity.Transaction;
+import com.upi.stack.repository.TransactionRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+// Expires unanswered collect requests. Each request is put on a timing wheel at its deadline
+// and every tick cancels the due ones with one conditional update per shard, so nothing ever
+// scans the transactions table for stale rows. Requests approved or declined in the meantime
+// stay on the wheel and are skipped by the update. At startup the wheel is rebuilt from the
+// pending requests of every shard.
+@Slf4j
+@Component
+public class CollectExpiry {
+    
+    static final String EXPIRED_REASON = "Collect request expired";
+    private static final int UPDATE_CHUNK = 1000;
+    
+    private final TransactionRepository transactionRepository;
+    private final ShardRouter shardRouter;
+    private final ChangeFeed changeFeed;
+    private final ExpiryWheel wheel;
+    
+    public CollectExpiry(TransactionRepository transactionRepository,
+                         ShardRouter shardRouter,
+                         ChangeFeed changeFeed,
+                         @Value("${upi.collect.ttl:PT30M}") Duration ttl,
+                         @Value("${upi.collect.expiry-tick:PT1S}") Duration tick) {
+        this.transactionRepository = transactionRepository;
+        this.shardRouter = shardRouter;
+        this.changeFeed = changeFeed;
+        this.wheel = new ExpiryWheel(ttl.toMillis(), tick.toMillis(), System.currentTimeMillis());
+    }
+    
+    public void track(Long id, LocalDateTime expiresAt) {
+        wheel.add(id, expiresAt.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli());
+    }
+    
+    public long trackedCount() {
+        return wheel.size();
+    }
+    
+    @EventListener(ApplicationReadyEvent.class)
+    public void loadPendingRequests() {
+        for (int shard = 0; shard < shardRouter.shardCount(); shard++) {
+            shardRouter.inReadOnlyTransaction(shard, status -> {
+                try (Stream<TransactionDeadline> deadlines = transactionRepository.streamDeadlines(
+                        Transaction.TransactionStatus.PENDING, Transaction.TransactionType.COLLECT)) {
+                    deadlines.forEach(deadline -> track(deadline.id(), deadline.expiresAt()));
+                }
+                return null;
+            });
+        }
+    }
+    
+    // Returns the number of requests expired by this tick
+    @Scheduled(fixedDelayString = "${upi.collect.expiry-tick:PT1S}")
+    public int expireDueRequests() {
+        long[] due = wheel.drainDue(System.currentTimeMillis());
+        if (due.length == 0) {
+            return 0;
+        }
+        LocalDateTime now = LocalDateTime.now();
+        Map<Integer, List<Long>> byShard = Arrays.stream(due).boxed()
+                .collect(Collectors.groupingBy(shardRouter::shardOf));
+        int expired = 0;
+        for (Map.Entry<Integer, List<Long>> entry : byShard.entrySet()) {
+            List<Long> ids = entry.getValue();
+            for (int from = 0; from < ids.size(); from += UPDATE_CHUNK) {
+                List<Long> chunk = ids.subList(from, Math.min(from + UPDATE_CHUNK, ids.size()));
+                try {
+                    expired += shardRouter.inTransaction(entry.getKey(), status -> expire(chunk, now));
+                } catch (RuntimeException e) {
+                    // Put them back so the next tick tries again
+                    log.warn("Could not expire {} collect requests on shard {}", chunk.size(), entry.getKey(), e);
+                    chunk.forEach(id -> track(id, now));
+                }
+            }
+        }
+        return expired;
+    }
+    
+    // The bulk update bypasses the entity listeners, so the read model is fed the cancelled
+    // rows explicitly
+    private int expire(List<Long> ids, LocalDateTime now) {
+        int expired = transactionRepository.expire(ids, Transaction.TransactionStatus.PENDING,
+                Transaction.TransactionStatus.CANCELLED, EXPIRED_REASON, now);
+        if (expired > 0 && changeFeed.isEnabled()) {
+            transactionRepository.findAllById(ids).stream()
+                    .filter(transaction -> EXPIRED_REASON.equals(transaction.getFailureReason()))
+                    .forEach(transaction -> changeFeed.record(CommittedChanges.TransactionChange.of(transaction)));
+        }
+        return expired;
+    }
+} 
\ No newline at end of file
@@ -0,0 +1,378 @@
+package com.upi.stack.service;
+
+import com.upi.stack.config.ShardContext;
+import com.upi.stack.dto.SeedReport;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntConsumer;
+
+// Generated users and payments in place of the sample users, for staging and load tests:
+//   java -jar upi-stack.jar --upi.seed.users=1000000 --upi.seed.transactions=5000000
+// Everything but the timestamps follows from upi.seed.seed and the chunk size, so two runs
+// with the same settings hold the same rows. User i gets id idRangeStart(home shard) + i + 1
+// and payment k id idRangeStart(payer's shard) + k + 1, and payments are spread evenly over
+// upi.seed.history in id order, so ids grow with creation time as they do for live rows.
+// Rows are generated in chunks on upi.seed.threads threads and inserted through JDBC batches,
+// one transaction per chunk and shard. A payment stays on its payer's shard, so the payee is
+// drawn from the users homed there. Payments are history only: they carry no ledger legs, so
+// balances are the generated opening balances.
+// With upi.seed.snapshot-dir set, the first run writes every shard's rows there as CSV files
+// (H2's CSVWRITE) and later runs with the same settings load them with CSVREAD instead.
+@Slf4j
+@Service
+public class DataSeeder {
+    
+    private record Bank(String name, String ifscPrefix, String handle) {
+    }
+    
+    private static final Bank[] BANKS = {
+        new Bank("ICICI Bank", "ICIC", "icici"),
+        new Bank("HDFC Bank", "HDFC", "hdfc"),
+        new Bank("State Bank of India", "SBIN", "sbi"),
+        new Bank("Axis Bank", "UTIB", "axis"),
+        new Bank("Kotak Mahindra Bank", "KKBK", "kotak"),
+        new Bank("Punjab National Bank", "PUNB", "pnb"),
+        new Bank("Bank of Baroda", "BARB", "barodampay"),
+        new Bank("Canara Bank", "CNRB", "canara")
+    };
+    private static final String[] FIRST_NAMES = {"Aarav", "Aditi", "Arjun", "Diya", "Ishaan", "Kavya", "Meera",
+            "Neha", "Priya", "Rahul", "Rohan", "Saanvi", "Sneha", "Vihaan", "Vikram", "Zara"};
+    private static final String[] LAST_NAMES = {"Bose", "Gupta", "Iyer", "Joshi", "Kapoor", "Khan", "Mehta",
+            "Nair", "Patel", "Rao", "Reddy", "Shah", "Sharma", "Singh", "Verma", "Das"};
+    private static final String[] DESCRIPTIONS = {"Groceries", "Rent", "Dinner", "Electricity bill",
+            "Mobile recharge", "Fuel", "Movie tickets", "Books", "Split bill", "Gift"};
+    
+    private static final String USER_COLUMNS = "id, upi_id, name, phone_number, email, balance, bank_name, " +
+            "account_number, ifsc_code, created_at, updated_at";
+    private static final String TRANSACTION_COLUMNS = "id, transaction_id, payer_id, payee_id, amount, description, " +
+            "status, type, failure_reason, created_at, updated_at";
+    private static final String INSERT_USER = "INSERT INTO users (" + USER_COLUMNS + ") " +
+            "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+    private static final String INSERT_TRANSACTION = "INSERT INTO transactions (" + TRANSACTION_COLUMNS + ") " +
+            "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+    
+    private final JdbcTemplate jdbcTemplate;
+    private final ShardRouter shardRouter;
+    private final int users;
+    private final long transactions;
+    private final long seed;
+    private final int threads;
+    private final int chunkSize;
+    private final Duration history;
+    private final String snapshotDir;
+    private final Object[] shardWriters;
+    
+    public DataSeeder(JdbcTemplate jdbcTemplate,
+                      ShardRouter shardRouter,
+                      @Value("${upi.seed.users:0}") int users,
+                      @Value("${upi.seed.transactions:0}") long transactions,
+                      @Value("${upi.seed.seed:42}") long seed,
+                      @Value("${upi.seed.threads:4}") int threads,
+                      @Value("${upi.seed.chunk-size:10000}") int chunkSize,
+                      @Value("${upi.seed.history:P30D}") Duration history,
+                      @Value("${upi.seed.snapshot-dir:}") String snapshotDir) {
+        if (transactions > 0 && users < 2) {
+            throw new IllegalStateException("upi.seed.transactions needs at least two upi.seed.users");
+        }
+        this.jdbcTemplate = jdbcTemplate;
+        this.shardRouter = shardRouter;
+        this.users = users;
+        this.transactions = transactions;
+        this.seed = seed;
+        this.threads = threads;
+        this.chunkSize = chunkSize;
+        this.history = history;
+        this.snapshotDir = snapshotDir;
+        this.shardWriters = new Object[shardRouter.shardCount()];
+        for (int shard = 0; shard < shardWriters.length; shard++) {
+            shardWriters[shard] = new Object();
+        }
+    }
+    
+    public boolean isEnabled() {
+        return users > 0;
+    }
+    
+    // Expects empty users and transactions tables on every shard
+    public SeedReport seed() {
+        long started = System.nanoTime();
+        ExecutorService pool = Executors.newFixedThreadPool(threads, threadFactory());
+        try {
+            boolean fromSnapshot = !snapshotDir.isEmpty() && snapshotExists();
+            if (fromSnapshot) {
+                loadSnapshot(pool);
+            } else {
+                generate(pool);
+            }
+            SeedReport report = new SeedReport(users, transactions, fromSnapshot,
+                    Duration.ofNanos(System.nanoTime() - started).toMillis());
+            log.info("Seeded {} users and {} payments in {} ms{}", report.users(), report.transactions(),
+                    report.tookMillis(), fromSnapshot ? " from snapshot " + snapshotDir : "");
+            return report;
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+    
+    private void generate(ExecutorService pool) {
+        int[] homes = new int[users];
+        inParallel(pool, chunks(users), chunk -> insertUsers(chunk, homes));
+        if (transactions > 0) {
+            int[][] members = membersByShard(homes);
+            long until = System.currentTimeMillis();
+            withoutTransactionIndexes(pool, () -> inParallel(pool, chunks(transactions),
+                    chunk -> insertTransactions(chunk, homes, members, until)));
+        }
+        inParallel(pool, shardRouter.shardCount(), this::restartIds);
+        if (!snapshotDir.isEmpty()) {
+            writeSnapshot(pool);
+        }
+    }
+    
+    private void insertUsers(int chunk, int[] homes) {
+        long from = (long) chunk * chunkSize;
+        long to = Math.min(from + chunkSize, users);
+        List<List<Object[]>> byShard = perShard();
+        Timestamp now = new Timestamp(System.currentTimeMillis());
+        for (int i = (int) from; i < to; i++) {
+            SplittableRandom random = new SplittableRandom(mix(seed, i));
+            String first = FIRST_NAMES[random.nextInt(FIRST_NAMES.length)];
+            String last = LAST_NAMES[random.nextInt(LAST_NAMES.length)];
+            Bank bank = BANKS[random.nextInt(BANKS.length)];
+            String local = first.toLowerCase() + "." + last.toLowerCase() + i;
+            String upiId = local + "@" + bank.handle();
+            int shard = shardRouter.shardFor(upiId);
+            homes[i] = shard;
+            byShard.get(shard).add(new Object[] {
+                ShardContext.idRangeStart(shard) + i + 1, upiId, first + " " + last,
+                Long.toString(6_000_000_000L + i), local + "@example.com",
+                random.nextLong(100_00, 1_000_000_00), bank.name(),
+                Long.toString(100_000_000_000L + random.nextLong(900_000_000_000L)),
+                bank.ifscPrefix() + "0" + (100_000 + random.nextInt(900_000)), now, now
+            });
+        }
+        insert(INSERT_USER, byShard);
+    }
+    
+    // The payer is any user; the payee any other user homed on the payer's shard
+    private void insertTransactions(int chunk, int[] homes, int[][] members, long until) {
+        long from = (long) chunk * chunkSize;
+        long to = Math.min(from + chunkSize, transactions);
+        List<List<Object[]>> byShard = perShard();
+        SplittableRandom random = new SplittableRandom(mix(~seed, chunk));
+        double step = (double) history.toMillis() / transactions;
+        for (long k = from; k < to; k++) {
+            int payer = random.nextInt(users);
+            int shard = homes[payer];
+            int[] candidates = members[shard];
+            int payee = candidates[random.nextInt(candidates.length)];
+            if (payee == payer && candidates.length > 1) {
+                payee = candidates[(Arrays.binarySearch(candidates, payer) + 1) % candidates.length];
+            }
+            boolean failed = random.nextInt(100) < 5;
+            long base = ShardContext.idRangeStart(shard);
+            Timestamp createdAt = new Timestamp(until - (long) ((transactions - k) * step));
+            byShard.get(shard).add(new Object[] {
+                base + k + 1, "SEED" + k, base + payer + 1, base + payee + 1,
+                random.nextLong(1_00, 5_000_00), DESCRIPTIONS[random.nextInt(DESCRIPTIONS.length)],
+                failed ? "FAILED" : "SUCCESS", "PAY", failed ? "Insufficient balance" : null, createdAt, createdAt
+            });
+        }
+        insert(INSERT_TRANSACTION, byShard);
+    }
+    
+    // H2 lets one writer at a time into a table, and concurrent ones only slow each other
+    // down, so rows are generated in parallel but each shard takes one batch at a time
+    private void insert(String sql, List<List<Object[]>> byShard) {
+        for (int shard = 0; shard < byShard.size(); shard++) {
+            List<Object[]> rows = byShard.get(shard);
+            if (!rows.isEmpty()) {
+                synchronized (shardWriters[shard]) {
+                    shardRouter.inTransaction(shard, status -> jdbcTemplate.batchUpdate(sql, rows));
+                }
+            }
+        }
+    }
+    
+    // H2 updates every index row by row as rows go in. The secondary indexes of transactions
+    // are dropped for the load and rebuilt from the loaded rows, which loads a million
+    // payments up to three times faster; their definitions are read back with SCRIPT, as
+    // ShardRoutingDataSource does. Payer and payee ids point at seeded users by construction,
+    // so the foreign keys are switched off too and come back without rechecking the rows.
+    private void withoutTransactionIndexes(ExecutorService pool, Runnable load) {
+        List<List<String>> indexes = new ArrayList<>();
+        for (int shard = 0; shard < shardRouter.shardCount(); shard++) {
+            indexes.add(shardRouter.on(shard, () -> {
+                List<String> created = jdbcTemplate.queryForList("SCRIPT NODATA NOPASSWORDS NOSETTINGS", String.class)
+                        .stream()
+                        .filter(sql -> sql.startsWith("CREATE INDEX ")
+                                && sql.contains(" ON \"PUBLIC\".\"TRANSACTIONS\"("))
+                        .toList();
+                for (String sql : created) {
+                    jdbcTemplate.execute("DROP INDEX " + sql.substring("CREATE INDEX ".length(), sql.indexOf(" ON ")));
+                }
+                jdbcTemplate.execute("ALTER TABLE transactions SET REFERENTIAL_INTEGRITY FALSE");
+                return created;
+            }));
+        }
+        try {
+            load.run();
+        } finally {
+            inParallel(pool, shardRouter.shardCount(), shard -> shardRouter.on(shard, () -> {
+                indexes.get(shard).forEach(jdbcTemplate::execute);
+                jdbcTemplate.execute("ALTER TABLE transactions SET REFERENTIAL_INTEGRITY TRUE NOCHECK");
+                return null;
+            }));
+        }
+    }
+    
+    // User indexes homed on each shard, in ascending order
+    private int[][] membersByShard(int[] homes) {
+        int[] counts = new int[shardRouter.shardCount()];
+        for (int home : homes) {
+            counts[home]++;
+        }
+        int[][] members = new int[counts.length][];
+        for (int shard = 0; shard < counts.length; shard++) {
+            members[shard] = new int[counts[shard]];
+        }
+        int[] filled = new int[counts.length];
+        for (int i = 0; i < homes.length; i++) {
+            members[homes[i]][filled[homes[i]]++] = i;
+        }
+        return members;
+    }
+    
+    // Explicit ids leave the id generators where they were, so they move past the seeded
+    // rows. The pooled sequence restarts one increment on, as in ShardRoutingDataSource.
+    private void restartIds(int shard) {
+        shardRouter.on(shard, () -> {
+            Long users = jdbcTemplate.queryForObject("SELECT MAX(id) FROM users", Long.class);
+            if (users != null) {
+                jdbcTemplate.execute("ALTER TABLE users ALTER COLUMN id RESTART WITH " + (users + 1));
+            }
+            Long transactions = jdbcTemplate.queryForObject("SELECT MAX(id) FROM transactions", Long.class);
+            if (transactions != null) {
+                Long increment = jdbcTemplate.queryForObject("SELECT INCREMENT FROM INFORMATION_SCHEMA.SEQUENCES " +
+                        "WHERE SEQUENCE_SCHEMA = 'PUBLIC' AND SEQUENCE_NAME = 'TRANSACTIONS_SEQ'", Long.class);
+                jdbcTemplate.execute("ALTER SEQUENCE transactions_seq RESTART WITH " + (transactions + increment));
+            }
+            return null;
+        });
+    }
+    
+    private boolean snapshotExists() {
+        for (int shard = 0; shard < shardRouter.shardCount(); shard++) {
+            if (!Files.exists(snapshotFile(shard, "users")) || !Files.exists(snapshotFile(shard, "transactions"))) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    // Files are written under a temporary name and moved into place, so a run that dies
+    // halfway never leaves a snapshot that looks complete
+    private void writeSnapshot(ExecutorService pool) {
+        try {
+            Files.createDirectories(Path.of(snapshotDir));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        inParallel(pool, shardRouter.shardCount(), shard -> shardRouter.on(shard, () -> {
+            write(snapshotFile(shard, "users"), "SELECT " + USER_COLUMNS + " FROM users ORDER BY id");
+            write(snapshotFile(shard, "transactions"),
+                    "SELECT " + TRANSACTION_COLUMNS + " FROM transactions ORDER BY id");
+            return null;
+        }));
+    }
+    
+    private void write(Path file, String query) {
+        Path partial = file.resolveSibling(file.getFileName() + ".partial");
+        jdbcTemplate.queryForObject("CALL CSVWRITE(?, ?, 'charset=UTF-8')", Integer.class,
+                partial.toAbsolutePath().toString(), query);
+        try {
+            Files.move(partial, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+    
+    private void loadSnapshot(ExecutorService pool) {
+        withoutTransactionIndexes(pool, () -> inParallel(pool, shardRouter.shardCount(), shard -> {
+            shardRouter.inTransaction(shard, status -> {
+                jdbcTemplate.update("INSERT INTO users (" + USER_COLUMNS + ") SELECT " + USER_COLUMNS +
+                        " FROM " + csvRead(snapshotFile(shard, "users")));
+                return jdbcTemplate.update("INSERT INTO transactions (" + TRANSACTION_COLUMNS + ") SELECT " +
+                        TRANSACTION_COLUMNS + " FROM " + csvRead(snapshotFile(shard, "transactions")));
+            });
+            restartIds(shard);
+        }));
+    }
+    
+    // CSVREAD takes no parameters, so the file name goes in as a literal
+    private static String csvRead(Path file) {
+        return "CSVREAD('" + file.toAbsolutePath().toString().replace("'", "''") + "', NULL, 'charset=UTF-8')";
+    }
+    
+    // Named after every setting the rows depend on, so changing one never loads a stale snapshot
+    private Path snapshotFile(int shard, String table) {
+        return Path.of(snapshotDir, String.format("seed-%d-%d-%d-%d-%d-shard%d-%s.csv",
+                users, transactions, seed, chunkSize, shardRouter.shardCount(), shard, table));
+    }
+    
+    private int chunks(long rows) {
+        return (int) ((rows + chunkSize - 1) / chunkSize);
+    }
+    
+    private List<List<Object[]>> perShard() {
+        List<List<Object[]>> byShard = new ArrayList<>(shardRouter.shardCount());
+        for (int shard = 0; shard < shardRouter.shardCount(); shard++) {
+            byShard.add(new ArrayList<>());
+        }
+        return byShard;
+    }
+    
+    private static void inParallel(ExecutorService pool, int tasks, IntConsumer task) {
+        List<CompletableFuture<Void>> futures = new ArrayList<>(tasks);
+        for (int i = 0; i < tasks; i++) {
+            int index = i;
+            futures.add(CompletableFuture.runAsync(() -> task.accept(index), pool));
+        }
+        CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new)).join();
+    }
+    
+    // Well-spread seeds for neighbouring indexes (the SplitMix64 finalizer)
+    private static long mix(long seed, long index) {
+        long z = seed + (index + 1) * 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+    
+    private static ThreadFactory threadFactory() {
+        AtomicInteger threadIds = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, "data-seed-" + threadIds.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+} 
\ No newline at end of file
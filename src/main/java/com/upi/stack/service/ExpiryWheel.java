@@ -0,0 +1,89 @@
+package com.upi.stack.service;
+
+import java.util.Arrays;
+
+// Hashed timing wheel of deadlines keyed by row id. Time is cut into ticks of tickMillis and
+// an entry sits in the bucket of the first tick at or after its deadline; a bucket is drained
+// once that tick has started. Entries due more than one turn ahead share a bucket with nearer
+// ones and are simply kept until their own tick comes round. Ids and ticks live in primitive
+// arrays, so millions of open entries cost ~16 bytes each and no objects.
+final class ExpiryWheel {
+    
+    private static final int INITIAL_CAPACITY = 16;
+    
+    private final long tickMillis;
+    private final long[][] ids;
+    private final long[][] ticks;
+    private final int[] sizes;
+    private long size;
+    // First tick that has not been drained yet
+    private long nextTick;
+    
+    ExpiryWheel(long spanMillis, long tickMillis, long nowMillis) {
+        int bucketCount = (int) ((spanMillis + tickMillis - 1) / tickMillis) + 1;
+        this.tickMillis = tickMillis;
+        this.ids = new long[bucketCount][];
+        this.ticks = new long[bucketCount][];
+        this.sizes = new int[bucketCount];
+        this.nextTick = nowMillis / tickMillis;
+    }
+    
+    synchronized void add(long id, long deadlineMillis) {
+        // Rounded up, so an entry is never drained before its deadline
+        long tick = Math.max((deadlineMillis + tickMillis - 1) / tickMillis, nextTick);
+        int slot = (int) (tick % sizes.length);
+        if (ids[slot] == null) {
+            ids[slot] = new long[INITIAL_CAPACITY];
+            ticks[slot] = new long[INITIAL_CAPACITY];
+        } else if (sizes[slot] == ids[slot].length) {
+            ids[slot] = Arrays.copyOf(ids[slot], sizes[slot] * 2);
+            ticks[slot] = Arrays.copyOf(ticks[slot], sizes[slot] * 2);
+        }
+        ids[slot][sizes[slot]] = id;
+        ticks[slot][sizes[slot]] = tick;
+        sizes[slot]++;
+        size++;
+    }
+    
+    // Removes and returns the ids of every entry whose deadline has passed by nowMillis
+    synchronized long[] drainDue(long nowMillis) {
+        long lastDue = nowMillis / tickMillis;
+        if (lastDue < nextTick) {
+            return new long[0];
+        }
+        // After a long pause every bucket may hold due entries; otherwise only the ticks since
+        // the previous drain need to be visited
+        long visits = Math.min(lastDue - nextTick + 1, sizes.length);
+        long[] due = new long[INITIAL_CAPACITY];
+        int dueCount = 0;
+        for (long tick = lastDue - visits + 1; tick <= lastDue; tick++) {
+            int slot = (int) (tick % sizes.length);
+            int kept = 0;
+            for (int i = 0; i < sizes[slot]; i++) {
+                if (ticks[slot][i] <= lastDue) {
+                    if (dueCount == due.length) {
+                        due = Arrays.copyOf(due, dueCount * 2);
+                    }
+                    due[dueCount++] = ids[slot][i];
+                } else {
+                    ids[slot][kept] = ids[slot][i];
+                    ticks[slot][kept] = ticks[slot][i];
+                    kept++;
+                }
+            }
+            size -= sizes[slot] - kept;
+            sizes[slot] = kept;
+            if (kept == 0) {
+                // Release the arrays of a drained bucket; a burst should not pin its memory
+                ids[slot] = null;
+                ticks[slot] = null;
+            }
+        }
+        nextTick = lastDue + 1;
+        return Arrays.copyOf(due, dueCount);
+    }
+    
+    synchronized long size() {
+        return size;
+    }
+} 
\ No newline at end of file
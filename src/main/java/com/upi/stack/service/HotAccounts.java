@@ -0,0 +1,43 @@
+package com.upi.stack.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+// Payees flagged as high-volume through upi.ledger.hot-accounts. A payment to one of them
+// does not write a leg on the payee's account: its credit is held against the clearing
+// account and LedgerMaintenance folds everything held into the account with a single leg.
+// Balance reads always include what is still held, so the flag only changes how credits
+// are stored, never the balance anyone sees.
+@Component
+public class HotAccounts {
+    
+    private final List<String> upiIds;
+    private final VpaDirectory vpaDirectory;
+    private volatile Set<Long> accountIds = Set.of();
+    
+    public HotAccounts(@Value("${upi.ledger.hot-accounts:}") List<String> upiIds, VpaDirectory vpaDirectory) {
+        this.upiIds = upiIds;
+        this.vpaDirectory = vpaDirectory;
+    }
+    
+    public boolean contains(Long accountId) {
+        return accountIds.contains(accountId);
+    }
+    
+    // Flagged UPI IDs that do not exist yet are picked up by a later refresh
+    @EventListener(ApplicationReadyEvent.class)
+    public Set<Long> refresh() {
+        accountIds = upiIds.stream()
+                .map(vpaDirectory::resolve)
+                .flatMap(Optional::stream)
+                .map(VpaEntry::accountId)
+                .collect(Collectors.toUnmodifiableSet());
+        return accountIds;
+    }
+} 
\ No newline at end of file
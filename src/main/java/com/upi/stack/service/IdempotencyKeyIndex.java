@@ -0,0 +1,162 @@
+package com.upi.stack.service;
+
+import java.util.Arrays;
+
+// Compact in-memory index of recently completed idempotency keys. Keys are kept as 64-bit
+// hashes in open-addressing long[] tables, one table per time bucket, so millions of keys
+// cost ~16 bytes each and no objects. Expiry drops a whole bucket at once instead of
+// tracking per-key deadlines. A hash collision only costs one extra database lookup.
+// The tables are split into stripes by the top bits of the hash, each with its own
+// monitor, so concurrent keyed payments rarely probe under the same lock.
+final class IdempotencyKeyIndex {
+    
+    private static final int INITIAL_CAPACITY = 1024;
+    private static final int MIN_STRIPE_CAPACITY = 16;
+    
+    private final Stripe[] stripes;
+    private final int stripeShift;
+    
+    IdempotencyKeyIndex(long ttlMillis, long bucketMillis, int stripeCount) {
+        int size = 1;
+        while (size < stripeCount) {
+            size <<= 1;
+        }
+        int bucketCount = (int) ((ttlMillis + bucketMillis - 1) / bucketMillis) + 1;
+        // Tables start at the same total size however many stripes share them
+        int capacity = Math.max(MIN_STRIPE_CAPACITY, INITIAL_CAPACITY / size);
+        this.stripes = new Stripe[size];
+        for (int i = 0; i < size; i++) {
+            stripes[i] = new Stripe(bucketCount, bucketMillis, capacity);
+        }
+        this.stripeShift = 64 - Integer.numberOfTrailingZeros(size);
+    }
+    
+    void add(long hash, long nowMillis) {
+        long key = nonZero(hash);
+        stripeOf(key).add(key, nowMillis);
+    }
+    
+    boolean contains(long hash, long nowMillis) {
+        long key = nonZero(hash);
+        return stripeOf(key).contains(key, nowMillis);
+    }
+    
+    long size() {
+        long total = 0;
+        for (Stripe stripe : stripes) {
+            total += stripe.size();
+        }
+        return total;
+    }
+    
+    // Table slots come from the low bits of the hash, stripes from the high ones
+    private Stripe stripeOf(long key) {
+        return stripes.length == 1 ? stripes[0] : stripes[(int) (key >>> stripeShift)];
+    }
+    
+    static long hash(String key) {
+        // FNV-1a followed by a murmur3 finaliser to spread the bits
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < key.length(); i++) {
+            h ^= key.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+    
+    private static long nonZero(long hash) {
+        return hash == 0 ? 1 : hash;
+    }
+    
+    private static boolean insert(long[] table, long key) {
+        int mask = table.length - 1;
+        int i = (int) key & mask;
+        while (table[i] != 0) {
+            if (table[i] == key) {
+                return false;
+            }
+            i = (i + 1) & mask;
+        }
+        table[i] = key;
+        return true;
+    }
+    
+    private static boolean lookup(long[] table, long key) {
+        int mask = table.length - 1;
+        int i = (int) key & mask;
+        while (table[i] != 0) {
+            if (table[i] == key) {
+                return true;
+            }
+            i = (i + 1) & mask;
+        }
+        return false;
+    }
+    
+    private static long[] grow(long[] table) {
+        long[] grown = new long[table.length * 2];
+        for (long key : table) {
+            if (key != 0) {
+                insert(grown, key);
+            }
+        }
+        return grown;
+    }
+    
+    private static final class Stripe {
+        
+        private final long bucketMillis;
+        private final int capacity;
+        private final long[][] tables;
+        private final int[] sizes;
+        private final long[] bucketEpochs;
+        
+        Stripe(int bucketCount, long bucketMillis, int capacity) {
+            this.bucketMillis = bucketMillis;
+            this.capacity = capacity;
+            this.tables = new long[bucketCount][];
+            this.sizes = new int[bucketCount];
+            this.bucketEpochs = new long[bucketCount];
+            Arrays.fill(bucketEpochs, -1);
+        }
+        
+        synchronized void add(long key, long nowMillis) {
+            long epoch = nowMillis / bucketMillis;
+            int slot = (int) (epoch % tables.length);
+            if (bucketEpochs[slot] != epoch) {
+                // The bucket last held keys from a full TTL ago; recycle it
+                tables[slot] = new long[capacity];
+                sizes[slot] = 0;
+                bucketEpochs[slot] = epoch;
+            }
+            if (insert(tables[slot], key)) {
+                if (++sizes[slot] * 2 > tables[slot].length) {
+                    tables[slot] = grow(tables[slot]);
+                }
+            }
+        }
+        
+        synchronized boolean contains(long key, long nowMillis) {
+            long oldestLiveEpoch = nowMillis / bucketMillis - (tables.length - 1);
+            for (int slot = 0; slot < tables.length; slot++) {
+                if (bucketEpochs[slot] >= oldestLiveEpoch && lookup(tables[slot], key)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        
+        synchronized long size() {
+            long total = 0;
+            for (int size : sizes) {
+                total += size;
+            }
+            return total;
+        }
+    }
+} 
\ No newline at end of file
@@ -0,0 +1,171 @@
+package com.upi.stack.service;
+
+import com.upi.stack.dto.TransactionDto;
+import com.upi.stack.entity.IdempotencyRecord;
+import com.upi.stack.repository.IdempotencyRecordRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+@Service
+public class IdempotencyService {
+    
+    private final IdempotencyRecordRepository idempotencyRecordRepository;
+    private final ShardRouter shardRouter;
+    private final IdempotencyKeyIndex completedKeys;
+    private final Map<String, CompletableFuture<TransactionDto>> inFlight = new ConcurrentHashMap<>();
+    // Keys of journaled payments: durable in the payment journal but not yet claimed in the table
+    private final Map<String, String> heldClaims = new ConcurrentHashMap<>();
+    private final Duration ttl;
+    private final Duration waitTimeout;
+    
+    // Until the index has been loaded from the table, every key has to be checked there
+    private volatile boolean warm;
+    
+    public IdempotencyService(IdempotencyRecordRepository idempotencyRecordRepository,
+                              ShardRouter shardRouter,
+                              @Value("${upi.idempotency.ttl:24h}") Duration ttl,
+                              @Value("${upi.idempotency.bucket:1h}") Duration bucket,
+                              @Value("${upi.idempotency.index-stripes:16}") int indexStripes,
+                              @Value("${upi.idempotency.wait-timeout:30s}") Duration waitTimeout) {
+        this.idempotencyRecordRepository = idempotencyRecordRepository;
+        this.shardRouter = shardRouter;
+        this.completedKeys = new IdempotencyKeyIndex(ttl.toMillis(), bucket.toMillis(), indexStripes);
+        this.ttl = ttl;
+        this.waitTimeout = waitTimeout;
+    }
+    
+    // Runs the payment at most once per key. A completed key replays the stored transaction,
+    // and a duplicate arriving while the first attempt is running waits for its result.
+    // The payment itself must call claim() in its own transaction.
+    public TransactionDto execute(String key, Supplier<TransactionDto> payment,
+                                  Function<String, TransactionDto> replay) {
+        Optional<String> completed = findCompleted(key);
+        if (completed.isPresent()) {
+            return replay.apply(completed.get());
+        }
+        
+        CompletableFuture<TransactionDto> attempt = new CompletableFuture<>();
+        CompletableFuture<TransactionDto> running = inFlight.putIfAbsent(key, attempt);
+        if (running != null) {
+            return await(running);
+        }
+        
+        try {
+            TransactionDto result = payment.get();
+            completedKeys.add(IdempotencyKeyIndex.hash(key), System.currentTimeMillis());
+            attempt.complete(result);
+            return result;
+        } catch (DataIntegrityViolationException e) {
+            // Another node claimed the key first; serve its outcome
+            TransactionDto result = findClaimed(key)
+                    .map(replay)
+                    .orElseThrow(() -> e);
+            attempt.complete(result);
+            return result;
+        } catch (RuntimeException e) {
+            attempt.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, attempt);
+        }
+    }
+    
+    // Whether a request with this key would replay a payment rather than make one: the key is
+    // running or has completed. Fresh keys are answered from memory once the index is warm.
+    public boolean isKnown(String key) {
+        return inFlight.containsKey(key) || findCompleted(key).isPresent();
+    }
+    
+    // Inserts the key in the payment's transaction, on the payer's shard; a concurrent claim
+    // on another node fails here on the unique constraint and rolls the whole payment back
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void claim(String key, String transactionId) {
+        IdempotencyRecord record = new IdempotencyRecord();
+        record.setIdempotencyKey(key);
+        record.setTransactionId(transactionId);
+        record.setExpiresAt(LocalDateTime.now().plus(ttl));
+        idempotencyRecordRepository.saveAndFlush(record);
+    }
+    
+    // Stands in for claim() while the payment sits in the journal; the drainer claims the key
+    // in the table when it applies the payment and then releases the hold
+    public void holdClaim(String key, String transactionId) {
+        heldClaims.put(key, transactionId);
+    }
+    
+    public void releaseClaim(String key) {
+        heldClaims.remove(key);
+    }
+    
+    private Optional<String> findCompleted(String key) {
+        String held = heldClaims.get(key);
+        if (held != null) {
+            return Optional.of(held);
+        }
+        // Fresh keys, the common case, are answered from memory without a query
+        if (warm && !completedKeys.contains(IdempotencyKeyIndex.hash(key), System.currentTimeMillis())) {
+            return Optional.empty();
+        }
+        return findClaimed(key);
+    }
+    
+    // A key is claimed on the shard of the payment it belongs to, so every shard is asked
+    private Optional<String> findClaimed(String key) {
+        LocalDateTime now = LocalDateTime.now();
+        return shardRouter.fanOut(shard -> idempotencyRecordRepository.findTransactionId(key, now)).stream()
+                .flatMap(Optional::stream)
+                .findFirst();
+    }
+    
+    private TransactionDto await(CompletableFuture<TransactionDto> running) {
+        try {
+            return running.get(waitTimeout.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof RuntimeException cause ? cause : new RuntimeException(e.getCause());
+        } catch (TimeoutException e) {
+            throw new RuntimeException("Request with this Idempotency-Key is still in progress");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while waiting for in-flight request");
+        }
+    }
+    
+    @EventListener(ApplicationReadyEvent.class)
+    public void loadCompletedKeys() {
+        long now = System.currentTimeMillis();
+        for (int shard = 0; shard < shardRouter.shardCount(); shard++) {
+            shardRouter.inReadOnlyTransaction(shard, status -> {
+                try (Stream<String> keys = idempotencyRecordRepository.streamLiveKeys(LocalDateTime.now())) {
+                    keys.forEach(key -> completedKeys.add(IdempotencyKeyIndex.hash(key), now));
+                }
+                return null;
+            });
+        }
+        warm = true;
+    }
+    
+    @Scheduled(fixedDelayString = "${upi.idempotency.purge-interval:PT10M}")
+    public void purgeExpiredKeys() {
+        for (int shard = 0; shard < shardRouter.shardCount(); shard++) {
+            shardRouter.inTransaction(shard, status -> idempotencyRecordRepository.deleteExpired(LocalDateTime.now()));
+        }
+    }
+} 
\ No newline at end of file
@@ -0,0 +1,86 @@
+package com.upi.stack.service;
+
+import com.upi.stack.dto.TransactionDto;
+import com.upi.stack.entity.Money;
+import com.upi.stack.entity.Transaction;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+
+// An accepted payment as written to the payment journal. Parties are carried both as
+// account ids (for the insert) and UPI IDs (for locking and the response).
+public record JournalRecord(
+        String transactionId,
+        long payerAccountId,
+        long payeeAccountId,
+        String payerUpiId,
+        String payeeUpiId,
+        Money amount,
+        String description,
+        String idempotencyKey,
+        long acceptedAtMillis) {
+    
+    byte[] encode() {
+        byte[][] strings = {
+            utf8(transactionId), utf8(payerUpiId), utf8(payeeUpiId), utf8(amount.toString()),
+            utf8(description), utf8(idempotencyKey == null ? "" : idempotencyKey)
+        };
+        int size = 3 * Long.BYTES;
+        for (byte[] value : strings) {
+            size += Short.BYTES + value.length;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        buffer.putLong(payerAccountId).putLong(payeeAccountId).putLong(acceptedAtMillis);
+        for (byte[] value : strings) {
+            buffer.putShort((short) value.length).put(value);
+        }
+        return buffer.array();
+    }
+    
+    static JournalRecord decode(ByteBuffer buffer) {
+        long payerAccountId = buffer.getLong();
+        long payeeAccountId = buffer.getLong();
+        long acceptedAtMillis = buffer.getLong();
+        String transactionId = readString(buffer);
+        String payerUpiId = readString(buffer);
+        String payeeUpiId = readString(buffer);
+        // Rupees as text, as records written before amounts were kept in paise have them too
+        Money amount = Money.parse(readString(buffer));
+        String description = readString(buffer);
+        String idempotencyKey = readString(buffer);
+        return new JournalRecord(transactionId, payerAccountId, payeeAccountId, payerUpiId, payeeUpiId, amount,
+                description, idempotencyKey.isEmpty() ? null : idempotencyKey, acceptedAtMillis);
+    }
+    
+    // How the payment looks to callers until the journal has been drained into the database
+    TransactionDto toPendingDto() {
+        TransactionDto dto = new TransactionDto();
+        dto.setTransactionId(transactionId);
+        dto.setPayerUpiId(payerUpiId);
+        dto.setPayeeUpiId(payeeUpiId);
+        dto.setAmount(amount.toBigDecimal());
+        dto.setDescription(description);
+        dto.setStatus(Transaction.TransactionStatus.PENDING.name());
+        dto.setType(Transaction.TransactionType.PAY.name());
+        LocalDateTime acceptedAt = LocalDateTime.ofInstant(Instant.ofEpochMilli(acceptedAtMillis), ZoneId.systemDefault());
+        dto.setCreatedAt(acceptedAt);
+        dto.setUpdatedAt(acceptedAt);
+        return dto;
+    }
+    
+    private static byte[] utf8(String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > Short.MAX_VALUE) {
+            throw new IllegalArgumentException("Journal field too long");
+        }
+        return bytes;
+    }
+    
+    private static String readString(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getShort()];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+} 
\ No newline at end of file
@@ -0,0 +1,189 @@
+package com.upi.stack.service;
+
+import com.upi.stack.dto.ReconciliationReport;
+import com.upi.stack.entity.CreditFold;
+import com.upi.stack.entity.LedgerFold;
+import com.upi.stack.entity.Money;
+import com.upi.stack.repository.BalanceSnapshotRepository;
+import com.upi.stack.repository.CreditFoldRepository;
+import com.upi.stack.repository.LedgerEntryRepository;
+import com.upi.stack.repository.LedgerFoldRepository;
+import com.upi.stack.repository.UserRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+
+// Background upkeep of the ledger: folding new legs into per-account snapshots so balance
+// reads stay short, and checking that the books still balance.
+@Slf4j
+@Service
+public class LedgerMaintenance {
+    
+    private static final int REPORT_LIMIT = 100;
+    
+    private final LedgerEntryRepository ledgerEntryRepository;
+    private final BalanceSnapshotRepository balanceSnapshotRepository;
+    private final CreditFoldRepository creditFoldRepository;
+    private final LedgerFoldRepository ledgerFoldRepository;
+    private final UserRepository userRepository;
+    private final LedgerService ledgerService;
+    private final HotAccounts hotAccounts;
+    private final ShardRouter shardRouter;
+    private final Duration settleWindow;
+    private final Duration lateLegHorizon;
+    
+    public LedgerMaintenance(LedgerEntryRepository ledgerEntryRepository,
+                             BalanceSnapshotRepository balanceSnapshotRepository,
+                             CreditFoldRepository creditFoldRepository,
+                             LedgerFoldRepository ledgerFoldRepository,
+                             UserRepository userRepository,
+                             LedgerService ledgerService,
+                             HotAccounts hotAccounts,
+                             ShardRouter shardRouter,
+                             @Value("${upi.ledger.snapshot-settle-window:10s}") Duration settleWindow,
+                             @Value("${upi.ledger.late-leg-horizon:PT15M}") Duration lateLegHorizon) {
+        this.ledgerEntryRepository = ledgerEntryRepository;
+        this.balanceSnapshotRepository = balanceSnapshotRepository;
+        this.creditFoldRepository = creditFoldRepository;
+        this.ledgerFoldRepository = ledgerFoldRepository;
+        this.userRepository = userRepository;
+        this.ledgerService = ledgerService;
+        this.hotAccounts = hotAccounts;
+        this.shardRouter = shardRouter;
+        this.settleWindow = settleWindow;
+        this.lateLegHorizon = lateLegHorizon;
+    }
+    
+    // Entry ids are handed out before their transaction commits, so a snapshot only covers
+    // entries older than the settle window; younger ones are picked up by the next run. Ids
+    // come from a pooled sequence, though, and a slow transaction can still commit a leg
+    // below the watermark after it has moved on. Each run therefore records how many legs it
+    // folded, and later runs recount the ranges folded within the late-leg horizon and rebuild
+    // the snapshots of any range that has grown. Every shard keeps its own watermarks.
+    // Returns the number of account snapshots written.
+    @Scheduled(fixedDelayString = "${upi.ledger.snapshot-interval:PT1M}")
+    public int takeSnapshots() {
+        int written = 0;
+        for (int shard = 0; shard < shardRouter.shardCount(); shard++) {
+            written += shardRouter.inTransaction(shard, status -> takeSnapshotsOnShard());
+        }
+        return written;
+    }
+    
+    private int takeSnapshotsOnShard() {
+        LocalDateTime now = LocalDateTime.now();
+        int written = refoldLateLegs(now.minus(lateLegHorizon));
+        ledgerFoldRepository.deleteFoldedBefore(now.minus(lateLegHorizon));
+        
+        // Only the legs written since the last fold are searched for the new watermark
+        long folded = balanceSnapshotRepository.findFoldedWatermark();
+        long settled = ledgerEntryRepository.findSettledWatermark(folded, now.minus(settleWindow)).orElse(folded);
+        if (settled <= folded) {
+            return written;
+        }
+        ledgerFoldRepository.save(new LedgerFold(null, null, folded, settled,
+                ledgerEntryRepository.countAccountLegs(folded, settled), null, now));
+        return written + ledgerEntryRepository.foldIntoSnapshots(folded, settled);
+    }
+    
+    // Held credits that committed late are released with a pair of legs of their own; the
+    // account legs that did are covered by rebuilding the snapshots of their range. Held
+    // ranges are only rechecked here, once per snapshot run, rather than on every fold.
+    private int refoldLateLegs(LocalDateTime since) {
+        for (LedgerFold overrun : ledgerFoldRepository.findHeldOverrunSince(since)) {
+            Long accountId = overrun.getHeldFor();
+            Money held = Money.ofPaise(ledgerEntryRepository.sumHeld(accountId, overrun.getFromEntryId(), overrun.getUpToEntryId()));
+            ledgerService.releaseHeld(userRepository.getReferenceById(accountId), held.minus(overrun.getEntrySum()));
+            overrun.setEntryCount(ledgerEntryRepository.countHeld(accountId, overrun.getFromEntryId(), overrun.getUpToEntryId()));
+            overrun.setEntrySum(held);
+            log.info("Released credits held for {} that committed late in ({}, {}]",
+                    accountId, overrun.getFromEntryId(), overrun.getUpToEntryId());
+        }
+        int written = 0;
+        for (LedgerFold overrun : ledgerFoldRepository.findOverrunSince(since)) {
+            written += balanceSnapshotRepository.rebuildInRange(overrun.getFromEntryId(), overrun.getUpToEntryId());
+            overrun.setEntryCount(ledgerEntryRepository.countAccountLegs(overrun.getFromEntryId(), overrun.getUpToEntryId()));
+            log.info("Rebuilt snapshots for legs that committed late in ({}, {}]",
+                    overrun.getFromEntryId(), overrun.getUpToEntryId());
+        }
+        return written;
+    }
+    
+    // Releases the credits held for high-volume accounts into their balances, one pair of
+    // legs per account per run. Like snapshots, a fold only covers held legs older than the
+    // settle window, and is recorded so that snapshot runs can release held legs that commit
+    // below it later. Returns the number of accounts whose held credits were released.
+    @Scheduled(fixedDelayString = "${upi.ledger.hot-fold-interval:PT1S}")
+    public int foldHeldCredits() {
+        Set<Long> accountIds = hotAccounts.refresh();
+        int released = 0;
+        for (int shard = 0; shard < shardRouter.shardCount() && !accountIds.isEmpty(); shard++) {
+            released += shardRouter.inTransaction(shard, status -> foldHeldCreditsOnShard(accountIds));
+        }
+        return released;
+    }
+    
+    private int foldHeldCreditsOnShard(Set<Long> accountIds) {
+        LocalDateTime now = LocalDateTime.now();
+        int released = 0;
+        for (Long accountId : accountIds) {
+            if (!shardRouter.isLocal(accountId)) {
+                continue;
+            }
+            CreditFold fold = creditFoldRepository.findById(accountId)
+                    .orElseGet(() -> new CreditFold(accountId, 0L, now));
+            Optional<Long> settled = ledgerEntryRepository.findSettledHeldWatermark(accountId, fold.getLastEntryId(),
+                    now.minus(settleWindow));
+            if (settled.isEmpty()) {
+                continue;
+            }
+            long from = fold.getLastEntryId();
+            long held = ledgerEntryRepository.sumHeld(accountId, from, settled.get());
+            if (held != 0) {
+                ledgerService.releaseHeld(userRepository.getReferenceById(accountId), Money.ofPaise(held));
+                released++;
+            }
+            ledgerFoldRepository.save(new LedgerFold(null, accountId, from, settled.get(),
+                    ledgerEntryRepository.countHeld(accountId, from, settled.get()), Money.ofPaise(held), now));
+            fold.setLastEntryId(settled.get());
+            fold.setFoldedAt(now);
+            creditFoldRepository.save(fold);
+        }
+        return released;
+    }
+    
+    // Each shard must balance on its own: the clearing legs of a cross-shard payment cancel
+    // out within the payer's shard and within the payee's shard. Drifted snapshots are
+    // reported and then rebuilt.
+    @Scheduled(fixedDelayString = "${upi.ledger.reconcile-interval:PT1H}")
+    public ReconciliationReport reconcile() {
+        long legSum = 0;
+        List<Long> unbalanced = new ArrayList<>();
+        List<Long> drifted = new ArrayList<>();
+        for (int shard = 0; shard < shardRouter.shardCount(); shard++) {
+            ReconciliationReport part = shardRouter.inReadOnlyTransaction(shard, status -> new ReconciliationReport(null,
+                    Money.ofPaise(ledgerEntryRepository.sumAllLegs()),
+                    ledgerEntryRepository.findUnbalancedTransactionIds(REPORT_LIMIT),
+                    ledgerEntryRepository.findDriftedSnapshotAccountIds(REPORT_LIMIT)));
+            legSum = Math.addExact(legSum, part.legSum().paise());
+            unbalanced.addAll(part.unbalancedTransactionIds());
+            drifted.addAll(part.driftedSnapshotAccountIds());
+            if (!part.driftedSnapshotAccountIds().isEmpty()) {
+                shardRouter.inTransaction(shard, status -> balanceSnapshotRepository.rebuild(part.driftedSnapshotAccountIds()));
+            }
+        }
+        ReconciliationReport report = new ReconciliationReport(LocalDateTime.now(), Money.ofPaise(legSum), unbalanced, drifted);
+        if (!report.isBalanced()) {
+            log.warn("Ledger out of balance: leg sum {}, unbalanced transactions {}, drifted snapshots {} (rebuilt)",
+                    report.legSum(), unbalanced, drifted);
+        }
+        return report;
+    }
+} 
\ No newline at end of file
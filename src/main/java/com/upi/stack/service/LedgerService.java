@@ -0,0 +1,160 @@
+package com.upi.stack.service;
+
+import com.upi.stack.dto.AccountBalance;
+import com.upi.stack.entity.LedgerEntry;
+import com.upi.stack.entity.Money;
+import com.upi.stack.entity.Transaction;
+import com.upi.stack.entity.User;
+import com.upi.stack.repository.LedgerEntryRepository;
+import com.upi.stack.repository.UserRepository;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+// Double-entry postings over the append-only ledger_entries table. Nothing here updates a
+// balance in place: a payment is two inserted legs, and balances are derived on read from
+// the account's latest snapshot plus the legs written after it (see LedgerMaintenance).
+@Service
+@RequiredArgsConstructor
+public class LedgerService {
+    
+    private final LedgerEntryRepository ledgerEntryRepository;
+    private final AccountLockManager accountLockManager;
+    private final PaymentMetrics paymentMetrics;
+    private final ShardRouter shardRouter;
+    private final HotAccounts hotAccounts;
+    private final UserRepository userRepository;
+    
+    // Appends the debit and credit legs of a payment inside the caller's transaction.
+    // Returns false (writing nothing) when the payer cannot cover the amount.
+    @Transactional(propagation = Propagation.MANDATORY)
+    public boolean post(Transaction transaction, String payerUpiId) {
+        // Only the payer's balance is checked, so only the payer is serialised; the credit
+        // is a plain insert and a busy merchant payee never holds up payments to it. The
+        // stripe lock queues postings within this instance, the row lock across instances.
+        accountLockManager.lockForTransaction(List.of(payerUpiId));
+        userRepository.lockById(transaction.getPayer().getId());
+        
+        long available = paymentMetrics.time(PaymentMetrics.Stage.BALANCE_CHECK,
+                () -> paiseOf(transaction.getPayer().getId()));
+        if (available < transaction.getAmount().paise()) {
+            return false;
+        }
+        append(List.of(transaction));
+        return true;
+    }
+    
+    // Takes the payer locks up front for callers that read balances before posting
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void lockAccounts(Collection<String> upiIds) {
+        accountLockManager.lockForTransaction(upiIds);
+        if (!upiIds.isEmpty()) {
+            userRepository.lockByUpiIdIn(upiIds);
+        }
+    }
+    
+    // Appends the legs of payments the caller has already checked, e.g. the accepted lines
+    // of a batch. Their payers must already be locked through lockAccounts.
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void postAll(Collection<Transaction> transactions) {
+        if (!transactions.isEmpty()) {
+            append(transactions);
+        }
+    }
+    
+    // Sets an account to the given balance with a pair of adjustment legs against the
+    // external account, so the ledger as a whole still sums to zero
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void adjustTo(User account, Money balance) {
+        accountLockManager.lockForTransaction(List.of(account.getUpiId()));
+        userRepository.lockById(account.getId());
+        
+        Money delta = balance.minus(balanceOf(account.getId()));
+        if (delta.signum() != 0) {
+            ledgerEntryRepository.saveAll(List.of(
+                    leg(account, null, LedgerEntry.EntryType.ADJUSTMENT, delta),
+                    leg(null, null, LedgerEntry.EntryType.ADJUSTMENT, delta.negate())));
+        }
+    }
+    
+    // Payee side of a cross-shard payment, written on the payee's shard: the credit is
+    // balanced against the clearing account, which the payer's shard credited with the debit
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void creditTransfer(User payee, Money amount) {
+        ledgerEntryRepository.saveAll(List.of(
+                leg(payee, null, LedgerEntry.EntryType.CREDIT, amount),
+                leg(null, null, LedgerEntry.EntryType.DEBIT, amount.negate())));
+    }
+    
+    // Compensates the payer side of a cross-shard payment whose credit could not be applied
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void reverse(Transaction transaction) {
+        ledgerEntryRepository.saveAll(List.of(
+                leg(transaction.getPayer(), transaction, LedgerEntry.EntryType.REVERSAL, transaction.getAmount()),
+                leg(null, transaction, LedgerEntry.EntryType.REVERSAL, transaction.getAmount().negate())));
+    }
+    
+    // Moves credits held for a high-volume account into its balance: one release leg for the
+    // account, balanced by a release leg that empties the clearing account of the held amount.
+    // The fold moves its watermark past the held legs in the same transaction, so the balance
+    // itself does not change.
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void releaseHeld(User account, Money amount) {
+        ledgerEntryRepository.saveAll(List.of(
+                leg(account, null, LedgerEntry.EntryType.RELEASE, amount),
+                leg(null, null, LedgerEntry.EntryType.RELEASE, amount.negate())));
+    }
+    
+    public Money balanceOf(Long accountId) {
+        return Money.ofPaise(paiseOf(accountId));
+    }
+    
+    public Map<Long, Money> balancesOf(Collection<Long> accountIds) {
+        if (accountIds.isEmpty()) {
+            return Map.of();
+        }
+        return ledgerEntryRepository.findBalances(accountIds).stream()
+                .collect(Collectors.toMap(AccountBalance::accountId, AccountBalance::balance));
+    }
+    
+    private long paiseOf(Long accountId) {
+        return ledgerEntryRepository.findBalance(accountId)
+                .orElseThrow(() -> new RuntimeException("User not found"));
+    }
+    
+    private void append(Collection<Transaction> transactions) {
+        List<LedgerEntry> legs = new ArrayList<>(transactions.size() * 2);
+        for (Transaction transaction : transactions) {
+            Long payeeId = transaction.getPayee().getId();
+            legs.add(leg(transaction.getPayer(), transaction, LedgerEntry.EntryType.DEBIT, transaction.getAmount().negate()));
+            if (!shardRouter.isLocal(payeeId)) {
+                // A payee on another shard is credited there (see ShardTransferService); until
+                // then the amount sits in the clearing account on this shard
+                legs.add(leg(null, transaction, LedgerEntry.EntryType.CREDIT, transaction.getAmount()));
+            } else if (hotAccounts.contains(payeeId)) {
+                // Held for a high-volume payee until the next fold
+                LedgerEntry held = leg(null, transaction, LedgerEntry.EntryType.HELD, transaction.getAmount());
+                held.setHeldFor(payeeId);
+                legs.add(held);
+            } else {
+                legs.add(leg(transaction.getPayee(), transaction, LedgerEntry.EntryType.CREDIT, transaction.getAmount()));
+            }
+        }
+        paymentMetrics.time(PaymentMetrics.Stage.POST_LEGS, () -> ledgerEntryRepository.saveAll(legs));
+    }
+    
+    private LedgerEntry leg(User account, Transaction transaction, LedgerEntry.EntryType entryType, Money amount) {
+        LedgerEntry entry = new LedgerEntry();
+        entry.setAccount(account);
+        entry.setTransaction(transaction);
+        entry.setEntryType(entryType);
+        entry.setAmount(amount);
+        return entry;
+    }
+} 
\ No newline at end of file
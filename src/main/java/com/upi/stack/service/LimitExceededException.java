@@ -0,0 +1,9 @@
+package com.upi.stack.service;
+
+// A payment refused by VelocityLimits before anything was written; the message names the limit
+public class LimitExceededException extends RuntimeException {
+    
+    public LimitExceededException(String limit) {
+        super(limit);
+    }
+} 
\ No newline at end of file
@@ -0,0 +1,30 @@
+package com.upi.stack.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Limit;
+import org.springframework.stereotype.Component;
+
+@Component
+public class Pagination {
+    
+    private final int defaultSize;
+    private final int maxSize;
+    
+    public Pagination(@Value("${upi.pagination.default-size:50}") int defaultSize,
+                      @Value("${upi.pagination.max-size:500}") int maxSize) {
+        this.defaultSize = defaultSize;
+        this.maxSize = maxSize;
+    }
+    
+    public int pageSize(Integer requested) {
+        if (requested == null) {
+            return defaultSize;
+        }
+        return Math.max(1, Math.min(requested, maxSize));
+    }
+    
+    // One row beyond the page tells us whether a next page exists
+    public Limit lookahead(int pageSize) {
+        return Limit.of(pageSize + 1);
+    }
+} 
\ No newline at end of file
@@ -0,0 +1,556 @@
+package com.upi.stack.service;
+
+import com.upi.stack.dto.TransactionDto;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.TransientDataAccessException;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.CannotCreateTransactionException;
+import org.springframework.util.unit.DataSize;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+// Write-behind journal for accepted payments. Records are appended to memory-mapped segment
+// files as [length][crc32c][payload], made durable by a flusher thread that forces everything
+// written so far once per durability window (group commit), and drained into the database
+// in batches by a single drainer thread. A segment is deleted once it is full and every record
+// in it has been applied; whatever is left on disk at startup is replayed, and the applier
+// skips records whose transactionId is already in the database. A record the applier refuses
+// for good is handed to the rejecter instead, and written to the dead-letter file if that
+// fails too; it is never just dropped.
+@Slf4j
+@Component
+public class PaymentJournal {
+    
+    private static final int HEADER_BYTES = 2 * Integer.BYTES;
+    private static final String SEGMENT_PREFIX = "journal-";
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final String DEAD_LETTER_FILE = "dead-letter.log";
+    private static final long RETRY_BACKOFF_MILLIS = 1000;
+    
+    private final boolean enabled;
+    private final Path directory;
+    private final int segmentSize;
+    private final long durabilityWindowNanos;
+    private final int drainBatchSize;
+    private final Duration maxWait;
+    private final Semaphore capacity;
+    
+    private final Map<String, Entry> pending = new ConcurrentHashMap<>();
+    private final BlockingQueue<Entry> ready = new LinkedBlockingQueue<>();
+    
+    private final ReentrantLock appendLock = new ReentrantLock();
+    private Segment active;
+    private long nextSegmentIndex;
+    private volatile long writtenSequence;
+    
+    private final ReentrantLock durableLock = new ReentrantLock();
+    private final Condition workAvailable = durableLock.newCondition();
+    private final Condition durableAdvanced = durableLock.newCondition();
+    private long durableSequence;
+    private RuntimeException failure;
+    
+    private volatile boolean running;
+    private Thread flusher;
+    private Thread drainer;
+    private Function<List<JournalRecord>, Map<String, TransactionDto>> applier;
+    private BiFunction<JournalRecord, RuntimeException, TransactionDto> rejecter;
+    private Consumer<JournalRecord> onSettled;
+    
+    public PaymentJournal(@Value("${upi.journal.enabled:false}") boolean enabled,
+                          @Value("${upi.journal.directory:./data/journal}") String directory,
+                          @Value("${upi.journal.segment-size:64MB}") DataSize segmentSize,
+                          @Value("${upi.journal.durability-window:2ms}") Duration durabilityWindow,
+                          @Value("${upi.journal.drain-batch-size:500}") int drainBatchSize,
+                          @Value("${upi.journal.max-pending:100000}") int maxPending,
+                          @Value("${upi.payments.async.max-wait:30s}") Duration maxWait) {
+        this.enabled = enabled;
+        this.directory = Paths.get(directory);
+        this.segmentSize = Math.toIntExact(segmentSize.toBytes());
+        this.durabilityWindowNanos = durabilityWindow.toNanos();
+        this.drainBatchSize = drainBatchSize;
+        this.capacity = new Semaphore(maxPending);
+        this.maxWait = maxWait;
+    }
+    
+    public boolean isEnabled() {
+        return enabled;
+    }
+    
+    public int backlog() {
+        return pending.size();
+    }
+    
+    // Replays the segments left by earlier runs, opens a fresh one and starts the flusher and
+    // drainer. The applier runs one database transaction per call and returns the resulting
+    // state of every record it inserted. The rejecter stores a record the applier failed on by
+    // itself, with the error, in a transaction of its own and returns its state. onSettled is
+    // called for each record once it has been applied, skipped as a duplicate, rejected or
+    // dead-lettered. Returns the records recovered from disk.
+    public synchronized List<JournalRecord> start(Function<List<JournalRecord>, Map<String, TransactionDto>> applier,
+                                                  BiFunction<JournalRecord, RuntimeException, TransactionDto> rejecter,
+                                                  Consumer<JournalRecord> onSettled) {
+        this.applier = applier;
+        this.rejecter = rejecter;
+        this.onSettled = onSettled;
+        List<Entry> recovered = new ArrayList<>();
+        try {
+            Files.createDirectories(directory);
+            for (Path path : existingSegments()) {
+                nextSegmentIndex = Math.max(nextSegmentIndex, segmentIndex(path) + 1);
+                Segment segment = Segment.open(path, (int) Files.size(path));
+                recovered.addAll(segment.scan());
+                segment.seal();
+            }
+            active = Segment.open(segmentPath(nextSegmentIndex++), segmentSize);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not open payment journal in " + directory, e);
+        }
+        
+        running = true;
+        flusher = startThread("journal-flusher", this::flushLoop);
+        drainer = startThread("journal-drainer", this::drainLoop);
+        if (!recovered.isEmpty()) {
+            log.info("Replaying {} journaled payments from {}", recovered.size(), directory);
+        }
+        for (Entry entry : recovered) {
+            capacity.acquireUninterruptibly();
+            pending.put(entry.record.transactionId(), entry);
+            ready.add(entry);
+        }
+        return recovered.stream().map(entry -> entry.record).toList();
+    }
+    
+    // Returns once the record is on disk. Concurrent appends share one force: a caller waits
+    // at most one durability window plus the force itself. If the journal fails while the
+    // caller waits, the record may still be on disk and is then applied on the next start.
+    public void append(JournalRecord record) {
+        if (!running) {
+            throw new RejectedExecutionException("Payment journal is not accepting payments");
+        }
+        if (!capacity.tryAcquire()) {
+            throw new RejectedExecutionException("Payment journal backlog is full");
+        }
+        
+        Entry entry = null;
+        long sequence;
+        try {
+            byte[] payload = record.encode();
+            CRC32C crc = new CRC32C();
+            crc.update(payload);
+            appendLock.lock();
+            try {
+                if (active.remaining() < HEADER_BYTES + payload.length) {
+                    roll(HEADER_BYTES + payload.length);
+                }
+                entry = new Entry(record, active);
+                active.write(payload, (int) crc.getValue());
+                sequence = ++writtenSequence;
+            } finally {
+                appendLock.unlock();
+            }
+            awaitDurable(sequence);
+        } catch (RuntimeException e) {
+            // The record may still be on disk, but this run will never apply it
+            if (entry != null) {
+                entry.segment.release();
+            }
+            capacity.release();
+            throw e;
+        }
+        
+        pending.put(record.transactionId(), entry);
+        ready.add(entry);
+    }
+    
+    // Accepted but not yet in the database
+    public Optional<TransactionDto> findPending(String transactionId) {
+        return Optional.ofNullable(pending.get(transactionId)).map(entry -> entry.record.toPendingDto());
+    }
+    
+    public boolean isPending(String transactionId) {
+        return pending.containsKey(transactionId);
+    }
+    
+    // Completes with the applied state, or with null if the record is unknown, was a duplicate
+    // or is not applied within the wait
+    public CompletableFuture<TransactionDto> awaitCompletion(String transactionId, Duration wait) {
+        Entry entry = pending.get(transactionId);
+        if (entry == null) {
+            return CompletableFuture.completedFuture(null);
+        }
+        long waitMillis = Math.min(wait.toMillis(), maxWait.toMillis());
+        return entry.completion.copy().completeOnTimeout(null, waitMillis, TimeUnit.MILLISECONDS);
+    }
+    
+    private void roll(int required) {
+        if (required > segmentSize) {
+            throw new IllegalArgumentException("Journal record larger than a segment");
+        }
+        Segment previous = active;
+        try {
+            active = Segment.open(segmentPath(nextSegmentIndex++), segmentSize);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not open journal segment", e);
+        }
+        // Everything in the old segment is forced before the flusher only looks at the new one
+        previous.forceTo(previous.writeOffset);
+        previous.seal();
+    }
+    
+    private void awaitDurable(long sequence) {
+        durableLock.lock();
+        try {
+            workAvailable.signal();
+            while (durableSequence < sequence) {
+                if (failure != null) {
+                    throw new IllegalStateException("Payment journal is unavailable", failure);
+                }
+                durableAdvanced.awaitUninterruptibly();
+            }
+        } finally {
+            durableLock.unlock();
+        }
+    }
+    
+    private void flushLoop() {
+        try {
+            while (running) {
+                durableLock.lock();
+                try {
+                    while (running && writtenSequence <= durableSequence) {
+                        workAvailable.await();
+                    }
+                } finally {
+                    durableLock.unlock();
+                }
+                // Let concurrent appends pile up so one force covers all of them
+                if (durabilityWindowNanos > 0) {
+                    LockSupport.parkNanos(durabilityWindowNanos);
+                }
+                flush();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (RuntimeException e) {
+            log.error("Payment journal flusher failed; rejecting further payments", e);
+            running = false;
+            durableLock.lock();
+            try {
+                failure = e;
+                durableAdvanced.signalAll();
+            } finally {
+                durableLock.unlock();
+            }
+        }
+    }
+    
+    private void flush() {
+        long target;
+        Segment segment;
+        int offset;
+        appendLock.lock();
+        try {
+            target = writtenSequence;
+            segment = active;
+            offset = segment.writeOffset;
+        } finally {
+            appendLock.unlock();
+        }
+        
+        segment.forceTo(offset);
+        durableLock.lock();
+        try {
+            durableSequence = Math.max(durableSequence, target);
+            durableAdvanced.signalAll();
+        } finally {
+            durableLock.unlock();
+        }
+    }
+    
+    private void drainLoop() {
+        List<Entry> batch = new ArrayList<>(drainBatchSize);
+        while (running) {
+            try {
+                Entry first = ready.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                ready.drainTo(batch, drainBatchSize - 1);
+                apply(batch);
+                batch.clear();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+    
+    private void apply(List<Entry> batch) throws InterruptedException {
+        while (true) {
+            try {
+                settle(batch, applier.apply(batch.stream().map(entry -> entry.record).toList()));
+                return;
+            } catch (RuntimeException e) {
+                if (isTransient(e)) {
+                    // The database is unavailable: keep the batch and try again. On shutdown the
+                    // batch is simply left on disk for the next start.
+                    if (!running) {
+                        return;
+                    }
+                    log.warn("Database unavailable while draining the payment journal, retrying", e);
+                    Thread.sleep(RETRY_BACKOFF_MILLIS);
+                } else if (batch.size() > 1) {
+                    // Retry one by one so a single bad record can't hold up the rest
+                    log.warn("Journal batch of {} payments failed, applying them individually", batch.size(), e);
+                    for (Entry entry : batch) {
+                        apply(List.of(entry));
+                    }
+                    return;
+                } else {
+                    reject(batch.get(0), e);
+                    return;
+                }
+            }
+        }
+    }
+    
+    private void reject(Entry entry, RuntimeException cause) {
+        String transactionId = entry.record.transactionId();
+        log.error("Journaled payment {} could not be applied, recording it as failed", transactionId, cause);
+        try {
+            settle(List.of(entry), Collections.singletonMap(transactionId, rejecter.apply(entry.record, cause)));
+            return;
+        } catch (RuntimeException e) {
+            log.error("Could not record journaled payment {} as failed", transactionId, e);
+        }
+        entry.completion.completeExceptionally(cause);
+        try {
+            deadLetter(entry.record);
+            log.error("Journaled payment {} written to {}", transactionId, directory.resolve(DEAD_LETTER_FILE));
+            settle(List.of(entry), Map.of());
+        } catch (IOException e) {
+            // Its segment stays retained, so the record is replayed on the next start
+            log.error("Could not dead-letter journaled payment {}", transactionId, e);
+            pending.remove(transactionId, entry);
+            capacity.release();
+        }
+    }
+    
+    // Same framing as a segment, so dead letters can be read back with the same tooling
+    private void deadLetter(JournalRecord record) throws IOException {
+        byte[] payload = record.encode();
+        CRC32C crc = new CRC32C();
+        crc.update(payload);
+        ByteBuffer frame = ByteBuffer.allocate(HEADER_BYTES + payload.length)
+                .putInt(payload.length).putInt((int) crc.getValue()).put(payload).flip();
+        try (FileChannel channel = FileChannel.open(directory.resolve(DEAD_LETTER_FILE), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            while (frame.hasRemaining()) {
+                channel.write(frame);
+            }
+            channel.force(false);
+        }
+    }
+    
+    private void settle(List<Entry> entries, Map<String, TransactionDto> results) {
+        for (Entry entry : entries) {
+            pending.remove(entry.record.transactionId(), entry);
+            onSettled.accept(entry.record);
+            entry.segment.release();
+            capacity.release();
+            entry.completion.complete(results.get(entry.record.transactionId()));
+        }
+    }
+    
+    private static boolean isTransient(Throwable e) {
+        return e instanceof TransientDataAccessException
+                || e instanceof DataAccessResourceFailureException
+                || e instanceof CannotCreateTransactionException;
+    }
+    
+    private List<Path> existingSegments() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(path -> {
+                        String name = path.getFileName().toString();
+                        return name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX);
+                    })
+                    .sorted(Comparator.comparingLong(PaymentJournal::segmentIndex))
+                    .toList();
+        }
+    }
+    
+    private Path segmentPath(long index) {
+        return directory.resolve(String.format("%s%012d%s", SEGMENT_PREFIX, index, SEGMENT_SUFFIX));
+    }
+    
+    private static long segmentIndex(Path path) {
+        String name = path.getFileName().toString();
+        return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+    }
+    
+    private static Thread startThread(String name, Runnable loop) {
+        Thread thread = new Thread(loop, name);
+        thread.setDaemon(true);
+        thread.start();
+        return thread;
+    }
+    
+    @PreDestroy
+    public synchronized void shutdown() throws InterruptedException {
+        if (!running) {
+            return;
+        }
+        running = false;
+        durableLock.lock();
+        try {
+            workAvailable.signalAll();
+        } finally {
+            durableLock.unlock();
+        }
+        flusher.join(TimeUnit.SECONDS.toMillis(10));
+        drainer.join(TimeUnit.SECONDS.toMillis(10));
+        // Records still pending stay on disk and are replayed on the next start
+        flush();
+        active.seal();
+    }
+    
+    private static final class Entry {
+        
+        final JournalRecord record;
+        final Segment segment;
+        final CompletableFuture<TransactionDto> completion = new CompletableFuture<>();
+        
+        Entry(JournalRecord record, Segment segment) {
+            this.record = record;
+            this.segment = segment;
+            segment.retain();
+        }
+    }
+    
+    private static final class Segment {
+        
+        private final Path path;
+        private final FileChannel channel;
+        private final MappedByteBuffer buffer;
+        
+        // Guarded by the journal's append lock
+        int writeOffset;
+        
+        private int forcedOffset;
+        private int outstanding;
+        private boolean sealed;
+        
+        private Segment(Path path, FileChannel channel, MappedByteBuffer buffer) {
+            this.path = path;
+            this.channel = channel;
+            this.buffer = buffer;
+        }
+        
+        static Segment open(Path path, int size) throws IOException {
+            FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE);
+            return new Segment(path, channel, channel.map(FileChannel.MapMode.READ_WRITE, 0, size));
+        }
+        
+        int remaining() {
+            return buffer.capacity() - writeOffset;
+        }
+        
+        void write(byte[] payload, int crc) {
+            buffer.put(writeOffset + HEADER_BYTES, payload);
+            buffer.putInt(writeOffset + Integer.BYTES, crc);
+            // Length goes in last; a zero length marks the end of the written part
+            buffer.putInt(writeOffset, payload.length);
+            writeOffset += HEADER_BYTES + payload.length;
+        }
+        
+        // Reads records up to the first empty or torn one (bad length or checksum)
+        List<Entry> scan() {
+            List<Entry> entries = new ArrayList<>();
+            int offset = 0;
+            while (offset + HEADER_BYTES <= buffer.capacity()) {
+                int length = buffer.getInt(offset);
+                if (length <= 0 || offset + HEADER_BYTES + length > buffer.capacity()) {
+                    break;
+                }
+                ByteBuffer payload = buffer.slice(offset + HEADER_BYTES, length);
+                CRC32C crc = new CRC32C();
+                crc.update(payload.duplicate());
+                if ((int) crc.getValue() != buffer.getInt(offset + Integer.BYTES)) {
+                    log.warn("Ignoring torn journal record at {}:{}", path.getFileName(), offset);
+                    break;
+                }
+                entries.add(new Entry(JournalRecord.decode(payload), this));
+                offset += HEADER_BYTES + length;
+            }
+            writeOffset = offset;
+            forcedOffset = offset;
+            return entries;
+        }
+        
+        synchronized void forceTo(int offset) {
+            if (offset > forcedOffset) {
+                buffer.force(forcedOffset, offset - forcedOffset);
+                forcedOffset = offset;
+            }
+        }
+        
+        synchronized void retain() {
+            outstanding++;
+        }
+        
+        synchronized void release() {
+            outstanding--;
+            deleteIfDone();
+        }
+        
+        synchronized void seal() {
+            sealed = true;
+            deleteIfDone();
+        }
+        
+        private void deleteIfDone() {
+            if (sealed && outstanding == 0) {
+                try {
+                    channel.close();
+                    Files.deleteIfExists(path);
+                } catch (IOException e) {
+                    log.warn("Could not delete applied journal segment {}", path, e);
+                }
+            }
+        }
+    }
+} 
\ No newline at end of file
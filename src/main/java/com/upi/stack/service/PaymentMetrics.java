@@ -0,0 +1,98 @@
+package com.upi.stack.service;
+
+import com.upi.stack.dto.TransactionDto;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+@Component
+public class PaymentMetrics {
+    
+    public enum Stage {
+        LOOKUP, BALANCE_CHECK, POST_LEGS, PERSIST
+    }
+    
+    // Failure reasons become a tag; cap the distinct series so a stray message can't blow up cardinality
+    private static final int MAX_OUTCOME_SERIES = 200;
+    
+    private final MeterRegistry registry;
+    private final Map<Stage, Timer> stageTimers = new EnumMap<>(Stage.class);
+    private final Map<String, Timer> initiateTimers = new ConcurrentHashMap<>();
+    private final Map<String, Counter> outcomeCounters = new ConcurrentHashMap<>();
+    private final Timer processTimer;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    
+    public PaymentMetrics(MeterRegistry registry) {
+        this.registry = registry;
+        for (Stage stage : Stage.values()) {
+            stageTimers.put(stage, Timer.builder("upi.payment.stage")
+                    .description("Time spent in each stage of a payment")
+                    .tag("stage", stage.name().toLowerCase())
+                    .register(registry));
+        }
+        this.processTimer = Timer.builder("upi.payment.process")
+                .description("Debit, credit and status update of one payment")
+                .register(registry);
+        Gauge.builder("upi.payment.in_flight", inFlight, AtomicInteger::get)
+                .description("Payments currently being initiated")
+                .register(registry);
+    }
+    
+    // Times a whole initiate call and tracks it as in flight while it runs
+    public TransactionDto track(String mode, Supplier<TransactionDto> payment) {
+        Timer timer = initiateTimers.computeIfAbsent(mode, key -> Timer.builder("upi.payment.initiate")
+                .description("End-to-end latency of payment initiation")
+                .tag("mode", key)
+                .register(registry));
+        inFlight.incrementAndGet();
+        Timer.Sample sample = Timer.start(registry);
+        try {
+            return payment.get();
+        } catch (RuntimeException e) {
+            outcome("REJECTED", "PAY", e.getClass().getSimpleName()).increment();
+            throw e;
+        } finally {
+            sample.stop(timer);
+            inFlight.decrementAndGet();
+        }
+    }
+    
+    public <T> T time(Stage stage, Supplier<T> action) {
+        return stageTimers.get(stage).record(action);
+    }
+    
+    public TransactionDto timeProcess(Supplier<TransactionDto> action) {
+        return processTimer.record(action);
+    }
+    
+    public void recordOutcome(TransactionDto transaction) {
+        outcome(transaction.getStatus(), transaction.getType(), transaction.getFailureReason()).increment();
+    }
+    
+    private Counter outcome(String status, String type, String reason) {
+        String reasonTag = reason == null ? "none" : reason;
+        String key = status + '|' + type + '|' + reasonTag;
+        Counter counter = outcomeCounters.get(key);
+        if (counter != null) {
+            return counter;
+        }
+        if (outcomeCounters.size() >= MAX_OUTCOME_SERIES) {
+            reasonTag = "other";
+            key = status + '|' + type + "|other";
+        }
+        String finalReason = reasonTag;
+        return outcomeCounters.computeIfAbsent(key, k -> Counter.builder("upi.payment.outcome")
+                .description("Payments by terminal status, type and failure reason")
+                .tag("status", status)
+                .tag("type", type)
+                .tag("reason", finalReason)
+                .register(registry));
+    }
+} 
\ No newline at end of file
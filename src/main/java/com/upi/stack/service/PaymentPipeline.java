@@ -0,0 +1,130 @@
+package com.upi.stack.service;
+
+import com.upi.stack.dto.TransactionDto;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+// Drives accepted PENDING payments to a terminal state off the request thread. Admission is
+// bounded by a semaphore sized to workers + queue capacity, so a full pipeline is reported to
+// the caller (and the PENDING row rolled back) instead of queueing without limit. Lookups
+// that follow a timed-out wait run on a small bounded pool of their own, so pollers never
+// queue ahead of payments on the workers.
+@Slf4j
+@Component
+public class PaymentPipeline {
+    
+    private final ExecutorService workers;
+    private final ExecutorService lookups;
+    private final Semaphore capacity;
+    private final Map<String, CompletableFuture<TransactionDto>> completions = new ConcurrentHashMap<>();
+    private final Duration maxWait;
+    
+    public PaymentPipeline(@Value("${upi.payments.async.workers:16}") int workerCount,
+                           @Value("${upi.payments.async.queue-capacity:10000}") int queueCapacity,
+                           @Value("${upi.payments.async.max-wait:30s}") Duration maxWait,
+                           @Value("${upi.payments.async.lookup-threads:2}") int lookupThreads,
+                           @Value("${upi.payments.async.lookup-queue-capacity:1000}") int lookupQueueCapacity) {
+        AtomicInteger threadIds = new AtomicInteger();
+        this.workers = new ThreadPoolExecutor(workerCount, workerCount, 0, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(), runnable -> {
+                    Thread thread = new Thread(runnable, "payment-worker-" + threadIds.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        AtomicInteger lookupThreadIds = new AtomicInteger();
+        this.lookups = new ThreadPoolExecutor(lookupThreads, lookupThreads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(lookupQueueCapacity), runnable -> {
+                    Thread thread = new Thread(runnable, "payment-lookup-" + lookupThreadIds.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        this.capacity = new Semaphore(workerCount + queueCapacity);
+        this.maxWait = maxWait;
+    }
+    
+    // Reserves a slot now and hands the work to a worker once the surrounding transaction
+    // commits, so workers never see an uncommitted PENDING row
+    public void dispatchAfterCommit(String transactionId, Supplier<TransactionDto> work) {
+        if (!capacity.tryAcquire()) {
+            throw new RejectedExecutionException("Payment queue is full");
+        }
+        CompletableFuture<TransactionDto> completion = new CompletableFuture<>();
+        completions.put(transactionId, completion);
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                if (status == STATUS_COMMITTED) {
+                    workers.execute(() -> run(transactionId, completion, work));
+                } else {
+                    completions.remove(transactionId, completion);
+                    capacity.release();
+                }
+            }
+        });
+    }
+    
+    // Re-drives a payment found PENDING after a restart; waits for capacity rather than failing
+    public void resume(String transactionId, Supplier<TransactionDto> work) {
+        capacity.acquireUninterruptibly();
+        CompletableFuture<TransactionDto> completion = new CompletableFuture<>();
+        completions.put(transactionId, completion);
+        workers.execute(() -> run(transactionId, completion, work));
+    }
+    
+    // Completes with the terminal state, or with null if it is not reached within the wait
+    public CompletableFuture<TransactionDto> awaitCompletion(String transactionId, Duration wait) {
+        CompletableFuture<TransactionDto> completion = completions.get(transactionId);
+        if (completion == null) {
+            return CompletableFuture.completedFuture(null);
+        }
+        long waitMillis = Math.min(wait.toMillis(), maxWait.toMillis());
+        return completion.copy().completeOnTimeout(null, waitMillis, TimeUnit.MILLISECONDS);
+    }
+    
+    // Runs the lookup that follows a wait off the thread that timed it out. Fails with
+    // RejectedExecutionException when the lookup queue is full.
+    public <T> CompletableFuture<T> lookUp(Supplier<T> lookup) {
+        return CompletableFuture.supplyAsync(lookup, lookups);
+    }
+    
+    public int inFlight() {
+        return completions.size();
+    }
+    
+    private void run(String transactionId, CompletableFuture<TransactionDto> completion,
+                     Supplier<TransactionDto> work) {
+        try {
+            completion.complete(work.get());
+        } catch (RuntimeException e) {
+            log.error("Payment {} could not be completed", transactionId, e);
+            completion.completeExceptionally(e);
+        } finally {
+            completions.remove(transactionId, completion);
+            capacity.release();
+        }
+    }
+    
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        lookups.shutdownNow();
+        workers.shutdown();
+        workers.awaitTermination(10, TimeUnit.SECONDS);
+    }
+} 
\ No newline at end of file
@@ -0,0 +1,501 @@
+package com.upi.stack.service;
+
+import com.upi.stack.config.ShardContext;
+import com.upi.stack.dto.CommittedChanges;
+import com.upi.stack.dto.TransactionView;
+import com.upi.stack.dto.UserDto;
+import com.upi.stack.entity.Transaction;
+import com.upi.stack.entity.Money;
+import com.upi.stack.entity.User;
+import com.upi.stack.repository.TransactionRepository;
+import com.upi.stack.repository.UserRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Limit;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.NavigableSet;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+// In-process query model behind the listing endpoints, so reporting reads never reach the
+// tables payments write to. It is fed the rows each transaction wrote once that transaction
+// has committed (see ChangeFeed) and applies them in commit order on a single thread.
+// Payments are kept newest first in one index for all of them, one per UPI ID and one for
+// each payer's open collect requests; users are kept by id with a running balance built from
+// their ledger legs. At startup, before the web server and the schedulers start, it is built
+// from the primary of every shard. Reads go to the primary instead while it is disabled or
+// further behind the primary than upi.read-model.max-lag.
+// Only payments created within upi.read-model.retention are held. A page that runs past them,
+// for the whole table or for a party that had older payments dropped, is left to the primary.
+// The change feed only carries this instance's writes, so the model is meant for a single
+// instance writing to the database. Rows that reach the tables by another route (another
+// instance, the seeder's or the user import's JDBC batches) are noticed by a probe comparing
+// the highest ids on each shard's primary with the highest applied here: lag counts from the
+// moment a gap is seen, and rows still missing at the next probe are read back from the primary.
+// Updates another instance makes to rows already held are not seen.
+@Slf4j
+@Component
+public class ReadModel implements SmartLifecycle {
+    
+    private static final Comparator<PageCursor> NEWEST_FIRST =
+            Comparator.comparing(PageCursor::createdAt).thenComparingLong(PageCursor::id).reversed();
+    private static final int APPLY_BATCH = 500;
+    
+    private final UserRepository userRepository;
+    private final TransactionRepository transactionRepository;
+    private final ShardRouter shardRouter;
+    private final JdbcTemplate jdbcTemplate;
+    private final boolean enabled;
+    private final Duration maxLag;
+    private final Duration retention;
+    private final Duration probeInterval;
+    
+    private final ConcurrentMap<Long, TransactionView> rows = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Long> rowIds = new ConcurrentHashMap<>();
+    private final NavigableSet<PageCursor> newest = new ConcurrentSkipListSet<>(NEWEST_FIRST);
+    private final ConcurrentMap<String, NavigableSet<PageCursor>> byUpiId = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, NavigableSet<PageCursor>> openCollects = new ConcurrentHashMap<>();
+    // Stored without a balance; the running balance is kept apart so legs can arrive first.
+    // Balances are paise added in place, so applying a leg allocates nothing.
+    private final ConcurrentNavigableMap<Long, UserDto> profiles = new ConcurrentSkipListMap<>();
+    private final ConcurrentMap<Long, AtomicLong> balances = new ConcurrentHashMap<>();
+    // Parties that had payments dropped for their age; a short page of theirs may go on below
+    private final Set<String> trimmedUpiIds = ConcurrentHashMap.newKeySet();
+    private volatile boolean trimmed;
+    private volatile LocalDateTime horizon = LocalDateTime.MIN;
+    
+    // Per shard, touched by the applier thread only: the highest ids applied, and the primary's
+    // highest ids when the last probe found them ahead (0 when it did not)
+    private final long[] appliedTransactionIds;
+    private final long[] appliedUserIds;
+    private final long[] transactionGaps;
+    private final long[] userGaps;
+    private volatile Long behindSince;
+    
+    private final BlockingQueue<CommittedChanges> backlog = new LinkedBlockingQueue<>();
+    private volatile CommittedChanges applying;
+    private volatile boolean ready;
+    private volatile boolean running;
+    private Thread applier;
+    
+    public ReadModel(UserRepository userRepository,
+                     TransactionRepository transactionRepository,
+                     ShardRouter shardRouter,
+                     JdbcTemplate jdbcTemplate,
+                     @Value("${upi.read-model.enabled:false}") boolean enabled,
+                     @Value("${upi.read-model.max-lag:5s}") Duration maxLag,
+                     @Value("${upi.read-model.retention:P7D}") Duration retention,
+                     @Value("${upi.read-model.probe-interval:1s}") Duration probeInterval) {
+        this.userRepository = userRepository;
+        this.transactionRepository = transactionRepository;
+        this.shardRouter = shardRouter;
+        this.jdbcTemplate = jdbcTemplate;
+        this.enabled = enabled;
+        this.maxLag = maxLag;
+        this.retention = retention;
+        this.probeInterval = probeInterval;
+        this.appliedTransactionIds = new long[shardRouter.shardCount()];
+        this.appliedUserIds = new long[shardRouter.shardCount()];
+        this.transactionGaps = new long[shardRouter.shardCount()];
+        this.userGaps = new long[shardRouter.shardCount()];
+    }
+    
+    public boolean isServing() {
+        return ready && lag().compareTo(maxLag) <= 0;
+    }
+    
+    // Age of the oldest committed change not applied yet, or of the oldest gap the probe found
+    // between the primary and the model if that is older; zero when fully caught up
+    public Duration lag() {
+        CommittedChanges oldest = applying;
+        if (oldest == null) {
+            oldest = backlog.peek();
+        }
+        long now = System.nanoTime();
+        Duration lag = oldest == null ? Duration.ZERO : Duration.ofNanos(now - oldest.committedAtNanos());
+        Long gapSeen = behindSince;
+        if (gapSeen != null && now - gapSeen > lag.toNanos()) {
+            return Duration.ofNanos(now - gapSeen);
+        }
+        return lag;
+    }
+    
+    public int backlog() {
+        return backlog.size();
+    }
+    
+    @EventListener
+    public void onCommitted(CommittedChanges changes) {
+        if (enabled) {
+            backlog.add(changes);
+        }
+    }
+    
+    // Pages come back with the same lookahead row as the repository queries they replace, or
+    // empty when the primary may hold more of the page than the model
+    public Optional<List<TransactionView>> findPage(PageCursor after, Limit limit) {
+        return complete(page(newest, after, limit), limit, trimmed);
+    }
+    
+    public Optional<List<TransactionView>> findPageByUpiId(String upiId, PageCursor after, Limit limit) {
+        return complete(page(byUpiId.get(upiId), after, limit), limit, trimmedUpiIds.contains(upiId));
+    }
+    
+    // A request past its deadline is left out even before the expiry job has cancelled it
+    public Optional<List<TransactionView>> findOpenCollects(String payerUpiId, LocalDateTime now, PageCursor after,
+                                                            Limit limit) {
+        NavigableSet<PageCursor> open = openCollects.get(payerUpiId);
+        List<TransactionView> page = open == null ? List.of() : open.tailSet(after, false).stream()
+                .map(key -> rows.get(key.id()))
+                .filter(view -> view != null && view.expiresAt().isAfter(now))
+                .limit(limit.max())
+                .collect(Collectors.toList());
+        return complete(page, limit, trimmedUpiIds.contains(payerUpiId));
+    }
+    
+    public Optional<TransactionView> findByTransactionId(String transactionId) {
+        return Optional.ofNullable(rowIds.get(transactionId)).map(rows::get);
+    }
+    
+    // Empty once older payments have been dropped: the whole history is only on the primary
+    public Optional<Stream<TransactionView>> streamAll() {
+        return trimmed ? Optional.empty() : Optional.of(newest.stream().map(key -> rows.get(key.id())).filter(Objects::nonNull));
+    }
+    
+    public Optional<Stream<TransactionView>> streamByUpiId(String upiId) {
+        if (trimmedUpiIds.contains(upiId)) {
+            return Optional.empty();
+        }
+        NavigableSet<PageCursor> index = byUpiId.get(upiId);
+        return Optional.of(index == null ? Stream.empty() : index.stream().map(key -> rows.get(key.id())).filter(Objects::nonNull));
+    }
+    
+    public List<UserDto> findProfilesAfter(long id, Limit limit) {
+        return profiles.tailMap(id, false).values().stream()
+                .limit(limit.max())
+                .map(this::withBalance)
+                .collect(Collectors.toList());
+    }
+    
+    public Stream<UserDto> streamProfiles() {
+        return profiles.values().stream().map(this::withBalance);
+    }
+    
+    @Override
+    public void start() {
+        if (enabled) {
+            long started = System.currentTimeMillis();
+            load();
+            applier = new Thread(this::applyCommitted, "read-model");
+            applier.setDaemon(true);
+            applier.start();
+            ready = true;
+            log.info("Read model loaded {} users and {} payments in {} ms", profiles.size(), rows.size(),
+                    System.currentTimeMillis() - started);
+        }
+        running = true;
+    }
+    
+    @Override
+    public void stop() {
+        ready = false;
+        running = false;
+        if (applier != null) {
+            applier.interrupt();
+        }
+    }
+    
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+    
+    // Ahead of the web server's phase, so no request can write while the model is loaded
+    @Override
+    public int getPhase() {
+        return 0;
+    }
+    
+    private void load() {
+        horizon = LocalDateTime.now().minus(retention);
+        for (int shard = 0; shard < shardRouter.shardCount(); shard++) {
+            int target = shard;
+            long before = shardRouter.isSharded() ? ShardContext.idRangeEnd(target) : Long.MAX_VALUE;
+            shardRouter.inReadOnlyTransaction(target, status -> {
+                try (Stream<UserDto> users = userRepository.streamProfiles(ShardContext.idRangeStart(target), before)) {
+                    users.forEach(this::storeProfile);
+                }
+                try (Stream<TransactionView> payments = transactionRepository.streamAll()) {
+                    payments.forEach(this::storeLoaded);
+                }
+                return null;
+            });
+        }
+    }
+    
+    private void applyCommitted() {
+        List<CommittedChanges> batch = new ArrayList<>(APPLY_BATCH);
+        long probed = System.nanoTime();
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                CommittedChanges first = backlog.poll(probeInterval.toMillis(), TimeUnit.MILLISECONDS);
+                if (first != null) {
+                    batch.add(first);
+                }
+            } catch (InterruptedException e) {
+                return;
+            }
+            backlog.drainTo(batch, APPLY_BATCH - 1);
+            for (CommittedChanges committed : batch) {
+                applying = committed;
+                try {
+                    committed.changes().forEach(this::apply);
+                } catch (RuntimeException e) {
+                    log.error("Could not apply {} committed changes to the read model", committed.changes().size(), e);
+                }
+            }
+            applying = null;
+            batch.clear();
+            if (System.nanoTime() - probed >= probeInterval.toNanos()) {
+                probed = System.nanoTime();
+                try {
+                    trim();
+                    probe();
+                } catch (RuntimeException e) {
+                    log.error("Could not compare the read model with the primary", e);
+                }
+            }
+        }
+    }
+    
+    // Drops payments created before the retention window, oldest first. Parties are marked
+    // before their rows go, so a reader never takes a page cut short by the drop as complete.
+    private void trim() {
+        LocalDateTime cutoff = LocalDateTime.now().minus(retention);
+        horizon = cutoff;
+        while (!newest.isEmpty() && newest.last().createdAt().isBefore(cutoff)) {
+            PageCursor key = newest.last();
+            TransactionView view = rows.get(key.id());
+            markTrimmed(view);
+            newest.remove(key);
+            byUpiId.get(view.payerUpiId()).remove(key);
+            byUpiId.get(view.payeeUpiId()).remove(key);
+            if (openCollects.containsKey(view.payerUpiId())) {
+                openCollects.get(view.payerUpiId()).remove(key);
+            }
+            rowIds.remove(view.transactionId());
+            rows.remove(view.id());
+        }
+    }
+    
+    // Plain JDBC: two primary key lookups per shard, with no persistence context needed
+    private void probe() {
+        boolean behind = false;
+        for (int shard = 0; shard < shardRouter.shardCount(); shard++) {
+            int target = shard;
+            long after = ShardContext.idRangeStart(target);
+            long before = shardRouter.isSharded() ? ShardContext.idRangeEnd(target) : Long.MAX_VALUE;
+            long[] highest = shardRouter.on(target, () -> new long[] {
+                maxId("transactions", after, before), maxId("users", after, before)
+            });
+            if (transactionGaps[target] > appliedTransactionIds[target]) {
+                catchUpTransactions(target, before);
+            }
+            if (userGaps[target] > appliedUserIds[target]) {
+                catchUpUsers(target, before);
+            }
+            transactionGaps[target] = highest[0] > appliedTransactionIds[target] ? highest[0] : 0;
+            userGaps[target] = highest[1] > appliedUserIds[target] ? highest[1] : 0;
+            behind |= transactionGaps[target] != 0 || userGaps[target] != 0;
+        }
+        if (!behind) {
+            behindSince = null;
+        } else if (behindSince == null) {
+            behindSince = System.nanoTime();
+        }
+    }
+    
+    private long maxId(String table, long after, long before) {
+        Long max = jdbcTemplate.queryForObject("SELECT MAX(id) FROM " + table + " WHERE id > ? AND id < ?",
+                Long.class, after, before);
+        return max == null ? 0 : max;
+    }
+    
+    private void catchUpTransactions(int shard, long before) {
+        long after = appliedTransactionIds[shard];
+        int read = shardRouter.inReadOnlyTransaction(shard, status -> {
+            try (Stream<TransactionView> payments = transactionRepository.streamAfterId(after, before)) {
+                return (int) payments.filter(view -> !rows.containsKey(view.id())).peek(this::storeLoaded).count();
+            }
+        });
+        if (read > 0) {
+            log.warn("Read {} payments on shard {} that did not come through this instance's change feed", read, shard);
+        }
+    }
+    
+    private void catchUpUsers(int shard, long before) {
+        long after = appliedUserIds[shard];
+        int read = shardRouter.inReadOnlyTransaction(shard, status -> {
+            try (Stream<UserDto> users = userRepository.streamProfiles(after, before)) {
+                return (int) users.filter(user -> !profiles.containsKey(user.getId())).peek(this::storeProfile).count();
+            }
+        });
+        if (read > 0) {
+            log.warn("Read {} users on shard {} that did not come through this instance's change feed", read, shard);
+        }
+    }
+    
+    private void apply(CommittedChanges.Change change) {
+        if (change instanceof CommittedChanges.TransactionChange transaction) {
+            apply(transaction);
+        } else if (change instanceof CommittedChanges.UserChange user) {
+            UserDto profile = new UserDto(user.id(), user.upiId(), user.name(), user.phoneNumber(), user.email(), (BigDecimal) null,
+                    user.bankName(), user.accountNumber(), user.ifscCode());
+            if (profiles.put(user.id(), profile) == null) {
+                addToBalance(user.id(), user.openingBalance());
+            }
+            advance(appliedUserIds, user.id());
+        } else if (change instanceof CommittedChanges.BalanceChange balance) {
+            addToBalance(balance.accountId(), balance.amount());
+        }
+    }
+    
+    // Changes of one row can arrive out of order when two transactions touching it commit
+    // close together, so a stale state never overwrites a newer one. The first createdAt seen
+    // stays the row's index key: a row read back from the database has it truncated.
+    private void apply(CommittedChanges.TransactionChange change) {
+        TransactionView current = rows.get(change.id());
+        advance(appliedTransactionIds, change.id());
+        if (current == null && change.createdAt().isBefore(horizon)) {
+            return;
+        }
+        if (current != null && (change.updatedAt().isBefore(current.updatedAt())
+                || (change.status() == Transaction.TransactionStatus.PENDING
+                    && current.status() != Transaction.TransactionStatus.PENDING))) {
+            return;
+        }
+        TransactionView view = new TransactionView(change.id(), change.transactionId(),
+                current != null ? current.payerUpiId() : upiIdOf(change.payerId()),
+                current != null ? current.payeeUpiId() : upiIdOf(change.payeeId()),
+                change.amount(), change.description(), change.status(), change.type(),
+                current != null ? current.createdAt() : change.createdAt(),
+                change.updatedAt(), change.failureReason(), change.expiresAt());
+        store(view, current);
+    }
+    
+    // A row read from the primary: older than the retention window it only marks its parties
+    private void storeLoaded(TransactionView view) {
+        advance(appliedTransactionIds, view.id());
+        if (view.createdAt().isBefore(horizon)) {
+            markTrimmed(view);
+        } else {
+            store(view, null);
+        }
+    }
+    
+    private void storeProfile(UserDto user) {
+        profiles.put(user.getId(), withoutBalance(user));
+        balances.putIfAbsent(user.getId(), new AtomicLong(Money.of(user.getBalance()).paise()));
+        advance(appliedUserIds, user.getId());
+    }
+    
+    private void markTrimmed(TransactionView view) {
+        trimmedUpiIds.add(view.payerUpiId());
+        trimmedUpiIds.add(view.payeeUpiId());
+        trimmed = true;
+    }
+    
+    private void advance(long[] applied, long id) {
+        int shard = shardRouter.shardOf(id);
+        if (shard < applied.length && id > applied[shard]) {
+            applied[shard] = id;
+        }
+    }
+    
+    private void store(TransactionView view, TransactionView current) {
+        PageCursor key = new PageCursor(view.createdAt(), view.id());
+        rows.put(view.id(), view);
+        if (current == null) {
+            rowIds.put(view.transactionId(), view.id());
+            newest.add(key);
+            index(byUpiId, view.payerUpiId()).add(key);
+            index(byUpiId, view.payeeUpiId()).add(key);
+        }
+        if (view.type() == Transaction.TransactionType.COLLECT) {
+            if (view.status() == Transaction.TransactionStatus.PENDING) {
+                index(openCollects, view.payerUpiId()).add(key);
+            } else if (openCollects.containsKey(view.payerUpiId())) {
+                openCollects.get(view.payerUpiId()).remove(key);
+            }
+        }
+    }
+    
+    // Parties are normally known from their own earlier commits; one created a moment before
+    // the payment may not have been applied yet and is looked up on its shard
+    private String upiIdOf(Long accountId) {
+        UserDto profile = profiles.get(accountId);
+        if (profile != null) {
+            return profile.getUpiId();
+        }
+        return shardRouter.on(shardRouter.shardOf(accountId), () -> userRepository.findById(accountId))
+                .map(User::getUpiId)
+                .orElseThrow(() -> new RuntimeException("User not found"));
+    }
+    
+    private List<TransactionView> page(NavigableSet<PageCursor> index, PageCursor after, Limit limit) {
+        if (index == null) {
+            return List.of();
+        }
+        return index.tailSet(after, false).stream()
+                .limit(limit.max())
+                .map(key -> rows.get(key.id()))
+                .filter(Objects::nonNull)
+                .collect(Collectors.toList());
+    }
+    
+    // A full page only holds rows newer than anything dropped; a short one may continue below
+    private static Optional<List<TransactionView>> complete(List<TransactionView> page, Limit limit, boolean trimmed) {
+        return page.size() == limit.max() || !trimmed ? Optional.of(page) : Optional.empty();
+    }
+    
+    private void addToBalance(Long accountId, Money amount) {
+        balances.computeIfAbsent(accountId, id -> new AtomicLong()).accumulateAndGet(amount.paise(), Math::addExact);
+    }
+    
+    private NavigableSet<PageCursor> index(ConcurrentMap<String, NavigableSet<PageCursor>> indexes, String upiId) {
+        return indexes.computeIfAbsent(upiId, key -> new ConcurrentSkipListSet<>(NEWEST_FIRST));
+    }
+    
+    private UserDto withBalance(UserDto profile) {
+        UserDto dto = withoutBalance(profile);
+        AtomicLong balance = balances.get(profile.getId());
+        dto.setBalance(Money.ofPaise(balance == null ? 0 : balance.get()).toBigDecimal());
+        return dto;
+    }
+    
+    private UserDto withoutBalance(UserDto user) {
+        return new UserDto(user.getId(), user.getUpiId(), user.getName(), user.getPhoneNumber(), user.getEmail(), (BigDecimal) null,
+                user.getBankName(), user.getAccountNumber(), user.getIfscCode());
+    }
+} 
\ No newline at end of file
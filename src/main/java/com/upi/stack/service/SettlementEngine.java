@@ -0,0 +1,423 @@
+package com.upi.stack.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.upi.stack.dto.CommittedChanges;
+import com.upi.stack.dto.SettlementAudit;
+import com.upi.stack.dto.SettlementReport;
+import com.upi.stack.entity.Money;
+import com.upi.stack.entity.Transaction;
+import com.upi.stack.repository.TransactionRepository;
+import com.upi.stack.repository.UserRepository;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+// Inter-bank settlement positions per (payer bank, payee bank), kept up to date from the
+// committed changes of ChangeFeed rather than by scanning payments. Cycles are fixed windows
+// of upi.settlement.cycle counted from the epoch, numbered by how many came before. A payment
+// lands in the cycle in which it became SUCCESS; one that leaves SUCCESS again (a compensated
+// cross-shard transfer) is taken back out in the cycle of that change. A cycle closes
+// settle-window after it ends, so commits still in flight at its end are counted, and its
+// report is kept for the last history-size cycles. A change for a cycle already closed is
+// only logged and counted.
+//
+// Any cycle can also be recomputed from its transactions rows for audit: each shard's id range
+// for the cycle is split into chunks summed in the database by a fork-join pool. A recompute
+// sees the final state of each row, so it leaves out a payment reversed in a later cycle that
+// the kept report still counts. At startup the open cycles are rebuilt the same way from the
+// rows written before the application started.
+@Slf4j
+@Component
+public class SettlementEngine {
+    
+    static final String UNKNOWN_BANK = "UNKNOWN";
+    
+    private static final Comparator<SettlementReport.PairPosition> PAIR_ORDER =
+            Comparator.comparing(SettlementReport.PairPosition::payerBank)
+                    .thenComparing(SettlementReport.PairPosition::payeeBank);
+    
+    private final TransactionRepository transactionRepository;
+    private final UserRepository userRepository;
+    private final ShardRouter shardRouter;
+    private final boolean enabled;
+    private final long cycleMillis;
+    private final long settleMillis;
+    private final int historySize;
+    private final long recomputeChunk;
+    private final ForkJoinPool recomputePool;
+    // Changes handled live are made after this; older ones come from the warm load
+    private final long startedAt = System.currentTimeMillis();
+    
+    private final ConcurrentMap<Long, Cycle> open = new ConcurrentHashMap<>();
+    private final Deque<SettlementReport> history = new ArrayDeque<>();
+    private final LongAdder lateChanges = new LongAdder();
+    // Cycles before this one are closed
+    private volatile long nextToClose;
+    // Account id -> bank, for counterparties a change only names by id
+    private final Cache<Long, String> banks = Caffeine.newBuilder().maximumSize(100_000).build();
+    
+    public SettlementEngine(TransactionRepository transactionRepository,
+                            UserRepository userRepository,
+                            ShardRouter shardRouter,
+                            @Value("${upi.settlement.enabled:true}") boolean enabled,
+                            @Value("${upi.settlement.cycle:PT30M}") Duration cycle,
+                            @Value("${upi.settlement.settle-window:PT1M}") Duration settleWindow,
+                            @Value("${upi.settlement.history-size:48}") int historySize,
+                            @Value("${upi.settlement.recompute-threads:4}") int recomputeThreads,
+                            @Value("${upi.settlement.recompute-chunk:100000}") long recomputeChunk) {
+        this.transactionRepository = transactionRepository;
+        this.userRepository = userRepository;
+        this.shardRouter = shardRouter;
+        this.enabled = enabled;
+        this.cycleMillis = cycle.toMillis();
+        this.settleMillis = settleWindow.toMillis();
+        this.historySize = historySize;
+        this.recomputeChunk = Math.max(recomputeChunk, 1);
+        this.recomputePool = new ForkJoinPool(Math.max(recomputeThreads, 1));
+        this.nextToClose = cycleOf(startedAt - settleMillis);
+    }
+    
+    public long currentCycle() {
+        return cycleOf(System.currentTimeMillis());
+    }
+    
+    // Positions so far of an open cycle, or the kept report of a closed one
+    public SettlementReport report(long cycle) {
+        return kept(cycle).orElseThrow(() ->
+                new RuntimeException("Settlement cycle " + cycle + " is no longer kept; recompute it instead"));
+    }
+    
+    // Kept reports of closed cycles, newest first
+    public List<SettlementReport> closedReports() {
+        synchronized (history) {
+            return new ArrayList<>(history);
+        }
+    }
+    
+    public SettlementAudit audit(long cycle) {
+        if (cycle > currentCycle()) {
+            throw new RuntimeException("Settlement cycle " + cycle + " has not started");
+        }
+        long started = System.currentTimeMillis();
+        long until = Math.min(startOf(cycle + 1), started);
+        SettlementReport recomputed = report(cycle, recompute(timeOf(startOf(cycle)), timeOf(until)).values(),
+                until == startOf(cycle + 1) && cycle < nextToClose);
+        SettlementReport kept = kept(cycle).orElse(null);
+        boolean matches = kept != null && kept.pairs().equals(recomputed.pairs());
+        if (kept != null && !matches) {
+            log.warn("Settlement cycle {} differs from its transactions: kept {}, recomputed {}",
+                    cycle, kept.pairs(), recomputed.pairs());
+        }
+        return new SettlementAudit(cycle, matches, System.currentTimeMillis() - started, kept, recomputed);
+    }
+    
+    public int openCycles() {
+        return open.size();
+    }
+    
+    public long lateChanges() {
+        return lateChanges.sum();
+    }
+    
+    @EventListener
+    public void onCommitted(CommittedChanges committed) {
+        if (!enabled) {
+            return;
+        }
+        for (CommittedChanges.Change change : committed.changes()) {
+            if (change instanceof CommittedChanges.UserChange user) {
+                banks.put(user.id(), bankOf(user.ifscCode()));
+            } else if (change instanceof CommittedChanges.TransactionChange transaction) {
+                boolean succeeded = transaction.status() == Transaction.TransactionStatus.SUCCESS;
+                if (succeeded != (transaction.previousStatus() == Transaction.TransactionStatus.SUCCESS)) {
+                    settle(transaction, succeeded ? 1 : -1);
+                }
+            }
+        }
+    }
+    
+    // Rebuilds the open cycles from every shard. Changes handled live in the meantime were
+    // made after startedAt and are left out of the load.
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmUp() {
+        if (!enabled) {
+            return;
+        }
+        long payments = 0;
+        for (long cycle = nextToClose; cycle <= cycleOf(startedAt); cycle++) {
+            Cycle target = openCycle(cycle);
+            if (target == null) {
+                continue;
+            }
+            for (SettlementReport.PairPosition position : recompute(timeOf(startOf(cycle)),
+                    timeOf(Math.min(startOf(cycle + 1), startedAt))).values()) {
+                target.add(new BankPair(position.payerBank(), position.payeeBank()), position.amount().paise(),
+                        position.payments());
+                payments += position.payments();
+            }
+        }
+        log.info("Settlement positions warmed up from {} payments of the open cycles", payments);
+    }
+    
+    // Returns the number of cycles closed by this run
+    @Scheduled(fixedDelayString = "${upi.settlement.close-interval:PT10S}")
+    public int closeDueCycles() {
+        if (!enabled) {
+            return 0;
+        }
+        int closed = 0;
+        synchronized (history) {
+            long now = System.currentTimeMillis();
+            while (startOf(nextToClose + 1) + settleMillis <= now) {
+                long cycle = nextToClose;
+                // Moved on first, so a change racing the close cannot open the cycle again
+                nextToClose = cycle + 1;
+                Cycle due = open.remove(cycle);
+                SettlementReport report = report(cycle, due == null ? List.of() : due.close(), true);
+                history.addFirst(report);
+                while (history.size() > historySize) {
+                    history.removeLast();
+                }
+                if (report.payments() > 0) {
+                    log.info("Settlement cycle {} closed: {} payments, gross {}, net {}", cycle, report.payments(),
+                            report.grossAmount(), report.netAmount());
+                }
+                closed++;
+            }
+        }
+        return closed;
+    }
+    
+    @PreDestroy
+    public void shutdown() {
+        recomputePool.shutdown();
+    }
+    
+    private void settle(CommittedChanges.TransactionChange transaction, int sign) {
+        long cycle = cycleOf(transaction.updatedAt().atZone(ZoneId.systemDefault()).toInstant().toEpochMilli());
+        Cycle target = openCycle(cycle);
+        BankPair pair = new BankPair(bankOf(transaction.payerId()), bankOf(transaction.payeeId()));
+        if (target == null || !target.add(pair, sign * transaction.amount().paise(), sign)) {
+            lateChanges.increment();
+            log.warn("Payment {} changed to {} after settlement cycle {} closed", transaction.transactionId(),
+                    transaction.status(), cycle);
+        }
+    }
+    
+    // null once the cycle has closed
+    private Cycle openCycle(long cycle) {
+        Cycle target = open.get(cycle);
+        if (target == null) {
+            target = open.computeIfAbsent(cycle, key -> key < nextToClose ? null : new Cycle());
+        }
+        return target;
+    }
+    
+    private Optional<SettlementReport> kept(long cycle) {
+        if (cycle >= nextToClose) {
+            Cycle current = open.get(cycle);
+            return Optional.of(report(cycle, current == null ? List.of() : current.positions(), false));
+        }
+        synchronized (history) {
+            return history.stream().filter(report -> report.cycle() == cycle).findFirst();
+        }
+    }
+    
+    // A payment counts in the window it succeeded in, which is when its row was last updated,
+    // however long it was pending before
+    private Map<BankPair, SettlementReport.PairPosition> recompute(LocalDateTime from, LocalDateTime until) {
+        List<ForkJoinTask<Map<BankPair, SettlementReport.PairPosition>>> shards = new ArrayList<>();
+        for (int shard = 0; shard < shardRouter.shardCount(); shard++) {
+            Optional<Long> fromId = shardRouter.on(shard, () -> transactionRepository.findMinIdUpdated(from, until));
+            Optional<Long> toId = shardRouter.on(shard, () -> transactionRepository.findMaxIdUpdated(from, until));
+            if (fromId.isPresent() && toId.isPresent()) {
+                shards.add(recomputePool.submit(new Chunk(shard, fromId.get(), toId.get(), from, until)));
+            }
+        }
+        Map<BankPair, SettlementReport.PairPosition> positions = new HashMap<>();
+        for (ForkJoinTask<Map<BankPair, SettlementReport.PairPosition>> shard : shards) {
+            mergeInto(positions, shard.join());
+        }
+        return positions;
+    }
+    
+    private SettlementReport report(long cycle, Collection<SettlementReport.PairPosition> positions, boolean closed) {
+        List<SettlementReport.PairPosition> pairs = positions.stream()
+                .filter(position -> position.payments() != 0)
+                .sorted(PAIR_ORDER)
+                .toList();
+        long payments = 0;
+        long gross = 0;
+        Map<String, Money> paid = new TreeMap<>();
+        Map<String, Money> received = new TreeMap<>();
+        for (SettlementReport.PairPosition pair : pairs) {
+            payments += pair.payments();
+            if (pair.payerBank().equals(pair.payeeBank())) {
+                continue;
+            }
+            gross = Math.addExact(gross, pair.amount().paise());
+            paid.merge(pair.payerBank(), pair.amount(), Money::plus);
+            paid.putIfAbsent(pair.payeeBank(), Money.ZERO);
+            received.merge(pair.payeeBank(), pair.amount(), Money::plus);
+        }
+        long net = 0;
+        List<SettlementReport.BankPosition> bankPositions = new ArrayList<>(paid.size());
+        for (Map.Entry<String, Money> bank : paid.entrySet()) {
+            Money bankReceived = received.getOrDefault(bank.getKey(), Money.ZERO);
+            Money bankNet = bankReceived.minus(bank.getValue());
+            if (bankNet.signum() > 0) {
+                net = Math.addExact(net, bankNet.paise());
+            }
+            bankPositions.add(new SettlementReport.BankPosition(bank.getKey(), bank.getValue(), bankReceived, bankNet));
+        }
+        return new SettlementReport(cycle, timeOf(startOf(cycle)), timeOf(startOf(cycle + 1) + settleMillis), closed,
+                payments, Money.ofPaise(gross), Money.ofPaise(net), pairs, bankPositions);
+    }
+    
+    private String bankOf(Long accountId) {
+        return banks.get(accountId, id -> bankOf(shardRouter.on(shardRouter.shardOf(id),
+                () -> userRepository.findIfscCodeById(id)).orElse(null)));
+    }
+    
+    // The first four letters of an IFSC code name the bank
+    private static String bankOf(String ifscCode) {
+        return ifscCode == null || ifscCode.length() < 4 ? UNKNOWN_BANK : ifscCode.substring(0, 4);
+    }
+    
+    private static void mergeInto(Map<BankPair, SettlementReport.PairPosition> positions,
+                                  Map<BankPair, SettlementReport.PairPosition> more) {
+        more.forEach((pair, position) -> positions.merge(pair, position, (left, right) ->
+                new SettlementReport.PairPosition(left.payerBank(), left.payeeBank(), left.amount().plus(right.amount()),
+                        left.payments() + right.payments())));
+    }
+    
+    private long cycleOf(long epochMillis) {
+        return Math.floorDiv(epochMillis, cycleMillis);
+    }
+    
+    private long startOf(long cycle) {
+        return cycle * cycleMillis;
+    }
+    
+    private static LocalDateTime timeOf(long epochMillis) {
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(epochMillis), ZoneId.systemDefault());
+    }
+    
+    private record BankPair(String payerBank, String payeeBank) {
+    }
+    
+    // Positions of an open cycle. Adding takes the read lock, so adds never wait on each other;
+    // closing takes the write lock, after which nothing more is added.
+    private static final class Cycle {
+        
+        private final ConcurrentMap<BankPair, Position> positions = new ConcurrentHashMap<>();
+        private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+        private boolean closed;
+        
+        // Returns false once the cycle has closed
+        boolean add(BankPair pair, long paise, long payments) {
+            lock.readLock().lock();
+            try {
+                if (closed) {
+                    return false;
+                }
+                Position position = positions.get(pair);
+                if (position == null) {
+                    position = positions.computeIfAbsent(pair, key -> new Position());
+                }
+                position.paise.add(paise);
+                position.payments.add(payments);
+                return true;
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+        
+        List<SettlementReport.PairPosition> close() {
+            lock.writeLock().lock();
+            try {
+                closed = true;
+                return positions();
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+        
+        List<SettlementReport.PairPosition> positions() {
+            List<SettlementReport.PairPosition> result = new ArrayList<>(positions.size());
+            positions.forEach((pair, position) -> result.add(new SettlementReport.PairPosition(pair.payerBank(),
+                    pair.payeeBank(), Money.ofPaise(position.paise.sum()), position.payments.sum())));
+            return result;
+        }
+    }
+    
+    private static final class Position {
+        
+        private final LongAdder paise = new LongAdder();
+        private final LongAdder payments = new LongAdder();
+    }
+    
+    // Sums one shard's id range, halving it until a chunk is at most recompute-chunk ids; each
+    // chunk is one grouped query, so rows never leave the database
+    private final class Chunk extends RecursiveTask<Map<BankPair, SettlementReport.PairPosition>> {
+        
+        private final int shard;
+        private final long fromId;
+        private final long toId;
+        private final LocalDateTime from;
+        private final LocalDateTime until;
+        
+        Chunk(int shard, long fromId, long toId, LocalDateTime from, LocalDateTime until) {
+            this.shard = shard;
+            this.fromId = fromId;
+            this.toId = toId;
+            this.from = from;
+            this.until = until;
+        }
+        
+        @Override
+        protected Map<BankPair, SettlementReport.PairPosition> compute() {
+            if (toId - fromId < recomputeChunk) {
+                Map<BankPair, SettlementReport.PairPosition> positions = new HashMap<>();
+                for (SettlementReport.PairPosition position : shardRouter.on(shard, () -> transactionRepository
+                        .sumSettlementPositions(fromId, toId, Transaction.TransactionStatus.SUCCESS, from, until))) {
+                    positions.put(new BankPair(position.payerBank(), position.payeeBank()), position);
+                }
+                return positions;
+            }
+            long middle = fromId + (toId - fromId) / 2;
+            Chunk lower = new Chunk(shard, fromId, middle, from, until);
+            lower.fork();
+            Map<BankPair, SettlementReport.PairPosition> positions =
+                    new Chunk(shard, middle + 1, toId, from, until).compute();
+            mergeInto(positions, lower.join());
+            return positions;
+        }
+    }
+} 
\ No newline at end of file
@@ -0,0 +1,147 @@
+package com.upi.stack.service;
+
+import com.upi.stack.config.ShardContext;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntFunction;
+import java.util.function.Supplier;
+
+// Decides which shard a user, account or row lives on and runs work against it. Users are
+// placed by a hash of their UPI ID; every row generated on a shard carries an id from that
+// shard's range (see ShardContext). With sharding disabled there is a single shard and every
+// method here runs its work inline.
+@Component
+public class ShardRouter {
+    
+    private final int shardCount;
+    private final TransactionTemplate transactions;
+    private final TransactionTemplate readOnlyTransactions;
+    private final ExecutorService fanOutPool;
+    
+    public ShardRouter(PlatformTransactionManager transactionManager,
+                       @Value("${upi.sharding.enabled:false}") boolean enabled,
+                       @Value("${upi.sharding.urls:}") List<String> urls,
+                       @Value("${upi.sharding.fan-out-threads:16}") int fanOutThreads) {
+        this.shardCount = enabled ? urls.size() : 1;
+        this.transactions = new TransactionTemplate(transactionManager);
+        this.readOnlyTransactions = new TransactionTemplate(transactionManager);
+        this.readOnlyTransactions.setReadOnly(true);
+        AtomicInteger threadIds = new AtomicInteger();
+        this.fanOutPool = Executors.newFixedThreadPool(fanOutThreads, runnable -> {
+            Thread thread = new Thread(runnable, "shard-fan-out-" + threadIds.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+    
+    public int shardCount() {
+        return shardCount;
+    }
+    
+    public boolean isSharded() {
+        return shardCount > 1;
+    }
+    
+    // Unknown (null) UPI IDs go to shard 0, where the lookup fails like any other miss
+    public int shardFor(String upiId) {
+        if (shardCount == 1 || upiId == null) {
+            return 0;
+        }
+        int h = upiId.hashCode();
+        return Math.floorMod(h ^ (h >>> 16), shardCount);
+    }
+    
+    public int shardOf(long id) {
+        return shardCount == 1 ? 0 : ShardContext.shardOf(id);
+    }
+    
+    public int currentShard() {
+        return ShardContext.current();
+    }
+    
+    // Whether the account lives on the shard the current thread is working on
+    public boolean isLocal(long accountId) {
+        return shardOf(accountId) == currentShard();
+    }
+    
+    // Runs non-transactional work, typically a lookup, against a shard. A thread already inside
+    // a transaction on another shard cannot switch, so the work runs on a fan-out thread instead
+    // and never joins the caller's transaction.
+    public <T> T on(int shard, Supplier<T> work) {
+        if (shard == currentShard()) {
+            return work.get();
+        }
+        if (TransactionSynchronizationManager.isActualTransactionActive()) {
+            return join(CompletableFuture.supplyAsync(() -> switchTo(shard, work), fanOutPool));
+        }
+        return switchTo(shard, work);
+    }
+    
+    public <T> T inTransaction(int shard, TransactionCallback<T> work) {
+        return transactional(shard, transactions, work);
+    }
+    
+    public <T> T inReadOnlyTransaction(int shard, TransactionCallback<T> work) {
+        return transactional(shard, readOnlyTransactions, work);
+    }
+    
+    // Runs the work against every shard in parallel; results come back in shard order
+    public <T> List<T> fanOut(IntFunction<T> work) {
+        if (shardCount == 1) {
+            return List.of(on(0, () -> work.apply(0)));
+        }
+        List<CompletableFuture<T>> futures = new ArrayList<>(shardCount);
+        for (int shard = 0; shard < shardCount; shard++) {
+            int target = shard;
+            futures.add(CompletableFuture.supplyAsync(() -> switchTo(target, () -> work.apply(target)), fanOutPool));
+        }
+        List<T> results = new ArrayList<>(shardCount);
+        for (CompletableFuture<T> future : futures) {
+            results.add(join(future));
+        }
+        return results;
+    }
+    
+    private <T> T transactional(int shard, TransactionTemplate template, TransactionCallback<T> work) {
+        if (shard != currentShard() && TransactionSynchronizationManager.isActualTransactionActive()) {
+            throw new IllegalStateException("Cannot open a transaction on shard " + shard +
+                    " inside a transaction on shard " + currentShard());
+        }
+        return switchTo(shard, () -> template.execute(work));
+    }
+    
+    private <T> T switchTo(int shard, Supplier<T> work) {
+        int previous = ShardContext.current();
+        ShardContext.set(shard);
+        try {
+            return work.get();
+        } finally {
+            ShardContext.set(previous);
+        }
+    }
+    
+    private <T> T join(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            throw e.getCause() instanceof RuntimeException cause ? cause : e;
+        }
+    }
+    
+    @PreDestroy
+    public void shutdown() {
+        fanOutPool.shutdown();
+    }
+} 
\ No newline at end of file
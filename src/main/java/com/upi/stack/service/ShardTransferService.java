@@ -0,0 +1,228 @@
+package com.upi.stack.service;
+
+import com.upi.stack.entity.ShardTransfer;
+import com.upi.stack.entity.Transaction;
+import com.upi.stack.entity.User;
+import com.upi.stack.repository.ShardTransferRepository;
+import com.upi.stack.repository.TransactionRepository;
+import com.upi.stack.repository.UserRepository;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.TransientDataAccessException;
+import org.springframework.data.domain.Limit;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.CannotCreateTransactionException;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Saga for payments whose payer and payee live on different shards. The payer's shard debits
+// the payer against its clearing account and records an OUTBOUND transfer in the same local
+// transaction. Once that commits, the payee's shard credits the payee against its own clearing
+// account, and the transfer is closed as CREDITED. If the credit cannot be applied the debit is
+// compensated: the payer is refunded with reversal legs and the payment ends FAILED, or
+// CANCELLED when the payee account no longer exists. Transfers still PENDING after a crash or
+// a transient failure are picked up again by retryPendingTransfers.
+@Slf4j
+@Service
+public class ShardTransferService {
+    
+    private static final int RETRY_BATCH = 500;
+    
+    private final ShardTransferRepository shardTransferRepository;
+    private final TransactionRepository transactionRepository;
+    private final UserRepository userRepository;
+    private final LedgerService ledgerService;
+    private final ShardRouter shardRouter;
+    private final ExecutorService settlers;
+    private final Set<String> settling = ConcurrentHashMap.newKeySet();
+    private final Duration retryAfter;
+    
+    public ShardTransferService(ShardTransferRepository shardTransferRepository,
+                                TransactionRepository transactionRepository,
+                                UserRepository userRepository,
+                                LedgerService ledgerService,
+                                ShardRouter shardRouter,
+                                @Value("${upi.sharding.transfer-workers:4}") int workerCount,
+                                @Value("${upi.sharding.transfer-retry-after:30s}") Duration retryAfter) {
+        this.shardTransferRepository = shardTransferRepository;
+        this.transactionRepository = transactionRepository;
+        this.userRepository = userRepository;
+        this.ledgerService = ledgerService;
+        this.shardRouter = shardRouter;
+        this.retryAfter = retryAfter;
+        AtomicInteger threadIds = new AtomicInteger();
+        this.settlers = Executors.newFixedThreadPool(workerCount, runnable -> {
+            Thread thread = new Thread(runnable, "shard-transfer-" + threadIds.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+    
+    // Makes a payee from another shard referenceable by payments on the current one
+    @Transactional(propagation = Propagation.MANDATORY)
+    public User counterparty(VpaEntry payee) {
+        if (!userRepository.existsById(payee.accountId())) {
+            userRepository.upsertCounterparty(payee.accountId(), payee.upiId(), payee.name(), payee.phoneNumber(),
+                    payee.email(), payee.bankName(), payee.accountNumber(), payee.ifscCode());
+        }
+        return userRepository.getReferenceById(payee.accountId());
+    }
+    
+    // Records the transfer inside the payer's transaction, after its legs have been posted,
+    // and starts crediting the payee once that transaction commits
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void open(Transaction transaction) {
+        ShardTransfer transfer = new ShardTransfer();
+        transfer.setTransactionId(transaction.getTransactionId());
+        transfer.setDirection(ShardTransfer.Direction.OUTBOUND);
+        transfer.setPayerAccountId(transaction.getPayer().getId());
+        transfer.setPayeeAccountId(transaction.getPayee().getId());
+        transfer.setAmount(transaction.getAmount());
+        transfer.setStatus(ShardTransfer.TransferStatus.PENDING);
+        shardTransferRepository.save(transfer);
+        
+        int payerShard = shardRouter.currentShard();
+        String transactionId = transaction.getTransactionId();
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                try {
+                    settlers.execute(() -> settleQuietly(payerShard, transactionId));
+                } catch (RejectedExecutionException e) {
+                    log.warn("Transfer {} left for the retry job", transactionId);
+                }
+            }
+        });
+    }
+    
+    // Drives a PENDING transfer to CREDITED or COMPENSATED. Safe to repeat: a credit that
+    // already happened is recognised by the INBOUND row on the payee's shard.
+    public void settle(int payerShard, String transactionId) {
+        if (!settling.add(transactionId)) {
+            return;
+        }
+        try {
+            Optional<ShardTransfer> pending = shardRouter.inReadOnlyTransaction(payerShard,
+                    status -> shardTransferRepository.findByTransactionId(transactionId))
+                    .filter(transfer -> transfer.getStatus() == ShardTransfer.TransferStatus.PENDING);
+            if (pending.isEmpty()) {
+                return;
+            }
+            ShardTransfer transfer = pending.get();
+            int payeeShard = shardRouter.shardOf(transfer.getPayeeAccountId());
+            
+            boolean credited;
+            try {
+                credited = shardRouter.inTransaction(payeeShard, status -> credit(transfer));
+            } catch (TransientDataAccessException | CannotCreateTransactionException e) {
+                log.warn("Credit for transfer {} failed, will retry: {}", transactionId, e.getMessage());
+                return;
+            } catch (RuntimeException e) {
+                // A failure reported late may still have committed; only compensate once the
+                // payee's shard confirms it has no record of the credit
+                if (!shardRouter.on(payeeShard, () -> shardTransferRepository.existsByTransactionId(transactionId))) {
+                    compensate(payerShard, transactionId, Transaction.TransactionStatus.FAILED,
+                            "Credit to payee failed: " + e.getMessage());
+                    return;
+                }
+                credited = true;
+            }
+            
+            if (credited) {
+                shardRouter.inTransaction(payerShard, status -> {
+                    shardTransferRepository.findForUpdate(transactionId)
+                            .filter(outbound -> outbound.getStatus() == ShardTransfer.TransferStatus.PENDING)
+                            .ifPresent(outbound -> outbound.setStatus(ShardTransfer.TransferStatus.CREDITED));
+                    return null;
+                });
+            } else {
+                compensate(payerShard, transactionId, Transaction.TransactionStatus.CANCELLED, "Payee account not found");
+            }
+        } finally {
+            settling.remove(transactionId);
+        }
+    }
+    
+    @Scheduled(fixedDelayString = "${upi.sharding.transfer-retry-interval:PT30S}")
+    public void retryPendingTransfers() {
+        if (!shardRouter.isSharded()) {
+            return;
+        }
+        LocalDateTime createdBefore = LocalDateTime.now().minus(retryAfter);
+        for (int shard = 0; shard < shardRouter.shardCount(); shard++) {
+            int payerShard = shard;
+            List<String> transactionIds = shardRouter.inReadOnlyTransaction(payerShard, status ->
+                    shardTransferRepository.findTransactionIds(ShardTransfer.Direction.OUTBOUND,
+                            ShardTransfer.TransferStatus.PENDING, createdBefore, Limit.of(RETRY_BATCH)));
+            transactionIds.forEach(transactionId -> settleQuietly(payerShard, transactionId));
+        }
+    }
+    
+    // Runs on the payee's shard
+    private boolean credit(ShardTransfer outbound) {
+        if (shardTransferRepository.existsByTransactionId(outbound.getTransactionId())) {
+            return true;
+        }
+        Optional<User> payee = userRepository.findById(outbound.getPayeeAccountId());
+        if (payee.isEmpty()) {
+            return false;
+        }
+        ShardTransfer inbound = new ShardTransfer();
+        inbound.setTransactionId(outbound.getTransactionId());
+        inbound.setDirection(ShardTransfer.Direction.INBOUND);
+        inbound.setPayerAccountId(outbound.getPayerAccountId());
+        inbound.setPayeeAccountId(outbound.getPayeeAccountId());
+        inbound.setAmount(outbound.getAmount());
+        inbound.setStatus(ShardTransfer.TransferStatus.CREDITED);
+        // The unique transactionId turns a concurrent second credit into a constraint violation
+        shardTransferRepository.saveAndFlush(inbound);
+        ledgerService.creditTransfer(payee.get(), outbound.getAmount());
+        return true;
+    }
+    
+    private void compensate(int payerShard, String transactionId, Transaction.TransactionStatus outcome, String reason) {
+        shardRouter.inTransaction(payerShard, status -> {
+            Optional<ShardTransfer> outbound = shardTransferRepository.findForUpdate(transactionId)
+                    .filter(transfer -> transfer.getStatus() == ShardTransfer.TransferStatus.PENDING);
+            if (outbound.isEmpty()) {
+                return null;
+            }
+            Transaction transaction = transactionRepository.findForProcessing(transactionId)
+                    .orElseThrow(() -> new RuntimeException("Transaction not found"));
+            ledgerService.reverse(transaction);
+            transaction.setStatus(outcome);
+            transaction.setFailureReason(reason);
+            transactionRepository.save(transaction);
+            outbound.get().setStatus(ShardTransfer.TransferStatus.COMPENSATED);
+            return null;
+        });
+        log.warn("Transfer {} compensated: {}", transactionId, reason);
+    }
+    
+    private void settleQuietly(int payerShard, String transactionId) {
+        try {
+            settle(payerShard, transactionId);
+        } catch (RuntimeException e) {
+            log.error("Transfer {} could not be settled, will retry", transactionId, e);
+        }
+    }
+    
+    @PreDestroy
+    public void shutdown() {
+        settlers.shutdown();
+    }
+} 
\ No newline at end of file
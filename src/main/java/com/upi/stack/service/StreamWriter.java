@@ -0,0 +1,94 @@
+package com.upi.stack.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SequenceWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import jakarta.persistence.EntityManager;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.converter.cbor.MappingJackson2CborHttpMessageConverter;
+import org.springframework.stereotype.Component;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.Iterator;
+import java.util.function.Function;
+import java.util.function.IntFunction;
+import java.util.stream.Stream;
+
+@Component
+@RequiredArgsConstructor
+public class StreamWriter {
+    
+    // NDJSON is one JSON document per line; CBOR is a CBOR sequence (RFC 8742), items
+    // written back to back with nothing between them
+    public enum Format {
+        NDJSON, CBOR
+    }
+    
+    // Matches the fetch size hinted on the streaming queries
+    static final int FLUSH_EVERY = 500;
+    
+    private final ObjectMapper objectMapper;
+    private final MappingJackson2CborHttpMessageConverter cborHttpMessageConverter;
+    private final EntityManager entityManager;
+    private final ShardRouter shardRouter;
+    
+    // Writes one document per row straight from a database cursor, opened on each shard in
+    // turn inside its own read-only transaction. Rows come out newest first within a shard.
+    // The persistence context is cleared as we go so memory stays flat however many rows are
+    // streamed.
+    public <T> void write(Format format, IntFunction<Stream<T>> rowsOnShard, Function<T, ?> mapper, OutputStream out)
+            throws IOException {
+        SequenceWriter writer = writer(format).writeValues(out);
+        try {
+            for (int shard = 0; shard < shardRouter.shardCount(); shard++) {
+                int target = shard;
+                shardRouter.inReadOnlyTransaction(target, status -> {
+                    try (Stream<T> rows = rowsOnShard.apply(target)) {
+                        write(rows, mapper, writer);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                    return null;
+                });
+            }
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        writer.flush();
+    }
+    
+    // Same format for rows that are already in memory, e.g. served by the read model
+    public <T> void write(Format format, Stream<T> rows, Function<T, ?> mapper, OutputStream out) throws IOException {
+        SequenceWriter writer = writer(format).writeValues(out);
+        Iterator<T> iterator = rows.iterator();
+        int written = 0;
+        while (iterator.hasNext()) {
+            writer.write(mapper.apply(iterator.next()));
+            if (++written % FLUSH_EVERY == 0) {
+                writer.flush();
+            }
+        }
+        writer.flush();
+    }
+    
+    private ObjectWriter writer(Format format) {
+        ObjectWriter writer = format == Format.CBOR
+                ? cborHttpMessageConverter.getObjectMapper().writer()
+                : objectMapper.writer().withRootValueSeparator("\n");
+        return writer.without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+    }
+    
+    private <T> void write(Stream<T> rows, Function<T, ?> mapper, SequenceWriter writer) throws IOException {
+        Iterator<T> iterator = rows.iterator();
+        int written = 0;
+        while (iterator.hasNext()) {
+            writer.write(mapper.apply(iterator.next()));
+            if (++written % FLUSH_EVERY == 0) {
+                writer.flush();
+                entityManager.clear();
+            }
+        }
+    }
+} 
\ No newline at end of file
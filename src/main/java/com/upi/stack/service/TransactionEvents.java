@@ -0,0 +1,396 @@
+package com.upi.stack.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.upi.stack.dto.CommittedChanges;
+import com.upi.stack.dto.TransactionDto;
+import com.upi.stack.repository.UserRepository;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.http.MediaType;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Server-sent events of the payments of a UPI ID, fed by the committed changes of ChangeFeed,
+// so a client hears of a status change only once it has committed. A subscription is an
+// async request: while idle it holds a connection and a few small objects, never a thread.
+// An account's events go through a channel that lives while the account has subscribers and
+// for upi.events.history-idle after the last one leaves. The channel keeps its last
+// history-size events, so a client that reconnects with Last-Event-ID is sent what it missed.
+// A Last-Event-ID older than that, or from before a restart, gets a reset event instead, and
+// the client should re-read /api/transactions/user/{upiId}. Each subscriber has its own queue
+// of at most buffer-size events, drained by a small shared pool. A subscriber that falls
+// further behind is disconnected and can resume the same way. So is one whose client has not
+// taken a write within write-timeout: the send blocks a dispatcher until the socket gives up,
+// so the pool gets a spare thread for as long as it is stuck. Event ids start from the startup
+// time in microseconds, so they keep growing across restarts.
+@Slf4j
+@Component
+public class TransactionEvents {
+    
+    static final String TRANSACTION_EVENT = "transaction";
+    static final String RESET_EVENT = "reset";
+    
+    private static final Event HEARTBEAT = new Event(0, null, null);
+    
+    private final UserRepository userRepository;
+    private final VpaDirectory vpaDirectory;
+    private final ShardRouter shardRouter;
+    private final boolean enabled;
+    private final int bufferSize;
+    private final int historySize;
+    private final long historyIdleMillis;
+    private final long timeoutMillis;
+    private final long writeTimeoutMillis;
+    private final int dispatchThreads;
+    private final ThreadPoolExecutor dispatchers;
+    
+    private final AtomicLong lastEventId = new AtomicLong(System.currentTimeMillis() * 1000);
+    private final ConcurrentMap<Long, Channel> channels = new ConcurrentHashMap<>();
+    private final AtomicInteger subscribers = new AtomicInteger();
+    // Dispatchers blocked in a send to a disconnected subscriber
+    private int stalledSends;
+    // Account id -> UPI ID of counterparties, which a change only names by id
+    private final Cache<Long, String> upiIds = Caffeine.newBuilder().maximumSize(100_000).build();
+    
+    public TransactionEvents(UserRepository userRepository,
+                             VpaDirectory vpaDirectory,
+                             ShardRouter shardRouter,
+                             @Value("${upi.events.enabled:true}") boolean enabled,
+                             @Value("${upi.events.dispatch-threads:4}") int dispatchThreads,
+                             @Value("${upi.events.buffer-size:256}") int bufferSize,
+                             @Value("${upi.events.history-size:64}") int historySize,
+                             @Value("${upi.events.history-idle:PT10M}") Duration historyIdle,
+                             @Value("${upi.events.timeout:PT1H}") Duration timeout,
+                             @Value("${upi.events.write-timeout:PT10S}") Duration writeTimeout) {
+        this.userRepository = userRepository;
+        this.vpaDirectory = vpaDirectory;
+        this.shardRouter = shardRouter;
+        this.enabled = enabled;
+        this.historySize = historySize;
+        // A resumed subscriber must fit the whole history in its queue
+        this.bufferSize = Math.max(bufferSize, historySize + 1);
+        this.historyIdleMillis = historyIdle.toMillis();
+        this.timeoutMillis = timeout.toMillis();
+        this.writeTimeoutMillis = writeTimeout.toMillis();
+        this.dispatchThreads = dispatchThreads;
+        AtomicInteger threadIds = new AtomicInteger();
+        // Up to as many spare threads again while sends are stalled
+        this.dispatchers = new ThreadPoolExecutor(dispatchThreads, dispatchThreads * 2, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), runnable -> {
+                    Thread thread = new Thread(runnable, "transaction-events-" + threadIds.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+    }
+    
+    // lastEventId is the Last-Event-ID header of a reconnecting client, or null
+    public SseEmitter subscribe(String upiId, String lastEventId) {
+        if (!enabled) {
+            throw new RuntimeException("Transaction events are disabled");
+        }
+        VpaEntry account = vpaDirectory.resolve(upiId).orElseThrow(() -> new RuntimeException("User not found"));
+        Long lastSeen = parseEventId(lastEventId);
+        upiIds.put(account.accountId(), account.upiId());
+        
+        SseEmitter emitter = new SseEmitter(timeoutMillis);
+        Subscriber subscriber = new Subscriber(emitter);
+        channels.compute(account.accountId(), (id, channel) -> {
+            Channel joined = channel != null ? channel : new Channel();
+            joined.subscribe(subscriber, lastSeen);
+            subscriber.channel = joined;
+            return joined;
+        });
+        subscribers.incrementAndGet();
+        emitter.onCompletion(subscriber::close);
+        emitter.onTimeout(subscriber::close);
+        emitter.onError(error -> subscriber.close());
+        // Sends the response headers right away
+        subscriber.offer(HEARTBEAT);
+        return emitter;
+    }
+    
+    public int subscribers() {
+        return subscribers.get();
+    }
+    
+    public int channels() {
+        return channels.size();
+    }
+    
+    @EventListener
+    public void onCommitted(CommittedChanges committed) {
+        if (channels.isEmpty()) {
+            return;
+        }
+        for (CommittedChanges.Change change : committed.changes()) {
+            if (change instanceof CommittedChanges.TransactionChange transaction) {
+                publish(transaction.payerId(), transaction);
+                if (!transaction.payeeId().equals(transaction.payerId())) {
+                    publish(transaction.payeeId(), transaction);
+                }
+            }
+        }
+    }
+    
+    // Keeps idle connections open through proxies and finds the ones whose client has gone;
+    // channels idle for history-idle are dropped with their history
+    @Scheduled(fixedDelayString = "${upi.events.heartbeat:PT30S}")
+    public void heartbeat() {
+        long cutoff = System.currentTimeMillis() - historyIdleMillis;
+        for (Long accountId : channels.keySet()) {
+            channels.computeIfPresent(accountId, (id, channel) -> channel.heartbeat(cutoff) ? channel : null);
+        }
+    }
+    
+    // Disconnects subscribers whose current send has been blocked for write-timeout
+    @Scheduled(fixedDelayString = "${upi.events.write-check:PT1S}")
+    public void disconnectStalled() {
+        long cutoff = System.currentTimeMillis() - writeTimeoutMillis;
+        for (Channel channel : channels.values()) {
+            for (Subscriber member : channel.members) {
+                member.disconnectIfStalled(cutoff);
+            }
+        }
+    }
+    
+    @PreDestroy
+    public void shutdown() {
+        dispatchers.shutdown();
+    }
+    
+    private synchronized void sendStalled(boolean stalled) {
+        stalledSends += stalled ? 1 : -1;
+        dispatchers.setCorePoolSize(dispatchThreads + Math.min(stalledSends, dispatchThreads));
+    }
+    
+    private void publish(Long accountId, CommittedChanges.TransactionChange change) {
+        Channel channel = channels.get(accountId);
+        if (channel != null) {
+            channel.publish(change);
+        }
+    }
+    
+    private Long parseEventId(String eventId) {
+        if (eventId == null || eventId.isBlank()) {
+            return null;
+        }
+        try {
+            return Long.parseLong(eventId.trim());
+        } catch (NumberFormatException e) {
+            // Not one of ours; treated as too old to resume from
+            return 0L;
+        }
+    }
+    
+    private TransactionDto toDto(CommittedChanges.TransactionChange change) {
+        return new TransactionDto(change.id(), change.transactionId(), upiIdOf(change.payerId()), upiIdOf(change.payeeId()),
+                change.amount().toBigDecimal(), change.description(), change.status().name(), change.type().name(), change.createdAt(),
+                change.updatedAt(), change.failureReason(), change.expiresAt());
+    }
+    
+    private String upiIdOf(Long accountId) {
+        return upiIds.get(accountId, id -> shardRouter.on(shardRouter.shardOf(id), () -> userRepository.findUpiIdById(id))
+                .orElse(null));
+    }
+    
+    // name is null for a heartbeat
+    private record Event(long id, String name, CommittedChanges.TransactionChange change) {
+    }
+    
+    // Events of one account. Ids are taken under the channel's lock, so its history and every
+    // subscriber queue see them in id order.
+    private final class Channel {
+        
+        private final ArrayDeque<Event> history = new ArrayDeque<>();
+        // A member can leave from inside publish, when its queue overflows
+        private final List<Subscriber> members = new CopyOnWriteArrayList<>();
+        // Every event of the account with a greater id is still in history
+        private long coveredFrom = lastEventId.get();
+        private long idleSince;
+        
+        synchronized void publish(CommittedChanges.TransactionChange change) {
+            Event event = new Event(lastEventId.incrementAndGet(), TRANSACTION_EVENT, change);
+            history.addLast(event);
+            if (history.size() > historySize) {
+                coveredFrom = history.removeFirst().id();
+            }
+            for (Subscriber member : members) {
+                member.offer(event);
+            }
+        }
+        
+        synchronized void subscribe(Subscriber subscriber, Long lastSeen) {
+            if (lastSeen != null) {
+                if (lastSeen >= coveredFrom && lastSeen <= lastEventId.get()) {
+                    for (Event event : history) {
+                        if (event.id() > lastSeen) {
+                            subscriber.offer(event);
+                        }
+                    }
+                } else {
+                    subscriber.offer(new Event(lastEventId.get(), RESET_EVENT, null));
+                }
+            }
+            members.add(subscriber);
+        }
+        
+        synchronized void unsubscribe(Subscriber subscriber) {
+            if (members.remove(subscriber) && members.isEmpty()) {
+                idleSince = System.currentTimeMillis();
+            }
+        }
+        
+        // Returns false once the channel has had no subscribers since cutoff
+        synchronized boolean heartbeat(long cutoff) {
+            if (members.isEmpty()) {
+                return idleSince >= cutoff;
+            }
+            for (Subscriber member : members) {
+                member.offer(HEARTBEAT);
+            }
+            return true;
+        }
+    }
+    
+    // Events waiting for one connection. Queued events are counted apart from the lock-free
+    // queue, and at most one dispatcher drains a subscriber at a time. Only that dispatcher
+    // touches the emitter: a send blocked on the client holds the emitter's lock, so a
+    // disconnect is completed by the drain once the send returns.
+    private final class Subscriber {
+        
+        private final SseEmitter emitter;
+        private final Queue<Event> queue = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger queued = new AtomicInteger();
+        private final AtomicBoolean draining = new AtomicBoolean();
+        private final AtomicBoolean closed = new AtomicBoolean();
+        private final AtomicBoolean completed = new AtomicBoolean();
+        private volatile boolean disconnecting;
+        private volatile Channel channel;
+        // When the send in progress started, or 0; guarded by this
+        private long sendingSince;
+        private boolean stalled;
+        
+        Subscriber(SseEmitter emitter) {
+            this.emitter = emitter;
+        }
+        
+        void offer(Event event) {
+            if (closed.get()) {
+                return;
+            }
+            if (queued.incrementAndGet() > bufferSize) {
+                log.debug("Disconnecting a transaction event subscriber more than {} events behind", bufferSize);
+                disconnect();
+                return;
+            }
+            queue.add(event);
+            if (draining.compareAndSet(false, true)) {
+                dispatchers.execute(this::drain);
+            }
+        }
+        
+        void close() {
+            if (closed.compareAndSet(false, true)) {
+                subscribers.decrementAndGet();
+                if (channel != null) {
+                    channel.unsubscribe(this);
+                }
+            }
+        }
+        
+        void disconnectIfStalled(long cutoff) {
+            synchronized (this) {
+                if (stalled || sendingSince == 0 || sendingSince > cutoff) {
+                    return;
+                }
+                stalled = true;
+            }
+            log.debug("Disconnecting a transaction event subscriber that took no write for {} ms", writeTimeoutMillis);
+            sendStalled(true);
+            disconnect();
+        }
+        
+        private void disconnect() {
+            disconnecting = true;
+            close();
+            if (draining.compareAndSet(false, true)) {
+                dispatchers.execute(this::drain);
+            }
+        }
+        
+        private void drain() {
+            do {
+                Event event;
+                while (!closed.get() && (event = queue.poll()) != null) {
+                    queued.decrementAndGet();
+                    send(event);
+                }
+                if (disconnecting && completed.compareAndSet(false, true)) {
+                    emitter.complete();
+                }
+                draining.set(false);
+            } while (hasWork() && draining.compareAndSet(false, true));
+        }
+        
+        private boolean hasWork() {
+            return closed.get() ? disconnecting && !completed.get() : !queue.isEmpty();
+        }
+        
+        private void send(Event event) {
+            synchronized (this) {
+                sendingSince = System.currentTimeMillis();
+            }
+            try {
+                write(event);
+            } finally {
+                boolean wasStalled;
+                synchronized (this) {
+                    sendingSince = 0;
+                    wasStalled = stalled;
+                    stalled = false;
+                }
+                if (wasStalled) {
+                    sendStalled(false);
+                }
+            }
+        }
+        
+        private void write(Event event) {
+            try {
+                if (event.name() == null) {
+                    emitter.send(SseEmitter.event().comment(""));
+                } else if (event.change() == null) {
+                    emitter.send(SseEmitter.event().id(Long.toString(event.id())).name(event.name()).data(""));
+                } else {
+                    emitter.send(SseEmitter.event().id(Long.toString(event.id())).name(event.name())
+                            .data(toDto(event.change()), MediaType.APPLICATION_JSON));
+                }
+            } catch (IOException | IllegalStateException e) {
+                close();
+            } catch (RuntimeException e) {
+                log.warn("Could not send transaction event {}", event.id(), e);
+                disconnecting = true;
+                close();
+            }
+        }
+    }
+} 
\ No newline at end of file
@@ -0,0 +1,8 @@
+package com.upi.stack.service;
+
+// Source of the public transaction reference stored in transactions.transaction_id.
+// Selected with upi.transaction-id.strategy (time-ordered by default, or uuid).
+public interface TransactionIdGenerator {
+    
+    String nextId();
+} 
\ No newline at end of file
@@ -1,118 +1,711 @@
 package com.upi.stack.service;
 
+import com.upi.stack.dto.CursorPage;
 import com.upi.stack.dto.TransactionDto;
+import com.upi.stack.dto.TransactionView;
+import com.upi.stack.entity.Money;
 import com.upi.stack.entity.Transaction;
 import com.upi.stack.entity.User;
 import com.upi.stack.repository.TransactionRepository;
 import com.upi.stack.repository.UserRepository;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
 import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Limit;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
-import java.math.BigDecimal;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
-import java.util.UUID;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
 
 @Service
 @RequiredArgsConstructor
 public class TransactionService {
     
+    private static final Comparator<TransactionView> NEWEST_FIRST =
+            Comparator.comparing(TransactionView::createdAt).thenComparing(TransactionView::id).reversed();
+    
     private final TransactionRepository transactionRepository;
     private final UserRepository userRepository;
-    private final UserService userService;
+    private final LedgerService ledgerService;
+    private final VpaDirectory vpaDirectory;
+    private final IdempotencyService idempotencyService;
+    private final ShardRouter shardRouter;
+    private final ShardTransferService shardTransferService;
+    private final PaymentPipeline paymentPipeline;
+    private final PaymentMetrics paymentMetrics;
+    private final Validator validator;
+    private final Pagination pagination;
+    private final StreamWriter streamWriter;
+    private final TransactionIdGenerator transactionIdGenerator;
+    private final PaymentJournal paymentJournal;
+    private final CollectExpiry collectExpiry;
+    private final ReadModel readModel;
+    private final VelocityLimits velocityLimits;
     
-    @Transactional
+    @Value("${upi.batch.max-lines:10000}")
+    private int maxBatchLines;
+    
+    @Value("${upi.collect.ttl:PT30M}")
+    private Duration collectTtl;
+    
+    // Runs in one local transaction on the payer's shard. A payee on another shard is credited
+    // afterwards by the transfer saga, so the result reflects the payer's side.
     public TransactionDto initiatePayment(TransactionDto transactionDto) {
-        User payer = userRepository.findByUpiId(transactionDto.getPayerUpiId())
+        return paymentMetrics.track("sync", () -> shardRouter.inTransaction(payerShard(transactionDto),
+                status -> initiate(transactionDto, null, false)));
+    }
+    
+    // Idempotent variant of initiatePayment: retries with the same key never move money twice
+    public TransactionDto initiatePayment(TransactionDto transactionDto, String idempotencyKey) {
+        return paymentMetrics.track("sync", () -> withIdempotency(idempotencyKey,
+                () -> shardRouter.inTransaction(payerShard(transactionDto),
+                        status -> initiate(transactionDto, idempotencyKey, false))));
+    }
+    
+    // Persists the payment as PENDING and leaves debit/credit to the payment pipeline, or in
+    // journal mode appends it to the payment journal without touching the database at all
+    public TransactionDto acceptPayment(TransactionDto transactionDto, String idempotencyKey) {
+        if (paymentJournal.isEnabled()) {
+            return paymentMetrics.track("journal", () -> withIdempotency(idempotencyKey,
+                    () -> journal(transactionDto, idempotencyKey)));
+        }
+        return paymentMetrics.track("async", () -> withIdempotency(idempotencyKey,
+                () -> shardRouter.inTransaction(payerShard(transactionDto),
+                        status -> initiate(transactionDto, idempotencyKey, true))));
+    }
+    
+    // Runs by a pipeline worker once the PENDING row has committed on the given shard
+    public TransactionDto completePayment(int shard, String transactionId) {
+        return shardRouter.inTransaction(shard, status -> {
+            Transaction transaction = transactionRepository.findForProcessing(transactionId)
+                    .orElseThrow(() -> new RuntimeException("Transaction not found"));
+            if (transaction.getStatus() != Transaction.TransactionStatus.PENDING) {
+                return convertToDto(transaction);
+            }
+            return processPayment(transaction);
+        });
+    }
+    
+    // Completes with the terminal state as soon as the pipeline reaches it, or with the
+    // current state once the wait runs out
+    public CompletableFuture<TransactionDto> watchTransaction(String transactionId, Duration wait) {
+        CompletableFuture<TransactionDto> completion = paymentJournal.isPending(transactionId)
+                ? paymentJournal.awaitCompletion(transactionId, wait)
+                : paymentPipeline.awaitCompletion(transactionId, wait);
+        // A timed-out wait completes on the JDK's single delay thread, which must not do the lookup
+        return completion
+                .exceptionally(e -> null)
+                .thenCompose(completed -> completed != null
+                        ? CompletableFuture.completedFuture(completed)
+                        : paymentPipeline.lookUp(() -> getTransactionById(transactionId)));
+    }
+    
+    @EventListener(ApplicationReadyEvent.class)
+    public void resumePendingPayments() {
+        for (int shard = 0; shard < shardRouter.shardCount(); shard++) {
+            int target = shard;
+            List<String> pending = shardRouter.on(target, () -> transactionRepository.findTransactionIds(
+                    Transaction.TransactionStatus.PENDING, Transaction.TransactionType.PAY));
+            pending.forEach(transactionId -> paymentPipeline.resume(transactionId,
+                    () -> completePayment(target, transactionId)));
+        }
+    }
+    
+    // Replays what the journal holds from before a restart, then keeps draining it
+    @EventListener(ApplicationReadyEvent.class)
+    public void startPaymentJournal() {
+        if (!paymentJournal.isEnabled()) {
+            return;
+        }
+        List<JournalRecord> recovered = paymentJournal.start(this::applyJournaled, this::rejectJournaled, record -> {
+            if (record.idempotencyKey() != null) {
+                idempotencyService.releaseClaim(record.idempotencyKey());
+            }
+        });
+        for (JournalRecord record : recovered) {
+            if (record.idempotencyKey() != null) {
+                idempotencyService.holdClaim(record.idempotencyKey(), record.transactionId());
+            }
+        }
+    }
+    
+    private TransactionDto journal(TransactionDto transactionDto, String idempotencyKey) {
+        VpaEntry payer = paymentMetrics.time(PaymentMetrics.Stage.LOOKUP, () -> vpaDirectory.resolve(transactionDto.getPayerUpiId()))
                 .orElseThrow(() -> new RuntimeException("Payer not found"));
         
-        User payee = userRepository.findByUpiId(transactionDto.getPayeeUpiId())
+        VpaEntry payee = paymentMetrics.time(PaymentMetrics.Stage.LOOKUP, () -> vpaDirectory.resolve(transactionDto.getPayeeUpiId()))
                 .orElseThrow(() -> new RuntimeException("Payee not found"));
+        Money amount = Money.of(transactionDto.getAmount());
+        checkLimits(payer.upiId(), payee.upiId(), amount);
+        
+        JournalRecord record = new JournalRecord(generateTransactionId(), payer.accountId(), payee.accountId(),
+                payer.upiId(), payee.upiId(), amount, transactionDto.getDescription(),
+                idempotencyKey, System.currentTimeMillis());
+        paymentMetrics.time(PaymentMetrics.Stage.PERSIST, () -> {
+            paymentJournal.append(record);
+            return record;
+        });
+        if (idempotencyKey != null) {
+            idempotencyService.holdClaim(idempotencyKey, record.transactionId());
+        }
+        return record.toPendingDto();
+    }
+    
+    // Applies a batch drained from the journal in one transaction per payer shard. Records
+    // already in the table (replayed after a crash) are skipped; the rest are inserted and
+    // posted exactly as a synchronous payment would be.
+    Map<String, TransactionDto> applyJournaled(List<JournalRecord> records) {
+        Map<Integer, List<JournalRecord>> byShard = records.stream().collect(Collectors.groupingBy(
+                record -> shardRouter.shardOf(record.payerAccountId()), TreeMap::new, Collectors.toList()));
+        Map<String, TransactionDto> results = new HashMap<>();
+        byShard.forEach((shard, shardRecords) -> results.putAll(shardRouter.inTransaction(shard,
+                status -> applyJournaledOnShard(shardRecords))));
+        return results;
+    }
+    
+    private Map<String, TransactionDto> applyJournaledOnShard(List<JournalRecord> records) {
+        Set<String> existing = new HashSet<>(transactionRepository.findExistingTransactionIds(
+                records.stream().map(JournalRecord::transactionId).collect(Collectors.toList())));
+        Map<String, TransactionDto> results = new HashMap<>();
+        for (JournalRecord record : records) {
+            if (!existing.add(record.transactionId())) {
+                continue;
+            }
+            Transaction transaction = newPayment(userRepository.getReferenceById(record.payerAccountId()),
+                    payeeReference(record.payeeAccountId(), record.payeeUpiId()), record.amount(), record.description());
+            transaction.setTransactionId(record.transactionId());
+            transactionRepository.save(transaction);
+            if (record.idempotencyKey() != null) {
+                idempotencyService.claim(record.idempotencyKey(), record.transactionId());
+            }
+            results.put(record.transactionId(), processPayment(transaction, record.payerUpiId(), record.payeeUpiId()));
+        }
+        return results;
+    }
+    
+    // Stores a journaled payment the drainer could not apply as FAILED, with the error as its
+    // reason, in a transaction of its own so it is not lost with the batch that rolled back
+    TransactionDto rejectJournaled(JournalRecord record, RuntimeException cause) {
+        return shardRouter.inTransaction(shardRouter.shardOf(record.payerAccountId()), status -> {
+            Optional<TransactionView> existing = transactionRepository.findViewByTransactionId(record.transactionId());
+            if (existing.isPresent()) {
+                return convertToDto(existing.get());
+            }
+            Transaction transaction = newPayment(userRepository.getReferenceById(record.payerAccountId()),
+                    payeeReference(record.payeeAccountId(), record.payeeUpiId()), record.amount(), record.description());
+            transaction.setTransactionId(record.transactionId());
+            transaction.setStatus(Transaction.TransactionStatus.FAILED);
+            String reason = "Could not apply journaled payment: " + cause.getMessage();
+            transaction.setFailureReason(reason.length() > 255 ? reason.substring(0, 255) : reason);
+            return convertToDto(transactionRepository.save(transaction), record.payerUpiId(), record.payeeUpiId());
+        });
+    }
+    
+    private void checkLimits(String payerUpiId, String payeeUpiId, Money amount) {
+        String breached = velocityLimits.admit(payerUpiId, payeeUpiId, amount);
+        if (breached != null) {
+            throw new LimitExceededException(breached);
+        }
+    }
+    
+    private TransactionDto withIdempotency(String idempotencyKey, Supplier<TransactionDto> payment) {
+        if (idempotencyKey == null) {
+            return payment.get();
+        }
+        return idempotencyService.execute(idempotencyKey, payment, this::getTransactionById);
+    }
+    
+    private TransactionDto initiate(TransactionDto transactionDto, String idempotencyKey, boolean async) {
+        // Parties are resolved from the VPA directory and attached as references, so the
+        // happy path never selects either users row
+        VpaEntry payer = paymentMetrics.time(PaymentMetrics.Stage.LOOKUP, () -> vpaDirectory.resolve(transactionDto.getPayerUpiId()))
+                .orElseThrow(() -> new RuntimeException("Payer not found"));
+        
+        VpaEntry payee = paymentMetrics.time(PaymentMetrics.Stage.LOOKUP, () -> vpaDirectory.resolve(transactionDto.getPayeeUpiId()))
+                .orElseThrow(() -> new RuntimeException("Payee not found"));
+        Money amount = Money.of(transactionDto.getAmount());
+        checkLimits(payer.upiId(), payee.upiId(), amount);
         
         // BUG: Insufficient balance check removed intentionally
         /*
-        if (payer.getBalance().compareTo(transactionDto.getAmount()) < 0) {
+        Money payerBalance = ledgerService.balanceOf(payer.accountId());
+        if (payerBalance.isLessThan(amount)) {
             throw new RuntimeException("Insufficient balance");
         }
         */
         
-        Transaction transaction = new Transaction();
-        transaction.setTransactionId(generateTransactionId());
-        transaction.setPayer(payer);
-        transaction.setPayee(payee);
-        transaction.setAmount(transactionDto.getAmount());
-        transaction.setDescription(transactionDto.getDescription());
-        transaction.setStatus(Transaction.TransactionStatus.PENDING);
-        transaction.setType(Transaction.TransactionType.PAY);
+        Transaction transaction = newPayment(userRepository.getReferenceById(payer.accountId()),
+                payeeReference(payee.accountId(), payee.upiId()), amount, transactionDto.getDescription());
+        Transaction savedTransaction = paymentMetrics.time(PaymentMetrics.Stage.PERSIST, () -> {
+            Transaction saved = transactionRepository.save(transaction);
+            if (idempotencyKey != null) {
+                idempotencyService.claim(idempotencyKey, saved.getTransactionId());
+            }
+            return saved;
+        });
         
-        Transaction savedTransaction = transactionRepository.save(transaction);
+        if (async) {
+            String transactionId = savedTransaction.getTransactionId();
+            int shard = shardRouter.currentShard();
+            paymentPipeline.dispatchAfterCommit(transactionId, () -> completePayment(shard, transactionId));
+            return convertToDto(savedTransaction, payer.upiId(), payee.upiId());
+        }
         
         // Process the payment
-        return processPayment(savedTransaction);
+        return processPayment(savedTransaction, payer.upiId(), payee.upiId());
     }
     
     @Transactional
     public TransactionDto processPayment(Transaction transaction) {
-        try {
-            // Deduct amount from payer
-            BigDecimal newPayerBalance = transaction.getPayer().getBalance().subtract(transaction.getAmount());
-            userService.updateUserBalance(transaction.getPayer().getUpiId(), newPayerBalance);
+        return processPayment(transaction, transaction.getPayer().getUpiId(), transaction.getPayee().getUpiId());
+    }
+    
+    private TransactionDto processPayment(Transaction transaction, String payerUpiId, String payeeUpiId) {
+        TransactionDto result = paymentMetrics.timeProcess(() -> {
+            try {
+                // Append the debit and credit legs once the payer's balance covers the amount
+                boolean posted = ledgerService.post(transaction, payerUpiId);
+                if (!posted) {
+                    throw new RuntimeException("Insufficient balance");
+                }
+            } catch (Exception e) {
+                transaction.setStatus(Transaction.TransactionStatus.FAILED);
+                transaction.setFailureReason(e.getMessage());
+                Transaction failedTransaction = transactionRepository.save(transaction);
+                return convertToDto(failedTransaction, payerUpiId, payeeUpiId);
+            }
             
-            // Add amount to payee
-            BigDecimal newPayeeBalance = transaction.getPayee().getBalance().add(transaction.getAmount());
-            userService.updateUserBalance(transaction.getPayee().getUpiId(), newPayeeBalance);
+            // The legs are written from here on, so a failure is not stored as a FAILED payment:
+            // it propagates and rolls them back with the rest of the transaction. A payee on
+            // another shard is credited by the transfer saga once this commits.
+            if (!shardRouter.isLocal(transaction.getPayee().getId())) {
+                shardTransferService.open(transaction);
+            }
             
             // BUG: Always set status to FAILED intentionally
             transaction.setStatus(Transaction.TransactionStatus.FAILED);
             transaction.setFailureReason("Intentional bug: should be SUCCESS");
-            Transaction updatedTransaction = transactionRepository.save(transaction);
+            Transaction updatedTransaction = paymentMetrics.time(PaymentMetrics.Stage.PERSIST,
+                    () -> transactionRepository.save(transaction));
             
-            return convertToDto(updatedTransaction);
+            return convertToDto(updatedTransaction, payerUpiId, payeeUpiId);
+        });
+        paymentMetrics.recordOutcome(result);
+        return result;
+    }
+    
+    // Settles a batch with one transaction per payer shard (a single transaction unless sharding
+    // is enabled): both parties of every line are resolved with a single IN query, lines are
+    // checked in order against running balances, and the legs of every accepted line are
+    // appended together. Rows go out through JDBC batching. The result holds one entry per
+    // input line, in input order.
+    public List<TransactionDto> initiateBatchPayment(List<TransactionDto> lines) {
+        if (lines.size() > maxBatchLines) {
+            throw new RuntimeException("Batch exceeds " + maxBatchLines + " lines");
+        }
+        
+        Map<Integer, List<Integer>> byShard = IntStream.range(0, lines.size()).boxed()
+                .collect(Collectors.groupingBy(i -> shardRouter.shardFor(lines.get(i).getPayerUpiId()),
+                        TreeMap::new, Collectors.toList()));
+        TransactionDto[] results = new TransactionDto[lines.size()];
+        byShard.forEach((shard, indexes) -> shardRouter.inTransaction(shard, status -> {
+            settleBatch(lines, indexes, results);
+            return null;
+        }));
+        for (TransactionDto result : results) {
+            paymentMetrics.recordOutcome(result);
+        }
+        return List.of(results);
+    }
+    
+    // Settles the given lines, all paid from accounts on the current shard, into results
+    private void settleBatch(List<TransactionDto> lines, List<Integer> indexes, TransactionDto[] results) {
+        Set<String> payerUpiIds = new HashSet<>();
+        Set<String> upiIds = new HashSet<>();
+        for (int i : indexes) {
+            TransactionDto line = lines.get(i);
+            if (line.getPayerUpiId() != null) {
+                payerUpiIds.add(line.getPayerUpiId());
+                upiIds.add(line.getPayerUpiId());
+            }
+            if (line.getPayeeUpiId() != null) {
+                upiIds.add(line.getPayeeUpiId());
+            }
+        }
+        
+        // Lock payers before reading balances so the running balances below hold until commit
+        ledgerService.lockAccounts(payerUpiIds);
+        Map<String, User> users = userRepository.findByUpiIdIn(upiIds).stream()
+                .filter(user -> shardRouter.isLocal(user.getId()))
+                .collect(Collectors.toMap(User::getUpiId, Function.identity()));
+        for (String upiId : upiIds) {
+            if (!users.containsKey(upiId) && shardRouter.shardFor(upiId) != shardRouter.currentShard()) {
+                vpaDirectory.resolve(upiId).ifPresent(payee ->
+                        users.put(upiId, payeeReference(payee.accountId(), payee.upiId())));
+            }
+        }
+        // Only accounts on this shard have a balance here; payees elsewhere are credited later
+        Map<Long, Money> opening = ledgerService.balancesOf(users.values().stream()
+                .map(User::getId).filter(shardRouter::isLocal).collect(Collectors.toList()));
+        
+        // Running balances in paise, one holder per account updated in place line by line
+        Map<String, long[]> balances = new HashMap<>();
+        List<Transaction> accepted = new ArrayList<>();
+        List<Transaction> transactions = new ArrayList<>(indexes.size());
+        int[] resultIndexes = new int[indexes.size()];
+        
+        for (int i : indexes) {
+            TransactionDto line = lines.get(i);
+            String rejection = validateLine(line);
+            User payer = users.get(line.getPayerUpiId());
+            User payee = users.get(line.getPayeeUpiId());
+            if (rejection == null && payer == null) {
+                rejection = "Payer not found";
+            } else if (rejection == null && payee == null) {
+                rejection = "Payee not found";
+            }
+            // Validation has already refused amounts with a fraction of a paisa
+            Money amount = rejection == null ? Money.of(line.getAmount()) : null;
+            if (rejection == null) {
+                rejection = velocityLimits.admit(payer.getUpiId(), payee.getUpiId(), amount);
+            }
+            if (rejection != null) {
+                results[i] = rejectedLine(line, rejection);
+                continue;
+            }
             
-        } catch (Exception e) {
-            transaction.setStatus(Transaction.TransactionStatus.FAILED);
-            transaction.setFailureReason(e.getMessage());
-            Transaction failedTransaction = transactionRepository.save(transaction);
-            return convertToDto(failedTransaction);
+            Transaction transaction = newPayment(payer, payee, amount, line.getDescription());
+            long[] available = runningBalance(balances, opening, payer);
+            if (available[0] < amount.paise()) {
+                transaction.setStatus(Transaction.TransactionStatus.FAILED);
+                transaction.setFailureReason("Insufficient balance");
+            } else {
+                available[0] = Math.subtractExact(available[0], amount.paise());
+                if (opening.containsKey(payee.getId())) {
+                    long[] received = runningBalance(balances, opening, payee);
+                    received[0] = Math.addExact(received[0], amount.paise());
+                }
+                transaction.setStatus(Transaction.TransactionStatus.SUCCESS);
+                accepted.add(transaction);
+            }
+            resultIndexes[transactions.size()] = i;
+            transactions.add(transaction);
+        }
+        
+        List<Transaction> saved = paymentMetrics.time(PaymentMetrics.Stage.PERSIST,
+                () -> transactionRepository.saveAll(transactions));
+        ledgerService.postAll(accepted);
+        for (Transaction transaction : accepted) {
+            if (!shardRouter.isLocal(transaction.getPayee().getId())) {
+                shardTransferService.open(transaction);
+            }
+        }
+        for (int j = 0; j < saved.size(); j++) {
+            results[resultIndexes[j]] = convertToDto(saved.get(j));
         }
     }
     
-    public List<TransactionDto> getTransactionsByUpiId(String upiId) {
-        return transactionRepository.findByPayerUpiIdOrPayeeUpiId(upiId, upiId)
-                .stream()
-                .map(this::convertToDto)
+    // The payee asks the payer for money. The request is stored PENDING on the payer's shard
+    // with both parties attached, exactly like a payment, and moves nothing until approved.
+    public TransactionDto requestCollect(TransactionDto transactionDto) {
+        TransactionDto request = shardRouter.inTransaction(payerShard(transactionDto), status -> {
+            VpaEntry payer = vpaDirectory.resolve(transactionDto.getPayerUpiId())
+                    .orElseThrow(() -> new RuntimeException("Payer not found"));
+            VpaEntry payee = vpaDirectory.resolve(transactionDto.getPayeeUpiId())
+                    .orElseThrow(() -> new RuntimeException("Payee not found"));
+            
+            Transaction transaction = newPayment(userRepository.getReferenceById(payer.accountId()),
+                    payeeReference(payee.accountId(), payee.upiId()), Money.of(transactionDto.getAmount()),
+                    transactionDto.getDescription());
+            transaction.setType(Transaction.TransactionType.COLLECT);
+            transaction.setExpiresAt(LocalDateTime.now().plus(collectTtl));
+            return convertToDto(transactionRepository.save(transaction), payer.upiId(), payee.upiId());
+        });
+        collectExpiry.track(request.getId(), request.getExpiresAt());
+        return request;
+    }
+    
+    // The stored request already references both parties, so approving it goes straight to the
+    // payment posting path without resolving either UPI ID again
+    public TransactionDto approveCollect(String transactionId) {
+        return shardRouter.inTransaction(collectShard(transactionId), status -> {
+            Transaction request = lockPendingCollect(transactionId);
+            if (!request.getExpiresAt().isAfter(LocalDateTime.now())) {
+                return closeCollect(request, CollectExpiry.EXPIRED_REASON);
+            }
+            // A refused approval leaves the request pending, so the payer can approve it later
+            checkLimits(request.getPayer().getUpiId(), request.getPayee().getUpiId(), request.getAmount());
+            return processPayment(request, request.getPayer().getUpiId(), request.getPayee().getUpiId());
+        });
+    }
+    
+    public TransactionDto declineCollect(String transactionId) {
+        return shardRouter.inTransaction(collectShard(transactionId),
+                status -> closeCollect(lockPendingCollect(transactionId), "Declined by payer"));
+    }
+    
+    // Requests live on the payer's shard, so the payer's open requests are a single index range
+    public CursorPage<TransactionDto> getPendingCollects(String payerUpiId, String cursor, Integer size) {
+        int pageSize = pagination.pageSize(size);
+        PageCursor after = cursor == null ? PageCursor.FIRST_DESCENDING : PageCursor.decode(cursor);
+        Optional<List<TransactionView>> served = readModel.isServing()
+                ? readModel.findOpenCollects(payerUpiId, LocalDateTime.now(), after, pagination.lookahead(pageSize))
+                : Optional.empty();
+        if (served.isPresent()) {
+            return toPage(served.get(), pageSize);
+        }
+        return shardRouter.on(shardRouter.shardFor(payerUpiId), () -> userRepository.findIdByUpiId(payerUpiId)
+                .map(accountId -> toPage(transactionRepository.findOpenPayerPage(accountId,
+                        Transaction.TransactionStatus.PENDING, Transaction.TransactionType.COLLECT, LocalDateTime.now(),
+                        after.createdAt(), after.id(), pagination.lookahead(pageSize)), pageSize))
+                .orElse(new CursorPage<>(List.of(), null)));
+    }
+    
+    private int collectShard(String transactionId) {
+        return shardRouter.fanOut(shard -> transactionRepository.findIdByTransactionId(transactionId)).stream()
+                .flatMap(Optional::stream)
+                .findFirst()
+                .map(shardRouter::shardOf)
+                .orElseThrow(() -> new RuntimeException("Collect request not found"));
+    }
+    
+    private Transaction lockPendingCollect(String transactionId) {
+        Transaction request = transactionRepository.findForProcessing(transactionId)
+                .filter(transaction -> transaction.getType() == Transaction.TransactionType.COLLECT)
+                .orElseThrow(() -> new RuntimeException("Collect request not found"));
+        if (request.getStatus() != Transaction.TransactionStatus.PENDING) {
+            throw new RuntimeException("Collect request is no longer pending");
+        }
+        return request;
+    }
+    
+    private TransactionDto closeCollect(Transaction request, String reason) {
+        request.setStatus(Transaction.TransactionStatus.CANCELLED);
+        request.setFailureReason(reason);
+        return convertToDto(transactionRepository.save(request));
+    }
+    
+    public CursorPage<TransactionDto> getTransactionsByUpiId(String upiId, String cursor, Integer size) {
+        int pageSize = pagination.pageSize(size);
+        PageCursor after = cursor == null ? PageCursor.FIRST_DESCENDING : PageCursor.decode(cursor);
+        Optional<List<TransactionView>> served = readModel.isServing()
+                ? readModel.findPageByUpiId(upiId, after, pagination.lookahead(pageSize))
+                : Optional.empty();
+        if (served.isPresent()) {
+            return toPage(served.get(), pageSize);
+        }
+        int home = shardRouter.shardFor(upiId);
+        Optional<Long> accountId = shardRouter.on(home, () -> userRepository.findIdByUpiId(upiId));
+        if (accountId.isEmpty()) {
+            return new CursorPage<>(List.of(), null);
+        }
+        
+        // Payments from the account all live on its home shard, payments to it on the payer's
+        // shard, so the payee side is read from every shard. Each side walks its own
+        // (party, created_at, id) index; the sorted runs are merged here.
+        Limit limit = pagination.lookahead(pageSize);
+        List<List<TransactionView>> runs = shardRouter.fanOut(shard -> {
+            List<TransactionView> run = new ArrayList<>();
+            if (shard == home) {
+                run.addAll(transactionRepository.findPayerPage(accountId.get(), after.createdAt(), after.id(), limit));
+            }
+            run.addAll(transactionRepository.findPayeePage(accountId.get(), after.createdAt(), after.id(), limit));
+            return run;
+        });
+        Set<Long> seen = new HashSet<>();
+        List<TransactionView> rows = runs.stream()
+                .flatMap(List::stream)
+                .sorted(NEWEST_FIRST)
+                .filter(view -> seen.add(view.id()))
                 .collect(Collectors.toList());
+        return toPage(rows, pageSize);
+    }
+    
+    public void streamTransactionsByUpiId(String upiId, StreamWriter.Format format, OutputStream out) throws IOException {
+        Optional<Stream<TransactionView>> served = readModel.isServing() ? readModel.streamByUpiId(upiId) : Optional.empty();
+        if (served.isPresent()) {
+            streamWriter.write(format, served.get(), this::convertToDto, out);
+            return;
+        }
+        Optional<Long> accountId = shardRouter.on(shardRouter.shardFor(upiId), () -> userRepository.findIdByUpiId(upiId));
+        if (accountId.isEmpty()) {
+            return;
+        }
+        streamWriter.write(format, shard -> transactionRepository.streamByAccountId(accountId.get()), this::convertToDto, out);
     }
     
     public TransactionDto getTransactionById(String transactionId) {
-        Transaction transaction = transactionRepository.findByTransactionId(transactionId)
+        // Checked first: a journaled payment leaves the journal only after its row has committed
+        Optional<TransactionDto> journaled = paymentJournal.findPending(transactionId);
+        if (journaled.isPresent()) {
+            return journaled.get();
+        }
+        // A row the read model has not caught up with yet is still looked up on the primary
+        Optional<TransactionView> served = readModel.isServing() ? readModel.findByTransactionId(transactionId) : Optional.empty();
+        if (served.isPresent()) {
+            return convertToDto(served.get());
+        }
+        TransactionView transaction = shardRouter.fanOut(shard -> transactionRepository.findViewByTransactionId(transactionId))
+                .stream()
+                .flatMap(Optional::stream)
+                .findFirst()
                 .orElseThrow(() -> new RuntimeException("Transaction not found"));
         return convertToDto(transaction);
     }
     
-    public List<TransactionDto> getAllTransactions() {
-        return transactionRepository.findAll().stream()
-                .map(this::convertToDto)
+    // Each shard returns its own next page; the newest rows across all of them make the page
+    public CursorPage<TransactionDto> getAllTransactions(String cursor, Integer size) {
+        int pageSize = pagination.pageSize(size);
+        PageCursor after = cursor == null ? PageCursor.FIRST_DESCENDING : PageCursor.decode(cursor);
+        Limit limit = pagination.lookahead(pageSize);
+        Optional<List<TransactionView>> served = readModel.isServing() ? readModel.findPage(after, limit) : Optional.empty();
+        if (served.isPresent()) {
+            return toPage(served.get(), pageSize);
+        }
+        List<TransactionView> rows = shardRouter.fanOut(shard -> transactionRepository.findPage(after.createdAt(), after.id(), limit))
+                .stream()
+                .flatMap(List::stream)
+                .sorted(NEWEST_FIRST)
                 .collect(Collectors.toList());
+        return toPage(rows, pageSize);
     }
     
-    private String generateTransactionId() {
-        return "TXN" + UUID.randomUUID().toString().replace("-", "").substring(0, 12).toUpperCase();
+    public void streamAllTransactions(StreamWriter.Format format, OutputStream out) throws IOException {
+        Optional<Stream<TransactionView>> served = readModel.isServing() ? readModel.streamAll() : Optional.empty();
+        if (served.isPresent()) {
+            streamWriter.write(format, served.get(), this::convertToDto, out);
+            return;
+        }
+        streamWriter.write(format, shard -> transactionRepository.streamAll(), this::convertToDto, out);
     }
     
-    private TransactionDto convertToDto(Transaction transaction) {
+    private CursorPage<TransactionDto> toPage(List<TransactionView> rows, int pageSize) {
+        if (rows.size() <= pageSize) {
+            return new CursorPage<>(rows.stream().map(this::convertToDto).collect(Collectors.toList()), null);
+        }
+        List<TransactionView> page = rows.subList(0, pageSize);
+        TransactionView last = page.get(pageSize - 1);
+        return new CursorPage<>(page.stream().map(this::convertToDto).collect(Collectors.toList()),
+                new PageCursor(last.createdAt(), last.id()).encode());
+    }
+    
+    private int payerShard(TransactionDto transactionDto) {
+        return shardRouter.shardFor(transactionDto.getPayerUpiId());
+    }
+    
+    // Payee of a payment written on the current shard; a payee living on another shard is
+    // first copied here so the payment row can reference it
+    private User payeeReference(Long accountId, String upiId) {
+        if (shardRouter.isLocal(accountId)) {
+            return userRepository.getReferenceById(accountId);
+        }
+        VpaEntry payee = vpaDirectory.resolve(upiId).orElseThrow(() -> new RuntimeException("Payee not found"));
+        return shardTransferService.counterparty(payee);
+    }
+    
+    private Transaction newPayment(User payer, User payee, Money amount, String description) {
+        Transaction transaction = new Transaction();
+        transaction.setTransactionId(generateTransactionId());
+        transaction.setPayer(payer);
+        transaction.setPayee(payee);
+        transaction.setAmount(amount);
+        transaction.setDescription(description);
+        transaction.setStatus(Transaction.TransactionStatus.PENDING);
+        transaction.setType(Transaction.TransactionType.PAY);
+        return transaction;
+    }
+    
+    private static long[] runningBalance(Map<String, long[]> balances, Map<Long, Money> opening, User account) {
+        long[] balance = balances.get(account.getUpiId());
+        if (balance == null) {
+            balance = new long[] {opening.get(account.getId()).paise()};
+            balances.put(account.getUpiId(), balance);
+        }
+        return balance;
+    }
+    
+    private String validateLine(TransactionDto line) {
+        Set<ConstraintViolation<TransactionDto>> violations = validator.validate(line);
+        return violations.isEmpty() ? null : violations.iterator().next().getMessage();
+    }
+    
+    // How a payment refused before anything was stored is reported back
+    public TransactionDto rejectedPayment(TransactionDto request, String reason) {
+        return rejectedLine(request, reason);
+    }
+    
+    private TransactionDto rejectedLine(TransactionDto line, String reason) {
+        TransactionDto dto = new TransactionDto();
+        dto.setPayerUpiId(line.getPayerUpiId());
+        dto.setPayeeUpiId(line.getPayeeUpiId());
+        dto.setAmount(line.getAmount());
+        dto.setDescription(line.getDescription());
+        dto.setStatus(Transaction.TransactionStatus.FAILED.name());
+        dto.setType(Transaction.TransactionType.PAY.name());
+        dto.setFailureReason(reason);
+        return dto;
+    }
+    
+    String generateTransactionId() {
+        return transactionIdGenerator.nextId();
+    }
+    
+    TransactionDto convertToDto(Transaction transaction) {
+        return convertToDto(transaction, transaction.getPayer().getUpiId(), transaction.getPayee().getUpiId());
+    }
+    
+    // Takes the UPI IDs separately so lazily referenced parties are never initialised
+    private TransactionDto convertToDto(Transaction transaction, String payerUpiId, String payeeUpiId) {
         TransactionDto dto = new TransactionDto();
         dto.setId(transaction.getId());
         dto.setTransactionId(transaction.getTransactionId());
-        dto.setPayerUpiId(transaction.getPayer().getUpiId());
-        dto.setPayeeUpiId(transaction.getPayee().getUpiId());
-        dto.setAmount(transaction.getAmount());
+        dto.setPayerUpiId(payerUpiId);
+        dto.setPayeeUpiId(payeeUpiId);
+        dto.setAmount(transaction.getAmount().toBigDecimal());
         dto.setDescription(transaction.getDescription());
         dto.setStatus(transaction.getStatus().name());
         dto.setType(transaction.getType().name());
         dto.setCreatedAt(transaction.getCreatedAt());
         dto.setUpdatedAt(transaction.getUpdatedAt());
         dto.setFailureReason(transaction.getFailureReason());
+        dto.setExpiresAt(transaction.getExpiresAt());
+        return dto;
+    }
+    
+    private TransactionDto convertToDto(TransactionView view) {
+        TransactionDto dto = new TransactionDto();
+        dto.setId(view.id());
+        dto.setTransactionId(view.transactionId());
+        dto.setPayerUpiId(view.payerUpiId());
+        dto.setPayeeUpiId(view.payeeUpiId());
+        dto.setAmount(view.amount().toBigDecimal());
+        dto.setDescription(view.description());
+        dto.setStatus(view.status().name());
+        dto.setType(view.type().name());
+        dto.setCreatedAt(view.createdAt());
+        dto.setUpdatedAt(view.updatedAt());
+        dto.setFailureReason(view.failureReason());
+        dto.setExpiresAt(view.expiresAt());
         return dto;
     }
 } 
\ No newline at end of file
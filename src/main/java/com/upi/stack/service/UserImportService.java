@@ -0,0 +1,476 @@
+package com.upi.stack.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.upi.stack.dto.CommittedChanges;
+import com.upi.stack.dto.UserDto;
+import com.upi.stack.dto.UserImportReport;
+import com.upi.stack.dto.UserKeys;
+import com.upi.stack.entity.Money;
+import com.upi.stack.entity.UserImportChunk;
+import com.upi.stack.repository.UserImportChunkRepository;
+import com.upi.stack.repository.UserRepository;
+import jakarta.annotation.PreDestroy;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Queue;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+// Bulk onboarding of users from a CSV or NDJSON file. The file is read as a stream and cut
+// into chunks that are imported in parallel. A chunk is checked for UPI IDs, phone numbers
+// and emails that are already taken with one IN query per shard, and against the rest of the
+// file through the keys held by chunks still in flight. Its accepted rows are then inserted
+// through JDBC batches, one transaction per home shard. Each transaction also writes a
+// UserImportChunk marker, so a rerun under the same import id skips the committed rows.
+// Rejected rows are reported by line and never stop the import.
+@Slf4j
+@Service
+public class UserImportService {
+    
+    public enum Format {
+        CSV, NDJSON
+    }
+    
+    static final List<String> CSV_COLUMNS =
+            List.of("upiId", "name", "phoneNumber", "email", "bankName", "accountNumber", "ifscCode", "balance");
+    private static final String INSERT_USER = "INSERT INTO users (upi_id, name, phone_number, email, balance, " +
+            "bank_name, account_number, ifsc_code, created_at, updated_at) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+    private static final int PROGRESS_EVERY = 100;
+    
+    private final UserRepository userRepository;
+    private final UserImportChunkRepository userImportChunkRepository;
+    private final JdbcTemplate jdbcTemplate;
+    private final ShardRouter shardRouter;
+    private final ChangeFeed changeFeed;
+    private final VpaDirectory vpaDirectory;
+    private final ObjectMapper objectMapper;
+    private final Validator validator;
+    private final int chunkSize;
+    private final int workerCount;
+    private final ExecutorService workers;
+    
+    public UserImportService(UserRepository userRepository,
+                             UserImportChunkRepository userImportChunkRepository,
+                             JdbcTemplate jdbcTemplate,
+                             ShardRouter shardRouter,
+                             ChangeFeed changeFeed,
+                             VpaDirectory vpaDirectory,
+                             ObjectMapper objectMapper,
+                             Validator validator,
+                             @Value("${upi.user-import.chunk-size:1000}") int chunkSize,
+                             @Value("${upi.user-import.workers:4}") int workerCount) {
+        this.userRepository = userRepository;
+        this.userImportChunkRepository = userImportChunkRepository;
+        this.jdbcTemplate = jdbcTemplate;
+        this.shardRouter = shardRouter;
+        this.changeFeed = changeFeed;
+        this.vpaDirectory = vpaDirectory;
+        this.objectMapper = objectMapper;
+        this.validator = validator;
+        this.chunkSize = chunkSize;
+        this.workerCount = workerCount;
+        AtomicInteger threadIds = new AtomicInteger();
+        this.workers = Executors.newFixedThreadPool(workerCount, runnable -> {
+            Thread thread = new Thread(runnable, "user-import-" + threadIds.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+    
+    // Lines are numbered from 1, a CSV header included. CSV files start with a header naming
+    // any of CSV_COLUMNS in any order; quoted fields may not span lines.
+    public UserImportReport importUsers(String importId, InputStream in, Format format) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+        List<String> columns = null;
+        long line = 0;
+        if (format == Format.CSV) {
+            String header = reader.readLine();
+            if (header == null) {
+                throw new RuntimeException("CSV file has no header");
+            }
+            columns = csvColumns(header);
+            line++;
+        }
+        
+        Import run = new Import(importId);
+        try {
+            List<Row> chunk = new ArrayList<>(chunkSize);
+            for (String text = reader.readLine(); text != null; text = reader.readLine()) {
+                line++;
+                if (text.isBlank()) {
+                    continue;
+                }
+                chunk.add(format == Format.CSV ? fromCsv(line, columns, text) : fromJson(line, text));
+                if (chunk.size() == chunkSize) {
+                    run.submit(chunk);
+                    chunk = new ArrayList<>(chunkSize);
+                }
+            }
+            run.submit(chunk);
+        } finally {
+            run.awaitChunks();
+        }
+        return run.report();
+    }
+    
+    // Users already in memory, e.g. sample data; line numbers are list positions from 1
+    public UserImportReport importUsers(String importId, List<UserDto> users) {
+        Import run = new Import(importId);
+        try {
+            for (int from = 0; from < users.size(); from += chunkSize) {
+                List<Row> chunk = new ArrayList<>(chunkSize);
+                for (int i = from; i < Math.min(from + chunkSize, users.size()); i++) {
+                    chunk.add(new Row(i + 1, users.get(i), null));
+                }
+                run.submit(chunk);
+            }
+        } finally {
+            run.awaitChunks();
+        }
+        return run.report();
+    }
+    
+    private void importChunk(Import run, List<Row> chunk) {
+        long firstLine = chunk.get(0).line();
+        long lastLine = chunk.get(chunk.size() - 1).line();
+        List<Row> rows = new ArrayList<>(chunk.size());
+        for (Row row : chunk) {
+            if (run.isDone(row)) {
+                run.skipped.incrementAndGet();
+            } else {
+                rows.add(row);
+            }
+        }
+        
+        String[] reasons = new String[rows.size()];
+        List<String> claimed = new ArrayList<>();
+        try {
+            for (int i = 0; i < rows.size(); i++) {
+                Row row = rows.get(i);
+                reasons[i] = row.error() != null ? row.error() : validate(row.user());
+                if (reasons[i] == null) {
+                    reasons[i] = run.claim(row.user(), claimed);
+                }
+            }
+            rejectTaken(rows, reasons);
+        } catch (RuntimeException e) {
+            log.warn("User import {}: lines {}-{} could not be checked", run.importId, firstLine, lastLine, e);
+            claimed.forEach(run.claims::remove);
+            rows.forEach(row -> run.reject(row, "Not imported: " + e.getMessage()));
+            return;
+        }
+        
+        try {
+            Map<Integer, List<Integer>> byShard = new TreeMap<>();
+            for (int i = 0; i < rows.size(); i++) {
+                byShard.computeIfAbsent(shardOf(rows.get(i)), shard -> new ArrayList<>()).add(i);
+            }
+            byShard.forEach((shard, indexes) -> insert(run, shard, rows, reasons, indexes, firstLine, lastLine));
+        } finally {
+            claimed.forEach(run.claims::remove);
+        }
+        
+        int done = run.chunksDone.incrementAndGet();
+        if (done % PROGRESS_EVERY == 0) {
+            log.info("User import {}: {} chunks done, {} users imported, {} rows rejected, {} skipped", run.importId,
+                    done, run.imported.get(), run.rejected.get(), run.skipped.get());
+        }
+    }
+    
+    // One query per shard for the whole chunk: phone numbers and emails are unique across all
+    // shards, and a UPI ID is found on its home shard or as a counterparty copy elsewhere
+    private void rejectTaken(List<Row> rows, String[] reasons) {
+        Set<String> upiIds = new HashSet<>();
+        Set<String> phoneNumbers = new HashSet<>();
+        Set<String> emails = new HashSet<>();
+        for (int i = 0; i < rows.size(); i++) {
+            if (reasons[i] == null) {
+                UserDto user = rows.get(i).user();
+                upiIds.add(user.getUpiId());
+                phoneNumbers.add(user.getPhoneNumber());
+                emails.add(user.getEmail());
+            }
+        }
+        if (upiIds.isEmpty()) {
+            return;
+        }
+        
+        Set<String> takenUpiIds = new HashSet<>();
+        Set<String> takenPhoneNumbers = new HashSet<>();
+        Set<String> takenEmails = new HashSet<>();
+        for (List<UserKeys> taken : shardRouter.fanOut(shard -> userRepository.findKeysIn(upiIds, phoneNumbers, emails))) {
+            for (UserKeys keys : taken) {
+                takenUpiIds.add(keys.upiId());
+                takenPhoneNumbers.add(keys.phoneNumber());
+                takenEmails.add(keys.email());
+            }
+        }
+        for (int i = 0; i < rows.size(); i++) {
+            if (reasons[i] == null) {
+                UserDto user = rows.get(i).user();
+                if (takenUpiIds.contains(user.getUpiId())) {
+                    reasons[i] = "UPI ID already exists";
+                } else if (takenPhoneNumbers.contains(user.getPhoneNumber())) {
+                    reasons[i] = "Phone number already exists";
+                } else if (takenEmails.contains(user.getEmail())) {
+                    reasons[i] = "Email already exists";
+                }
+            }
+        }
+    }
+    
+    // Inserts the accepted rows homed on one shard together with the chunk's marker. If the
+    // transaction fails, none of its rows count as done and a rerun tries them again.
+    private void insert(Import run, int shard, List<Row> rows, String[] reasons, List<Integer> indexes,
+                        long firstLine, long lastLine) {
+        List<UserDto> accepted = new ArrayList<>(indexes.size());
+        for (int i : indexes) {
+            if (reasons[i] == null) {
+                accepted.add(rows.get(i).user());
+            }
+        }
+        int rejected = indexes.size() - accepted.size();
+        try {
+            shardRouter.inTransaction(shard, status -> {
+                if (!accepted.isEmpty()) {
+                    Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+                    jdbcTemplate.batchUpdate(INSERT_USER, accepted.stream()
+                            .map(user -> new Object[] {
+                                user.getUpiId(), user.getName(), user.getPhoneNumber(), user.getEmail(),
+                                user.getBalance() != null ? Money.of(user.getBalance()).paise() : 0L, user.getBankName(),
+                                user.getAccountNumber(), user.getIfscCode(), now, now
+                            })
+                            .collect(Collectors.toList()));
+                    // Rows written through JDBC bypass the entity listener that feeds the read model
+                    if (changeFeed.isEnabled()) {
+                        userRepository.findByUpiIdIn(accepted.stream().map(UserDto::getUpiId).collect(Collectors.toList()))
+                                .forEach(user -> changeFeed.record(CommittedChanges.UserChange.of(user)));
+                    }
+                }
+                userImportChunkRepository.save(new UserImportChunk(null, run.importId, firstLine, lastLine,
+                        accepted.size(), rejected, LocalDateTime.now()));
+                return null;
+            });
+        } catch (RuntimeException e) {
+            log.warn("User import {}: lines {}-{} on shard {} failed", run.importId, firstLine, lastLine, shard, e);
+            for (int i : indexes) {
+                if (reasons[i] == null) {
+                    reasons[i] = "Not imported: " + e.getMessage();
+                }
+            }
+            accepted.clear();
+        }
+        
+        accepted.forEach(user -> vpaDirectory.invalidate(user.getUpiId()));
+        run.imported.addAndGet(accepted.size());
+        for (int i : indexes) {
+            if (reasons[i] != null) {
+                run.reject(rows.get(i), reasons[i]);
+            }
+        }
+    }
+    
+    private int shardOf(Row row) {
+        return shardRouter.shardFor(row.user() != null ? row.user().getUpiId() : null);
+    }
+    
+    private String validate(UserDto user) {
+        Set<ConstraintViolation<UserDto>> violations = validator.validate(user);
+        return violations.isEmpty() ? null : violations.iterator().next().getMessage();
+    }
+    
+    private Row fromJson(long line, String text) {
+        try {
+            return new Row(line, objectMapper.readValue(text, UserDto.class), null);
+        } catch (JsonProcessingException e) {
+            return new Row(line, null, "Malformed JSON");
+        }
+    }
+    
+    private List<String> csvColumns(String header) {
+        List<String> columns = splitCsv(header).stream().map(String::trim).collect(Collectors.toList());
+        for (String column : columns) {
+            if (!CSV_COLUMNS.contains(column)) {
+                throw new RuntimeException("Unknown CSV column: " + column);
+            }
+        }
+        return columns;
+    }
+    
+    private Row fromCsv(long line, List<String> columns, String text) {
+        List<String> fields = splitCsv(text);
+        if (fields.size() != columns.size()) {
+            return new Row(line, null, "Expected " + columns.size() + " fields, found " + fields.size());
+        }
+        UserDto user = new UserDto();
+        for (int i = 0; i < fields.size(); i++) {
+            String value = fields.get(i).trim();
+            switch (columns.get(i)) {
+                case "upiId" -> user.setUpiId(value);
+                case "name" -> user.setName(value);
+                case "phoneNumber" -> user.setPhoneNumber(value);
+                case "email" -> user.setEmail(value);
+                case "bankName" -> user.setBankName(value);
+                case "accountNumber" -> user.setAccountNumber(value);
+                case "ifscCode" -> user.setIfscCode(value);
+                case "balance" -> {
+                    try {
+                        user.setBalance(value.isEmpty() ? null : new BigDecimal(value));
+                    } catch (NumberFormatException e) {
+                        return new Row(line, user, "Invalid balance");
+                    }
+                }
+                default -> throw new IllegalStateException("Unmapped CSV column " + columns.get(i));
+            }
+        }
+        return new Row(line, user, null);
+    }
+    
+    // RFC 4180 fields: commas inside double quotes, and "" for a literal quote
+    static List<String> splitCsv(String line) {
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c != '"') {
+                    field.append(c);
+                } else if (i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else {
+                    quoted = false;
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        fields.add(field.toString());
+        return fields;
+    }
+    
+    @PreDestroy
+    public void shutdown() {
+        workers.shutdown();
+    }
+    
+    // A parsed line; user is null when the line could not be read at all
+    record Row(long line, UserDto user, String error) {
+    }
+    
+    // State of one import run, shared by its chunks
+    private class Import {
+        
+        private final String importId;
+        // Line ranges completed by earlier runs, per shard: first line -> last line
+        private final List<NavigableMap<Long, Long>> done;
+        // Keys of the rows held by chunks in flight; a key committed to the database is found
+        // by the IN query instead once its chunk has released it
+        private final Set<String> claims = ConcurrentHashMap.newKeySet();
+        // Bounds the chunks read ahead of the workers, so memory stays flat for any file size
+        private final Semaphore inFlight = new Semaphore(workerCount * 2);
+        private final List<CompletableFuture<Void>> chunks = new ArrayList<>();
+        private final AtomicLong imported = new AtomicLong();
+        private final AtomicLong rejected = new AtomicLong();
+        private final AtomicLong skipped = new AtomicLong();
+        private final AtomicInteger chunksDone = new AtomicInteger();
+        private final Queue<UserImportReport.RowError> errors = new ConcurrentLinkedQueue<>();
+        
+        Import(String importId) {
+            this.importId = importId;
+            this.done = shardRouter.fanOut(shard -> {
+                NavigableMap<Long, Long> ranges = new TreeMap<>();
+                userImportChunkRepository.findByImportId(importId)
+                        .forEach(chunk -> ranges.put(chunk.getFirstLine(), chunk.getLastLine()));
+                return ranges;
+            });
+        }
+        
+        boolean isDone(Row row) {
+            Map.Entry<Long, Long> range = done.get(shardOf(row)).floorEntry(row.line());
+            return range != null && range.getValue() >= row.line();
+        }
+        
+        // Returns why the row is rejected, or null once all three of its keys are held
+        String claim(UserDto user, List<String> claimed) {
+            if (!claims.add("upi:" + user.getUpiId())) {
+                return "Duplicate UPI ID in import";
+            }
+            claimed.add("upi:" + user.getUpiId());
+            if (!claims.add("phone:" + user.getPhoneNumber())) {
+                return "Duplicate phone number in import";
+            }
+            claimed.add("phone:" + user.getPhoneNumber());
+            if (!claims.add("email:" + user.getEmail())) {
+                return "Duplicate email in import";
+            }
+            claimed.add("email:" + user.getEmail());
+            return null;
+        }
+        
+        void reject(Row row, String reason) {
+            rejected.incrementAndGet();
+            errors.add(new UserImportReport.RowError(row.line(), row.user() != null ? row.user().getUpiId() : null, reason));
+        }
+        
+        void submit(List<Row> chunk) {
+            if (chunk.isEmpty()) {
+                return;
+            }
+            inFlight.acquireUninterruptibly();
+            chunks.add(CompletableFuture.runAsync(() -> {
+                try {
+                    importChunk(this, chunk);
+                } finally {
+                    inFlight.release();
+                }
+            }, workers));
+        }
+        
+        void awaitChunks() {
+            CompletableFuture.allOf(chunks.toArray(CompletableFuture[]::new)).exceptionally(e -> null).join();
+        }
+        
+        UserImportReport report() {
+            List<UserImportReport.RowError> sorted = new ArrayList<>(errors);
+            sorted.sort(Comparator.comparingLong(UserImportReport.RowError::line));
+            log.info("User import {} finished: {} users imported, {} rows rejected, {} skipped", importId,
+                    imported.get(), rejected.get(), skipped.get());
+            return new UserImportReport(importId, imported.get(), rejected.get(), skipped.get(), sorted);
+        }
+    }
+} 
\ No newline at end of file
@@ -1,23 +1,37 @@
 package com.upi.stack.service;
 
+import com.upi.stack.config.ShardContext;
+import com.upi.stack.dto.CursorPage;
 import com.upi.stack.dto.UserDto;
+import com.upi.stack.entity.Money;
 import com.upi.stack.entity.User;
 import com.upi.stack.repository.UserRepository;
 import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
+import org.springframework.data.domain.Limit;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.math.BigDecimal;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
-import java.util.stream.Collectors;
+import java.util.function.Function;
+import java.util.function.Supplier;
 
 @Service
 @RequiredArgsConstructor
 public class UserService {
     
     private final UserRepository userRepository;
+    private final Pagination pagination;
+    private final StreamWriter streamWriter;
+    private final VpaDirectory vpaDirectory;
+    private final LedgerService ledgerService;
+    private final ShardRouter shardRouter;
+    private final ReadModel readModel;
     
-    @Transactional
+    // The user lives on the shard its UPI ID hashes to; phone and email are checked on every shard
     public UserDto createUser(UserDto userDto) {
         // BUG: Duplicate UPI ID check removed intentionally
         /*
@@ -26,11 +40,11 @@ public class UserService {
         }
         */
         
-        if (userRepository.existsByPhoneNumber(userDto.getPhoneNumber())) {
+        if (onAnyShard(() -> userRepository.existsByPhoneNumber(userDto.getPhoneNumber()))) {
             throw new RuntimeException("Phone number already exists");
         }
         
-        if (userRepository.existsByEmail(userDto.getEmail())) {
+        if (onAnyShard(() -> userRepository.existsByEmail(userDto.getEmail()))) {
             throw new RuntimeException("Email already exists");
         }
         
@@ -39,19 +53,37 @@ public class UserService {
         user.setName(userDto.getName());
         user.setPhoneNumber(userDto.getPhoneNumber());
         user.setEmail(userDto.getEmail());
-        user.setBalance(BigDecimal.ZERO);
+        user.setBalance(Money.ZERO);
         user.setBankName(userDto.getBankName());
         user.setAccountNumber(userDto.getAccountNumber());
         user.setIfscCode(userDto.getIfscCode());
         
-        User savedUser = userRepository.save(user);
+        User savedUser = shardRouter.inTransaction(shardRouter.shardFor(user.getUpiId()),
+                status -> userRepository.save(user));
+        vpaDirectory.invalidate(savedUser.getUpiId());
         return convertToDto(savedUser);
     }
     
-    public List<UserDto> getAllUsers() {
-        return userRepository.findAll().stream()
-                .map(this::convertToDto)
-                .collect(Collectors.toList());
+    public CursorPage<UserDto> getAllUsers(String cursor, Integer size) {
+        int pageSize = pagination.pageSize(size);
+        long afterId = cursor == null ? 0 : PageCursor.decode(cursor).id();
+        List<UserDto> rows = readModel.isServing()
+                ? readModel.findProfilesAfter(afterId, pagination.lookahead(pageSize))
+                : findProfilesAfter(afterId, pageSize);
+        
+        boolean hasMore = rows.size() > pageSize;
+        List<UserDto> page = hasMore ? rows.subList(0, pageSize) : rows;
+        String nextCursor = hasMore ? new PageCursor(null, page.get(pageSize - 1).getId()).encode() : null;
+        return new CursorPage<>(page, nextCursor);
+    }
+    
+    public void streamAllUsers(StreamWriter.Format format, OutputStream out) throws IOException {
+        if (readModel.isServing()) {
+            streamWriter.write(format, readModel.streamProfiles(), Function.identity(), out);
+            return;
+        }
+        streamWriter.write(format, shard -> userRepository.streamProfiles(ShardContext.idRangeStart(shard), idRangeEnd(shard)),
+                Function.identity(), out);
     }
     
     public UserDto getUserById(Long id) {
@@ -64,19 +96,62 @@ public class UserService {
         */
     }
     
+    // Profile comes from the VPA directory cache; only the balance is read from the ledger
     public UserDto getUserByUpiId(String upiId) {
-        User user = userRepository.findByUpiId(upiId)
+        VpaEntry entry = vpaDirectory.resolve(upiId)
                 .orElseThrow(() -> new RuntimeException("User not found"));
-        return convertToDto(user);
+        Money balance = shardRouter.on(shardRouter.shardOf(entry.accountId()),
+                () -> ledgerService.balanceOf(entry.accountId()));
+        
+        UserDto dto = new UserDto();
+        dto.setId(entry.accountId());
+        dto.setUpiId(entry.upiId());
+        dto.setName(entry.name());
+        dto.setPhoneNumber(entry.phoneNumber());
+        dto.setEmail(entry.email());
+        dto.setBalance(balance.toBigDecimal());
+        dto.setBankName(entry.bankName());
+        dto.setAccountNumber(entry.accountNumber());
+        dto.setIfscCode(entry.ifscCode());
+        return dto;
+    }
+    
+    public Map<String, Object> getDirectoryCacheStats() {
+        return vpaDirectory.stats();
     }
     
-    @Transactional
     public UserDto updateUserBalance(String upiId, BigDecimal newBalance) {
-        User user = userRepository.findByUpiId(upiId)
-                .orElseThrow(() -> new RuntimeException("User not found"));
-        user.setBalance(newBalance);
-        User updatedUser = userRepository.save(user);
-        return convertToDto(updatedUser);
+        return shardRouter.inTransaction(shardRouter.shardFor(upiId), status -> {
+            User user = userRepository.findByUpiId(upiId)
+                    .orElseThrow(() -> new RuntimeException("User not found"));
+            // Recorded as an adjustment in the ledger; the opening balance column is left alone
+            ledgerService.adjustTo(user, Money.of(newBalance));
+            UserDto dto = convertToDto(user);
+            dto.setBalance(newBalance);
+            return dto;
+        });
+    }
+    
+    // Ids grow shard by shard, so a page is read from the cursor's shard and, if that runs
+    // out, from the shards after it
+    private List<UserDto> findProfilesAfter(long afterId, int pageSize) {
+        List<UserDto> rows = new ArrayList<>();
+        for (int shard = shardRouter.shardOf(afterId); shard < shardRouter.shardCount() && rows.size() <= pageSize; shard++) {
+            long after = Math.max(afterId, ShardContext.idRangeStart(shard));
+            long before = idRangeEnd(shard);
+            Limit limit = pagination.lookahead(pageSize - rows.size());
+            rows.addAll(shardRouter.on(shard, () -> userRepository.findProfilesAfter(after, before, limit)));
+        }
+        return rows;
+    }
+    
+    private boolean onAnyShard(Supplier<Boolean> check) {
+        return shardRouter.fanOut(shard -> check.get()).contains(true);
+    }
+    
+    // With a single shard nothing bounds the id range from above
+    private long idRangeEnd(int shard) {
+        return shardRouter.isSharded() ? ShardContext.idRangeEnd(shard) : Long.MAX_VALUE;
     }
     
     private UserDto convertToDto(User user) {
@@ -86,7 +161,7 @@ public class UserService {
         dto.setName(user.getName());
         dto.setPhoneNumber(user.getPhoneNumber());
         dto.setEmail(user.getEmail());
-        dto.setBalance(user.getBalance());
+        dto.setBalance(user.getBalance().toBigDecimal());
         dto.setBankName(user.getBankName());
         dto.setAccountNumber(user.getAccountNumber());
         dto.setIfscCode(user.getIfscCode());
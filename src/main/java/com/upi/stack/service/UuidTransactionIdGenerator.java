@@ -0,0 +1,16 @@
+package com.upi.stack.service;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import java.util.UUID;
+
+// Original scheme: 48 random bits, so only suitable for low volumes
+@Component
+@ConditionalOnProperty(name = "upi.transaction-id.strategy", havingValue = "uuid")
+public class UuidTransactionIdGenerator implements TransactionIdGenerator {
+    
+    @Override
+    public String nextId() {
+        return "TXN" + UUID.randomUUID().toString().replace("-", "").substring(0, 12).toUpperCase();
+    }
+} 
\ No newline at end of file
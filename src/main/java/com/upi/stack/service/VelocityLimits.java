@@ -0,0 +1,271 @@
+package com.upi.stack.service;
+
+import com.upi.stack.dto.TransactionView;
+import com.upi.stack.entity.Money;
+import com.upi.stack.entity.Transaction;
+import com.upi.stack.repository.TransactionRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.stream.Stream;
+
+// Velocity and amount limits on payers and payees, checked in memory before a payment writes
+// anything. Every UPI ID that paid or was paid within the last day owns a fixed block of
+// time-bucketed counters: payment counts over the last minute (6 buckets of 10s), and
+// payment counts and amounts over the last day (24 buckets of 1h). Each bucket is a single
+// long that holds the bucket's epoch next to its value. A stale bucket is therefore reset and
+// bumped by the same CAS, and checking a payment never takes a lock. A payment is counted first
+// and checked afterwards, and is taken back out if it breaks a limit. Two payments racing for
+// the last unit of a limit can both be refused, but never both let through. At startup the
+// counters are rebuilt from the last day of transactions. A limit set to 0 is off.
+@Slf4j
+@Component
+public class VelocityLimits {
+    
+    static final String AMOUNT_LIMIT = "Amount exceeds the per-transaction limit";
+    static final String PAYER_DAILY_AMOUNT = "Payer daily amount limit reached";
+    static final String PAYER_DAILY_COUNT = "Payer daily payment count limit reached";
+    static final String PAYER_PER_MINUTE = "Too many payments from payer in the last minute";
+    static final String PAYEE_PER_MINUTE = "Too many payments to payee in the last minute";
+    
+    private static final long DAY_MILLIS = 24 * 3_600_000L;
+    
+    private final TransactionRepository transactionRepository;
+    private final ShardRouter shardRouter;
+    private final boolean enabled;
+    private final Money maxAmount;
+    private final long payerDailyAmount;
+    private final long payerDailyCount;
+    private final long payerPerMinute;
+    private final long payeePerMinute;
+    // Payments counted live are made after this; older ones come from the warm load
+    private final long startedAt = System.currentTimeMillis();
+    
+    private final ConcurrentMap<String, Counters> payers = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Counters> payees = new ConcurrentHashMap<>();
+    
+    public VelocityLimits(TransactionRepository transactionRepository,
+                          ShardRouter shardRouter,
+                          @Value("${upi.limits.enabled:false}") boolean enabled,
+                          @Value("${upi.limits.max-amount:0}") BigDecimal maxAmount,
+                          @Value("${upi.limits.payer-daily-amount:0}") BigDecimal payerDailyAmount,
+                          @Value("${upi.limits.payer-daily-count:0}") long payerDailyCount,
+                          @Value("${upi.limits.payer-per-minute:0}") long payerPerMinute,
+                          @Value("${upi.limits.payee-per-minute:0}") long payeePerMinute) {
+        this.transactionRepository = transactionRepository;
+        this.shardRouter = shardRouter;
+        this.enabled = enabled;
+        this.maxAmount = Money.of(maxAmount);
+        this.payerDailyAmount = Money.of(payerDailyAmount).paise();
+        this.payerDailyCount = payerDailyCount;
+        this.payerPerMinute = payerPerMinute;
+        this.payeePerMinute = payeePerMinute;
+    }
+    
+    // Returns the limit the payment breaks, having counted nothing, or null once the payment
+    // is counted. Inside a transaction the payment is taken back out if that rolls back.
+    public String admit(String payerUpiId, String payeeUpiId, Money amount) {
+        if (!enabled) {
+            return null;
+        }
+        if (maxAmount.signum() > 0 && maxAmount.isLessThan(amount)) {
+            return AMOUNT_LIMIT;
+        }
+        long now = System.currentTimeMillis();
+        long paise = amount.paise();
+        Counters payer = counters(payers, payerUpiId, now);
+        Counters payee = payeePerMinute > 0 ? counters(payees, payeeUpiId, now) : null;
+        
+        count(payer, payee, paise, now);
+        String reason = breached(payer, payee, now);
+        if (reason != null) {
+            uncount(payer, payee, paise, now);
+            return reason;
+        }
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            rollbackBuffer().admitted.add(new Admitted(payer, payee, paise, now));
+        }
+        return null;
+    }
+    
+    public int trackedAccounts() {
+        return payers.size() + payees.size();
+    }
+    
+    // Rebuilds the last day of counters from every shard. Payments counted live in the meantime
+    // were created after startedAt and are left out of the load.
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmUp() {
+        if (!enabled) {
+            return;
+        }
+        LocalDateTime until = LocalDateTime.ofInstant(Instant.ofEpochMilli(startedAt), ZoneId.systemDefault());
+        long[] loaded = new long[1];
+        for (int shard = 0; shard < shardRouter.shardCount(); shard++) {
+            shardRouter.inReadOnlyTransaction(shard, status -> {
+                try (Stream<TransactionView> payments = transactionRepository.streamCountedSince(until.minusDays(1), until,
+                        Transaction.TransactionType.PAY, Transaction.TransactionStatus.PENDING,
+                        Transaction.TransactionStatus.CANCELLED)) {
+                    payments.forEach(payment -> {
+                        long at = payment.createdAt().atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+                        Counters payer = counters(payers, payment.payerUpiId(), at);
+                        Counters payee = payeePerMinute > 0 ? counters(payees, payment.payeeUpiId(), at) : null;
+                        count(payer, payee, payment.amount().paise(), at);
+                        loaded[0]++;
+                    });
+                }
+                return null;
+            });
+        }
+        log.info("Velocity limits warmed up from {} payments of the last day", loaded[0]);
+    }
+    
+    // Counters of accounts idle for a whole day hold nothing any limit still looks at
+    @Scheduled(fixedDelayString = "${upi.limits.evict-interval:PT10M}")
+    public void evictIdle() {
+        long cutoff = System.currentTimeMillis() - DAY_MILLIS;
+        payers.values().removeIf(counters -> counters.lastUsed < cutoff);
+        payees.values().removeIf(counters -> counters.lastUsed < cutoff);
+    }
+    
+    private String breached(Counters payer, Counters payee, long now) {
+        if (payerPerMinute > 0 && payer.sum(Counters.MINUTE_COUNT, now) > payerPerMinute) {
+            return PAYER_PER_MINUTE;
+        }
+        if (payerDailyCount > 0 && payer.sum(Counters.DAY_COUNT, now) > payerDailyCount) {
+            return PAYER_DAILY_COUNT;
+        }
+        if (payerDailyAmount > 0 && payer.sum(Counters.DAY_AMOUNT, now) > payerDailyAmount) {
+            return PAYER_DAILY_AMOUNT;
+        }
+        if (payee != null && payee.sum(Counters.MINUTE_COUNT, now) > payeePerMinute) {
+            return PAYEE_PER_MINUTE;
+        }
+        return null;
+    }
+    
+    private void count(Counters payer, Counters payee, long paise, long at) {
+        payer.add(Counters.MINUTE_COUNT, at, 1);
+        payer.add(Counters.DAY_COUNT, at, 1);
+        payer.add(Counters.DAY_AMOUNT, at, paise);
+        if (payee != null) {
+            payee.add(Counters.MINUTE_COUNT, at, 1);
+        }
+    }
+    
+    private void uncount(Counters payer, Counters payee, long paise, long at) {
+        payer.add(Counters.MINUTE_COUNT, at, -1);
+        payer.add(Counters.DAY_COUNT, at, -1);
+        payer.add(Counters.DAY_AMOUNT, at, -paise);
+        if (payee != null) {
+            payee.add(Counters.MINUTE_COUNT, at, -1);
+        }
+    }
+    
+    private Counters counters(ConcurrentMap<String, Counters> accounts, String upiId, long now) {
+        Counters counters = accounts.get(upiId);
+        if (counters == null) {
+            counters = accounts.computeIfAbsent(upiId, key -> new Counters());
+        }
+        if (counters.lastUsed < now) {
+            counters.lastUsed = now;
+        }
+        return counters;
+    }
+    
+    private Buffer rollbackBuffer() {
+        for (TransactionSynchronization synchronization : TransactionSynchronizationManager.getSynchronizations()) {
+            if (synchronization instanceof Buffer buffer) {
+                return buffer;
+            }
+        }
+        Buffer buffer = new Buffer();
+        TransactionSynchronizationManager.registerSynchronization(buffer);
+        return buffer;
+    }
+    
+    private record Admitted(Counters payer, Counters payee, long paise, long at) {
+    }
+    
+    // Payments admitted inside one transaction, taken back out if it rolls back
+    private class Buffer implements TransactionSynchronization {
+        
+        private final List<Admitted> admitted = new ArrayList<>();
+        
+        @Override
+        public void afterCompletion(int status) {
+            if (status == STATUS_ROLLED_BACK) {
+                admitted.forEach(payment -> uncount(payment.payer(), payment.payee(), payment.paise(), payment.at()));
+            }
+        }
+    }
+    
+    // Bucketed counters of one account. Each bucket packs the low 20 bits of its epoch (time /
+    // bucket length) above a 44-bit value; a bucket carrying an older epoch is stale and
+    // starts again from zero.
+    static final class Counters {
+        
+        record Window(int offset, int buckets, long bucketMillis) {
+        }
+        
+        static final Window MINUTE_COUNT = new Window(0, 6, 10_000);
+        static final Window DAY_COUNT = new Window(6, 24, 3_600_000);
+        static final Window DAY_AMOUNT = new Window(30, 24, 3_600_000);
+        
+        private static final int VALUE_BITS = 44;
+        private static final long VALUE_MASK = (1L << VALUE_BITS) - 1;
+        private static final long EPOCH_MASK = (1L << (64 - VALUE_BITS)) - 1;
+        
+        private final AtomicLongArray buckets = new AtomicLongArray(54);
+        volatile long lastUsed;
+        
+        // A delta for a bucket that has since moved on to a newer epoch belongs to a period no
+        // window covers any more and is dropped, and so is taking back a payment whose bucket
+        // has expired. An empty bucket can be claimed by any epoch.
+        void add(Window window, long at, long delta) {
+            long epoch = (at / window.bucketMillis()) & EPOCH_MASK;
+            int slot = window.offset() + (int) ((at / window.bucketMillis()) % window.buckets());
+            while (true) {
+                long current = buckets.get(slot);
+                long age = (epoch - (current >>> VALUE_BITS)) & EPOCH_MASK;
+                long next;
+                if (age == 0) {
+                    next = (epoch << VALUE_BITS) | Math.max((current & VALUE_MASK) + delta, 0);
+                } else if (delta > 0 && (age < EPOCH_MASK / 2 || (current & VALUE_MASK) == 0)) {
+                    next = (epoch << VALUE_BITS) | delta;
+                } else {
+                    return;
+                }
+                if (buckets.compareAndSet(slot, current, next)) {
+                    return;
+                }
+            }
+        }
+        
+        long sum(Window window, long now) {
+            long epoch = (now / window.bucketMillis()) & EPOCH_MASK;
+            long sum = 0;
+            for (int i = 0; i < window.buckets(); i++) {
+                long bucket = buckets.get(window.offset() + i);
+                if (((epoch - (bucket >>> VALUE_BITS)) & EPOCH_MASK) < window.buckets()) {
+                    sum += bucket & VALUE_MASK;
+                }
+            }
+            return sum;
+        }
+    }
+} 
\ No newline at end of file
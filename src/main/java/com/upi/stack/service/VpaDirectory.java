@@ -0,0 +1,61 @@
+package com.upi.stack.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import com.upi.stack.repository.UserRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+
+// UPI ID -> account id + static profile, in front of UserRepository.findByUpiId.
+// Caffeine's W-TinyLFU policy keeps the hot part of a very large directory resident.
+@Component
+public class VpaDirectory {
+    
+    private final UserRepository userRepository;
+    private final ShardRouter shardRouter;
+    private final Cache<String, VpaEntry> cache;
+    
+    public VpaDirectory(UserRepository userRepository,
+                        ShardRouter shardRouter,
+                        @Value("${upi.directory-cache.maximum-size:1000000}") long maximumSize,
+                        @Value("${upi.directory-cache.expire-after-write:10m}") Duration expireAfterWrite) {
+        this.userRepository = userRepository;
+        this.shardRouter = shardRouter;
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(expireAfterWrite)
+                .recordStats()
+                .build();
+    }
+    
+    // Unknown UPI IDs are not cached, so a newly created user is visible immediately. Misses
+    // are read from the user's home shard.
+    public Optional<VpaEntry> resolve(String upiId) {
+        return Optional.ofNullable(cache.get(upiId, key -> shardRouter.on(shardRouter.shardFor(key),
+                () -> userRepository.findByUpiId(key).map(VpaEntry::of).orElse(null))));
+    }
+    
+    public void invalidate(String upiId) {
+        cache.invalidate(upiId);
+    }
+    
+    public Cache<String, VpaEntry> cache() {
+        return cache;
+    }
+    
+    public Map<String, Object> stats() {
+        CacheStats stats = cache.stats();
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("size", cache.estimatedSize());
+        result.put("hitCount", stats.hitCount());
+        result.put("missCount", stats.missCount());
+        result.put("hitRate", stats.hitRate());
+        result.put("evictionCount", stats.evictionCount());
+        return result;
+    }
+} 
\ No newline at end of file
@@ -0,0 +1,20 @@
+package com.upi.stack.service;
+
+import com.upi.stack.entity.User;
+
+// Static profile of a VPA. Deliberately carries no balance: balances are always read live.
+public record VpaEntry(
+        Long accountId,
+        String upiId,
+        String name,
+        String phoneNumber,
+        String email,
+        String bankName,
+        String accountNumber,
+        String ifscCode) {
+    
+    static VpaEntry of(User user) {
+        return new VpaEntry(user.getId(), user.getUpiId(), user.getName(), user.getPhoneNumber(),
+                user.getEmail(), user.getBankName(), user.getAccountNumber(), user.getIfscCode());
+    }
+} 
\ No newline at end of file
@@ -0,0 +1,43 @@
+package com.upi.stack.perf;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.TimeValue;
+import java.io.File;
+import java.util.Arrays;
+
+// Runs the selected benchmarks once per contention level and writes one JSON result file per
+// level to target/jmh, so successive builds can be diffed for regressions.
+//
+//   mvn -Pperf test-compile exec:exec -Dperf.args=PaymentBenchmark -Dperf.threads=1,8,64
+public final class BenchmarkRunner {
+    
+    private BenchmarkRunner() {
+    }
+    
+    public static void main(String[] args) throws RunnerException {
+        String include = args.length > 0 ? args[0] : "com.upi.stack.*Benchmark.*";
+        int[] threadCounts = Arrays.stream(System.getProperty("jmh.threads", "1,8,64").split(","))
+                .mapToInt(value -> Integer.parseInt(value.trim()))
+                .toArray();
+        
+        File outputDir = new File("target/jmh");
+        outputDir.mkdirs();
+        for (int threads : threadCounts) {
+            ChainedOptionsBuilder options = new OptionsBuilder()
+                    .include(include)
+                    .threads(threads)
+                    .forks(Integer.getInteger("jmh.forks", 1))
+                    .warmupIterations(Integer.getInteger("jmh.warmupIterations", 3))
+                    .warmupTime(TimeValue.seconds(2))
+                    .measurementIterations(Integer.getInteger("jmh.iterations", 5))
+                    .measurementTime(TimeValue.seconds(2))
+                    .resultFormat(ResultFormatType.JSON)
+                    .result(new File(outputDir, "results-t" + threads + ".json").getPath());
+            new Runner(options.build()).run();
+        }
+    }
+} 
\ No newline at end of file
@@ -0,0 +1,307 @@
+package com.upi.stack.perf;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.databind.CBORMapper;
+import com.fasterxml.jackson.dataformat.smile.databind.SmileMapper;
+import com.upi.stack.UpiStackApplication;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import java.io.File;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+// Closed-loop HTTP load test comparing Spring profiles. Every profile runs in a fresh JVM
+// that starts the application on a random port and seeds the load users. Then each client
+// thread sends requests back to back: payments to /pay between random users, history pages
+// of a random user, and pages of the global listing. After the warm-up, latencies are
+// measured for the configured duration. Per-profile throughput, p50/p99 and response size
+// are written to target/load/<profile>.json and printed side by side. format= lists the wire
+// formats to send and ask for; each one other than json is a run of its own, reported as
+// <profile>-<format>.
+//
+//   mvn -Pperf test-compile exec:exec -Dperf.main=com.upi.stack.perf.LoadGenerator \
+//       -Dperf.args="default,production-perf clients=32 warmup=PT15S duration=PT30S format=json,cbor"
+public final class LoadGenerator {
+    
+    enum Operation {
+        PAY, HISTORY, LISTING
+    }
+    
+    enum Format {
+        JSON("application/json", new ObjectMapper()),
+        CBOR("application/cbor", new CBORMapper()),
+        SMILE("application/x-jackson-smile", new SmileMapper());
+        
+        final String mediaType;
+        final ObjectMapper mapper;
+        
+        Format(String mediaType, ObjectMapper mapper) {
+            this.mediaType = mediaType;
+            this.mapper = mapper;
+        }
+    }
+    
+    record Settings(int users, int clients, Duration warmup, Duration duration, int historyPercent, int listingPercent,
+                    Format format) {
+        
+        static Settings parse(List<String> args) {
+            Map<String, String> values = new LinkedHashMap<>();
+            for (String arg : args) {
+                int separator = arg.indexOf('=');
+                values.put(arg.substring(0, separator), arg.substring(separator + 1));
+            }
+            return new Settings(
+                    Integer.parseInt(values.getOrDefault("users", "1000")),
+                    Integer.parseInt(values.getOrDefault("clients", "32")),
+                    Duration.parse(values.getOrDefault("warmup", "PT15S")),
+                    Duration.parse(values.getOrDefault("duration", "PT30S")),
+                    Integer.parseInt(values.getOrDefault("history-percent", "15")),
+                    Integer.parseInt(values.getOrDefault("listing-percent", "5")),
+                    Format.valueOf(values.getOrDefault("format", "json").toUpperCase()));
+        }
+    }
+    
+    private static final File OUTPUT_DIR = new File("target/load");
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    
+    private LoadGenerator() {
+    }
+    
+    public static void main(String[] args) throws Exception {
+        OUTPUT_DIR.mkdirs();
+        if (args.length > 0 && args[0].equals("--run")) {
+            List<String> settings = Arrays.asList(args).subList(3, args.length);
+            run(args[1], args[2], Settings.parse(settings));
+            System.exit(0);
+        }
+        
+        List<String> profiles = args.length > 0 && !args[0].contains("=")
+                ? Arrays.asList(args[0].split(","))
+                : List.of("default", "production-perf");
+        List<String> settings = Arrays.stream(args).filter(arg -> arg.contains("=") && !arg.startsWith("format=")).toList();
+        List<String> formats = Arrays.stream(args).filter(arg -> arg.startsWith("format=")).findFirst()
+                .map(arg -> Arrays.asList(arg.substring("format=".length()).split(",")))
+                .orElse(List.of("json"));
+        Map<String, Map<?, ?>> results = new LinkedHashMap<>();
+        for (String profile : profiles) {
+            for (String format : formats) {
+                String label = format.equals("json") ? profile : profile + "-" + format;
+                List<String> run = new ArrayList<>(settings);
+                run.add("format=" + format);
+                results.put(label, fork(profile, label, run));
+            }
+        }
+        report(results);
+    }
+    
+    // Output of the forked JVM, SQL logging included, goes to target/load/<label>.log
+    private static Map<?, ?> fork(String profile, String label, List<String> settings) throws IOException, InterruptedException {
+        List<String> command = new ArrayList<>(List.of(
+                Path.of(System.getProperty("java.home"), "bin", "java").toString(),
+                "-cp", System.getProperty("java.class.path"),
+                LoadGenerator.class.getName(), "--run", profile, label));
+        command.addAll(settings);
+        System.out.printf("Measuring %s...%n", label);
+        Process process = new ProcessBuilder(command)
+                .redirectErrorStream(true)
+                .redirectOutput(new File(OUTPUT_DIR, label + ".log"))
+                .start();
+        if (process.waitFor() != 0) {
+            throw new IllegalStateException("Load run for " + label + " failed, see target/load/" + label + ".log");
+        }
+        return MAPPER.readValue(new File(OUTPUT_DIR, label + ".json"), Map.class);
+    }
+    
+    private static void run(String profile, String label, Settings settings) throws Exception {
+        SpringApplicationBuilder builder = new SpringApplicationBuilder(UpiStackApplication.class).logStartupInfo(false);
+        if (!profile.equals("default")) {
+            builder.profiles(profile);
+        }
+        // Load users pay each other far more often than the velocity limits allow, and every
+        // client thread comes from the same address; the run measures the profiles, not admission
+        try (ConfigurableApplicationContext context = builder.run("--server.port=0", "--upi.limits.enabled=false",
+                "--upi.rate-limit.enabled=false", "--upi.rate-limit.concurrency.enabled=false")) {
+            int port = context.getEnvironment().getRequiredProperty("local.server.port", Integer.class);
+            PerfData.insertUsers(context.getBean(JdbcTemplate.class), "load", settings.users(),
+                    new BigDecimal("1000000000.00"));
+            
+            Map<Operation, Samples> samples = drive(URI.create("http://localhost:" + port), settings);
+            
+            Map<String, Object> result = new LinkedHashMap<>();
+            result.put("profile", profile);
+            result.put("format", settings.format().name().toLowerCase());
+            result.put("clients", settings.clients());
+            result.put("seconds", settings.duration().toSeconds());
+            samples.forEach((operation, merged) -> result.put(operation.name().toLowerCase(),
+                    merged.summary(settings.duration())));
+            MAPPER.writerWithDefaultPrettyPrinter().writeValue(new File(OUTPUT_DIR, label + ".json"), result);
+        }
+    }
+    
+    private static Map<Operation, Samples> drive(URI base, Settings settings) throws InterruptedException {
+        HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+        long measureFrom = System.nanoTime() + settings.warmup().toNanos();
+        long measureUntil = measureFrom + settings.duration().toNanos();
+        
+        List<Map<Operation, Samples>> perClient = new ArrayList<>();
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < settings.clients(); i++) {
+            Map<Operation, Samples> own = new EnumMap<>(Operation.class);
+            for (Operation operation : Operation.values()) {
+                own.put(operation, new Samples());
+            }
+            perClient.add(own);
+            Thread thread = new Thread(() -> clientLoop(client, base, settings, own, measureFrom, measureUntil), "load-" + i);
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        
+        Map<Operation, Samples> merged = new EnumMap<>(Operation.class);
+        for (Operation operation : Operation.values()) {
+            Samples all = new Samples();
+            perClient.forEach(own -> all.addAll(own.get(operation)));
+            merged.put(operation, all);
+        }
+        return merged;
+    }
+    
+    private static void clientLoop(HttpClient client, URI base, Settings settings, Map<Operation, Samples> samples,
+                                   long measureFrom, long measureUntil) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        while (true) {
+            long started = System.nanoTime();
+            if (started >= measureUntil) {
+                return;
+            }
+            int roll = random.nextInt(100);
+            Operation operation = roll < settings.historyPercent() ? Operation.HISTORY
+                    : roll < settings.historyPercent() + settings.listingPercent() ? Operation.LISTING
+                    : Operation.PAY;
+            boolean ok;
+            int bytes = 0;
+            try {
+                HttpResponse<byte[]> response = client.send(request(base, operation, settings, random),
+                        HttpResponse.BodyHandlers.ofByteArray());
+                ok = response.statusCode() < 400;
+                bytes = response.body().length;
+            } catch (IOException e) {
+                ok = false;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            if (started >= measureFrom) {
+                samples.get(operation).add(System.nanoTime() - started, ok, bytes);
+            }
+        }
+    }
+    
+    private static HttpRequest request(URI base, Operation operation, Settings settings, ThreadLocalRandom random)
+            throws IOException {
+        int users = settings.users();
+        Format format = settings.format();
+        int payer = random.nextInt(users);
+        return switch (operation) {
+            case PAY -> {
+                int payee = (payer + 1 + random.nextInt(users - 1)) % users;
+                Map<String, Object> payment = new LinkedHashMap<>();
+                payment.put("payerUpiId", PerfData.upiId("load", payer));
+                payment.put("payeeUpiId", PerfData.upiId("load", payee));
+                payment.put("amount", new BigDecimal("1.00"));
+                payment.put("description", "load");
+                yield HttpRequest.newBuilder(base.resolve("/api/transactions/pay"))
+                        .header("Content-Type", format.mediaType)
+                        .header("Accept", format.mediaType)
+                        .POST(HttpRequest.BodyPublishers.ofByteArray(format.mapper.writeValueAsBytes(payment)))
+                        .build();
+            }
+            case HISTORY -> HttpRequest.newBuilder(base.resolve("/api/transactions/user/" + PerfData.upiId("load", payer) + "?size=20"))
+                    .header("Accept", format.mediaType)
+                    .GET().build();
+            case LISTING -> HttpRequest.newBuilder(base.resolve("/api/transactions?size=20"))
+                    .header("Accept", format.mediaType)
+                    .GET().build();
+        };
+    }
+    
+    private static void report(Map<String, Map<?, ?>> results) {
+        System.out.printf("%n%-24s %-8s %10s %10s %10s %10s %8s %8s%n", "profile", "op", "ops/s", "p50 ms", "p99 ms", "max ms",
+                "bytes", "errors");
+        results.forEach((profile, result) -> {
+            for (Operation operation : Operation.values()) {
+                Map<?, ?> summary = (Map<?, ?>) result.get(operation.name().toLowerCase());
+                System.out.printf("%-24s %-8s %10.1f %10.2f %10.2f %10.2f %8d %8d%n", profile, operation.name().toLowerCase(),
+                        ((Number) summary.get("throughput")).doubleValue(), ((Number) summary.get("p50Ms")).doubleValue(),
+                        ((Number) summary.get("p99Ms")).doubleValue(), ((Number) summary.get("maxMs")).doubleValue(),
+                        ((Number) summary.get("bytesPerResponse")).longValue(), ((Number) summary.get("errors")).longValue());
+            }
+        });
+    }
+    
+    // Latencies of one operation in nanoseconds, kept whole so percentiles are exact
+    private static final class Samples {
+        
+        private long[] latencies = new long[1024];
+        private int count;
+        private long errors;
+        private long bytes;
+        
+        void add(long latencyNanos, boolean ok, int responseBytes) {
+            if (count == latencies.length) {
+                latencies = Arrays.copyOf(latencies, count * 2);
+            }
+            latencies[count++] = latencyNanos;
+            bytes += responseBytes;
+            if (!ok) {
+                errors++;
+            }
+        }
+        
+        void addAll(Samples other) {
+            for (int i = 0; i < other.count; i++) {
+                add(other.latencies[i], true, 0);
+            }
+            errors += other.errors;
+            bytes += other.bytes;
+        }
+        
+        Map<String, Object> summary(Duration duration) {
+            long[] sorted = Arrays.copyOf(latencies, count);
+            Arrays.sort(sorted);
+            Map<String, Object> summary = new LinkedHashMap<>();
+            summary.put("count", count);
+            summary.put("errors", errors);
+            summary.put("throughput", count / (duration.toMillis() / 1000.0));
+            summary.put("p50Ms", percentile(sorted, 0.50));
+            summary.put("p99Ms", percentile(sorted, 0.99));
+            summary.put("maxMs", count == 0 ? 0.0 : sorted[count - 1] / 1_000_000.0);
+            summary.put("bytesPerResponse", count == 0 ? 0 : bytes / count);
+            return summary;
+        }
+        
+        private static double percentile(long[] sorted, double quantile) {
+            if (sorted.length == 0) {
+                return 0.0;
+            }
+            int index = (int) Math.ceil(quantile * sorted.length) - 1;
+            return sorted[Math.max(index, 0)] / 1_000_000.0;
+        }
+    }
+} 
\ No newline at end of file
@@ -0,0 +1,34 @@
+package com.upi.stack.perf;
+
+import com.upi.stack.UpiStackApplication;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import java.util.Arrays;
+import java.util.stream.Stream;
+
+// Boots the application without a web server and with quiet logging for in-process benchmarks
+public final class PerfContext {
+    
+    private static final String[] DEFAULT_ARGS = {
+        "--spring.datasource.url=jdbc:h2:mem:perf;DB_CLOSE_DELAY=-1",
+        "--spring.jpa.show-sql=false",
+        "--spring.jpa.properties.hibernate.format_sql=false",
+        "--logging.level.root=WARN",
+        "--logging.level.com.upi.stack=WARN",
+        "--logging.level.org.springframework.security=WARN",
+        // Benchmarks pay from the same few accounts far faster than any limit allows
+        "--upi.limits.enabled=false"
+    };
+    
+    private PerfContext() {
+    }
+    
+    public static ConfigurableApplicationContext start(String... extraArgs) {
+        String[] args = Stream.concat(Arrays.stream(DEFAULT_ARGS), Arrays.stream(extraArgs)).toArray(String[]::new);
+        return new SpringApplicationBuilder(UpiStackApplication.class)
+                .web(WebApplicationType.NONE)
+                .logStartupInfo(false)
+                .run(args);
+    }
+} 
\ No newline at end of file
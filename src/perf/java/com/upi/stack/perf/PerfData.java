@@ -0,0 +1,62 @@
+package com.upi.stack.perf;
+
+import com.upi.stack.entity.Money;
+import org.springframework.jdbc.core.JdbcTemplate;
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+// Bulk fixtures written straight through JDBC batches so setup stays out of the measurements
+public final class PerfData {
+    
+    private static final int BATCH_SIZE = 5_000;
+    
+    private PerfData() {
+    }
+    
+    public static String upiId(String prefix, int index) {
+        return prefix + index + "@perf";
+    }
+    
+    public static void insertUsers(JdbcTemplate jdbcTemplate, String prefix, int count, BigDecimal balance) {
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        List<Object[]> batch = new ArrayList<>(BATCH_SIZE);
+        for (int i = 0; i < count; i++) {
+            batch.add(new Object[] {
+                upiId(prefix, i), "Perf User " + i, String.format("7%09d", i), prefix + i + "@example.com",
+                Money.of(balance).paise(), "Perf Bank", String.format("%012d", i), "PERF0000001", now, now
+            });
+            if (batch.size() == BATCH_SIZE || i == count - 1) {
+                jdbcTemplate.batchUpdate("INSERT INTO users (upi_id, name, phone_number, email, balance, bank_name, " +
+                        "account_number, ifsc_code, created_at, updated_at) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)", batch);
+                batch.clear();
+            }
+        }
+    }
+    
+    public static long userId(JdbcTemplate jdbcTemplate, String upiId) {
+        return jdbcTemplate.queryForObject("SELECT id FROM users WHERE upi_id = ?", Long.class, upiId);
+    }
+    
+    // Alternates direction so the account shows up on both the payer and the payee side
+    public static void insertTransactions(JdbcTemplate jdbcTemplate, long accountId, long counterpartyId, int count) {
+        LocalDateTime start = LocalDateTime.now().minusSeconds(count);
+        List<Object[]> batch = new ArrayList<>(BATCH_SIZE);
+        for (int i = 0; i < count; i++) {
+            Timestamp createdAt = Timestamp.valueOf(start.plusSeconds(i));
+            boolean outgoing = i % 2 == 0;
+            batch.add(new Object[] {
+                String.format("PERF%016d", i), outgoing ? accountId : counterpartyId, outgoing ? counterpartyId : accountId,
+                Money.of(BigDecimal.ONE).paise(), "perf history " + i, "SUCCESS", "PAY", createdAt, createdAt
+            });
+            if (batch.size() == BATCH_SIZE || i == count - 1) {
+                jdbcTemplate.batchUpdate("INSERT INTO transactions (id, transaction_id, payer_id, payee_id, amount, " +
+                        "description, status, type, created_at, updated_at) " +
+                        "VALUES (NEXT VALUE FOR transactions_seq, ?, ?, ?, ?, ?, ?, ?, ?, ?)", batch);
+                batch.clear();
+            }
+        }
+    }
+} 
\ No newline at end of file
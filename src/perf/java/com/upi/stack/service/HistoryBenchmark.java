@@ -0,0 +1,76 @@
+package com.upi.stack.service;
+
+import com.upi.stack.dto.CursorPage;
+import com.upi.stack.dto.TransactionDto;
+import com.upi.stack.perf.PerfContext;
+import com.upi.stack.perf.PerfData;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.util.concurrent.TimeUnit;
+
+// History reads for one account with a long transaction trail: the first page, a page
+// from the middle of the trail, and a full NDJSON stream.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class HistoryBenchmark {
+    
+    private static final String ACCOUNT = "perf.history0@perf";
+    
+    @Param("100000")
+    public int historySize;
+    
+    private ConfigurableApplicationContext context;
+    private TransactionService transactionService;
+    private String deepCursor;
+    
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = PerfContext.start();
+        transactionService = context.getBean(TransactionService.class);
+        JdbcTemplate jdbcTemplate = context.getBean(JdbcTemplate.class);
+        PerfData.insertUsers(jdbcTemplate, "perf.history", 2, BigDecimal.ZERO);
+        PerfData.insertTransactions(jdbcTemplate, PerfData.userId(jdbcTemplate, ACCOUNT),
+                PerfData.userId(jdbcTemplate, PerfData.upiId("perf.history", 1)), historySize);
+        
+        // Position the cursor halfway down the trail, newest first
+        String transactionId = String.format("PERF%016d", historySize / 2);
+        deepCursor = jdbcTemplate.queryForObject("SELECT created_at, id FROM transactions WHERE transaction_id = ?",
+                (rs, rowNum) -> new PageCursor(rs.getTimestamp(1).toLocalDateTime(), rs.getLong(2)), transactionId).encode();
+    }
+    
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+    
+    @Benchmark
+    public CursorPage<TransactionDto> firstPage() {
+        return transactionService.getTransactionsByUpiId(ACCOUNT, null, null);
+    }
+    
+    @Benchmark
+    public CursorPage<TransactionDto> deepPage() {
+        return transactionService.getTransactionsByUpiId(ACCOUNT, deepCursor, null);
+    }
+    
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public void streamAll() throws IOException {
+        transactionService.streamTransactionsByUpiId(ACCOUNT, StreamWriter.Format.NDJSON, OutputStream.nullOutputStream());
+    }
+} 
\ No newline at end of file
@@ -0,0 +1,49 @@
+package com.upi.stack.service;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+// The completed-key check every keyed /pay makes for a new key, against an index holding a
+// day of keys in hourly buckets, so each lookup probes every bucket of its stripe. Run at 16
+// threads it is the async pipeline's default worker count; stripes=1 is the single lock the
+// index used to have.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class IdempotencyKeyIndexBenchmark {
+    
+    private static final long HOUR = TimeUnit.HOURS.toMillis(1);
+    
+    @Param({"1", "16"})
+    public int stripes;
+    
+    @Param("1000000")
+    public int keys;
+    
+    private IdempotencyKeyIndex index;
+    private long now;
+    
+    @Setup(Level.Trial)
+    public void setUp() {
+        index = new IdempotencyKeyIndex(24 * HOUR, HOUR, stripes);
+        now = System.currentTimeMillis();
+        for (int i = 0; i < keys; i++) {
+            // Spread over the whole TTL so every bucket is live
+            index.add(IdempotencyKeyIndex.hash("perf-key-" + i), now - (long) i * 24 * HOUR / keys);
+        }
+    }
+    
+    @Benchmark
+    public boolean containsNewKey() {
+        return index.contains(ThreadLocalRandom.current().nextLong(), now);
+    }
+} 
\ No newline at end of file
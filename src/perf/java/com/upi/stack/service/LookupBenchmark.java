@@ -0,0 +1,67 @@
+package com.upi.stack.service;
+
+import com.upi.stack.entity.User;
+import com.upi.stack.perf.PerfContext;
+import com.upi.stack.perf.PerfData;
+import com.upi.stack.repository.UserRepository;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import java.math.BigDecimal;
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+// UPI ID resolution over a large seeded directory, straight from the repository and
+// through the VPA cache. Keys are drawn uniformly, so the cache numbers are a worst case.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class LookupBenchmark {
+    
+    private static final String PREFIX = "perf.user";
+    
+    @Param("1000000")
+    public int directorySize;
+    
+    private ConfigurableApplicationContext context;
+    private UserRepository userRepository;
+    private VpaDirectory vpaDirectory;
+    
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = PerfContext.start();
+        userRepository = context.getBean(UserRepository.class);
+        vpaDirectory = context.getBean(VpaDirectory.class);
+        PerfData.insertUsers(context.getBean(JdbcTemplate.class),
+                PREFIX, directorySize, BigDecimal.TEN);
+    }
+    
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+    
+    private String randomUpiId() {
+        return PerfData.upiId(PREFIX, ThreadLocalRandom.current().nextInt(directorySize));
+    }
+    
+    @Benchmark
+    public Optional<User> findByUpiId() {
+        return userRepository.findByUpiId(randomUpiId());
+    }
+    
+    @Benchmark
+    public Optional<VpaEntry> resolveCached() {
+        return vpaDirectory.resolve(randomUpiId());
+    }
+} 
\ No newline at end of file
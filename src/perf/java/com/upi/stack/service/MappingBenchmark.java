@@ -0,0 +1,69 @@
+package com.upi.stack.service;
+
+import com.upi.stack.dto.TransactionDto;
+import com.upi.stack.entity.Money;
+import com.upi.stack.entity.Transaction;
+import com.upi.stack.entity.User;
+import com.upi.stack.perf.PerfContext;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.test.util.AopTestUtils;
+import java.time.LocalDateTime;
+import java.util.concurrent.TimeUnit;
+
+// CPU-only paths of TransactionService: entity to DTO mapping and transaction id generation
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class MappingBenchmark {
+    
+    private ConfigurableApplicationContext context;
+    private TransactionService transactionService;
+    private Transaction transaction;
+    
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = PerfContext.start();
+        transactionService = AopTestUtils.getUltimateTargetObject(context.getBean(TransactionService.class));
+        
+        User payer = new User();
+        payer.setUpiId("perf.payer@perf");
+        User payee = new User();
+        payee.setUpiId("perf.merchant@perf");
+        
+        transaction = new Transaction();
+        transaction.setId(42L);
+        transaction.setTransactionId("TXN0123456789AB");
+        transaction.setPayer(payer);
+        transaction.setPayee(payee);
+        transaction.setAmount(Money.parse("125.50"));
+        transaction.setDescription("perf mapping");
+        transaction.setStatus(Transaction.TransactionStatus.SUCCESS);
+        transaction.setType(Transaction.TransactionType.PAY);
+        transaction.setCreatedAt(LocalDateTime.now());
+        transaction.setUpdatedAt(LocalDateTime.now());
+    }
+    
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+    
+    @Benchmark
+    public TransactionDto convertToDto() {
+        return transactionService.convertToDto(transaction);
+    }
+    
+    @Benchmark
+    public String generateTransactionId() {
+        return transactionService.generateTransactionId();
+    }
+} 
\ No newline at end of file
@@ -0,0 +1,111 @@
+package com.upi.stack.service;
+
+import com.upi.stack.entity.Money;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+import java.math.BigDecimal;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+// The arithmetic of posting one payment (see LedgerService.post): check the payer's balance,
+// write a debit and a credit leg and work out both new balances, with amounts as BigDecimal
+// the way they were and as Money. Amounts and balances vary so nothing folds into a constant.
+// The fold benchmarks add up a run of legs, as a reconciliation or a batch's running balances
+// do, once through Money and once in raw paise; run with -prof gc they show what each
+// intermediate Money costs.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class MoneyBenchmark {
+    
+    private static final int SIZE = 1024;
+    
+    private final BigDecimal[] decimalAmounts = new BigDecimal[SIZE];
+    private final BigDecimal[] decimalBalances = new BigDecimal[SIZE];
+    private final Money[] amounts = new Money[SIZE];
+    private final Money[] balances = new Money[SIZE];
+    private final String[] texts = new String[SIZE];
+    private int next;
+    
+    @Setup(Level.Trial)
+    public void setUp() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (int i = 0; i < SIZE; i++) {
+            long amount = random.nextLong(1, 10_000_00);
+            long balance = random.nextLong(0, 1_000_000_00);
+            decimalAmounts[i] = BigDecimal.valueOf(amount, 2);
+            decimalBalances[i] = BigDecimal.valueOf(balance, 2);
+            amounts[i] = Money.ofPaise(amount);
+            balances[i] = Money.ofPaise(balance);
+            texts[i] = amounts[i].toString();
+        }
+    }
+    
+    @Benchmark
+    public void bigDecimal(Blackhole blackhole) {
+        int i = next++ & (SIZE - 1);
+        BigDecimal amount = decimalAmounts[i];
+        BigDecimal payer = decimalBalances[i];
+        BigDecimal payee = decimalBalances[(i + 1) & (SIZE - 1)];
+        if (payer.compareTo(amount) < 0) {
+            blackhole.consume(payer);
+            return;
+        }
+        blackhole.consume(amount.negate());
+        blackhole.consume(amount);
+        blackhole.consume(payer.subtract(amount));
+        blackhole.consume(payee.add(amount));
+    }
+    
+    @Benchmark
+    public void money(Blackhole blackhole) {
+        int i = next++ & (SIZE - 1);
+        Money amount = amounts[i];
+        Money payer = balances[i];
+        Money payee = balances[(i + 1) & (SIZE - 1)];
+        if (payer.isLessThan(amount)) {
+            blackhole.consume(payer);
+            return;
+        }
+        blackhole.consume(amount.negate());
+        blackhole.consume(amount);
+        blackhole.consume(payer.minus(amount));
+        blackhole.consume(payee.plus(amount));
+    }
+    
+    @Benchmark
+    public Money foldMoney() {
+        Money sum = Money.ZERO;
+        for (Money amount : amounts) {
+            sum = sum.plus(amount);
+        }
+        return sum;
+    }
+    
+    @Benchmark
+    public Money foldPaise() {
+        long sum = 0;
+        for (Money amount : amounts) {
+            sum = Math.addExact(sum, amount.paise());
+        }
+        return Money.ofPaise(sum);
+    }
+    
+    // Journal records carry amounts as text, decoded on replay
+    @Benchmark
+    public BigDecimal parseBigDecimal() {
+        return new BigDecimal(texts[next++ & (SIZE - 1)]);
+    }
+    
+    @Benchmark
+    public Money parseMoney() {
+        return Money.parse(texts[next++ & (SIZE - 1)]);
+    }
+} 
\ No newline at end of file
@@ -0,0 +1,76 @@
+package com.upi.stack.service;
+
+import com.upi.stack.dto.TransactionDto;
+import com.upi.stack.perf.PerfContext;
+import com.upi.stack.perf.PerfData;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import java.math.BigDecimal;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// End-to-end synchronous payment against H2. Every benchmark thread pays from its own
+// account into one shared payee, so the thread count is the contention level on that payee.
+// With holdCredits the payee is flagged as a hot account: its credits are held against the
+// clearing account and folded in bulk instead of each landing on the payee's account.
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class PaymentBenchmark {
+    
+    private static final int MAX_PAYERS = 256;
+    private static final String PAYEE = "perf.merchant@perf";
+    
+    @Param({"false", "true"})
+    public boolean holdCredits;
+    
+    private ConfigurableApplicationContext context;
+    private TransactionService transactionService;
+    private final AtomicInteger nextPayer = new AtomicInteger();
+    
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = PerfContext.start(holdCredits ? "--upi.ledger.hot-accounts=" + PAYEE : "--upi.ledger.hot-accounts=");
+        transactionService = context.getBean(TransactionService.class);
+        JdbcTemplate jdbcTemplate = context.getBean(JdbcTemplate.class);
+        PerfData.insertUsers(jdbcTemplate, "perf.payer", MAX_PAYERS, new BigDecimal("1000000000.00"));
+        PerfData.insertUsers(jdbcTemplate, "perf.merchant", 1, BigDecimal.ZERO);
+        jdbcTemplate.update("UPDATE users SET upi_id = ? WHERE upi_id = ?", PAYEE, PerfData.upiId("perf.merchant", 0));
+        context.getBean(HotAccounts.class).refresh();
+    }
+    
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+    
+    @State(Scope.Thread)
+    public static class Payer {
+        
+        TransactionDto request;
+        
+        @Setup(Level.Trial)
+        public void setUp(PaymentBenchmark benchmark) {
+            request = new TransactionDto();
+            request.setPayerUpiId(PerfData.upiId("perf.payer", benchmark.nextPayer.getAndIncrement() % MAX_PAYERS));
+            request.setPayeeUpiId(PAYEE);
+            request.setAmount(new BigDecimal("1.00"));
+            request.setDescription("perf payment");
+        }
+    }
+    
+    @Benchmark
+    public TransactionDto initiatePayment(Payer payer) {
+        return transactionService.initiatePayment(payer.request);
+    }
+} 
\ No newline at end of file
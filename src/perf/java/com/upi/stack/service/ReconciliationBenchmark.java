@@ -0,0 +1,91 @@
+package com.upi.stack.service;
+
+import com.upi.stack.dto.ReconciliationReport;
+import com.upi.stack.perf.PerfContext;
+import com.upi.stack.perf.PerfData;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// A reconciliation run over a large ledger: balanced pairs of legs between two accounts,
+// folded into snapshots, and one payment whose legs are a paisa out. Setup fails unless that
+// payment is reported, so the benchmark doubles as the scale check the unit test used to be.
+// Each iteration is one run after a fresh balanced pair, since H2 hands back the cached
+// result of a query over tables that have not changed.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ReconciliationBenchmark {
+    
+    private static final String PREFIX = "perf.ledger";
+    
+    @Param("1000000")
+    public int legs;
+    
+    private ConfigurableApplicationContext context;
+    private LedgerMaintenance ledgerMaintenance;
+    private JdbcTemplate jdbcTemplate;
+    private long debtor;
+    private long creditor;
+    
+    @Setup(Level.Trial)
+    public void setUp() {
+        // Every run logs the planted imbalance
+        context = PerfContext.start("--upi.ledger.snapshot-settle-window=0s",
+                "--logging.level.com.upi.stack.service.LedgerMaintenance=ERROR");
+        ledgerMaintenance = context.getBean(LedgerMaintenance.class);
+        jdbcTemplate = context.getBean(JdbcTemplate.class);
+        PerfData.insertUsers(jdbcTemplate, PREFIX, 2, BigDecimal.ZERO);
+        debtor = PerfData.userId(jdbcTemplate, PerfData.upiId(PREFIX, 0));
+        creditor = PerfData.userId(jdbcTemplate, PerfData.upiId(PREFIX, 1));
+        
+        jdbcTemplate.update("INSERT INTO ledger_entries (id, account_id, entry_type, amount, created_at) " +
+                "SELECT NEXT VALUE FOR ledger_entries_seq, CASE WHEN MOD(x, 2) = 0 THEN ? ELSE ? END, " +
+                "CASE WHEN MOD(x, 2) = 0 THEN 'DEBIT' ELSE 'CREDIT' END, " +
+                "CASE WHEN MOD(x, 2) = 0 THEN -125 ELSE 125 END, CURRENT_TIMESTAMP " +
+                "FROM SYSTEM_RANGE(1, ?)", debtor, creditor, legs);
+        ledgerMaintenance.takeSnapshots();
+        
+        PerfData.insertTransactions(jdbcTemplate, creditor, debtor, 1);
+        long transactionId = jdbcTemplate.queryForObject("SELECT MAX(id) FROM transactions", Long.class);
+        jdbcTemplate.update("INSERT INTO ledger_entries (id, account_id, transaction_id, entry_type, amount, created_at) VALUES " +
+                "(NEXT VALUE FOR ledger_entries_seq, ?, ?, 'DEBIT', -100, CURRENT_TIMESTAMP), " +
+                "(NEXT VALUE FOR ledger_entries_seq, ?, ?, 'CREDIT', 101, CURRENT_TIMESTAMP)",
+                creditor, transactionId, debtor, transactionId);
+        
+        ReconciliationReport report = ledgerMaintenance.reconcile();
+        if (report.legSum().paise() != 1 || !report.unbalancedTransactionIds().equals(List.of(transactionId))) {
+            throw new IllegalStateException("Reconciliation over " + legs + " legs missed payment " + transactionId +
+                    ": " + report);
+        }
+    }
+    
+    @Setup(Level.Iteration)
+    public void writePair() {
+        jdbcTemplate.update("INSERT INTO ledger_entries (id, account_id, entry_type, amount, created_at) VALUES " +
+                "(NEXT VALUE FOR ledger_entries_seq, ?, 'DEBIT', -125, CURRENT_TIMESTAMP), " +
+                "(NEXT VALUE FOR ledger_entries_seq, ?, 'CREDIT', 125, CURRENT_TIMESTAMP)", debtor, creditor);
+    }
+    
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+    
+    @Benchmark
+    public ReconciliationReport reconcile() {
+        return ledgerMaintenance.reconcile();
+    }
+} 
\ No newline at end of file
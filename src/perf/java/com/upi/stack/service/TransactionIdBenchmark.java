@@ -0,0 +1,26 @@
+package com.upi.stack.service;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import java.util.concurrent.TimeUnit;
+
+// Ids per second from one generator shared by every benchmark thread, the way all requests
+// share the service's; run at several thread counts it shows how the generator holds up
+// under contention. The rate used to be asserted in a unit test, where it depended on the
+// machine running the build.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class TransactionIdBenchmark {
+    
+    private final TimeOrderedTransactionIdGenerator generator = new TimeOrderedTransactionIdGenerator(7);
+    
+    @Benchmark
+    public String nextId() {
+        return generator.nextId();
+    }
+} 
\ No newline at end of file
@@ -0,0 +1,53 @@
+package com.upi.stack.service;
+
+import com.upi.stack.entity.Money;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import java.math.BigDecimal;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+// Limit checks on the payment hot path, with every rule on and set high enough that payments
+// are always admitted: random payers out of a large population, and every thread paying from
+// the same account (all CAS traffic on one set of buckets)
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class VelocityLimitsBenchmark {
+    
+    private static final Money AMOUNT = Money.ofPaise(100);
+    
+    @Param("100000")
+    public int payers;
+    
+    private VelocityLimits velocityLimits;
+    private String[] upiIds;
+    
+    @Setup(Level.Trial)
+    public void setUp() {
+        velocityLimits = new VelocityLimits(null, null, true, new BigDecimal("100000.00"),
+                new BigDecimal("1000000000000.00"), Long.MAX_VALUE, Long.MAX_VALUE, Long.MAX_VALUE);
+        upiIds = new String[payers];
+        for (int i = 0; i < payers; i++) {
+            upiIds[i] = "perf.payer" + i + "@perf";
+        }
+    }
+    
+    @Benchmark
+    public String randomPayer() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        return velocityLimits.admit(upiIds[random.nextInt(payers)], upiIds[random.nextInt(payers)], AMOUNT);
+    }
+    
+    @Benchmark
+    public String samePayer() {
+        return velocityLimits.admit(upiIds[0], upiIds[1], AMOUNT);
+    }
+} 
\ No newline at end of file
@@ -0,0 +1,114 @@
+package com.upi.stack.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.upi.stack.dto.TransactionDto;
+import com.upi.stack.perf.PerfContext;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.http.converter.cbor.MappingJackson2CborHttpMessageConverter;
+import org.springframework.http.converter.smile.MappingJackson2SmileHttpMessageConverter;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Serialization cost per wire format with the mappers the controllers use: reading a /pay
+// request, writing its response, and writing and reading one page of history. Setup prints
+// the bytes per transaction of each payload, as sizes do not show up in the JMH results.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class WireFormatBenchmark {
+    
+    @Param({"json", "cbor", "smile"})
+    public String format;
+    
+    // The default page size
+    @Param("20")
+    public int pageSize;
+    
+    private ConfigurableApplicationContext context;
+    private ObjectReader transactionReader;
+    private ObjectReader pageReader;
+    private ObjectWriter writer;
+    private byte[] request;
+    private TransactionDto response;
+    private List<TransactionDto> page;
+    private byte[] pageBytes;
+    
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        context = PerfContext.start();
+        ObjectMapper mapper = switch (format) {
+            case "json" -> context.getBean(ObjectMapper.class);
+            case "cbor" -> context.getBean(MappingJackson2CborHttpMessageConverter.class).getObjectMapper();
+            case "smile" -> context.getBean(MappingJackson2SmileHttpMessageConverter.class).getObjectMapper();
+            default -> throw new IllegalArgumentException("Unknown format " + format);
+        };
+        transactionReader = mapper.readerFor(TransactionDto.class);
+        pageReader = mapper.readerFor(TransactionDto[].class);
+        writer = mapper.writer();
+        
+        TransactionDto payment = new TransactionDto();
+        payment.setPayerUpiId("perf.payer@perf");
+        payment.setPayeeUpiId("perf.merchant@perf");
+        payment.setAmount(new BigDecimal("125.50"));
+        payment.setDescription("perf wire format");
+        request = writer.writeValueAsBytes(payment);
+        
+        response = transaction(42);
+        page = new ArrayList<>();
+        for (int i = 0; i < pageSize; i++) {
+            page.add(transaction(1000 + i));
+        }
+        pageBytes = writer.writeValueAsBytes(page);
+        
+        System.out.printf("%n%s: /pay request %d bytes, response %d bytes, history %.1f bytes per transaction%n", format,
+                request.length, writer.writeValueAsBytes(response).length, (double) pageBytes.length / pageSize);
+    }
+    
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+    
+    @Benchmark
+    public TransactionDto readPayRequest() throws IOException {
+        return transactionReader.readValue(request);
+    }
+    
+    @Benchmark
+    public byte[] writePayResponse() throws IOException {
+        return writer.writeValueAsBytes(response);
+    }
+    
+    @Benchmark
+    public byte[] writeHistoryPage() throws IOException {
+        return writer.writeValueAsBytes(page);
+    }
+    
+    @Benchmark
+    public TransactionDto[] readHistoryPage() throws IOException {
+        return pageReader.readValue(pageBytes);
+    }
+    
+    private static TransactionDto transaction(long id) {
+        LocalDateTime createdAt = LocalDateTime.of(2024, 3, 1, 10, 15, 30, 123_456_000).plusSeconds(id);
+        return new TransactionDto(id, String.format("TXN01HQ%013dX", id), "perf.payer@perf", "perf.merchant@perf",
+                new BigDecimal("125.50"), "perf wire format", "SUCCESS", "PAY", createdAt, createdAt.plusNanos(41_000),
+                null, null);
+    }
+} 
\ No newline at end of file
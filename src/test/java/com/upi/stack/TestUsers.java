@@ -0,0 +1,50 @@
+package com.upi.stack;
+
+import com.upi.stack.dto.TransactionDto;
+import com.upi.stack.entity.Money;
+import com.upi.stack.entity.User;
+import com.upi.stack.repository.UserRepository;
+import com.upi.stack.service.TransactionService;
+import java.math.BigDecimal;
+
+// Users for tests, and payments between them. Only the UPI ID has to be unique; the other
+// details are placeholders.
+public final class TestUsers {
+    
+    private TestUsers() {
+    }
+    
+    public static User save(UserRepository userRepository, String upiId, String openingBalance) {
+        return userRepository.save(user(upiId, openingBalance, "TEST0000001"));
+    }
+    
+    public static User save(UserRepository userRepository, String upiId, String openingBalance, String ifscCode) {
+        return userRepository.save(user(upiId, openingBalance, ifscCode));
+    }
+    
+    public static TransactionDto payment(User payer, User payee, String amount) {
+        TransactionDto payment = new TransactionDto();
+        payment.setPayerUpiId(payer.getUpiId());
+        payment.setPayeeUpiId(payee.getUpiId());
+        payment.setAmount(new BigDecimal(amount));
+        payment.setDescription("Test payment");
+        return payment;
+    }
+    
+    public static TransactionDto pay(TransactionService transactionService, User payer, User payee, String amount) {
+        return transactionService.initiatePayment(payment(payer, payee, amount));
+    }
+    
+    private static User user(String upiId, String openingBalance, String ifscCode) {
+        User user = new User();
+        user.setUpiId(upiId);
+        user.setName("Test User");
+        user.setPhoneNumber("9000000000");
+        user.setEmail(upiId.replace('@', '.') + "@example.com");
+        user.setBalance(Money.parse(openingBalance));
+        user.setBankName("Test Bank");
+        user.setAccountNumber("123456789");
+        user.setIfscCode(ifscCode);
+        return user;
+    }
+} 
\ No newline at end of file
@@ -0,0 +1,69 @@
+package com.upi.stack.config;
+
+import com.github.benmanes.caffeine.jcache.configuration.CaffeineConfiguration;
+import com.upi.stack.TestUsers;
+import com.upi.stack.entity.User;
+import com.upi.stack.repository.UserRepository;
+import com.zaxxer.hikari.HikariDataSource;
+import jakarta.persistence.Cache;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.boot.spi.SessionFactoryOptions;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import javax.cache.CacheManager;
+import javax.sql.DataSource;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// The profile as shipped, except for a database of its own, as in PaymentPipelineTests
+@SpringBootTest(properties = "spring.datasource.url=jdbc:h2:mem:production-perf-test;QUERY_CACHE_SIZE=256")
+@ActiveProfiles("production-perf")
+class ProductionPerfProfileTests {
+    
+    @Autowired
+    private DataSource dataSource;
+    
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+    
+    @Autowired
+    private UserRepository userRepository;
+    
+    @Test
+    void poolAndHibernateAreTunedForLoad() {
+        assertThat(dataSource).isInstanceOfSatisfying(HikariDataSource.class, pool -> {
+            assertThat(pool.getMaximumPoolSize()).isEqualTo(32);
+            assertThat(pool.getMinimumIdle()).isEqualTo(32);
+            assertThat(pool.getConnectionTimeout()).isEqualTo(2000);
+        });
+        
+        SessionFactoryOptions options = entityManagerFactory.unwrap(SessionFactory.class).getSessionFactoryOptions();
+        assertThat(options.isSecondLevelCacheEnabled()).isTrue();
+        assertThat(options.inClauseParameterPaddingEnabled()).isTrue();
+        assertThat(options.isStatisticsEnabled()).isFalse();
+        assertThat(options.getJdbcBatchSize()).isEqualTo(50);
+        assertThat(options.isOrderInsertsEnabled()).isTrue();
+        assertThat(options.isOrderUpdatesEnabled()).isTrue();
+    }
+    
+    @Test
+    void usersAreReadThroughTheSecondLevelCache() {
+        User user = TestUsers.save(userRepository, "perf.profile@test", "10.00");
+        Cache cache = entityManagerFactory.getCache();
+        cache.evict(User.class, user.getId());
+        assertThat(cache.contains(User.class, user.getId())).isFalse();
+        
+        assertThat(userRepository.findById(user.getId())).isPresent();
+        assertThat(cache.contains(User.class, user.getId())).isTrue();
+        
+        // Sized by caffeine-l2.conf rather than Caffeine's defaults
+        Object cacheManager = entityManagerFactory.unwrap(SessionFactory.class).getProperties()
+                .get("hibernate.javax.cache.cache_manager");
+        assertThat(cacheManager).isInstanceOfSatisfying(CacheManager.class, manager ->
+                assertThat(manager.getCache("users").getConfiguration(CaffeineConfiguration.class).getMaximumSize())
+                        .hasValue(1_000_000));
+    }
+} 
\ No newline at end of file
@@ -0,0 +1,141 @@
+package com.upi.stack.config;
+
+import com.upi.stack.TestUsers;
+import com.upi.stack.entity.User;
+import com.upi.stack.repository.UserRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.cbor.MappingJackson2CborHttpMessageConverter;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.ResultActions;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
+import org.springframework.test.web.servlet.request.RequestPostProcessor;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+// Rates this low refill nothing while a test runs
+@SpringBootTest(properties = {
+    "upi.rate-limit.client-rate=0.001",
+    "upi.rate-limit.client-burst=3",
+    "upi.rate-limit.payer-rate=0.001",
+    "upi.rate-limit.payer-burst=2",
+    "upi.rate-limit.trusted-proxies=10.20.0.0/16"
+})
+@AutoConfigureMockMvc
+class RateLimitFilterTests {
+    
+    private static final String PROXY = "10.20.0.7";
+    
+    @Autowired
+    private MockMvc mockMvc;
+    
+    @Autowired
+    private RateLimitFilter rateLimitFilter;
+    
+    @Autowired
+    private UserRepository userRepository;
+    
+    @Autowired
+    private MappingJackson2CborHttpMessageConverter cborHttpMessageConverter;
+    
+    @Test
+    void clientOverItsBurstIsRefusedAndOthersAreNot() throws Exception {
+        long rejected = rateLimitFilter.rejected(RateLimitFilter.Limit.CLIENT);
+        for (int i = 0; i < 3; i++) {
+            list("client-a").andExpect(status().isOk());
+        }
+        list("client-a").andExpect(status().isTooManyRequests())
+                .andExpect(header().exists(HttpHeaders.RETRY_AFTER));
+        list("client-b").andExpect(status().isOk());
+        mockMvc.perform(get("/actuator/health").header("X-Client-Id", "client-a").with(from(PROXY)))
+                .andExpect(status().isOk());
+        assertThat(rateLimitFilter.rejected(RateLimitFilter.Limit.CLIENT)).isEqualTo(rejected + 1);
+    }
+    
+    @Test
+    void clientHeaderFromAnUntrustedAddressIsIgnored() throws Exception {
+        // A new id on every request would otherwise get a fresh bucket each time
+        for (int i = 0; i < 3; i++) {
+            mockMvc.perform(get("/api/transactions").param("size", "1").header("X-Client-Id", "spoofed-" + i)
+                    .with(from("192.0.2.9"))).andExpect(status().isOk());
+        }
+        mockMvc.perform(get("/api/transactions").param("size", "1").header("X-Client-Id", "spoofed-3")
+                .with(from("192.0.2.9"))).andExpect(status().isTooManyRequests());
+        // The same header through the proxy is a client of its own
+        list("spoofed-3").andExpect(status().isOk());
+    }
+    
+    @Test
+    void payerOverItsBurstIsRefusedWhateverTheClient() throws Exception {
+        long rejected = rateLimitFilter.rejected(RateLimitFilter.Limit.PAYER);
+        User payer = TestUsers.save(userRepository, "ratelimit.payer@test", "100.00");
+        User other = TestUsers.save(userRepository, "ratelimit.other@test", "100.00");
+        
+        // The body read by the filter still reaches the controller whole
+        pay("payer-1", payer, other).andExpect(status().isCreated());
+        pay("payer-2", payer, other).andExpect(status().isCreated());
+        pay("payer-3", payer, other).andExpect(status().isTooManyRequests());
+        pay("payer-4", other, payer).andExpect(status().isCreated());
+        // The payer is found in a binary body too
+        mockMvc.perform(post("/api/transactions/pay").header("X-Client-Id", "payer-5").with(from(PROXY))
+                        .contentType(MediaType.APPLICATION_CBOR)
+                        .content(cborHttpMessageConverter.getObjectMapper().writeValueAsBytes(Map.of(
+                                "payerUpiId", payer.getUpiId(), "payeeUpiId", other.getUpiId(),
+                                "amount", "5.00", "description", "rate limit"))))
+                .andExpect(status().isTooManyRequests());
+        assertThat(rateLimitFilter.rejected(RateLimitFilter.Limit.PAYER)).isEqualTo(rejected + 2);
+        assertThat(rateLimitFilter.payInFlight()).isZero();
+    }
+    
+    @Test
+    void retriesWithAKnownIdempotencyKeyTakeNoPayerToken() throws Exception {
+        User payer = TestUsers.save(userRepository, "ratelimit.retry@test", "100.00");
+        User other = TestUsers.save(userRepository, "ratelimit.retry.other@test", "100.00");
+        long rejected = rateLimitFilter.rejected(RateLimitFilter.Limit.PAYER);
+        
+        // A client of its own per request, so only the payer bucket can refuse
+        pay("retry-1", payer, other, "ratelimit-retry").andExpect(status().isCreated());
+        for (int i = 2; i <= 4; i++) {
+            pay("retry-" + i, payer, other, "ratelimit-retry").andExpect(status().isCreated());
+        }
+        // The first payment took one of the two tokens; the replays took none
+        pay("retry-5", payer, other).andExpect(status().isCreated());
+        pay("retry-6", payer, other).andExpect(status().isTooManyRequests());
+        assertThat(rateLimitFilter.rejected(RateLimitFilter.Limit.PAYER)).isEqualTo(rejected + 1);
+    }
+    
+    private ResultActions list(String client) throws Exception {
+        return mockMvc.perform(get("/api/transactions").param("size", "1").header("X-Client-Id", client).with(from(PROXY)));
+    }
+    
+    private ResultActions pay(String client, User payer, User payee) throws Exception {
+        return pay(client, payer, payee, null);
+    }
+    
+    private ResultActions pay(String client, User payer, User payee, String idempotencyKey) throws Exception {
+        String body = String.format("{\"amount\":5.00,\"payeeUpiId\":\"%s\",\"description\":\"rate limit\",\"payerUpiId\":\"%s\"}",
+                payee.getUpiId(), payer.getUpiId());
+        MockHttpServletRequestBuilder request = post("/api/transactions/pay").header("X-Client-Id", client).with(from(PROXY))
+                .contentType(MediaType.APPLICATION_JSON).content(body);
+        if (idempotencyKey != null) {
+            request.header("Idempotency-Key", idempotencyKey);
+        }
+        return mockMvc.perform(request);
+    }
+    
+    private static RequestPostProcessor from(String remoteAddress) {
+        return request -> {
+            request.setRemoteAddr(remoteAddress);
+            return request;
+        };
+    }
+} 
\ No newline at end of file
@@ -0,0 +1,139 @@
+package com.upi.stack.config;
+
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.upi.stack.TestUsers;
+import com.upi.stack.dto.TransactionDto;
+import com.upi.stack.dto.UserDto;
+import com.upi.stack.entity.User;
+import com.upi.stack.repository.UserRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.cbor.MappingJackson2CborHttpMessageConverter;
+import org.springframework.http.converter.smile.MappingJackson2SmileHttpMessageConverter;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest
+@AutoConfigureMockMvc
+class WireFormatTests {
+    
+    private static final MediaType APPLICATION_SMILE = MediaType.parseMediaType("application/x-jackson-smile");
+    private static final MediaType APPLICATION_CBOR_SEQ = MediaType.parseMediaType("application/cbor-seq");
+    
+    @Autowired
+    private MockMvc mockMvc;
+    
+    @Autowired
+    private ObjectMapper objectMapper;
+    
+    @Autowired
+    private MappingJackson2CborHttpMessageConverter cborHttpMessageConverter;
+    
+    @Autowired
+    private MappingJackson2SmileHttpMessageConverter smileHttpMessageConverter;
+    
+    @Autowired
+    private UserRepository userRepository;
+    
+    @Test
+    void paymentsAndHistoryRoundTripInEachFormatWithJsonByDefault() throws Exception {
+        ObjectMapper cbor = cborHttpMessageConverter.getObjectMapper();
+        ObjectMapper smile = smileHttpMessageConverter.getObjectMapper();
+        String payer = TestUsers.save(userRepository, "wire.payer@test", "100.00").getUpiId();
+        String payee = TestUsers.save(userRepository, "wire.payee@test", "100.00").getUpiId();
+        
+        MvcResult paid = mockMvc.perform(post("/api/transactions/pay")
+                        .contentType(MediaType.APPLICATION_CBOR).accept(MediaType.APPLICATION_CBOR)
+                        .content(cbor.writeValueAsBytes(payment(payer, payee, "12.50"))))
+                .andExpect(status().isCreated())
+                .andExpect(content().contentType(MediaType.APPLICATION_CBOR))
+                .andReturn();
+        TransactionDto payment = cbor.readValue(paid.getResponse().getContentAsByteArray(), TransactionDto.class);
+        assertThat(payment.getTransactionId()).isNotNull();
+        assertThat(payment.getAmount()).isEqualByComparingTo("12.50");
+        assertThat(payment.getCreatedAt()).isNotNull();
+        assertThat(paid.getResponse().getContentAsByteArray().length).isLessThan(objectMapper.writeValueAsBytes(payment).length);
+        
+        // The same payment read back as JSON, without asking, and as Smile
+        String path = "/api/transactions/" + payment.getTransactionId();
+        MvcResult json = mockMvc.perform(get(path))
+                .andExpect(status().isOk())
+                .andExpect(content().contentTypeCompatibleWith(MediaType.APPLICATION_JSON))
+                .andReturn();
+        TransactionDto stored = objectMapper.readValue(json.getResponse().getContentAsByteArray(), TransactionDto.class);
+        assertThat(stored.getTransactionId()).isEqualTo(payment.getTransactionId());
+        MvcResult smiled = mockMvc.perform(get(path).accept(APPLICATION_SMILE))
+                .andExpect(content().contentType(APPLICATION_SMILE))
+                .andReturn();
+        assertThat(smile.readValue(smiled.getResponse().getContentAsByteArray(), TransactionDto.class)).isEqualTo(stored);
+        
+        // A batch sent as a CBOR sequence, then the payer's history streamed back as one
+        ByteArrayOutputStream lines = new ByteArrayOutputStream();
+        try (var writer = cbor.writer().writeValues(lines)) {
+            writer.write(payment(payer, payee, "1.00"));
+            writer.write(payment(payee, payer, "2.00"));
+        }
+        MvcResult batch = mockMvc.perform(post("/api/transactions/pay/batch")
+                        .contentType(APPLICATION_CBOR_SEQ).accept(MediaType.APPLICATION_CBOR)
+                        .content(lines.toByteArray()))
+                .andExpect(status().isOk())
+                .andReturn();
+        List<TransactionDto> outcomes = List.of(cbor.readValue(batch.getResponse().getContentAsByteArray(), TransactionDto[].class));
+        assertThat(outcomes).extracting(TransactionDto::getAmount).containsExactly(new BigDecimal("1.00"), new BigDecimal("2.00"));
+        
+        MvcResult paged = mockMvc.perform(get("/api/transactions/user/" + payer).accept(MediaType.APPLICATION_CBOR))
+                .andExpect(status().isOk())
+                .andReturn();
+        List<TransactionDto> page = List.of(cbor.readValue(paged.getResponse().getContentAsByteArray(), TransactionDto[].class));
+        byte[] streamed = stream("/api/transactions/user/" + payer);
+        assertThat(readAll(cbor, streamed, TransactionDto.class))
+                .containsExactlyInAnyOrderElementsOf(page)
+                .extracting(TransactionDto::getTransactionId)
+                .contains(payment.getTransactionId());
+        
+        assertThat(readAll(cbor, stream("/api/users"), UserDto.class))
+                .extracting(UserDto::getUpiId)
+                .contains(payer, payee);
+    }
+    
+    private static TransactionDto payment(String payer, String payee, String amount) {
+        TransactionDto payment = new TransactionDto();
+        payment.setPayerUpiId(payer);
+        payment.setPayeeUpiId(payee);
+        payment.setAmount(new BigDecimal(amount));
+        payment.setDescription("wire format");
+        return payment;
+    }
+    
+    private byte[] stream(String path) throws Exception {
+        MvcResult started = mockMvc.perform(get(path).accept(APPLICATION_CBOR_SEQ))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        return mockMvc.perform(asyncDispatch(started))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(APPLICATION_CBOR_SEQ))
+                .andReturn().getResponse().getContentAsByteArray();
+    }
+    
+    private static <T> List<T> readAll(ObjectMapper mapper, byte[] body, Class<T> type) throws IOException {
+        try (MappingIterator<T> values = mapper.readerFor(type).readValues(body)) {
+            return values.readAll();
+        }
+    }
+} 
\ No newline at end of file
@@ -0,0 +1,37 @@
+package com.upi.stack.entity;
+
+import com.upi.stack.TestUsers;
+import com.upi.stack.repository.UserRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// A database of its own, as in PaymentPipelineTests
+@SpringBootTest(properties = "spring.datasource.url=jdbc:h2:mem:money-test")
+class MoneyConverterTests {
+    
+    @Autowired
+    private UserRepository userRepository;
+    
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    
+    @Test
+    void balancesAreStoredAsWholePaiseAndReadBackExactly() {
+        // Past what a double holds exactly, so any detour through floating point would show
+        User rich = TestUsers.save(userRepository, "money.rich@test", "92233720368547758.07");
+        User small = TestUsers.save(userRepository, "money.small@test", "0.05");
+        
+        assertThat(jdbcTemplate.queryForObject("SELECT balance FROM users WHERE id = ?", Long.class, rich.getId()))
+                .isEqualTo(Long.MAX_VALUE);
+        assertThat(jdbcTemplate.queryForObject("SELECT balance FROM users WHERE id = ?", Long.class, small.getId()))
+                .isEqualTo(5L);
+        assertThat(userRepository.findById(rich.getId())).get().extracting(User::getBalance)
+                .isEqualTo(Money.ofPaise(Long.MAX_VALUE));
+        assertThat(userRepository.findById(small.getId())).get().extracting(User::getBalance)
+                .isEqualTo(Money.ofPaise(5));
+    }
+} 
\ No newline at end of file
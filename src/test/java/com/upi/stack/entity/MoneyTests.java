@@ -0,0 +1,61 @@
+package com.upi.stack.entity;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import java.math.BigDecimal;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class MoneyTests {
+    
+    private static final Money MAX = Money.ofPaise(Long.MAX_VALUE);
+    private static final Money MIN = Money.ofPaise(Long.MIN_VALUE);
+    
+    @Test
+    void arithmeticThrowsOnOverflowInsteadOfWrapping() {
+        assertThatThrownBy(() -> MAX.plus(Money.ofPaise(1))).isInstanceOf(ArithmeticException.class);
+        assertThatThrownBy(() -> MIN.minus(Money.ofPaise(1))).isInstanceOf(ArithmeticException.class);
+        assertThatThrownBy(MIN::negate).isInstanceOf(ArithmeticException.class);
+        assertThat(MAX.minus(Money.ofPaise(1)).plus(Money.ofPaise(1))).isEqualTo(MAX);
+    }
+    
+    @Test
+    void rupeesAreTakenExactlyOrRefused() {
+        assertThat(Money.of(new BigDecimal("12.5"))).isEqualTo(Money.ofPaise(1250));
+        assertThat(Money.of(new BigDecimal("1E+2"))).isEqualTo(Money.ofPaise(10000));
+        assertThatThrownBy(() -> Money.of(new BigDecimal("0.001"))).isInstanceOf(ArithmeticException.class);
+        assertThatThrownBy(() -> Money.of(new BigDecimal("92233720368547758.08"))).isInstanceOf(ArithmeticException.class);
+        assertThat(Money.of(new BigDecimal("92233720368547758.07"))).isEqualTo(MAX);
+    }
+    
+    @Test
+    void parseReadsWhatToStringWrites() {
+        for (long paise : new long[] {0, 5, -5, 100, -1205, 123456789, Long.MAX_VALUE, Long.MIN_VALUE}) {
+            Money money = Money.ofPaise(paise);
+            assertThat(Money.parse(money.toString())).isEqualTo(money);
+        }
+        assertThat(Money.ofPaise(-1205).toString()).isEqualTo("-12.05");
+        assertThat(Money.parse("7")).isEqualTo(Money.ofPaise(700));
+        assertThat(Money.parse("7.5")).isEqualTo(Money.ofPaise(750));
+        assertThat(Money.parse("1.5e1")).isEqualTo(Money.ofPaise(1500));
+        assertThatThrownBy(() -> Money.parse("1.234")).isInstanceOf(ArithmeticException.class);
+        assertThatThrownBy(() -> Money.parse("92233720368547758.08")).isInstanceOf(ArithmeticException.class);
+    }
+    
+    @Test
+    void jsonCarriesRupeesWithTwoDecimals() throws Exception {
+        ObjectMapper mapper = new ObjectMapper();
+        assertThat(mapper.writeValueAsString(Money.ofPaise(1205))).isEqualTo("12.05");
+        assertThat(mapper.readValue("12.05", Money.class)).isEqualTo(Money.ofPaise(1205));
+    }
+    
+    @Test
+    void converterStoresPaise() {
+        MoneyConverter converter = new MoneyConverter();
+        assertThat(converter.convertToDatabaseColumn(Money.ofPaise(-1205))).isEqualTo(-1205L);
+        assertThat(converter.convertToEntityAttribute(Long.MAX_VALUE)).isEqualTo(MAX);
+        assertThat(converter.convertToDatabaseColumn(null)).isNull();
+        assertThat(converter.convertToEntityAttribute(null)).isNull();
+    }
+} 
\ No newline at end of file
@@ -0,0 +1,84 @@
+package com.upi.stack.service;
+
+import com.upi.stack.TestUsers;
+import com.upi.stack.dto.TransactionDto;
+import com.upi.stack.entity.Money;
+import com.upi.stack.entity.User;
+import com.upi.stack.repository.UserRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+// A database of its own, as in PaymentPipelineTests, and no velocity limits to refuse a burst
+@SpringBootTest(properties = {
+    "spring.datasource.url=jdbc:h2:mem:locks-test",
+    "upi.limits.enabled=false"
+})
+class AccountLockManagerTests {
+    
+    @Autowired
+    private TransactionService transactionService;
+    
+    @Autowired
+    private LedgerService ledgerService;
+    
+    @Autowired
+    private AccountLockManager accountLockManager;
+    
+    @Autowired
+    private UserRepository userRepository;
+    
+    @Test
+    void concurrentPaymentsFromOnePayerNeverSpendMoreThanItsBalance() throws Exception {
+        User payer = TestUsers.save(userRepository, "locks.payer@test", "100.00");
+        User payee = TestUsers.save(userRepository, "locks.payee@test", "0.00");
+        
+        ExecutorService threads = Executors.newFixedThreadPool(8);
+        List<Future<TransactionDto>> payments = new ArrayList<>();
+        try {
+            for (int i = 0; i < 20; i++) {
+                payments.add(threads.submit(() -> transactionService.initiatePayment(payment(payer, payee, "10.00"))));
+            }
+            List<TransactionDto> results = new ArrayList<>();
+            for (Future<TransactionDto> payment : payments) {
+                results.add(payment.get());
+            }
+            
+            // Posted payments still carry the README's intentional FAILED status, told apart by reason
+            Map<String, Long> reasons = results.stream()
+                    .collect(Collectors.groupingBy(TransactionDto::getFailureReason, Collectors.counting()));
+            assertThat(reasons).isEqualTo(Map.of("Intentional bug: should be SUCCESS", 10L, "Insufficient balance", 10L));
+        } finally {
+            threads.shutdown();
+        }
+        
+        assertThat(ledgerService.balanceOf(payer.getId())).isEqualTo(Money.ZERO);
+        assertThat(ledgerService.balanceOf(payee.getId())).isEqualTo(Money.parse("100.00"));
+    }
+    
+    @Test
+    void locksAreOnlyTakenInsideATransaction() {
+        assertThatThrownBy(() -> accountLockManager.lockForTransaction(List.of("locks.payer@test")))
+                .isInstanceOf(IllegalStateException.class);
+    }
+    
+    private static TransactionDto payment(User payer, User payee, String amount) {
+        TransactionDto payment = new TransactionDto();
+        payment.setPayerUpiId(payer.getUpiId());
+        payment.setPayeeUpiId(payee.getUpiId());
+        payment.setAmount(new BigDecimal(amount));
+        payment.setDescription("locks test");
+        return payment;
+    }
+} 
\ No newline at end of file
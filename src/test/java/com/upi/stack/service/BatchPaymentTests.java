@@ -0,0 +1,186 @@
+package com.upi.stack.service;
+
+import com.upi.stack.TestUsers;
+import com.upi.stack.controller.TransactionController;
+import com.upi.stack.dto.TransactionDto;
+import com.upi.stack.entity.Money;
+import com.upi.stack.entity.User;
+import com.upi.stack.repository.UserRepository;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.web.servlet.MockMvc;
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+// A database of its own, as in PaymentPipelineTests
+@SpringBootTest(properties = {
+    "spring.datasource.url=jdbc:h2:mem:batch-test",
+    "upi.batch.max-lines=5"
+})
+@AutoConfigureMockMvc
+class BatchPaymentTests {
+    
+    @Autowired
+    private MockMvc mockMvc;
+    
+    @Autowired
+    private ObjectMapper objectMapper;
+    
+    @Autowired
+    private TransactionService transactionService;
+    
+    @Autowired
+    private TransactionController transactionController;
+    
+    @Autowired
+    private LedgerService ledgerService;
+    
+    @Autowired
+    private UserRepository userRepository;
+    
+    @Test
+    void batchLinesAreStoredAsSuccessWhileASinglePayKeepsTheIntentionalFailedStatus() {
+        User payer = TestUsers.save(userRepository, "batch.single@test", "100.00");
+        User payee = TestUsers.save(userRepository, "batch.payee@test", "0.00");
+        
+        // Both move the money; only the single /pay path carries the README's status bug
+        TransactionDto single = transactionService.initiatePayment(line(payer, payee, "10.00"));
+        assertThat(single.getStatus()).isEqualTo("FAILED");
+        assertThat(single.getFailureReason()).isEqualTo("Intentional bug: should be SUCCESS");
+        
+        List<TransactionDto> batch = transactionService.initiateBatchPayment(List.of(line(payer, payee, "20.00")));
+        assertThat(batch).singleElement().satisfies(line -> {
+            assertThat(line.getStatus()).isEqualTo("SUCCESS");
+            assertThat(line.getFailureReason()).isNull();
+        });
+        
+        assertThat(ledgerService.balanceOf(payer.getId())).isEqualTo(Money.parse("70.00"));
+        assertThat(ledgerService.balanceOf(payee.getId())).isEqualTo(Money.parse("30.00"));
+    }
+    
+    @Test
+    void linesAreCheckedInOrderAgainstRunningBalancesAndAnsweredInInputOrder() {
+        User alice = TestUsers.save(userRepository, "batch.alice@test", "50.00");
+        User bob = TestUsers.save(userRepository, "batch.bob@test", "0.00");
+        TransactionDto unknownPayee = line(alice, bob, "5.00");
+        unknownPayee.setPayeeUpiId("batch.nobody@test");
+        
+        // The third line funds bob from what the first paid him, and the fourth spends what it paid alice
+        List<TransactionDto> results = transactionService.initiateBatchPayment(List.of(
+                line(alice, bob, "30.00"), line(alice, bob, "30.00"), line(bob, alice, "20.00"), line(alice, bob, "40.00"),
+                unknownPayee));
+        assertThat(results)
+                .extracting(TransactionDto::getAmount, TransactionDto::getStatus, TransactionDto::getFailureReason)
+                .containsExactly(
+                        tuple(new BigDecimal("30.00"), "SUCCESS", null),
+                        tuple(new BigDecimal("30.00"), "FAILED", "Insufficient balance"),
+                        tuple(new BigDecimal("20.00"), "SUCCESS", null),
+                        tuple(new BigDecimal("40.00"), "SUCCESS", null),
+                        tuple(new BigDecimal("5.00"), "FAILED", "Payee not found"));
+        
+        assertThat(ledgerService.balanceOf(alice.getId())).isEqualTo(Money.ZERO);
+        assertThat(ledgerService.balanceOf(bob.getId())).isEqualTo(Money.parse("50.00"));
+    }
+    
+    @Test
+    void ndjsonBodyIsSettledOneLinePerPayment() throws Exception {
+        User payer = TestUsers.save(userRepository, "batch.ndjson@test", "100.00");
+        User payee = TestUsers.save(userRepository, "batch.ndjson.payee@test", "0.00");
+        String body = objectMapper.writeValueAsString(line(payer, payee, "1.00")) + "\n"
+                + objectMapper.writeValueAsString(line(payer, payee, "2.00")) + "\n"
+                + "{\"payerUpiId\":\"" + payer.getUpiId() + "\",\"payeeUpiId\":\"" + payee.getUpiId() + "\"}\n";
+        
+        String response = mockMvc.perform(post("/api/transactions/pay/batch")
+                        .contentType("application/x-ndjson").accept(MediaType.APPLICATION_JSON)
+                        .content(body))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+        List<TransactionDto> results = List.of(objectMapper.readValue(response, TransactionDto[].class));
+        assertThat(results).extracting(TransactionDto::getStatus).containsExactly("SUCCESS", "SUCCESS", "FAILED");
+        assertThat(results.get(2).getFailureReason()).isNotBlank();
+        assertThat(ledgerService.balanceOf(payee.getId())).isEqualTo(Money.parse("3.00"));
+    }
+    
+    @Test
+    void streamedBodyPastTheLineCapIsRefusedWithoutReadingTheRest() throws Exception {
+        User payer = TestUsers.save(userRepository, "batch.capped@test", "100.00");
+        User payee = TestUsers.save(userRepository, "batch.capped.payee@test", "0.00");
+        StringBuilder lines = new StringBuilder();
+        for (int i = 0; i < 6; i++) {
+            lines.append(objectMapper.writeValueAsString(line(payer, payee, "1.00"))).append('\n');
+        }
+        // The rest of the body fails the test if it is ever read
+        InputStream rest = new InputStream() {
+            @Override
+            public int read() {
+                throw new AssertionError("Read past the line cap");
+            }
+        };
+        InputStream body = new SequenceInputStream(new ByteArrayInputStream(lines.toString().getBytes(StandardCharsets.UTF_8)), rest);
+        
+        ResponseEntity<List<TransactionDto>> response = transactionController.initiateBatchPaymentStream(body);
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.BAD_REQUEST);
+        assertThat(ledgerService.balanceOf(payer.getId())).isEqualTo(Money.parse("100.00"));
+        assertThat(ledgerService.balanceOf(payee.getId())).isEqualTo(Money.ZERO);
+    }
+    
+    @Test
+    void arrayBodyIsReadLikeAStreamAndRefusedPastTheLineCap() throws Exception {
+        User payer = TestUsers.save(userRepository, "batch.array@test", "100.00");
+        User payee = TestUsers.save(userRepository, "batch.array.payee@test", "0.00");
+        
+        String response = mockMvc.perform(post("/api/transactions/pay/batch")
+                        .contentType(MediaType.APPLICATION_JSON).accept(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(List.of(line(payer, payee, "1.00"), line(payer, payee, "2.00")))))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+        assertThat(objectMapper.readValue(response, TransactionDto[].class))
+                .extracting(TransactionDto::getStatus).containsExactly("SUCCESS", "SUCCESS");
+        mockMvc.perform(post("/api/transactions/pay/batch")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(line(payer, payee, "1.00"))))
+                .andExpect(status().isBadRequest());
+        
+        StringBuilder elements = new StringBuilder("[");
+        for (int i = 0; i < 6; i++) {
+            elements.append(objectMapper.writeValueAsString(line(payer, payee, "1.00"))).append(',');
+        }
+        // The rest of the array fails the test if it is ever read
+        InputStream rest = new InputStream() {
+            @Override
+            public int read() {
+                throw new AssertionError("Read past the line cap");
+            }
+        };
+        InputStream body = new SequenceInputStream(new ByteArrayInputStream(elements.toString().getBytes(StandardCharsets.UTF_8)), rest);
+        
+        ResponseEntity<List<TransactionDto>> capped = transactionController.initiateBatchPayment(body);
+        assertThat(capped.getStatusCode()).isEqualTo(HttpStatus.BAD_REQUEST);
+        assertThat(ledgerService.balanceOf(payer.getId())).isEqualTo(Money.parse("97.00"));
+        assertThat(ledgerService.balanceOf(payee.getId())).isEqualTo(Money.parse("3.00"));
+    }
+    
+    private static TransactionDto line(User payer, User payee, String amount) {
+        TransactionDto line = new TransactionDto();
+        line.setPayerUpiId(payer.getUpiId());
+        line.setPayeeUpiId(payee.getUpiId());
+        line.setAmount(new BigDecimal(amount));
+        line.setDescription("batch");
+        return line;
+    }
+} 
\ No newline at end of file
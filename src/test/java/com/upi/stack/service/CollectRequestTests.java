@@ -0,0 +1,100 @@
+package com.upi.stack.service;
+
+import com.upi.stack.TestUsers;
+import com.upi.stack.dto.TransactionDto;
+import com.upi.stack.entity.Money;
+import com.upi.stack.entity.User;
+import com.upi.stack.repository.UserRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.awaitility.Awaitility.await;
+
+@SpringBootTest(properties = {
+    "upi.collect.ttl=PT3S",
+    "upi.collect.expiry-tick=PT0.1S"
+})
+class CollectRequestTests {
+    
+    @Autowired
+    private TransactionService transactionService;
+    
+    @Autowired
+    private LedgerService ledgerService;
+    
+    @Autowired
+    private UserRepository userRepository;
+    
+    @Test
+    void approvedRequestIsPaidFromThePayer() {
+        User payer = TestUsers.save(userRepository, "collect.payer@test", "500.00");
+        User payee = TestUsers.save(userRepository, "collect.shop@test", "0.00");
+        
+        TransactionDto request = transactionService.requestCollect(collect(payer, payee, "120.00"));
+        assertThat(request.getType()).isEqualTo("COLLECT");
+        assertThat(request.getStatus()).isEqualTo("PENDING");
+        assertThat(request.getExpiresAt()).isNotNull();
+        assertThat(pendingFor(payer)).containsExactly(request.getTransactionId());
+        assertThat(ledgerService.balanceOf(payer.getId())).isEqualTo(Money.parse("500.00"));
+        
+        transactionService.approveCollect(request.getTransactionId());
+        
+        assertThat(ledgerService.balanceOf(payer.getId())).isEqualTo(Money.parse("380.00"));
+        assertThat(ledgerService.balanceOf(payee.getId())).isEqualTo(Money.parse("120.00"));
+        assertThat(pendingFor(payer)).isEmpty();
+        assertThatThrownBy(() -> transactionService.approveCollect(request.getTransactionId()))
+                .hasMessage("Collect request is no longer pending");
+    }
+    
+    @Test
+    void declinedRequestMovesNoMoney() {
+        User payer = TestUsers.save(userRepository, "collect.decliner@test", "500.00");
+        User payee = TestUsers.save(userRepository, "collect.asker@test", "0.00");
+        
+        TransactionDto request = transactionService.requestCollect(collect(payer, payee, "50.00"));
+        TransactionDto declined = transactionService.declineCollect(request.getTransactionId());
+        
+        assertThat(declined.getStatus()).isEqualTo("CANCELLED");
+        assertThat(declined.getFailureReason()).isEqualTo("Declined by payer");
+        assertThat(ledgerService.balanceOf(payer.getId())).isEqualTo(Money.parse("500.00"));
+        assertThat(pendingFor(payer)).isEmpty();
+    }
+    
+    @Test
+    void unansweredRequestExpires() {
+        User payer = TestUsers.save(userRepository, "collect.silent@test", "500.00");
+        User payee = TestUsers.save(userRepository, "collect.waiter@test", "0.00");
+        
+        TransactionDto request = transactionService.requestCollect(collect(payer, payee, "10.00"));
+        
+        await().atMost(Duration.ofSeconds(10))
+                .until(() -> transactionService.getTransactionById(request.getTransactionId()).getStatus().equals("CANCELLED"));
+        assertThat(transactionService.getTransactionById(request.getTransactionId()).getFailureReason())
+                .isEqualTo(CollectExpiry.EXPIRED_REASON);
+        assertThatThrownBy(() -> transactionService.approveCollect(request.getTransactionId()))
+                .hasMessage("Collect request is no longer pending");
+        assertThat(ledgerService.balanceOf(payer.getId())).isEqualTo(Money.parse("500.00"));
+    }
+    
+    private List<String> pendingFor(User payer) {
+        return transactionService.getPendingCollects(payer.getUpiId(), null, null).getItems().stream()
+                .map(TransactionDto::getTransactionId)
+                .collect(Collectors.toList());
+    }
+    
+    private TransactionDto collect(User payer, User payee, String amount) {
+        TransactionDto request = new TransactionDto();
+        request.setPayerUpiId(payer.getUpiId());
+        request.setPayeeUpiId(payee.getUpiId());
+        request.setAmount(new BigDecimal(amount));
+        request.setDescription("collect test");
+        return request;
+    }
+} 
\ No newline at end of file
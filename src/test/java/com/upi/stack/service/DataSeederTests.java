@@ -0,0 +1,131 @@
+package com.upi.stack.service;
+
+import com.upi.stack.dto.SeedReport;
+import com.upi.stack.dto.TransactionDto;
+import com.upi.stack.entity.User;
+import com.upi.stack.repository.UserRepository;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest(properties = {
+    "upi.sharding.enabled=true",
+    "upi.sharding.urls=jdbc:h2:mem:seed-test-0,jdbc:h2:mem:seed-test-1",
+    "upi.seed.users=300",
+    "upi.seed.transactions=1000",
+    "upi.seed.seed=7",
+    "upi.seed.chunk-size=64"
+})
+class DataSeederTests {
+    
+    private static final String USERS = "SELECT id, upi_id, name, phone_number, email, balance, ifsc_code " +
+            "FROM users ORDER BY id";
+    private static final String TRANSACTIONS = "SELECT id, transaction_id, payer_id, payee_id, amount, status, " +
+            "failure_reason FROM transactions ORDER BY id";
+    private static final String CREATED = "SELECT id, created_at FROM transactions ORDER BY id";
+    
+    @TempDir
+    static Path snapshotDir;
+    
+    @DynamicPropertySource
+    static void snapshotDir(DynamicPropertyRegistry registry) {
+        registry.add("upi.seed.snapshot-dir", () -> snapshotDir.toString());
+    }
+    
+    @Autowired
+    private DataSeeder dataSeeder;
+    
+    @Autowired
+    private ShardRouter shardRouter;
+    
+    @Autowired
+    private TransactionService transactionService;
+    
+    @Autowired
+    private UserRepository userRepository;
+    
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    
+    @Test
+    void seededRowsAreReproducibleFromTheSeedAndFromTheSnapshot() throws IOException {
+        // Seeded at startup in place of the sample users, and written to the snapshot
+        assertThat(shardRouter.fanOut(shard -> count("users"))).allMatch(count -> count > 0)
+                .satisfies(counts -> assertThat(counts.get(0) + counts.get(1)).isEqualTo(300));
+        assertThat(shardRouter.fanOut(shard -> count("transactions")))
+                .satisfies(counts -> assertThat(counts.get(0) + counts.get(1)).isEqualTo(1000));
+        assertThat(userRepository.findByUpiId("john.doe@icici")).isEmpty();
+        assertThat(snapshotFiles()).hasSize(4);
+        List<List<Map<String, Object>>> users = rows(USERS);
+        List<List<Map<String, Object>>> transactions = rows(TRANSACTIONS);
+        List<List<Map<String, Object>>> created = rows(CREATED);
+        
+        clear();
+        SeedReport loaded = dataSeeder.seed();
+        assertThat(loaded.fromSnapshot()).isTrue();
+        assertThat(rows(USERS)).isEqualTo(users);
+        assertThat(rows(TRANSACTIONS)).isEqualTo(transactions);
+        assertThat(rows(CREATED)).isEqualTo(created);
+        
+        // Timestamps are relative to the time of seeding, everything else follows from the seed
+        clear();
+        for (Path file : snapshotFiles()) {
+            Files.delete(file);
+        }
+        SeedReport generated = dataSeeder.seed();
+        assertThat(generated.fromSnapshot()).isFalse();
+        assertThat(rows(USERS)).isEqualTo(users);
+        assertThat(rows(TRANSACTIONS)).isEqualTo(transactions);
+        assertThat(snapshotFiles()).hasSize(4);
+        
+        // Ids generated afterwards continue past the seeded ones
+        User payer = userOnShardZero(users, 0);
+        User payee = userOnShardZero(users, 1);
+        TransactionDto line = new TransactionDto();
+        line.setPayerUpiId(payer.getUpiId());
+        line.setPayeeUpiId(payee.getUpiId());
+        line.setAmount(new BigDecimal("1.00"));
+        line.setDescription("after seeding");
+        String transactionId = transactionService.initiateBatchPayment(List.of(line)).get(0).getTransactionId();
+        assertThat(shardRouter.on(0, () -> jdbcTemplate.queryForObject(
+                "SELECT id FROM transactions WHERE transaction_id = ?", Long.class, transactionId)))
+                .isGreaterThan((Long) transactions.get(0).get(transactions.get(0).size() - 1).get("ID"));
+    }
+    
+    private User userOnShardZero(List<List<Map<String, Object>>> users, int index) {
+        long id = (Long) users.get(0).get(index).get("ID");
+        return shardRouter.on(0, () -> userRepository.findById(id)).orElseThrow();
+    }
+    
+    private long count(String table) {
+        return jdbcTemplate.queryForObject("SELECT COUNT(*) FROM " + table, Long.class);
+    }
+    
+    private List<List<Map<String, Object>>> rows(String sql) {
+        return shardRouter.fanOut(shard -> jdbcTemplate.queryForList(sql));
+    }
+    
+    private void clear() {
+        shardRouter.fanOut(shard -> jdbcTemplate.update("DELETE FROM transactions") +
+                jdbcTemplate.update("DELETE FROM users"));
+    }
+    
+    private List<Path> snapshotFiles() throws IOException {
+        try (Stream<Path> files = Files.list(snapshotDir)) {
+            return files.toList();
+        }
+    }
+} 
\ No newline at end of file
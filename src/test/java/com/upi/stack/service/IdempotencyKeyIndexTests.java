@@ -0,0 +1,40 @@
+package com.upi.stack.service;
+
+import org.junit.jupiter.api.Test;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class IdempotencyKeyIndexTests {
+    
+    private static final long HOUR = TimeUnit.HOURS.toMillis(1);
+    
+    @Test
+    void keysAreFoundInEveryStripeUntilTheirBucketExpires() {
+        IdempotencyKeyIndex index = new IdempotencyKeyIndex(24 * HOUR, HOUR, 16);
+        long now = 1000 * HOUR;
+        for (int i = 0; i < 10_000; i++) {
+            index.add(IdempotencyKeyIndex.hash("key-" + i), now);
+        }
+        
+        assertThat(index.size()).isEqualTo(10_000);
+        for (int i = 0; i < 10_000; i++) {
+            assertThat(index.contains(IdempotencyKeyIndex.hash("key-" + i), now + 24 * HOUR)).isTrue();
+        }
+        assertThat(index.contains(IdempotencyKeyIndex.hash("key-0"), now + 25 * HOUR)).isFalse();
+        assertThat(index.contains(IdempotencyKeyIndex.hash("never-added"), now)).isFalse();
+    }
+    
+    @Test
+    void aStripeCountIsRoundedUpToAPowerOfTwo() {
+        IdempotencyKeyIndex index = new IdempotencyKeyIndex(HOUR, HOUR, 3);
+        index.add(Long.MIN_VALUE, 0);
+        index.add(Long.MAX_VALUE, 0);
+        index.add(0, 0);
+        
+        assertThat(index.contains(Long.MIN_VALUE, 0)).isTrue();
+        assertThat(index.contains(Long.MAX_VALUE, 0)).isTrue();
+        assertThat(index.contains(0, 0)).isTrue();
+        assertThat(index.size()).isEqualTo(3);
+    }
+} 
\ No newline at end of file
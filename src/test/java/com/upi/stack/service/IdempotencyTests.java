@@ -0,0 +1,104 @@
+package com.upi.stack.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.upi.stack.TestUsers;
+import com.upi.stack.dto.TransactionDto;
+import com.upi.stack.entity.Money;
+import com.upi.stack.entity.User;
+import com.upi.stack.repository.UserRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.ResultActions;
+import org.springframework.test.web.servlet.ResultMatcher;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+// A database of its own, as in PaymentPipelineTests
+@SpringBootTest(properties = "spring.datasource.url=jdbc:h2:mem:idempotency-test")
+@AutoConfigureMockMvc
+class IdempotencyTests {
+    
+    @Autowired
+    private MockMvc mockMvc;
+    
+    @Autowired
+    private ObjectMapper objectMapper;
+    
+    @Autowired
+    private LedgerService ledgerService;
+    
+    @Autowired
+    private UserRepository userRepository;
+    
+    @Test
+    void repeatedKeyReplaysTheOriginalTransactionWithoutMovingMoneyAgain() throws Exception {
+        User payer = TestUsers.save(userRepository, "idem.payer@test", "100.00");
+        User payee = TestUsers.save(userRepository, "idem.payee@test", "0.00");
+        
+        TransactionDto first = pay(payer, payee, "idem-key-1", status().isCreated());
+        TransactionDto replayed = pay(payer, payee, "idem-key-1", status().isCreated());
+        assertThat(replayed.getTransactionId()).isEqualTo(first.getTransactionId());
+        assertThat(replayed.getId()).isEqualTo(first.getId());
+        assertThat(replayed.getStatus()).isEqualTo(first.getStatus());
+        
+        TransactionDto other = pay(payer, payee, "idem-key-2", status().isCreated());
+        assertThat(other.getTransactionId()).isNotEqualTo(first.getTransactionId());
+        assertThat(ledgerService.balanceOf(payer.getId())).isEqualTo(Money.parse("80.00"));
+        assertThat(ledgerService.balanceOf(payee.getId())).isEqualTo(Money.parse("20.00"));
+        
+        payRaw(payer, payee, " ").andExpect(status().isBadRequest());
+        payRaw(payer, payee, "k".repeat(129)).andExpect(status().isBadRequest());
+    }
+    
+    @Test
+    void concurrentDuplicatesAllGetTheOnePayment() throws Exception {
+        User payer = TestUsers.save(userRepository, "idem.racer@test", "100.00");
+        User payee = TestUsers.save(userRepository, "idem.racer.payee@test", "0.00");
+        
+        ExecutorService threads = Executors.newFixedThreadPool(4);
+        List<Future<TransactionDto>> attempts = new ArrayList<>();
+        List<String> transactionIds = new ArrayList<>();
+        try {
+            for (int i = 0; i < 4; i++) {
+                attempts.add(threads.submit(() -> pay(payer, payee, "idem-race", status().isCreated())));
+            }
+            for (Future<TransactionDto> attempt : attempts) {
+                transactionIds.add(attempt.get().getTransactionId());
+            }
+        } finally {
+            threads.shutdown();
+        }
+        
+        assertThat(transactionIds).containsOnly(transactionIds.get(0));
+        assertThat(ledgerService.balanceOf(payer.getId())).isEqualTo(Money.parse("90.00"));
+    }
+    
+    private TransactionDto pay(User payer, User payee, String key, ResultMatcher expected) throws Exception {
+        byte[] body = payRaw(payer, payee, key).andExpect(expected).andReturn().getResponse().getContentAsByteArray();
+        return objectMapper.readValue(body, TransactionDto.class);
+    }
+    
+    private ResultActions payRaw(User payer, User payee, String key) throws Exception {
+        TransactionDto payment = new TransactionDto();
+        payment.setPayerUpiId(payer.getUpiId());
+        payment.setPayeeUpiId(payee.getUpiId());
+        payment.setAmount(new BigDecimal("10.00"));
+        payment.setDescription("idempotency test");
+        return mockMvc.perform(post("/api/transactions/pay")
+                .contentType(MediaType.APPLICATION_JSON)
+                .header("Idempotency-Key", key)
+                .content(objectMapper.writeValueAsBytes(payment)));
+    }
+} 
\ No newline at end of file
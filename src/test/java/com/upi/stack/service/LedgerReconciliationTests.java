@@ -0,0 +1,249 @@
+package com.upi.stack.service;
+
+import com.upi.stack.TestUsers;
+import com.upi.stack.dto.ReconciliationReport;
+import com.upi.stack.entity.Money;
+import com.upi.stack.entity.Transaction;
+import com.upi.stack.entity.User;
+import com.upi.stack.repository.LedgerEntryRepository;
+import com.upi.stack.repository.TransactionRepository;
+import com.upi.stack.repository.UserRepository;
+import jakarta.persistence.EntityManager;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest(properties = {
+    "upi.ledger.snapshot-settle-window=0s",
+    "upi.ledger.hot-accounts=ledger.merchant@test,ledger.late.merchant@test",
+    "upi.ledger.hot-fold-interval=PT1H"
+})
+class LedgerReconciliationTests {
+    
+    @Autowired
+    private TransactionService transactionService;
+    
+    @Autowired
+    private LedgerService ledgerService;
+    
+    @Autowired
+    private LedgerMaintenance ledgerMaintenance;
+    
+    @Autowired
+    private HotAccounts hotAccounts;
+    
+    @Autowired
+    private UserRepository userRepository;
+    
+    @Autowired
+    private LedgerEntryRepository ledgerEntryRepository;
+    
+    @Autowired
+    private TransactionRepository transactionRepository;
+    
+    @Autowired
+    private PaymentMetrics paymentMetrics;
+    
+    @Autowired
+    private ShardRouter shardRouter;
+    
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+    
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    
+    @Autowired
+    private EntityManager entityManager;
+    
+    @Test
+    void balancesAreSnapshotPlusLaterLegs() {
+        User payer = TestUsers.save(userRepository, "ledger.payer@test", "500.00");
+        User payee = TestUsers.save(userRepository, "ledger.payee@test", "0.00");
+        
+        TestUsers.pay(transactionService, payer, payee, "120.00");
+        assertThat(ledgerMaintenance.takeSnapshots()).isGreaterThanOrEqualTo(2);
+        TestUsers.pay(transactionService, payer, payee, "30.00");
+        // Rejected: leaves no legs behind
+        TestUsers.pay(transactionService, payer, payee, "1000.00");
+        
+        assertThat(ledgerService.balanceOf(payer.getId())).isEqualTo(Money.parse("350.00"));
+        assertThat(ledgerService.balanceOf(payee.getId())).isEqualTo(Money.parse("150.00"));
+        assertThat(userRepository.findById(payer.getId()).orElseThrow().getBalance()).isEqualTo(Money.parse("500.00"));
+        assertThat(ledgerMaintenance.reconcile().isBalanced()).isTrue();
+    }
+    
+    @Test
+    void legsCommittedBelowTheWatermarkAreFoldedByTheNextRunAndDriftIsRebuilt() {
+        User payer = TestUsers.save(userRepository, "ledger.late@test", "500.00");
+        User payee = TestUsers.save(userRepository, "ledger.late.payee@test", "0.00");
+        // Ids handed out to a slow transaction, which only commits once a later pair is folded
+        long reserved = jdbcTemplate.queryForObject("SELECT NEXT VALUE FOR ledger_entries_seq", Long.class);
+        insertPair(payer, payee, "NEXT VALUE FOR ledger_entries_seq", "NEXT VALUE FOR ledger_entries_seq", 10000);
+        assertThat(ledgerMaintenance.takeSnapshots()).isGreaterThanOrEqualTo(2);
+        insertPair(payer, payee, String.valueOf(reserved), String.valueOf(reserved + 1), 5000);
+        
+        assertThat(ledgerMaintenance.takeSnapshots()).isGreaterThanOrEqualTo(2);
+        assertThat(ledgerService.balanceOf(payer.getId())).isEqualTo(Money.parse("350.00"));
+        assertThat(ledgerService.balanceOf(payee.getId())).isEqualTo(Money.parse("150.00"));
+        assertThat(ledgerMaintenance.reconcile().isBalanced()).isTrue();
+        
+        jdbcTemplate.update("UPDATE balance_snapshots SET balance = balance + 10000 WHERE account_id = ?", payer.getId());
+        assertThat(ledgerMaintenance.reconcile().driftedSnapshotAccountIds()).containsExactly(payer.getId());
+        assertThat(ledgerService.balanceOf(payer.getId())).isEqualTo(Money.parse("350.00"));
+        assertThat(ledgerMaintenance.reconcile().isBalanced()).isTrue();
+    }
+    
+    @Test
+    void creditsToAHotPayeeAreHeldAndFoldedInBulk() {
+        User payer = TestUsers.save(userRepository, "ledger.shopper@test", "500.00");
+        User merchant = TestUsers.save(userRepository, "ledger.merchant@test", "0.00");
+        assertThat(hotAccounts.refresh()).contains(merchant.getId());
+        
+        for (int i = 0; i < 3; i++) {
+            TestUsers.pay(transactionService, payer, merchant, "10.00");
+        }
+        // No payment wrote to the merchant's account, yet its balance already counts them
+        assertThat(legsOnAccount(merchant)).isZero();
+        assertThat(ledgerService.balanceOf(merchant.getId())).isEqualTo(Money.parse("30.00"));
+        
+        assertThat(ledgerMaintenance.foldHeldCredits()).isEqualTo(1);
+        assertThat(legsOnAccount(merchant)).isEqualTo(1);
+        assertThat(ledgerService.balanceOf(merchant.getId())).isEqualTo(Money.parse("30.00"));
+        
+        TestUsers.pay(transactionService, merchant, payer, "25.00");
+        assertThat(ledgerService.balanceOf(merchant.getId())).isEqualTo(Money.parse("5.00"));
+        assertThat(ledgerService.balanceOf(payer.getId())).isEqualTo(Money.parse("495.00"));
+        assertThat(ledgerMaintenance.reconcile().isBalanced()).isTrue();
+    }
+    
+    @Test
+    void debitsPostedByTwoInstancesAreSerialisedByTheDatabase() throws Exception {
+        User payer = TestUsers.save(userRepository, "ledger.twice@test", "100.00");
+        User payee = TestUsers.save(userRepository, "ledger.twice.payee@test", "0.00");
+        // Each with its own stripe locks, as on two app nodes sharing the database
+        LedgerService first = otherInstance();
+        LedgerService second = otherInstance();
+        
+        CountDownLatch posted = new CountDownLatch(1);
+        CountDownLatch commit = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<Boolean> held = executor.submit(() -> transactionTemplate.execute(status -> {
+                boolean ok = first.post(payment(payer, payee, "80.00"), payer.getUpiId());
+                posted.countDown();
+                try {
+                    commit.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return ok;
+            }));
+            assertThat(posted.await(5, TimeUnit.SECONDS)).isTrue();
+            Future<Boolean> racing = executor.submit(() -> transactionTemplate.execute(status ->
+                    second.post(payment(payer, payee, "80.00"), payer.getUpiId())));
+            
+            // Waits on the payer's row rather than reading the balance before the first commits
+            Thread.sleep(300);
+            assertThat(racing.isDone()).isFalse();
+            commit.countDown();
+            assertThat(held.get(5, TimeUnit.SECONDS)).isTrue();
+            assertThat(racing.get(5, TimeUnit.SECONDS)).isFalse();
+        } finally {
+            commit.countDown();
+            executor.shutdownNow();
+        }
+        assertThat(ledgerService.balanceOf(payer.getId())).isEqualTo(Money.parse("20.00"));
+    }
+    
+    @Test
+    void heldCreditsCommittedBelowTheFoldAreReleasedByTheNextSnapshotRun() {
+        User payer = TestUsers.save(userRepository, "ledger.late.shopper@test", "500.00");
+        User merchant = TestUsers.save(userRepository, "ledger.late.merchant@test", "0.00");
+        assertThat(hotAccounts.refresh()).contains(merchant.getId());
+        
+        long reserved = jdbcTemplate.queryForObject("SELECT NEXT VALUE FOR ledger_entries_seq", Long.class);
+        insertHeldPair(payer, merchant, "NEXT VALUE FOR ledger_entries_seq", "NEXT VALUE FOR ledger_entries_seq", 1000);
+        assertThat(ledgerMaintenance.foldHeldCredits()).isGreaterThanOrEqualTo(1);
+        insertHeldPair(payer, merchant, String.valueOf(reserved), String.valueOf(reserved + 1), 500);
+        
+        ledgerMaintenance.takeSnapshots();
+        assertThat(ledgerService.balanceOf(merchant.getId())).isEqualTo(Money.parse("15.00"));
+        assertThat(ledgerService.balanceOf(payer.getId())).isEqualTo(Money.parse("485.00"));
+        assertThat(legsOnAccount(merchant)).isEqualTo(2);
+        assertThat(ledgerMaintenance.reconcile().isBalanced()).isTrue();
+    }
+    
+    @Test
+    @Transactional
+    void reconciliationFindsUnbalancedPostingAmongThousandsOfLegs() {
+        User debtor = TestUsers.save(userRepository, "ledger.bulk.a@test", "0.00");
+        User creditor = TestUsers.save(userRepository, "ledger.bulk.b@test", "0.00");
+        
+        // 4k legs: 2k balanced pairs between the two accounts, amounts in paise. The same check
+        // over 1M legs is ReconciliationBenchmark in the perf profile.
+        jdbcTemplate.update("INSERT INTO ledger_entries (id, account_id, entry_type, amount, created_at) " +
+                "SELECT NEXT VALUE FOR ledger_entries_seq, CASE WHEN MOD(x, 2) = 0 THEN ? ELSE ? END, " +
+                "CASE WHEN MOD(x, 2) = 0 THEN 'DEBIT' ELSE 'CREDIT' END, " +
+                "CASE WHEN MOD(x, 2) = 0 THEN -125 ELSE 125 END, CURRENT_TIMESTAMP " +
+                "FROM SYSTEM_RANGE(1, 4000)", debtor.getId(), creditor.getId());
+        assertThat(ledgerMaintenance.takeSnapshots()).isGreaterThanOrEqualTo(2);
+        assertThat(ledgerService.balanceOf(creditor.getId())).isEqualTo(Money.parse("2500.00"));
+        assertThat(ledgerMaintenance.reconcile().isBalanced()).isTrue();
+        
+        Long transactionId = TestUsers.pay(transactionService, creditor, debtor, "10.00").getId();
+        entityManager.flush();
+        jdbcTemplate.update("INSERT INTO ledger_entries (id, account_id, transaction_id, entry_type, amount, created_at) " +
+                "VALUES (NEXT VALUE FOR ledger_entries_seq, ?, ?, 'CREDIT', 1, CURRENT_TIMESTAMP)",
+                debtor.getId(), transactionId);
+        
+        ReconciliationReport report = ledgerMaintenance.reconcile();
+        assertThat(report.isBalanced()).isFalse();
+        assertThat(report.legSum()).isEqualTo(Money.parse("0.01"));
+        assertThat(report.unbalancedTransactionIds()).containsExactly(transactionId);
+    }
+    
+    private void insertPair(User payer, User payee, String debitId, String creditId, long paise) {
+        jdbcTemplate.update("INSERT INTO ledger_entries (id, account_id, entry_type, amount, created_at) VALUES " +
+                "(" + debitId + ", ?, 'DEBIT', ?, CURRENT_TIMESTAMP), (" + creditId + ", ?, 'CREDIT', ?, CURRENT_TIMESTAMP)",
+                payer.getId(), -paise, payee.getId(), paise);
+    }
+    
+    private void insertHeldPair(User payer, User merchant, String debitId, String heldId, long paise) {
+        jdbcTemplate.update("INSERT INTO ledger_entries (id, account_id, held_for, entry_type, amount, created_at) VALUES " +
+                "(" + debitId + ", ?, NULL, 'DEBIT', ?, CURRENT_TIMESTAMP), (" + heldId + ", NULL, ?, 'HELD', ?, CURRENT_TIMESTAMP)",
+                payer.getId(), -paise, merchant.getId(), paise);
+    }
+    
+    private long legsOnAccount(User account) {
+        return jdbcTemplate.queryForObject("SELECT COUNT(*) FROM ledger_entries WHERE account_id = ?", Long.class, account.getId());
+    }
+    
+    private LedgerService otherInstance() {
+        return new LedgerService(ledgerEntryRepository, new AccountLockManager(1024, 2000), paymentMetrics,
+                shardRouter, hotAccounts, userRepository);
+    }
+    
+    private Transaction payment(User payer, User payee, String amount) {
+        Transaction transaction = new Transaction();
+        transaction.setTransactionId("TXN" + UUID.randomUUID());
+        transaction.setPayer(userRepository.getReferenceById(payer.getId()));
+        transaction.setPayee(userRepository.getReferenceById(payee.getId()));
+        transaction.setAmount(Money.parse(amount));
+        transaction.setDescription("ledger test");
+        transaction.setStatus(Transaction.TransactionStatus.PENDING);
+        transaction.setType(Transaction.TransactionType.PAY);
+        return transactionRepository.save(transaction);
+    }
+} 
\ No newline at end of file
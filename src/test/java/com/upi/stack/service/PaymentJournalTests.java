@@ -0,0 +1,152 @@
+package com.upi.stack.service;
+
+import com.upi.stack.dto.TransactionDto;
+import com.upi.stack.entity.Money;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.transaction.CannotCreateTransactionException;
+import org.springframework.util.unit.DataSize;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+
+class PaymentJournalTests {
+    
+    @TempDir
+    Path directory;
+    
+    private final List<PaymentJournal> journals = new ArrayList<>();
+    
+    @AfterEach
+    void shutDown() throws InterruptedException {
+        for (PaymentJournal journal : journals) {
+            journal.shutdown();
+        }
+    }
+    
+    @Test
+    void concurrentAppendsAreAppliedAndAppliedSegmentsDeleted() throws Exception {
+        Set<String> applied = ConcurrentHashMap.newKeySet();
+        PaymentJournal journal = open("4KB");
+        journal.start(records -> {
+            records.forEach(record -> applied.add(record.transactionId()));
+            return Map.of();
+        }, (record, cause) -> record.toPendingDto(), record -> { });
+        
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<?>> appends = new ArrayList<>();
+            for (int i = 0; i < 400; i++) {
+                JournalRecord record = record(i);
+                appends.add(executor.submit(() -> journal.append(record)));
+            }
+            for (Future<?> append : appends) {
+                append.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        
+        await().atMost(Duration.ofSeconds(10)).until(() -> applied.size() == 400 && journal.backlog() == 0);
+        // Only the segment currently being written survives
+        assertThat(segmentFiles()).hasSize(1);
+    }
+    
+    @Test
+    void unappliedRecordsAreReplayedOnRestartUpToATornTail() throws Exception {
+        PaymentJournal crashed = open("64KB");
+        crashed.start(records -> {
+            throw new CannotCreateTransactionException("database down");
+        }, (record, cause) -> record.toPendingDto(), record -> { });
+        for (int i = 0; i < 10; i++) {
+            crashed.append(record(i));
+        }
+        crashed.shutdown();
+        
+        // Corrupt the payload of the last record, as a write torn by a crash would
+        Path segment = segmentFiles().get(0);
+        int lastRecordOffset = 9 * (8 + record(0).encode().length);
+        try (RandomAccessFile file = new RandomAccessFile(segment.toFile(), "rw")) {
+            file.seek(lastRecordOffset + 12);
+            file.writeByte(file.readByte() ^ 0xFF);
+        }
+        
+        Map<String, TransactionDto> applied = new ConcurrentHashMap<>();
+        PaymentJournal restarted = open("64KB");
+        List<JournalRecord> recovered = restarted.start(records -> {
+            records.forEach(record -> applied.put(record.transactionId(), record.toPendingDto()));
+            return Map.of();
+        }, (record, cause) -> record.toPendingDto(), record -> { });
+        
+        assertThat(recovered).extracting(JournalRecord::transactionId)
+                .containsExactly(Stream.iterate(0, i -> i + 1).limit(9).map(i -> "TXNJOURNAL" + i).toArray(String[]::new));
+        assertThat(recovered.get(3).amount()).isEqualTo(Money.parse("3.50"));
+        await().atMost(Duration.ofSeconds(10)).until(() -> applied.size() == 9);
+    }
+    
+    @Test
+    void recordsTheApplierRefusesAreRejectedOrDeadLetteredNotDropped() throws Exception {
+        List<String> rejected = new CopyOnWriteArrayList<>();
+        PaymentJournal journal = open("64KB");
+        journal.start(records -> {
+            if (records.stream().anyMatch(record -> !record.transactionId().equals("TXNJOURNAL0"))) {
+                throw new IllegalStateException("payee closed");
+            }
+            return Map.of();
+        }, (record, cause) -> {
+            if (record.transactionId().equals("TXNJOURNAL2")) {
+                throw new IllegalStateException("database refused the failed row");
+            }
+            rejected.add(record.transactionId());
+            return record.toPendingDto();
+        }, record -> { });
+        for (int i = 0; i < 3; i++) {
+            journal.append(record(i));
+        }
+        
+        await().atMost(Duration.ofSeconds(10)).until(() -> journal.backlog() == 0);
+        assertThat(rejected).containsExactly("TXNJOURNAL1");
+        // Read back with the segment framing: [length][crc32c][payload]
+        ByteBuffer deadLetters = ByteBuffer.wrap(Files.readAllBytes(directory.resolve("dead-letter.log")));
+        int length = deadLetters.getInt();
+        deadLetters.getInt();
+        assertThat(JournalRecord.decode(deadLetters.slice(deadLetters.position(), length)).transactionId())
+                .isEqualTo("TXNJOURNAL2");
+        assertThat(deadLetters.position(deadLetters.position() + length).hasRemaining()).isFalse();
+        assertThat(segmentFiles()).hasSize(1);
+    }
+    
+    private PaymentJournal open(String segmentSize) {
+        PaymentJournal journal = new PaymentJournal(true, directory.toString(), DataSize.parse(segmentSize),
+                Duration.ofMillis(1), 50, 1000, Duration.ofSeconds(30));
+        journals.add(journal);
+        return journal;
+    }
+    
+    private JournalRecord record(int i) {
+        return new JournalRecord("TXNJOURNAL" + i, 1, 2, "payer@test", "payee@test",
+                Money.parse(i + ".50"), "journal test", null, System.currentTimeMillis());
+    }
+    
+    private List<Path> segmentFiles() throws Exception {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(file -> file.getFileName().toString().startsWith("journal-")).sorted().toList();
+        }
+    }
+} 
\ No newline at end of file
@@ -0,0 +1,84 @@
+package com.upi.stack.service;
+
+import com.upi.stack.TestUsers;
+import com.upi.stack.dto.TransactionDto;
+import com.upi.stack.entity.User;
+import com.upi.stack.repository.UserRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// A database of its own, as in PaymentPipelineTests
+@SpringBootTest(properties = "spring.datasource.url=jdbc:h2:mem:metrics-test")
+class PaymentMetricsTests {
+    
+    private static final List<String> STAGES = List.of("lookup", "balance_check", "post_legs", "persist");
+    
+    @Autowired
+    private TransactionService transactionService;
+    
+    @Autowired
+    private MeterRegistry registry;
+    
+    @Autowired
+    private UserRepository userRepository;
+    
+    @Test
+    void paymentsAreTimedPerStageAndCountedPerOutcome() {
+        User payer = TestUsers.save(userRepository, "metrics.payer@test", "100.00");
+        User payee = TestUsers.save(userRepository, "metrics.payee@test", "0.00");
+        Map<String, Long> stagesBefore = stageCounts();
+        long initiatedBefore = timerCount(registry.find("upi.payment.initiate").tag("mode", "sync").timer());
+        double failedBefore = outcomeCount("FAILED", "Intentional bug: should be SUCCESS");
+        double succeededBefore = outcomeCount("SUCCESS", "none");
+        double insufficientBefore = outcomeCount("FAILED", "Insufficient balance");
+        
+        transactionService.initiatePayment(payment(payer, payee, "10.00"));
+        transactionService.initiateBatchPayment(List.of(payment(payer, payee, "20.00"), payment(payer, payee, "500.00")));
+        
+        Map<String, Long> stagesAfter = stageCounts();
+        for (String stage : STAGES) {
+            assertThat(stagesAfter.get(stage)).as(stage).isGreaterThan(stagesBefore.get(stage));
+        }
+        assertThat(timerCount(registry.find("upi.payment.initiate").tag("mode", "sync").timer()))
+                .isEqualTo(initiatedBefore + 1);
+        assertThat(outcomeCount("FAILED", "Intentional bug: should be SUCCESS")).isEqualTo(failedBefore + 1);
+        assertThat(outcomeCount("SUCCESS", "none")).isEqualTo(succeededBefore + 1);
+        assertThat(outcomeCount("FAILED", "Insufficient balance")).isEqualTo(insufficientBefore + 1);
+    }
+    
+    private Map<String, Long> stageCounts() {
+        return STAGES.stream().collect(Collectors.toMap(Function.identity(),
+                stage -> timerCount(registry.find("upi.payment.stage").tag("stage", stage).timer())));
+    }
+    
+    private static long timerCount(Timer timer) {
+        return timer == null ? 0 : timer.count();
+    }
+    
+    private double outcomeCount(String status, String reason) {
+        Counter counter = registry.find("upi.payment.outcome")
+                .tags("status", status, "type", "PAY", "reason", reason)
+                .counter();
+        return counter == null ? 0 : counter.count();
+    }
+    
+    private static TransactionDto payment(User payer, User payee, String amount) {
+        TransactionDto payment = new TransactionDto();
+        payment.setPayerUpiId(payer.getUpiId());
+        payment.setPayeeUpiId(payee.getUpiId());
+        payment.setAmount(new BigDecimal(amount));
+        payment.setDescription("metrics test");
+        return payment;
+    }
+} 
\ No newline at end of file
@@ -0,0 +1,129 @@
+package com.upi.stack.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.upi.stack.TestUsers;
+import com.upi.stack.dto.TransactionDto;
+import com.upi.stack.entity.Money;
+import com.upi.stack.entity.User;
+import com.upi.stack.repository.UserRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.ResultActions;
+import org.springframework.transaction.support.TransactionTemplate;
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+// A database of its own: a context cached from another class can hand out sequence ids that
+// a later context, recreating the shared schema, has already used. One worker and no queue,
+// so a single payment in flight fills the pipeline.
+@SpringBootTest(properties = {
+    "spring.datasource.url=jdbc:h2:mem:pipeline-test",
+    "upi.payments.async.workers=1",
+    "upi.payments.async.queue-capacity=0"
+})
+@AutoConfigureMockMvc
+class PaymentPipelineTests {
+    
+    @Autowired
+    private MockMvc mockMvc;
+    
+    @Autowired
+    private ObjectMapper objectMapper;
+    
+    @Autowired
+    private UserRepository userRepository;
+    
+    @Autowired
+    private PaymentPipeline paymentPipeline;
+    
+    @Autowired
+    private LedgerService ledgerService;
+    
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+    
+    @Test
+    void longPollAnswersWithTheCompletedPaymentAndRefusesNegativeWaits() throws Exception {
+        User payer = TestUsers.save(userRepository, "pipeline.poll.payer@test", "100.00");
+        User payee = TestUsers.save(userRepository, "pipeline.poll.payee@test", "0.00");
+        MvcResult accepted = payAsync(payer, payee, "5.00")
+                .andExpect(status().isAccepted())
+                .andReturn();
+        String transactionId = read(accepted).getTransactionId();
+        assertThat(accepted.getResponse().getHeader(HttpHeaders.LOCATION)).isEqualTo("/api/transactions/" + transactionId);
+        
+        // Far past upi.payments.async.max-wait: cut to it rather than overflowing the timeout
+        TransactionDto completed = read(poll(transactionId, Long.MAX_VALUE).andExpect(status().isOk()).andReturn());
+        assertThat(completed.getTransactionId()).isEqualTo(transactionId);
+        assertThat(completed.getStatus()).isNotEqualTo("PENDING");
+        
+        // No longer in the pipeline, so answered by a lookup on the lookup pool
+        assertThat(read(poll(transactionId, 1000).andExpect(status().isOk()).andReturn()).getStatus())
+                .isEqualTo(completed.getStatus());
+        poll("TXNMISSING", 1000).andExpect(status().isNotFound());
+        poll(transactionId, -1).andExpect(status().isBadRequest());
+    }
+    
+    @Test
+    void fullPipelineRefusesWith429AndRetryAfterUntilASlotFrees() throws Exception {
+        User payer = TestUsers.save(userRepository, "pipeline.full.payer@test", "100.00");
+        User payee = TestUsers.save(userRepository, "pipeline.full.payee@test", "0.00");
+        
+        // Holds the only slot until released
+        CompletableFuture<Void> released = new CompletableFuture<>();
+        transactionTemplate.executeWithoutResult(status -> paymentPipeline.dispatchAfterCommit("TXNHOLD", () -> {
+            released.join();
+            return null;
+        }));
+        try {
+            payAsync(payer, payee, "5.00")
+                    .andExpect(status().isTooManyRequests())
+                    .andExpect(header().string(HttpHeaders.RETRY_AFTER, "1"));
+            // Polls do not queue behind the held payment
+            poll("TXNMISSING", 10).andExpect(status().isNotFound());
+        } finally {
+            released.complete(null);
+        }
+        await().atMost(Duration.ofSeconds(10)).until(() -> paymentPipeline.inFlight() == 0);
+        assertThat(ledgerService.balanceOf(payer.getId())).isEqualTo(Money.parse("100.00"));
+        
+        payAsync(payer, payee, "5.00").andExpect(status().isAccepted());
+    }
+    
+    private ResultActions payAsync(User payer, User payee, String amount) throws Exception {
+        TransactionDto payment = new TransactionDto();
+        payment.setPayerUpiId(payer.getUpiId());
+        payment.setPayeeUpiId(payee.getUpiId());
+        payment.setAmount(new BigDecimal(amount));
+        payment.setDescription("pipeline test");
+        return mockMvc.perform(post("/api/transactions/pay").header("Prefer", "respond-async")
+                .contentType(MediaType.APPLICATION_JSON).content(objectMapper.writeValueAsBytes(payment)));
+    }
+    
+    private ResultActions poll(String transactionId, long waitMs) throws Exception {
+        MvcResult started = mockMvc.perform(get("/api/transactions/" + transactionId).param("waitMs", String.valueOf(waitMs)))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        return mockMvc.perform(asyncDispatch(started));
+    }
+    
+    private TransactionDto read(MvcResult result) throws Exception {
+        return objectMapper.readValue(result.getResponse().getContentAsByteArray(), TransactionDto.class);
+    }
+} 
\ No newline at end of file
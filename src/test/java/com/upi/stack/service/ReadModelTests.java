@@ -0,0 +1,147 @@
+package com.upi.stack.service;
+
+import com.upi.stack.TestUsers;
+import com.upi.stack.dto.TransactionDto;
+import com.upi.stack.dto.UserDto;
+import com.upi.stack.entity.User;
+import com.upi.stack.repository.UserRepository;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.function.Supplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+
+@SpringBootTest(properties = {
+    "upi.read-model.enabled=true",
+    "upi.pagination.max-size=100000",
+    "spring.jpa.properties.hibernate.generate_statistics=true"
+})
+class ReadModelTests {
+    
+    // Far above anything the sequence hands out during the tests
+    private static final long OUTSIDE_ID = 9_000_000_000L;
+    
+    @Autowired
+    private TransactionService transactionService;
+    
+    @Autowired
+    private UserService userService;
+    
+    @Autowired
+    private LedgerService ledgerService;
+    
+    @Autowired
+    private ReadModel readModel;
+    
+    @Autowired
+    private UserRepository userRepository;
+    
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+    
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    
+    @Test
+    void listingsAreServedFromTheReadModelOnceItCatchesUp() {
+        User payer = TestUsers.save(userRepository, "rm.payer@test", "500.00");
+        User payee = TestUsers.save(userRepository, "rm.payee@test", "0.00");
+        String transactionId = TestUsers.pay(transactionService, payer, payee, "75.00").getTransactionId();
+        userService.updateUserBalance(payee.getUpiId(), new BigDecimal("1000.00"));
+        caughtUp();
+        
+        List<TransactionDto> history = readOnly(() -> transactionService.getTransactionsByUpiId(payee.getUpiId(), null, 10).getItems());
+        assertThat(history).extracting(TransactionDto::getTransactionId).containsExactly(transactionId);
+        assertThat(history.get(0).getPayerUpiId()).isEqualTo(payer.getUpiId());
+        // One row: a longer page may reach payments another test dropped for their age
+        assertThat(readOnly(() -> transactionService.getAllTransactions(null, 1).getItems()))
+                .extracting(TransactionDto::getTransactionId).containsExactly(transactionId);
+        assertThat(readOnly(() -> transactionService.getTransactionById(transactionId).getStatus()))
+                .isEqualTo(history.get(0).getStatus());
+        
+        // Balances follow the ledger legs, adjustments included
+        List<UserDto> users = readOnly(() -> userService.getAllUsers(null, 100000).getItems());
+        assertThat(balanceIn(users, payer)).isEqualByComparingTo(ledgerService.balanceOf(payer.getId()).toBigDecimal());
+        assertThat(balanceIn(users, payee)).isEqualByComparingTo("1000.00");
+    }
+    
+    @Test
+    void declinedCollectRequestLeavesThePendingList() {
+        User payer = TestUsers.save(userRepository, "rm.collect.payer@test", "500.00");
+        User payee = TestUsers.save(userRepository, "rm.collect.payee@test", "0.00");
+        TransactionDto request = new TransactionDto();
+        request.setPayerUpiId(payer.getUpiId());
+        request.setPayeeUpiId(payee.getUpiId());
+        request.setAmount(new BigDecimal("20.00"));
+        request.setDescription("read model collect");
+        String transactionId = transactionService.requestCollect(request).getTransactionId();
+        caughtUp();
+        
+        assertThat(readOnly(() -> transactionService.getPendingCollects(payer.getUpiId(), null, 10).getItems()))
+                .extracting(TransactionDto::getTransactionId).containsExactly(transactionId);
+        
+        transactionService.declineCollect(transactionId);
+        caughtUp();
+        
+        assertThat(readOnly(() -> transactionService.getPendingCollects(payer.getUpiId(), null, 10).getItems())).isEmpty();
+        assertThat(readOnly(() -> transactionService.getTransactionById(transactionId).getFailureReason()))
+                .isEqualTo("Declined by payer");
+    }
+    
+    @Test
+    void rowsWrittenPastTheChangeFeedAreReadBackAndOldOnesLeftToThePrimary() {
+        User payer = TestUsers.save(userRepository, "rm.outside.payer@test", "500.00");
+        User payee = TestUsers.save(userRepository, "rm.outside.payee@test", "0.00");
+        String recent = TestUsers.pay(transactionService, payer, payee, "10.00").getTransactionId();
+        caughtUp();
+        
+        // Written straight to the table, as another instance would: the change feed never sees them
+        LocalDateTime now = LocalDateTime.now();
+        insertPayment(OUTSIDE_ID, "TXNOUTSIDEOLD", payer, payee, now.minusDays(30));
+        insertPayment(OUTSIDE_ID + 1, "TXNOUTSIDENEW", payer, payee, now);
+        await().atMost(Duration.ofSeconds(10)).until(() -> !readModel.lag().isZero());
+        caughtUp();
+        
+        assertThat(readModel.findByTransactionId("TXNOUTSIDENEW")).isPresent();
+        assertThat(readModel.findByTransactionId("TXNOUTSIDEOLD")).isEmpty();
+        // A full page is still the model's; one that reaches the dropped payment is the primary's
+        assertThat(readOnly(() -> transactionService.getTransactionsByUpiId(payer.getUpiId(), null, 1).getItems()))
+                .extracting(TransactionDto::getTransactionId).containsExactly("TXNOUTSIDENEW");
+        assertThat(transactionService.getTransactionsByUpiId(payer.getUpiId(), null, 10).getItems())
+                .extracting(TransactionDto::getTransactionId).containsExactly("TXNOUTSIDENEW", recent, "TXNOUTSIDEOLD");
+    }
+    
+    private void insertPayment(long id, String transactionId, User payer, User payee, LocalDateTime createdAt) {
+        jdbcTemplate.update("INSERT INTO transactions (id, transaction_id, payer_id, payee_id, amount, description, " +
+                "status, type, created_at, updated_at) VALUES (?, ?, ?, ?, 500, 'outside', 'SUCCESS', 'PAY', ?, ?)",
+                id, transactionId, payer.getId(), payee.getId(), createdAt, createdAt);
+    }
+    
+    private void caughtUp() {
+        await().atMost(Duration.ofSeconds(10)).until(() -> readModel.backlog() == 0 && readModel.lag().isZero());
+        assertThat(readModel.isServing()).isTrue();
+    }
+    
+    // Runs a read and checks it did not send a single statement to the database
+    private <T> T readOnly(Supplier<T> read) {
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+        T result = read.get();
+        assertThat(statistics.getPrepareStatementCount()).isZero();
+        return result;
+    }
+    
+    private BigDecimal balanceIn(List<UserDto> users, User user) {
+        return users.stream().filter(dto -> dto.getId().equals(user.getId())).findFirst().orElseThrow().getBalance();
+    }
+} 
\ No newline at end of file
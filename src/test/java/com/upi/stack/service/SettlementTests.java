@@ -0,0 +1,128 @@
+package com.upi.stack.service;
+
+import com.upi.stack.TestUsers;
+import com.upi.stack.dto.SettlementAudit;
+import com.upi.stack.dto.SettlementReport;
+import com.upi.stack.dto.TransactionDto;
+import com.upi.stack.entity.Money;
+import com.upi.stack.entity.User;
+import com.upi.stack.repository.UserRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+
+@SpringBootTest(properties = {
+    "upi.settlement.cycle=PT2S",
+    "upi.settlement.settle-window=PT0.5S",
+    "upi.settlement.close-interval=PT0.1S",
+    "upi.settlement.recompute-chunk=2"
+})
+class SettlementTests {
+    
+    private static final Set<String> BANKS = Set.of("SETA", "SETB");
+    
+    @Autowired
+    private TransactionService transactionService;
+    
+    @Autowired
+    private SettlementEngine settlementEngine;
+    
+    @Autowired
+    private UserRepository userRepository;
+    
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    
+    @Test
+    void closedCyclesNetPositionsPerBankAndMatchARecompute() {
+        User alice = TestUsers.save(userRepository, "settle.alice@test", "500.00", "SETA0000001");
+        User asha = TestUsers.save(userRepository, "settle.asha@test", "500.00", "SETA0000002");
+        User bob = TestUsers.save(userRepository, "settle.bob@test", "500.00", "SETB0000001");
+        long firstCycle = settlementEngine.currentCycle();
+        
+        List<TransactionDto> results = transactionService.initiateBatchPayment(List.of(
+                line(alice, bob, "100.00"), line(alice, bob, "50.00"), line(bob, alice, "30.00"),
+                line(alice, asha, "10.00")));
+        assertThat(results).extracting(TransactionDto::getStatus).containsOnly("SUCCESS");
+        long lastCycle = settlementEngine.currentCycle();
+        
+        // The batch may straddle a cycle boundary, so its positions are summed over the cycles it touched
+        await().atMost(Duration.ofSeconds(10)).until(() -> settlementEngine.closedReports().stream()
+                .anyMatch(report -> report.cycle() == lastCycle));
+        Map<String, Long> paise = new HashMap<>();
+        Map<String, Long> payments = new HashMap<>();
+        for (long cycle = firstCycle; cycle <= lastCycle; cycle++) {
+            SettlementReport report = settlementEngine.report(cycle);
+            assertThat(report.closed()).isTrue();
+            for (SettlementReport.PairPosition pair : ours(report.pairs())) {
+                paise.merge(pair.payerBank() + ">" + pair.payeeBank(), pair.amount().paise(), Long::sum);
+                payments.merge(pair.payerBank() + ">" + pair.payeeBank(), pair.payments(), Long::sum);
+            }
+            
+            SettlementAudit audit = settlementEngine.audit(cycle);
+            assertThat(ours(audit.recomputed().pairs())).isEqualTo(ours(audit.kept().pairs()));
+        }
+        assertThat(paise).isEqualTo(Map.of("SETA>SETB", 15000L, "SETB>SETA", 3000L, "SETA>SETA", 1000L));
+        assertThat(payments).isEqualTo(Map.of("SETA>SETB", 2L, "SETB>SETA", 1L, "SETA>SETA", 1L));
+        
+        if (firstCycle == lastCycle) {
+            // On-us payments within SETA are left out of the bank positions
+            Map<String, SettlementReport.BankPosition> banks = settlementEngine.report(lastCycle).banks().stream()
+                    .filter(bank -> BANKS.contains(bank.bank()))
+                    .collect(Collectors.toMap(SettlementReport.BankPosition::bank, bank -> bank));
+            assertThat(banks.get("SETA").paid()).isEqualTo(Money.parse("150.00"));
+            assertThat(banks.get("SETA").net()).isEqualTo(Money.parse("-120.00"));
+            assertThat(banks.get("SETB").net()).isEqualTo(Money.parse("120.00"));
+        }
+    }
+    
+    @Test
+    void paymentPendingForLongerThanACollectCanLastIsRecomputedInTheCycleItSucceeded() {
+        User payer = TestUsers.save(userRepository, "settle.late.payer@test", "500.00", "SETC0000001");
+        User payee = TestUsers.save(userRepository, "settle.late.payee@test", "500.00", "SETD0000001");
+        long firstCycle = settlementEngine.currentCycle();
+        TransactionDto payment = transactionService.initiateBatchPayment(List.of(line(payer, payee, "40.00"))).get(0);
+        long lastCycle = settlementEngine.currentCycle();
+        
+        // As if it had been raised hours before it succeeded, well past the collect TTL
+        jdbcTemplate.update("UPDATE transactions SET created_at = DATEADD('HOUR', -6, created_at) WHERE transaction_id = ?",
+                payment.getTransactionId());
+        
+        await().atMost(Duration.ofSeconds(10)).until(() -> settlementEngine.closedReports().stream()
+                .anyMatch(report -> report.cycle() == lastCycle));
+        long recomputed = 0;
+        for (long cycle = firstCycle; cycle <= lastCycle; cycle++) {
+            recomputed += settlementEngine.audit(cycle).recomputed().pairs().stream()
+                    .filter(pair -> pair.payerBank().equals("SETC") && pair.payeeBank().equals("SETD"))
+                    .mapToLong(pair -> pair.amount().paise())
+                    .sum();
+        }
+        assertThat(recomputed).isEqualTo(4000L);
+    }
+    
+    private List<SettlementReport.PairPosition> ours(List<SettlementReport.PairPosition> pairs) {
+        return pairs.stream()
+                .filter(pair -> BANKS.contains(pair.payerBank()) && BANKS.contains(pair.payeeBank()))
+                .collect(Collectors.toList());
+    }
+    
+    private TransactionDto line(User payer, User payee, String amount) {
+        TransactionDto line = new TransactionDto();
+        line.setPayerUpiId(payer.getUpiId());
+        line.setPayeeUpiId(payee.getUpiId());
+        line.setAmount(new BigDecimal(amount));
+        line.setDescription("settlement test");
+        return line;
+    }
+} 
\ No newline at end of file
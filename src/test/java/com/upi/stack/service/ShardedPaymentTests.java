@@ -0,0 +1,135 @@
+package com.upi.stack.service;
+
+import com.upi.stack.TestUsers;
+import com.upi.stack.dto.TransactionDto;
+import com.upi.stack.entity.Money;
+import com.upi.stack.entity.ShardTransfer;
+import com.upi.stack.entity.User;
+import com.upi.stack.repository.ShardTransferRepository;
+import com.upi.stack.repository.UserRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.awaitility.Awaitility.await;
+
+@SpringBootTest(properties = {
+    "upi.sharding.enabled=true",
+    "upi.sharding.urls=jdbc:h2:mem:sharded-test-0,jdbc:h2:mem:sharded-test-1",
+    "upi.ledger.snapshot-settle-window=0s"
+})
+class ShardedPaymentTests {
+    
+    @Autowired
+    private TransactionService transactionService;
+    
+    @Autowired
+    private LedgerService ledgerService;
+    
+    @Autowired
+    private LedgerMaintenance ledgerMaintenance;
+    
+    @Autowired
+    private ShardRouter shardRouter;
+    
+    @Autowired
+    private VpaDirectory vpaDirectory;
+    
+    @Autowired
+    private UserRepository userRepository;
+    
+    @Autowired
+    private ShardTransferRepository shardTransferRepository;
+    
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    
+    @Test
+    void crossShardPaymentIsCreditedOnThePayeeShard() {
+        User payer = saveOnHomeShard(upiIdOnShard("credit.payer", 0), "500.00");
+        User payee = saveOnHomeShard(upiIdOnShard("credit.payee", 1), "0.00");
+        
+        String transactionId = TestUsers.pay(transactionService, payer, payee, "100.00").getTransactionId();
+        
+        await().atMost(Duration.ofSeconds(10)).until(() -> transferStatus(0, transactionId) == ShardTransfer.TransferStatus.CREDITED);
+        assertThat(shardRouter.on(1, () -> shardTransferRepository.findByTransactionId(transactionId)))
+                .hasValueSatisfying(inbound -> assertThat(inbound.getDirection()).isEqualTo(ShardTransfer.Direction.INBOUND));
+        assertThat(balanceOf(payer)).isEqualTo(Money.parse("400.00"));
+        assertThat(balanceOf(payee)).isEqualTo(Money.parse("100.00"));
+        assertThat(ledgerMaintenance.reconcile().isBalanced()).isTrue();
+        
+        // Stored on the payer's shard, listed from every shard
+        assertThat(transactionService.getAllTransactions(null, 100).getItems())
+                .extracting(TransactionDto::getTransactionId).contains(transactionId);
+        assertThat(transactionService.getTransactionsByUpiId(payee.getUpiId(), null, 100).getItems())
+                .extracting(TransactionDto::getTransactionId).containsExactly(transactionId);
+    }
+    
+    @Test
+    void paymentToAVanishedPayeeIsCompensated() {
+        User payer = saveOnHomeShard(upiIdOnShard("refund.payer", 0), "500.00");
+        User payee = saveOnHomeShard(upiIdOnShard("refund.payee", 1), "0.00");
+        
+        // The directory still resolves the payee after its row is gone from its shard
+        assertThat(vpaDirectory.resolve(payee.getUpiId())).isPresent();
+        shardRouter.on(1, () -> jdbcTemplate.update("DELETE FROM users WHERE id = ?", payee.getId()));
+        
+        String transactionId = TestUsers.pay(transactionService, payer, payee, "100.00").getTransactionId();
+        
+        await().atMost(Duration.ofSeconds(10)).until(() -> transferStatus(0, transactionId) == ShardTransfer.TransferStatus.COMPENSATED);
+        TransactionDto compensated = transactionService.getTransactionById(transactionId);
+        assertThat(compensated.getStatus()).isEqualTo("CANCELLED");
+        assertThat(compensated.getFailureReason()).isEqualTo("Payee account not found");
+        assertThat(balanceOf(payer)).isEqualTo(Money.parse("500.00"));
+        assertThat(ledgerMaintenance.reconcile().isBalanced()).isTrue();
+    }
+    
+    @Test
+    void paymentWhoseTransferCannotBeOpenedLeavesThePayerUntouched() {
+        User payer = saveOnHomeShard(upiIdOnShard("unopened.payer", 0), "500.00");
+        User payee = saveOnHomeShard(upiIdOnShard("unopened.payee", 1), "0.00");
+        long transfers = shardRouter.on(0, () -> shardTransferRepository.count());
+        
+        // The payer's shard refuses to store any transfer of this payer's
+        shardRouter.on(0, () -> jdbcTemplate.update("ALTER TABLE shard_transfers ADD CONSTRAINT no_unopened_transfers " +
+                "CHECK (payer_account_id <> " + payer.getId() + ")"));
+        try {
+            assertThatThrownBy(() -> TestUsers.pay(transactionService, payer, payee, "100.00"))
+                    .isInstanceOf(DataIntegrityViolationException.class);
+        } finally {
+            shardRouter.on(0, () -> jdbcTemplate.update("ALTER TABLE shard_transfers DROP CONSTRAINT no_unopened_transfers"));
+        }
+        assertThat(balanceOf(payer)).isEqualTo(Money.parse("500.00"));
+        assertThat(balanceOf(payee)).isEqualTo(Money.ZERO);
+        assertThat(shardRouter.on(0, () -> shardTransferRepository.count())).isEqualTo(transfers);
+        assertThat(transactionService.getTransactionsByUpiId(payer.getUpiId(), null, 100).getItems()).isEmpty();
+        assertThat(ledgerMaintenance.reconcile().isBalanced()).isTrue();
+    }
+    
+    private String upiIdOnShard(String prefix, int shard) {
+        for (int i = 0; ; i++) {
+            String upiId = prefix + i + "@test";
+            if (shardRouter.shardFor(upiId) == shard) {
+                return upiId;
+            }
+        }
+    }
+    
+    private ShardTransfer.TransferStatus transferStatus(int shard, String transactionId) {
+        return shardRouter.on(shard, () -> shardTransferRepository.findByTransactionId(transactionId))
+                .map(ShardTransfer::getStatus).orElse(null);
+    }
+    
+    private Money balanceOf(User user) {
+        return shardRouter.on(shardRouter.shardOf(user.getId()), () -> ledgerService.balanceOf(user.getId()));
+    }
+    
+    private User saveOnHomeShard(String upiId, String openingBalance) {
+        return shardRouter.on(shardRouter.shardFor(upiId), () -> TestUsers.save(userRepository, upiId, openingBalance));
+    }
+} 
\ No newline at end of file
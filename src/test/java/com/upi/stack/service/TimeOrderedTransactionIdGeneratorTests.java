@@ -0,0 +1,60 @@
+package com.upi.stack.service;
+
+import org.junit.jupiter.api.Test;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class TimeOrderedTransactionIdGeneratorTests {
+    
+    private static final int THREADS = 8;
+    
+    private final TimeOrderedTransactionIdGenerator generator = new TimeOrderedTransactionIdGenerator(7);
+    
+    @Test
+    void idsAreUniqueAndOrderedPerThreadUnderContention() throws Exception {
+        int perThread = 250_000;
+        List<Callable<String[]>> tasks = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            tasks.add(() -> {
+                String[] ids = new String[perThread];
+                for (int i = 0; i < perThread; i++) {
+                    ids[i] = generator.nextId();
+                }
+                return ids;
+            });
+        }
+        
+        Set<String> seen = new HashSet<>(THREADS * perThread * 2);
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            for (Future<String[]> result : executor.invokeAll(tasks)) {
+                String[] ids = result.get();
+                for (int i = 0; i < ids.length; i++) {
+                    assertThat(ids[i]).hasSize(TimeOrderedTransactionIdGenerator.LENGTH).startsWith("TXN");
+                    if (i > 0) {
+                        assertThat(ids[i]).isGreaterThan(ids[i - 1]);
+                    }
+                    seen.add(ids[i]);
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertThat(seen).hasSize(THREADS * perThread);
+    }
+    
+    @Test
+    void rejectsNodeIdOutsideTenBits() {
+        assertThatThrownBy(() -> new TimeOrderedTransactionIdGenerator(1024))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+} 
\ No newline at end of file
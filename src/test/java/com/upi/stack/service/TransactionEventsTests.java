@@ -0,0 +1,137 @@
+package com.upi.stack.service;
+
+import com.upi.stack.TestUsers;
+import com.upi.stack.dto.TransactionDto;
+import com.upi.stack.entity.User;
+import com.upi.stack.repository.UserRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.autoconfigure.web.servlet.MockMvcPrint;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.SpyBean;
+import org.springframework.http.MediaType;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+import static org.mockito.Mockito.doAnswer;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+
+// One dispatcher, so a stalled send would hold up every subscriber without a spare thread. The
+// printing handler is off as it reads the responses while the dispatchers are still writing.
+@SpringBootTest(properties = {
+    "spring.datasource.url=jdbc:h2:mem:events-test",
+    "upi.events.dispatch-threads=1",
+    "upi.events.write-timeout=PT0.5S",
+    "upi.events.write-check=PT0.1S"
+})
+@AutoConfigureMockMvc(print = MockMvcPrint.NONE)
+class TransactionEventsTests {
+    
+    @Autowired
+    private MockMvc mockMvc;
+    
+    @Autowired
+    private TransactionService transactionService;
+    
+    @Autowired
+    private TransactionEvents transactionEvents;
+    
+    @SpyBean
+    private UserRepository userRepository;
+    
+    @Test
+    void subscriberReceivesCommittedPaymentsAndResumesFromLastEventId() throws Exception {
+        User payer = TestUsers.save(userRepository, "events.payer@test", "100.00");
+        User payee = TestUsers.save(userRepository, "events.payee@test", "100.00");
+        MockHttpServletResponse live = subscribe(payee, null);
+        
+        TransactionDto firstPayment = pay(payer, payee);
+        String first = firstPayment.getTransactionId();
+        String firstEventId = awaitEvent(live, firstPayment);
+        
+        // Missed while disconnected, replayed to a client resuming after the first
+        TransactionDto secondPayment = pay(payer, payee);
+        String second = secondPayment.getTransactionId();
+        MockHttpServletResponse resumed = subscribe(payee, firstEventId);
+        awaitEvent(resumed, secondPayment);
+        assertThat(resumed.getContentAsString()).doesNotContain(first);
+        
+        // An id the history does not cover asks the client to re-read its history
+        MockHttpServletResponse stale = subscribe(payee, "1");
+        await().atMost(Duration.ofSeconds(10)).until(() -> stale.getContentAsString().contains("event:" + TransactionEvents.RESET_EVENT));
+        assertThat(stale.getContentAsString()).doesNotContain(first).doesNotContain(second);
+    }
+    
+    @Test
+    void subscriberWhoseWriteStallsIsDisconnectedWithoutHoldingUpOthers() throws Exception {
+        User stuckPayer = TestUsers.save(userRepository, "events.stuck@test", "100.00");
+        User stuckPayee = TestUsers.save(userRepository, "events.stuck.payee@test", "100.00");
+        User payer = TestUsers.save(userRepository, "events.other@test", "100.00");
+        User payee = TestUsers.save(userRepository, "events.other.payee@test", "100.00");
+        
+        // Looking up the counterparty's UPI ID stands in for a write the client never takes
+        CountDownLatch released = new CountDownLatch(1);
+        doAnswer(invocation -> {
+            released.await();
+            return Optional.of(stuckPayee.getUpiId());
+        }).when(userRepository).findUpiIdById(stuckPayee.getId());
+        
+        int before = transactionEvents.subscribers();
+        MvcResult stuck = open(stuckPayer, null);
+        pay(stuckPayer, stuckPayee);
+        await().atMost(Duration.ofSeconds(10)).until(() -> transactionEvents.subscribers() == before);
+        
+        MockHttpServletResponse live = subscribe(payee, null);
+        awaitEvent(live, pay(payer, payee));
+        
+        // The stuck send finishes and the stream is closed behind it
+        released.countDown();
+        stuck.getAsyncResult(10_000);
+        assertThat(stuck.getResponse().getContentAsString()).contains(stuckPayee.getUpiId());
+    }
+    
+    // Returns the id of the last event about the transaction
+    private String awaitEvent(MockHttpServletResponse response, TransactionDto payment) throws Exception {
+        Pattern event = Pattern.compile("id:(\\d+)\nevent:" + TransactionEvents.TRANSACTION_EVENT + "\ndata:(\\{[^\n]*\"transactionId\":\"" + payment.getTransactionId() + "\"[^\n]*)");
+        await().atMost(Duration.ofSeconds(10)).until(() -> event.matcher(response.getContentAsString()).find());
+        Matcher matcher = event.matcher(response.getContentAsString());
+        String id = null;
+        while (matcher.find()) {
+            id = matcher.group(1);
+            assertThat(matcher.group(2)).contains("\"payeeUpiId\":\"" + payment.getPayeeUpiId() + "\"");
+        }
+        return id;
+    }
+    
+    private MockHttpServletResponse subscribe(User user, String lastEventId) throws Exception {
+        return open(user, lastEventId).getResponse();
+    }
+    
+    private MvcResult open(User user, String lastEventId) throws Exception {
+        var request = get("/api/transactions/user/" + user.getUpiId() + "/events").accept(MediaType.TEXT_EVENT_STREAM);
+        if (lastEventId != null) {
+            request.header("Last-Event-ID", lastEventId);
+        }
+        return mockMvc.perform(request).andExpect(request().asyncStarted()).andReturn();
+    }
+    
+    private TransactionDto pay(User payer, User payee) {
+        TransactionDto request = new TransactionDto();
+        request.setPayerUpiId(payer.getUpiId());
+        request.setPayeeUpiId(payee.getUpiId());
+        request.setAmount(new BigDecimal("5.00"));
+        request.setDescription("events test");
+        return transactionService.initiatePayment(request);
+    }
+} 
\ No newline at end of file
@@ -0,0 +1,109 @@
+package com.upi.stack.service;
+
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.upi.stack.TestUsers;
+import com.upi.stack.dto.CursorPage;
+import com.upi.stack.dto.TransactionDto;
+import com.upi.stack.entity.User;
+import com.upi.stack.repository.UserRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+// A database of its own, as in PaymentPipelineTests
+@SpringBootTest(properties = "spring.datasource.url=jdbc:h2:mem:history-test")
+@AutoConfigureMockMvc
+class TransactionHistoryPaginationTests {
+    
+    private static final String APPLICATION_NDJSON = "application/x-ndjson";
+    
+    @Autowired
+    private MockMvc mockMvc;
+    
+    @Autowired
+    private ObjectMapper objectMapper;
+    
+    @Autowired
+    private TransactionService transactionService;
+    
+    @Autowired
+    private UserRepository userRepository;
+    
+    @Test
+    void cursorPagesWalkTheWholeHistoryNewestFirstAndMatchTheStream() throws Exception {
+        User alice = TestUsers.save(userRepository, "history.alice@test", "100.00");
+        User bob = TestUsers.save(userRepository, "history.bob@test", "100.00");
+        User payee = TestUsers.save(userRepository, "history.payee@test", "0.00");
+        // Two payers, as the per-minute velocity limit would refuse seven lines from one
+        transactionService.initiateBatchPayment(List.of(line(alice, payee, "1.00"), line(bob, payee, "2.00"),
+                line(alice, payee, "3.00"), line(bob, payee, "4.00")));
+        transactionService.initiateBatchPayment(List.of(line(alice, payee, "5.00"), line(bob, payee, "6.00"),
+                line(alice, payee, "7.00")));
+        
+        String path = "/api/transactions/user/" + payee.getUpiId();
+        List<TransactionDto> walked = new ArrayList<>();
+        List<Integer> pageSizes = new ArrayList<>();
+        String cursor = null;
+        do {
+            var page = get(path).param("size", "3");
+            if (cursor != null) {
+                page.param("cursor", cursor);
+            }
+            MvcResult result = mockMvc.perform(page).andExpect(status().isOk()).andReturn();
+            List<TransactionDto> items = List.of(objectMapper.readValue(result.getResponse().getContentAsByteArray(),
+                    TransactionDto[].class));
+            walked.addAll(items);
+            pageSizes.add(items.size());
+            cursor = result.getResponse().getHeader(CursorPage.NEXT_CURSOR_HEADER);
+        } while (cursor != null);
+        
+        assertThat(pageSizes).containsExactly(3, 3, 1);
+        assertThat(walked).extracting(TransactionDto::getTransactionId).doesNotHaveDuplicates();
+        assertThat(walked).isSortedAccordingTo(Comparator.comparing(TransactionDto::getCreatedAt)
+                .thenComparing(TransactionDto::getId).reversed());
+        assertThat(walked).extracting(TransactionDto::getAmount).containsExactlyInAnyOrder(new BigDecimal("1.00"),
+                new BigDecimal("2.00"), new BigDecimal("3.00"), new BigDecimal("4.00"), new BigDecimal("5.00"),
+                new BigDecimal("6.00"), new BigDecimal("7.00"));
+        
+        MvcResult started = mockMvc.perform(get(path).accept(APPLICATION_NDJSON))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        byte[] streamed = mockMvc.perform(asyncDispatch(started))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsByteArray();
+        try (MappingIterator<TransactionDto> rows = objectMapper.readerFor(TransactionDto.class).readValues(streamed)) {
+            assertThat(rows.readAll()).containsExactlyInAnyOrderElementsOf(walked);
+        }
+    }
+    
+    @Test
+    void unreadableCursorIsRefused() throws Exception {
+        User user = TestUsers.save(userRepository, "history.cursor@test", "0.00");
+        String path = "/api/transactions/user/" + user.getUpiId();
+        mockMvc.perform(get(path)).andExpect(status().isOk());
+        mockMvc.perform(get(path).param("cursor", "not-a-cursor")).andExpect(status().isBadRequest());
+    }
+    
+    private static TransactionDto line(User payer, User payee, String amount) {
+        TransactionDto line = new TransactionDto();
+        line.setPayerUpiId(payer.getUpiId());
+        line.setPayeeUpiId(payee.getUpiId());
+        line.setAmount(new BigDecimal(amount));
+        line.setDescription("history test");
+        return line;
+    }
+} 
\ No newline at end of file
@@ -0,0 +1,74 @@
+package com.upi.stack.service;
+
+import com.upi.stack.TestUsers;
+import com.upi.stack.entity.Money;
+import com.upi.stack.entity.Transaction;
+import com.upi.stack.entity.User;
+import com.upi.stack.repository.TransactionRepository;
+import com.upi.stack.repository.UserRepository;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest(properties = "spring.jpa.properties.hibernate.generate_statistics=true")
+class TransactionHistoryQueryCountTests {
+    
+    @Autowired
+    private TransactionService transactionService;
+    
+    @Autowired
+    private TransactionRepository transactionRepository;
+    
+    @Autowired
+    private UserRepository userRepository;
+    
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+    
+    @Test
+    void historyQueryCountDoesNotGrowWithPageSize() {
+        User payer = TestUsers.save(userRepository, "qc.payer@test", "1000000.00");
+        User payee = TestUsers.save(userRepository, "qc.payee@test", "1000000.00");
+        saveTransactions(payer, payee, 300);
+        
+        long smallPage = statementsFor(() -> transactionService.getTransactionsByUpiId(payer.getUpiId(), null, 5));
+        long largePage = statementsFor(() -> transactionService.getTransactionsByUpiId(payer.getUpiId(), null, 250));
+        long allTransactions = statementsFor(() -> transactionService.getAllTransactions(null, 250));
+        
+        // account id lookup plus one payer-side and one payee-side page query
+        assertThat(smallPage).isEqualTo(3);
+        assertThat(largePage).isEqualTo(smallPage);
+        assertThat(allTransactions).isEqualTo(1);
+    }
+    
+    private long statementsFor(Runnable call) {
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+        call.run();
+        return statistics.getPrepareStatementCount();
+    }
+    
+    private void saveTransactions(User payer, User payee, int count) {
+        List<Transaction> transactions = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            Transaction transaction = new Transaction();
+            transaction.setTransactionId("QC" + UUID.randomUUID());
+            transaction.setPayer(i % 3 == 0 ? payee : payer);
+            transaction.setPayee(i % 3 == 0 ? payer : payee);
+            transaction.setAmount(Money.ofPaise(100));
+            transaction.setDescription("query count " + i);
+            transaction.setStatus(Transaction.TransactionStatus.SUCCESS);
+            transaction.setType(Transaction.TransactionType.PAY);
+            transactions.add(transaction);
+        }
+        transactionRepository.saveAll(transactions);
+    }
+} 
\ No newline at end of file
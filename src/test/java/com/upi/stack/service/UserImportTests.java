@@ -0,0 +1,100 @@
+package com.upi.stack.service;
+
+import com.upi.stack.dto.UserImportReport;
+import com.upi.stack.entity.Money;
+import com.upi.stack.repository.UserRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+
+@SpringBootTest(properties = {
+    "upi.user-import.chunk-size=3",
+    "upi.user-import.workers=4"
+})
+class UserImportTests {
+    
+    @Autowired
+    private UserImportService userImportService;
+    
+    @Autowired
+    private LedgerService ledgerService;
+    
+    @Autowired
+    private UserRepository userRepository;
+    
+    @Test
+    void csvRowsAreImportedAndBadRowsReportedByLine() throws IOException {
+        String csv = String.join("\n",
+                "upiId,name,phoneNumber,email,bankName,accountNumber,ifscCode,balance",
+                "import.one@test,\"Shah, Asha\",9500000001,import.one@example.com,Test Bank,123456789,TEST0000001,250.00",
+                "import.two@test,Ravi Iyer,9500000002,import.two@example.com,Test Bank,123456789,TEST0000001,",
+                "import.three@test,Meena Rao,9500000001,import.three@example.com,Test Bank,123456789,TEST0000001,",
+                "import.five@test,Five,95000,import.five@example.com,Test Bank,123456789,TEST0000001,",
+                "import.six@test,Kiran Das,9500000006,import.six@example.com,Test Bank,123456789,TEST0000001,",
+                "import.six@test,Kiran Again,9500000007,import.seven@example.com,Test Bank,123456789,TEST0000001,",
+                "john.doe@icici,John Again,9500000008,john.again@example.com,Test Bank,123456789,TEST0000001,",
+                "import.nine@test,Too Few,9500000009",
+                "import.ten@test,Lata Menon,9500000010,import.ten@example.com,Test Bank,123456789,TEST0000001,");
+        
+        UserImportReport report = importCsv("csv-test", csv);
+        
+        assertThat(report.imported()).isEqualTo(4);
+        assertThat(report.rejected()).isEqualTo(5);
+        assertThat(report.errors()).extracting(UserImportReport.RowError::line, UserImportReport.RowError::reason)
+                .containsExactly(
+                        tuple(4L, "Duplicate phone number in import"),
+                        tuple(5L, "Phone number must be 10 digits"),
+                        tuple(7L, "Duplicate UPI ID in import"),
+                        tuple(8L, "UPI ID already exists"),
+                        tuple(9L, "Expected 8 fields, found 3"));
+        assertThat(userRepository.findByUpiId("import.one@test")).hasValueSatisfying(user -> {
+            assertThat(user.getName()).isEqualTo("Shah, Asha");
+            assertThat(ledgerService.balanceOf(user.getId())).isEqualTo(Money.parse("250.00"));
+        });
+        assertThat(userRepository.findByUpiId("import.ten@test")).isPresent();
+        
+        // Rerunning the import skips every row, rejected ones included
+        UserImportReport rerun = importCsv("csv-test", csv);
+        assertThat(rerun.imported()).isZero();
+        assertThat(rerun.rejected()).isZero();
+        assertThat(rerun.skipped()).isEqualTo(9);
+    }
+    
+    @Test
+    void ndjsonImportResumesAfterTheLastCommittedChunk() throws IOException {
+        String firstPart = ndjsonLine(1) + "\n" + ndjsonLine(2) + "\n" + ndjsonLine(3);
+        String whole = firstPart + "\n" + ndjsonLine(4) + "\n{not json\n" + ndjsonLine(6);
+        
+        // The first run is cut off after one chunk
+        assertThat(importNdjson("ndjson-test", firstPart).imported()).isEqualTo(3);
+        
+        UserImportReport resumed = importNdjson("ndjson-test", whole);
+        assertThat(resumed.skipped()).isEqualTo(3);
+        assertThat(resumed.imported()).isEqualTo(2);
+        assertThat(resumed.errors()).extracting(UserImportReport.RowError::line, UserImportReport.RowError::reason)
+                .containsExactly(tuple(5L, "Malformed JSON"));
+        assertThat(userRepository.findByUpiId("bulk6@test")).isPresent();
+    }
+    
+    private String ndjsonLine(int i) {
+        return String.format("{\"upiId\":\"bulk%d@test\",\"name\":\"Bulk User %d\",\"phoneNumber\":\"95100000%02d\"," +
+                "\"email\":\"bulk%d@example.com\",\"bankName\":\"Test Bank\",\"accountNumber\":\"123456789\"," +
+                "\"ifscCode\":\"TEST0000001\"}", i, i, i, i);
+    }
+    
+    private UserImportReport importCsv(String importId, String csv) throws IOException {
+        return userImportService.importUsers(importId, new ByteArrayInputStream(csv.getBytes(StandardCharsets.UTF_8)),
+                UserImportService.Format.CSV);
+    }
+    
+    private UserImportReport importNdjson(String importId, String ndjson) throws IOException {
+        return userImportService.importUsers(importId, new ByteArrayInputStream(ndjson.getBytes(StandardCharsets.UTF_8)),
+                UserImportService.Format.NDJSON);
+    }
+} 
\ No newline at end of file
@@ -0,0 +1,91 @@
+package com.upi.stack.service;
+
+import com.upi.stack.TestUsers;
+import com.upi.stack.dto.TransactionDto;
+import com.upi.stack.entity.Money;
+import com.upi.stack.entity.User;
+import com.upi.stack.repository.TransactionRepository;
+import com.upi.stack.repository.UserRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import java.math.BigDecimal;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@SpringBootTest(properties = {
+    "upi.limits.enabled=true",
+    "upi.limits.max-amount=1000.00",
+    "upi.limits.payer-daily-amount=1500.00",
+    "upi.limits.payer-daily-count=0",
+    "upi.limits.payer-per-minute=3",
+    "upi.limits.payee-per-minute=0"
+})
+class VelocityLimitsTests {
+    
+    @Autowired
+    private TransactionService transactionService;
+    
+    @Autowired
+    private TransactionRepository transactionRepository;
+    
+    @Autowired
+    private UserRepository userRepository;
+    
+    @Autowired
+    private ShardRouter shardRouter;
+    
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    
+    @Test
+    void refusedPaymentsWriteNothing() {
+        User payer = TestUsers.save(userRepository, "limits.payer@test", "100000.00");
+        User payee = TestUsers.save(userRepository, "limits.payee@test", "100000.00");
+        long before = transactionRepository.count();
+        
+        assertThatThrownBy(() -> TestUsers.pay(transactionService, payer, payee, "1000.01"))
+                .isInstanceOf(LimitExceededException.class)
+                .hasMessage(VelocityLimits.AMOUNT_LIMIT);
+        for (int i = 0; i < 3; i++) {
+            TestUsers.pay(transactionService, payer, payee, "10.00");
+        }
+        assertThatThrownBy(() -> TestUsers.pay(transactionService, payer, payee, "10.00"))
+                .hasMessage(VelocityLimits.PAYER_PER_MINUTE);
+        assertThat(transactionRepository.count()).isEqualTo(before + 3);
+    }
+    
+    @Test
+    void batchLinesOverALimitAreRejectedOneByOne() {
+        User payer = TestUsers.save(userRepository, "limits.batch.payer@test", "100000.00");
+        User payee = TestUsers.save(userRepository, "limits.batch.payee@test", "100000.00");
+        
+        List<TransactionDto> results = transactionService.initiateBatchPayment(List.of(
+                TestUsers.payment(payer, payee, "900.00"), TestUsers.payment(payer, payee, "700.00"),
+                TestUsers.payment(payer, payee, "500.00")));
+        
+        assertThat(results).extracting(TransactionDto::getStatus).containsExactly("SUCCESS", "FAILED", "SUCCESS");
+        assertThat(results.get(1).getFailureReason()).isEqualTo(VelocityLimits.PAYER_DAILY_AMOUNT);
+    }
+    
+    @Test
+    void countersAreWarmedUpFromTheLastDayOfPayments() {
+        User payer = TestUsers.save(userRepository, "limits.warm.payer@test", "100000.00");
+        User payee = TestUsers.save(userRepository, "limits.warm.payee@test", "100000.00");
+        TestUsers.pay(transactionService, payer, payee, "800.00");
+        TestUsers.pay(transactionService, payer, payee, "600.00");
+        jdbcTemplate.update("UPDATE transactions SET created_at = DATEADD('HOUR', -3, created_at) WHERE payer_id = ?",
+                payer.getId());
+        
+        // A freshly started instance counts the 1400.00 paid earlier today but not the minute count
+        VelocityLimits restarted = new VelocityLimits(transactionRepository, shardRouter, true, new BigDecimal("1000.00"),
+                new BigDecimal("1500.00"), 0, 3, 0);
+        restarted.warmUp();
+        assertThat(restarted.admit(payer.getUpiId(), payee.getUpiId(), Money.parse("200.00")))
+                .isEqualTo(VelocityLimits.PAYER_DAILY_AMOUNT);
+        assertThat(restarted.admit(payer.getUpiId(), payee.getUpiId(), Money.parse("100.00"))).isNull();
+    }
+} 
\ No newline at end of file
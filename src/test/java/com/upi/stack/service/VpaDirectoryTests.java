@@ -0,0 +1,51 @@
+package com.upi.stack.service;
+
+import com.upi.stack.TestUsers;
+import com.upi.stack.entity.User;
+import com.upi.stack.repository.UserRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// A database of its own, as in PaymentPipelineTests, and a directory small enough to overflow
+@SpringBootTest(properties = {
+    "spring.datasource.url=jdbc:h2:mem:directory-test",
+    "upi.directory-cache.maximum-size=3"
+})
+class VpaDirectoryTests {
+    
+    @Autowired
+    private VpaDirectory vpaDirectory;
+    
+    @Autowired
+    private UserRepository userRepository;
+    
+    @Test
+    void unknownUpiIdsAreNotCachedAndKnownOnesAreServedFromTheCache() {
+        assertThat(vpaDirectory.resolve("directory.new@test")).isEmpty();
+        User user = TestUsers.save(userRepository, "directory.new@test", "0.00");
+        
+        assertThat(vpaDirectory.resolve("directory.new@test")).hasValueSatisfying(entry -> {
+            assertThat(entry.accountId()).isEqualTo(user.getId());
+            assertThat(entry.ifscCode()).isEqualTo(user.getIfscCode());
+        });
+        long hits = vpaDirectory.cache().stats().hitCount();
+        assertThat(vpaDirectory.resolve("directory.new@test")).isPresent();
+        assertThat(vpaDirectory.cache().stats().hitCount()).isEqualTo(hits + 1);
+    }
+    
+    @Test
+    void directoryStaysWithinItsMaximumSize() {
+        for (int i = 0; i < 10; i++) {
+            String upiId = "directory.bounded" + i + "@test";
+            TestUsers.save(userRepository, upiId, "0.00");
+            assertThat(vpaDirectory.resolve(upiId)).isPresent();
+        }
+        
+        vpaDirectory.cache().cleanUp();
+        assertThat(vpaDirectory.cache().estimatedSize()).isLessThanOrEqualTo(3);
+        assertThat(vpaDirectory.cache().stats().evictionCount()).isGreaterThanOrEqualTo(7);
+    }
+} 
\ No newline at end of file